@@ -2,7 +2,7 @@ import java.applet.Applet;
 import java.awt.*;
 import java.awt.event.*;
 import javax.swing.event.MouseInputAdapter;
-import java.util.Random;
+import java.util.Arrays;
 
 public class GameOfLife extends Applet implements Runnable {
     int w;
@@ -74,42 +74,157 @@ public class GameOfLife extends Applet implements Runnable {
         return false;
     }
     
+    /**
+     * the screen is drawn from a back buffer that lives as long as the
+     * applet does; it is only reallocated when the applet is resized.
+     * the grid is rendered once into its own image, and after that only
+     * cells that were born or died since the last frame are touched
+     */
+    Image backI;
+    Graphics backG;
+    Image gridI;
+    int bufW;
+    int bufH;
+    final Object drawLock = new Object();
+    //cells in the back buffer, and the live cells of this frame;
+    //the two are swapped after every frame, so neither is reallocated
+    LongSet shown = new LongSet();
+    LongSet alive = new LongSet();
+    
     public void update(Graphics g) {
-        Image offI = createImage(w, h);
-        Graphics offG = offI.getGraphics();
-        offG.clearRect(0, 0, w, h);
-        paint(offG);
-        g.drawImage(offI, 0, 0, null);
+        paint(g);
     }
     
     public void paint(Graphics g) {
-        g.clearRect(0, 0, w, h);
-        
-        //draw grid
-        g.setColor(Color.LIGHT_GRAY);
-        for (int i=0; i<((w-w%10)/10); i++) {
-            g.drawLine(0, i*10, w, i*10);
-            g.drawLine(i*10, 0, i*10, h);
+        synchronized (drawLock) {
+            if (backI==null || bufW!=getWidth() || bufH!=getHeight()) resizeBuffer();
+            drawChanges();
+            g.drawImage(backI, 0, 0, null);
         }
+    }
+    
+    /**
+     * (re)builds the back buffer and the grid layer for the current size,
+     * then redraws every live cell on the next drawChanges()
+     */
+    private void resizeBuffer() {
+        w = bufW = Math.max(getWidth(), 1);
+        h = bufH = Math.max(getHeight(), 1);
         
-        //draw pattern
-        Random r = new Random();
-        g.setColor(Color.BLACK);
-        //g.setColor(new Color(r.nextInt(256), r.nextInt(256), r.nextInt(256)));
-        /*for (int x = 0; x<((w-w%10)/10); x++) {
-            for (int y = 0; y<((h-h%10)/10); y++) {
-                if (grid[x][y]==true) g.fillRect((x*10)+1, (y*10)+1, 9, 9);
-            }
-        }*/
+        gridI = createImage(w, h);
+        Graphics gg = gridI.getGraphics();
+        gg.setColor(getBackground());
+        gg.fillRect(0, 0, w, h);
+        gg.setColor(Color.LIGHT_GRAY);
+        for (int i=0; i<=w; i+=10) gg.drawLine(i, 0, i, h);
+        for (int j=0; j<=h; j+=10) gg.drawLine(0, j, w, j);
+        gg.dispose();
+        
+        if (backG!=null) backG.dispose();
+        backI = createImage(w, h);
+        backG = backI.getGraphics();
+        backG.drawImage(gridI, 0, 0, null);
+        shown.clear();
+    }
+    
+    /**
+     * compares the live cells in the tree against what is already in the
+     * back buffer, and fills or erases only the cells that differ
+     */
+    private void drawChanges() {
+        alive.clear();
         Iterator iter = tree.new DFSIterator();
         QuadTree.Node curr = (QuadTree.Node) iter.get();
         while (curr!=null) {
-            int x = Integer.parseInt(curr.x.toString());
-            int y = Integer.parseInt(curr.y.toString());
-            if (curr.value.equals(true)) g.fillRect((x*10)+1, (y*10)+1, 9, 9);
+            if (curr.value.equals(true)) {
+                int x = ((Integer) curr.x).intValue();
+                int y = ((Integer) curr.y).intValue();
+                alive.add(key(x, y));
+            }
             iter.next();
             curr = (QuadTree.Node) iter.get();
         }
+        
+        //cells that died: restore the grid layer underneath
+        for (int i=0; i<shown.keys.length; i++) {
+            if (!shown.used[i] || alive.contains(shown.keys[i])) continue;
+            int px = cellX(shown.keys[i])*10+1;
+            int py = cellY(shown.keys[i])*10+1;
+            backG.drawImage(gridI, px, py, px+9, py+9, px, py, px+9, py+9, null);
+        }
+        
+        //cells that were born
+        backG.setColor(Color.BLACK);
+        for (int i=0; i<alive.keys.length; i++) {
+            if (!alive.used[i] || shown.contains(alive.keys[i])) continue;
+            backG.fillRect(cellX(alive.keys[i])*10+1, cellY(alive.keys[i])*10+1, 9, 9);
+        }
+        
+        LongSet t = shown;
+        shown = alive;
+        alive = t;
+    }
+    
+    /**
+     * a set of longs in open-addressed arrays, so adding a cell doesn't
+     * box it; clear() keeps the arrays for the next frame
+     */
+    static class LongSet {
+        long[] keys = new long[64];
+        boolean[] used = new boolean[64];
+        int size;
+        
+        void clear() {
+            Arrays.fill(used, false);
+            size = 0;
+        }
+        
+        boolean contains(long k) {
+            for (int i=slot(k, keys.length); used[i]; i=(i+1)&(keys.length-1)) {
+                if (keys[i]==k) return true;
+            }
+            return false;
+        }
+        
+        void add(long k) {
+            if (2*(size+1) > keys.length) grow();
+            int i = slot(k, keys.length);
+            while (used[i]) {
+                if (keys[i]==k) return;
+                i = (i+1)&(keys.length-1);
+            }
+            keys[i] = k;
+            used[i] = true;
+            size++;
+        }
+        
+        private void grow() {
+            long[] oldKeys = keys;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length*2];
+            used = new boolean[oldKeys.length*2];
+            size = 0;
+            for (int i=0; i<oldKeys.length; i++) {
+                if (oldUsed[i]) add(oldKeys[i]);
+            }
+        }
+        
+        private static int slot(long k, int n) {
+            long h = k*0x9E3779B97F4A7C15L;
+            return (int) (h>>>32) & (n-1);
+        }
+    }
+    
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+    
+    private static int cellX(long k) {
+        return (int) (k >> 32);
+    }
+    
+    private static int cellY(long k) {
+        return (int) k;
     }
     
     private void nextGeneration() {
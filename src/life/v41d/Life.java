@@ -34,6 +34,7 @@ import java.awt.*;
 import java.net.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 class Life extends Panel implements Runnable, LifeCallback
 {
@@ -42,6 +43,7 @@ class Life extends Panel implements Runnable, LifeCallback
    private int origX, origY;  // Life universe coordinates at the center of the LifeGUI
    private LifeGUI f;         // the graphical field
    private LifeGen u;         // the universe itself
+   private LifeScheduler sched; // how many generations per frame
    private int drawX, drawY;
    private final static int REPAINT_DEFERRED   = -2, // do a full repaint when ready
                             REPAINT_UNEXPECTED = -1, // repaint from java environment
@@ -70,6 +72,13 @@ class Life extends Panel implements Runnable, LifeCallback
    private String load_param;
    private String set_rules;
    private boolean new_rules;
+   private int colorby;         // LifeGen.HEAT_xxx
+   private boolean new_colorby;
+   private volatile String save_file;   // written by the run loop
+   private volatile LifeLoader loading; // pattern being loaded, if any
+   private final AtomicReference loaded = new AtomicReference();  // LifeLoader, for the run loop to take
+   private boolean loadMerges;          // paste it in, rather than replace
+   private volatile String loadStatus;  // shown instead of the count
    private boolean clearonload=true;
    private Vector description = null;
    private int descriptionlen = 0, descriptionwid = 0;
@@ -95,7 +104,7 @@ class Life extends Panel implements Runnable, LifeCallback
    private boolean editable=true;
    private boolean describe=true;
    private int scrollValue=0;
-   public static Object mutex = new Object();
+   private final Object mutex = new Object();   // this applet's universe and display
    private boolean gnoset=true;
    private int frameWidth, frameHeight;
    private int toolbarHeight=25;
@@ -112,6 +121,7 @@ class Life extends Panel implements Runnable, LifeCallback
       load_param = LifeButton.load_param;
       refresh_rate = default_refresh_rate = LifeButton.refresh_rate;
       skipping = default_skipping = LifeButton.skipping;
+      sched = new LifeScheduler(1000/refresh_rate, skipping);
 
       openBx = new LoadBox(this);
       openBx.setTitle("Patterns");
@@ -146,6 +156,7 @@ class Life extends Panel implements Runnable, LifeCallback
       realGoFlag = LifeButton.autostart;
 
       howfarChoices = LifeButton.howfarChoices;
+      colorby = LifeButton.colorby;
 
       initFlag=true;
 
@@ -301,7 +312,9 @@ class Life extends Panel implements Runnable, LifeCallback
    {
       if (isCountThere)
       {
-         String countstr = (new Integer(u==null?0:u.gencount)).toString();
+         String countstr = loadStatus;
+         if (countstr == null)
+            countstr = (new Integer(u==null?0:u.gencount)).toString();
          int countstrlen = countMetrics.stringWidth(countstr);
          int countX = countWid - countstrlen - 1;
 
@@ -481,11 +494,14 @@ class Life extends Panel implements Runnable, LifeCallback
       if ((twin != null) && initFlag)
       {
          // set up the internal algorithm:
-         u = new LifeGen(set_rules);
+         u = new LifeGen();
+         if (set_rules != null) applyRules(u, set_rules);
+         u.setHeatMode(colorby);
+         f.setHeatMode(colorby);
 
          if (load_param != null) load(load_param);
-         u.setRefresh(1000/refresh_rate);
-         u.setSpeed(skipping);
+         sched.setRefresh(1000/refresh_rate);
+         sched.setSpeed(skipping);
 
          initFlag=false;
          paintLife(REPAINT_FULL);
@@ -497,10 +513,28 @@ class Life extends Panel implements Runnable, LifeCallback
       {
          if (new_rules)
          {
-            u.setRules(set_rules);
+            applyRules(u, set_rules);
             new_rules=false;
          }
 
+         if (new_colorby)
+         {
+            u.setHeatMode(colorby);
+            f.setHeatMode(colorby);
+            new_colorby=false;
+            paintLife(REPAINT_FULL);
+         }
+
+         // taken in one go, so a load done meanwhile isn't wiped out
+         LifeLoader ld = (LifeLoader)loaded.getAndSet(null);
+         if (ld != null) finishLoad(ld);
+
+         if (save_file != null)
+         {
+            writePattern(save_file);
+            save_file = null;
+         }
+
          if (updateState==REPAINT_DEFERRED)
          {
             paintLife(REPAINT_FULL);
@@ -508,14 +542,28 @@ class Life extends Panel implements Runnable, LifeCallback
 
          if (u.goFlag)
          {
-            break4blap=u.generate(how_many, break4blap);
+            int gen0 = u.gencount;
+            long t0 = System.nanoTime();
+            break4blap=u.generate(how_many, break4blap, sched.batchSize());
+
+            // an odd generation of a B0 rule is stored complemented,
+            // which can't be drawn: stop on the one after instead
+            if (!break4blap && u.isInverted())
+            {
+               u.goFlag = true;
+               u.generate(1, false, 1);
+            }
+            sched.generated(u.gencount-gen0, System.nanoTime()-t0);
 
             if (how_many>0) realGoFlag=false;
 
             if (lifeQueue.length()==0)
             {
+               t0 = System.nanoTime();
                paintLife(updateState==REPAINT_DEFERRED? REPAINT_FULL:
                                                         REPAINT_UPDATE);
+               sched.rendered(System.nanoTime()-t0);
+               if (break4blap) sched.waitForFrame();
             }
          }
          else
@@ -530,7 +578,7 @@ class Life extends Panel implements Runnable, LifeCallback
                   if (u.isEmpty()) goBtn.disable();
                   else if (goHowFar!=null &&
                         goHowFar.getSelectedItem().equals("-1") &&
-                        u.backCorrect==false) goBtn.disable();
+                        !u.canStepBack()) goBtn.disable();
                   else goBtn.enable();
                }
                else
@@ -599,8 +647,9 @@ class Life extends Panel implements Runnable, LifeCallback
       int xright = (x2 > x1)? 1 : -1;
       int ydown  = (y2 > y1)? 1 : -1;
 
-      // draw the line
-      int x, y, j=0, wrap=0;
+      // draw the line, setting the cells in one batch
+      int x, y, j=0, wrap=0, n=0;
+      int[] xs = new int[longdiff], ys = new int[longdiff];
       for (int i=0; i<longdiff; i++)
       {
          if (across) {
@@ -612,9 +661,11 @@ class Life extends Panel implements Runnable, LifeCallback
          }
 
          if (dragState!=f.cellState(x,y))
-            u.changeCell(f.convertFieldToUniverseX(x),
-                         f.convertFieldToUniverseY(y),
-                         dragState);
+         {
+            xs[n] = f.convertFieldToUniverseX(x);
+            ys[n] = f.convertFieldToUniverseY(y);
+            n++;
+         }
 
          wrap += shortdiff;
          if (wrap >= longdiff) {
@@ -622,6 +673,7 @@ class Life extends Panel implements Runnable, LifeCallback
             j++;
          }
       }
+      u.setCells(xs, ys, n, dragState);
 
       goBtn.enable();
       paintAsync(REPAINT_UPDATE);
@@ -770,10 +822,11 @@ class Life extends Panel implements Runnable, LifeCallback
          paintLife(REPAINT_UPDATE);
       }
       else if (buttonPressed.equals("Clear")) {
+         cancelLoad();
          skipping=default_skipping;
-         u.setSpeed(skipping);
+         sched.setSpeed(skipping);
          refresh_rate=default_refresh_rate;
-         u.setRefresh(1000/refresh_rate);
+         sched.setRefresh(1000/refresh_rate);
 
          clear();
       }
@@ -787,10 +840,11 @@ class Life extends Panel implements Runnable, LifeCallback
       }
       else if (buttonPressed.equals("Speed")) {
          spdBx.enterData(refresh_rate, skipping);
+         spdBx.showMetrics(sched.getFps(), sched.getGensPerFrame());
          haltAndShow(spdBx);
       }
       else if (buttonPressed.equals("Options")) {
-         optBx.enterData(clearonload);
+         optBx.enterData(clearonload, colorby);
          haltAndShow(optBx);
       }
       else if (buttonPressed.equals("Quit")) {
@@ -810,6 +864,7 @@ class Life extends Panel implements Runnable, LifeCallback
       haltGoButton();
       goBtn.disable();
       u.clear();
+      sched.reset();
       origX = origY = 0;
       f.moveTo(0,0);
       if (descBx != null) descBx.dispose();
@@ -851,6 +906,23 @@ class Life extends Panel implements Runnable, LifeCallback
    }
 
 
+   // set the rules of a universe, or keep its old ones if it can't
+   // run these
+   private void applyRules(LifeGen v, String rules)
+   {
+      try
+      {
+         v.setRules(rules);
+         if (v.hasB0())
+            System.out.println("Rule " + rules + " has B0: each step runs two generations, and there's no step back");
+      }
+      catch (IllegalArgumentException iae)
+      {
+         System.out.println("Can't use rule " + rules + ": " + iae.getMessage());
+         set_rules = v.getRules();
+      }
+   }
+
    public void setRules(String rules)
    {
       // coming from the RuleBox!!!
@@ -861,215 +933,178 @@ class Life extends Panel implements Runnable, LifeCallback
       u.goFlag = false;
    }
 
-   private boolean readLife105(DataInputStream lifefile) throws IOException
+   /*
+    * Loading.  Files are read by a LifeLoader on a background thread
+    * into a universe of their own, and finishLoad() brings that into
+    * play from the run loop, between generations: either the new
+    * universe replaces the old one, or (with "clear on load" off) its
+    * cells are pasted in.
+    */
+   private LifeLoader newLoader(String fn, LifeCallback caller)
    {
-      String s;
-      char c;
-      int x=0, y=0, i, i1, i1e, i2, i2e;
-      String rulestring = null;
-
-      descriptionlen = descriptionwid=0;
-      description = new Vector();
-
-      while ((s=lifefile.readLine())!=null)
-      {
-         if (s.startsWith("#D"))
-         {
-            StringTokenizer st = new StringTokenizer(s);
+      cancelLoad();
 
-            st.nextToken();
+      LifeGen nu = new LifeGen();
+      if (set_rules != null) applyRules(nu, set_rules);
+      nu.setHeatMode(colorby);
 
-            for (i=2; i<s.length() && s.charAt(i)==' '; i++);
+      loadMerges = !clearonload;
+      int cx = loadMerges? origX:0, cy = loadMerges? origY:0;
+      return loading = new LifeLoader(fn, nu, cx, cy, caller);
+   }
 
-            addDescriptionLine(s.substring(i));
-         }
-         else if (s.startsWith("#P"))
-         {
-            StringTokenizer st = new StringTokenizer(s);
+   /** Load a pattern and wait for it (used for the initial pattern). */
+   public boolean load(String fn)
+   {
+      LifeLoader ld = newLoader(fn, null);
+      ld.run();
+      return finishLoad(ld);
+   }
 
-            st.nextToken();  // #P
-            x = Integer.parseInt(st.nextToken()) + origX;
-            y = Integer.parseInt(st.nextToken()) + origY;
+   /** Start loading a pattern; the run loop takes it when it's ready. */
+   public void loadAsync(String fn)
+   {
+      newLoader(fn, this).start();
+      loadStatus = "0%";
+      paintAsync(REPAINT_UPDATE);
+   }
 
-         }
-         else if (s.startsWith(".") || s.startsWith("*")
-               || s.startsWith("o") || s.startsWith("O"))
-         {
-            for (i=0; i<s.length(); i++)
-            {
-               c=s.charAt(i);
-               if (c=='*' || c=='o' || c=='O') u.changeCell(x+i,y,true);
-            }
-            y++;
-         }
-         else if (s.startsWith("#N"))
-         {
-            rulestring = new String("23/3");
+   public void cancelLoad()
+   {
+      LifeLoader ld = loading;
+      if (ld == null) return;
 
-         }
-         else if (s.startsWith("#R"))
-         {
-            StringTokenizer st = new StringTokenizer(s);
+      ld.cancel();
+      loading = null;
+      loadStatus = null;
+   }
 
-            st.nextToken();  // #R
-            rulestring = st.nextToken();
-         }
-         else if (s.startsWith("#S"))
-         {
-            String spd;
-            StringTokenizer st = new StringTokenizer(s);
-            st.nextToken();
-            spd = st.nextToken();
-            if (spd!=null)
-            {
-               skipping=Integer.parseInt(spd);
-               if (u!=null) u.setSpeed(skipping);
-            }
-         }
-      }
+   private boolean finishLoad(LifeLoader ld)
+   {
+      if (ld != loading) return false;   // cancelled, or superseded
+      loading = null;
+      loadStatus = null;
 
-      if (rulestring!=null && rulestring.length()>0
-            && !rulestring.equals(set_rules))
+      if (!ld.succeeded())
       {
-         set_rules=rulestring;
-         u.setRules(rulestring);
+         System.out.println("Couldn't load " + ld.getURL() + ": " + ld.getError());
+         paintLife(REPAINT_UPDATE);
+         return false;
       }
 
-      goBtn.enable();
-      return true;
-   }
-
-   private boolean readRLE(String firstLine, DataInputStream lifefile)
-      throws IOException
-   {
-      String s;
-      char c;
-      int n, leftX=0, x=0, y=0;
-      String rulestring = "23/3";  // default RLE is Conway's rules
-      boolean done = false;
+      if (ld.getRules()!=null && ld.getRules().length()>0)
+         set_rules = ld.getRules();
 
-      descriptionlen = descriptionwid=0;
-      description = new Vector();
-
-      StringTokenizer stcomma = new StringTokenizer(firstLine, ",");
-      while (stcomma.hasMoreTokens())
+      if (loadMerges && !ld.isSnapshot())
       {
-         String t = stcomma.nextToken();
-         StringTokenizer stequal = new StringTokenizer(t, "= ");
-         String tokenType = stequal.nextToken();
-         String tokenValue = stequal.nextToken();
-
-         if (tokenType.equals("x"))
-            leftX = x = origX-(Integer.parseInt(tokenValue)/2);
-         else if (tokenType.equals("y"))
-            y = origY-(Integer.parseInt(tokenValue)/2);
-         else if (tokenType.equals("rule") || tokenType.equals("rules"))
-            rulestring = tokenValue;
-         else if (tokenType.equals("skip"))
-            u.setSpeed((skipping = Integer.parseInt(tokenValue)));
-         else if (tokenType.equals("fps"))
-            u.setRefresh(1000/(refresh_rate=Integer.parseInt(tokenValue)));
+         u.paste(ld.getUniverse());
+         if (set_rules!=null && !set_rules.equals(u.getRules()))
+            applyRules(u, set_rules);
       }
-
-      while (!done)
+      else
       {
-         s = lifefile.readLine();
-         if (s==null) break;  // this is actually an error
+         LifeGen nu = ld.getUniverse();
+         if (set_rules!=null && !set_rules.equals(nu.getRules()))
+            applyRules(nu, set_rules);
+         nu.setHeatMode(colorby);
 
-         for (int i=0; i<s.length(); i++)
+         haltGoButton();
+         synchronized(mutex)
          {
-            c = s.charAt(i);
-            n=0;
-            while (c>='0' && c<='9' && i<s.length())
-            {
-               n = n*10 +((int)(c-'0'));
-               i++;
-               c = s.charAt(i);
-            }
-            if (n==0) n=1;
-
-            if (c=='b') x+=n;
-            else if (c=='o') {
-               for (int j=0; j<n; j++) u.changeCell(x+j, y, true);
-               x+=n;
-            }
-            else if (c=='$') {
-               x=leftX;
-               y+=n;
-            }
-            else if (c=='!') done=true;
+            u = nu;
          }
+         sched.reset();
+         origX = origY = 0;
+         f.moveTo(0,0);
+         if (descBx != null) descBx.dispose();
+         descBx = null;
       }
 
-      if (rulestring!=null && rulestring.length()>0
-            && !rulestring.equals(set_rules))
-      {
-         set_rules=rulestring;
-         u.setRules(rulestring);
-      }
+      if (ld.getSkipping() >= 0)
+         sched.setSpeed((skipping = ld.getSkipping()));
+      if (ld.getRefresh() > 0)
+         sched.setRefresh(1000/(refresh_rate = ld.getRefresh()));
 
-      if (done) // '!' reached; anything after that is a comment
+      description = ld.getDescription();
+      descriptionlen = description.size();
+      descriptionwid = ld.getDescriptionWidth();
+
+      if (describe && descriptionlen>0)
       {
-         while ((s=lifefile.readLine())!=null)
-            addDescriptionLine(s);
+         if (descBx!=null) descBx.dispose();
+         descBx = new DescribeBox(descriptionlen+1,
+               descriptionwid+1);
+         for (int j=0; j<descriptionlen; j++)
+            descBx.addLine(new String(
+                     (String)(description.elementAt(j))));
+         descBx.addLine(new String(" "));
+
+         descBx.pack();
+         descBx.setTitle("Description of "+ld.getURL());
+         descBx.show();
       }
 
       goBtn.enable();
+      paintLife(REPAINT_FULL);
       return true;
    }
 
-   private void addDescriptionLine(String newDescLine)
+   /**
+    * Save the universe to a local file: Life 1.05 if the name ends
+    * in .lif or .life, macrocell for .mc, an exact snapshot for .snap
+    * (deflated for .snapz), RLE otherwise.  While the
+    * pattern is running, the file is written by the run loop between
+    * generations.
+    */
+   public void save(String filename)
    {
-      description.addElement(newDescLine);
-      if (newDescLine.length()>descriptionwid)
-         descriptionwid = newDescLine.length();
-      descriptionlen++;
+      if (twin == null) writePattern(filename);
+      else save_file = filename;
    }
 
-   public boolean load(String fn)
+   private boolean writePattern(String filename)
    {
-      URL urly;
-      DataInputStream lifefile;
-
-      try {urly = new URL(fn);}
-      catch (MalformedURLException mue)
-      {
-         //            setMsg("Malformed URL: " + fn);
-         return false;
-      }
-      catch (SecurityException se) {
-         return false;
-      }
+      String lc = filename.toLowerCase();
+      OutputStream out = null;
 
       try
       {
-         lifefile = new DataInputStream(urly.openStream());
-
-         String firstLine = lifefile.readLine();
-
-         if (firstLine.startsWith("#Life 1.05"))
+         if (lc.endsWith(".snap") || lc.endsWith(".snapz"))
          {
-            readLife105(lifefile);
-            paintLife(REPAINT_FULL);
+            LifeSnapshot snap = new LifeSnapshot();
+            snap.save(u, new File(filename), lc.endsWith(".snapz"));
+            System.out.println(snap.getStats());
             return true;
          }
-         else if (firstLine.startsWith("x"))
+
+         out = new FileOutputStream(filename);
+         if (lc.endsWith(".mc"))
          {
-            // now, it is just a guess that this is an RLE file.
-            readRLE(firstLine, lifefile);
-            paintLife(REPAINT_FULL);
-            return true;
+            LifeMacrocell mc = new LifeMacrocell();
+            mc.write(u, out);
+            System.out.println(mc.getStats());
          }
-         else return false;
+         else
+         {
+            LifePatternWriter w = new LifePatternWriter();
+            if (lc.endsWith(".lif") || lc.endsWith(".life")) w.writeLife105(u, out);
+            else w.writeRLE(u, out);
+            System.out.println(w.getStats());
+         }
+         return true;
       }
-      catch (IOException ioe) {
-         //            setMsg("Couldn't open " + fn);
+      catch (IOException ioe)
+      {
+         System.out.println("Couldn't save " + filename + ": " + ioe.getMessage());
       }
-      catch (SecurityException se) {
-         return false;
+      catch (SecurityException se) {}
+      finally
+      {
+         try { if (out!=null) out.close(); }
+         catch (IOException ioe) {}
       }
 
-      return true;
+      return false;
    }
 
    public void callback(int i, Object o)
@@ -1077,24 +1112,7 @@ class Life extends Panel implements Runnable, LifeCallback
       switch (i)
       {
          case 0:
-            if (clearonload) clear();
-
-            boolean loaded = load((String)o);
-
-            if (loaded && describe && descriptionlen>0)
-            {
-               if (descBx!=null) descBx.dispose();
-               descBx = new DescribeBox(descriptionlen+1,
-                     descriptionwid+1);
-               for (int j=0; j<descriptionlen; j++)
-                  descBx.addLine(new String(
-                           (String)(description.elementAt(j))));
-               descBx.addLine(new String(" "));
-
-               descBx.pack();
-               descBx.setTitle("Description of "+(String)o);
-               descBx.show();
-            }
+            loadAsync((String)o);
             break;
          case 1:
             setRules((String)o);
@@ -1102,14 +1120,14 @@ class Life extends Panel implements Runnable, LifeCallback
          case 2:
             try {
                refresh_rate=Integer.parseInt((String)o);
-               if (u!=null) u.setRefresh(1000/refresh_rate);
+               sched.setRefresh(1000/refresh_rate);
                default_refresh_rate=refresh_rate;
             }catch (NumberFormatException e){}
             break;
          case 3:
             try {
                skipping=Integer.parseInt((String)o);
-               if (u!=null) u.setSpeed(skipping);
+               sched.setSpeed(skipping);
                default_skipping=skipping;
             }catch (NumberFormatException e){}
             break;
@@ -1124,6 +1142,23 @@ class Life extends Panel implements Runnable, LifeCallback
          case 5:
             clearonload = ((Boolean)o).booleanValue();
             break;
+         case 6:
+            if (colorby != ((Integer)o).intValue())
+            {
+               colorby = ((Integer)o).intValue();
+               new_colorby = true;
+            }
+            break;
+         case LifeLoader.LOAD_PROGRESS:
+            if (o != null && loading != null)
+            {
+               loadStatus = (String)o;
+               paintAsync(REPAINT_UPDATE);
+            }
+            break;
+         case LifeLoader.LOAD_DONE:
+            if (o == loading) loaded.set(o);
+            break;
       }
    }
 }
\ No newline at end of file
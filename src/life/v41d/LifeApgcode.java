@@ -0,0 +1,129 @@
+package life.v41d;
+
+/**************************************************************
+ LifeApgcode.java
+
+ Decoder for apgcodes, the object names used by the apgsearch
+ census (e.g. xs4_33 for the block, xp2_7 for the blinker,
+ xq4_153 for the glider).
+
+ After the prefix (xs, xp or xq, a number, and '_') comes the
+ pattern in extended Wechsler format: bands 5 cells tall, each a
+ string of characters 0-9a-v giving one 5-cell column (least
+ significant bit at the top), with w, x and y<c> standing for
+ runs of 2, 3 and 4-39 empty columns, and z starting the next
+ band down.
+
+ The decoded pattern is packed into a bitmap and handed to
+ LifeGen.setBitmap() in one go, centred on the load position.
+**************************************************************/
+
+class LifeApgcode
+{
+   private static final String DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+   /** Is s an apgcode for a still life, oscillator or spaceship? */
+   static boolean isApgcode(String s)
+   {
+      s = s.trim();
+      int i = prefixLength(s);
+      if (i < 0 || i >= s.length()) return false;
+
+      for (; i < s.length(); i++)
+         if (DIGITS.indexOf(s.charAt(i)) < 0) return false;
+      return true;
+   }
+
+   /**
+    * Length of the "xs4_" part at the start of s (so it can be used
+    * to sniff a file), or -1 if s doesn't start like an apgcode.
+    */
+   static int prefixLength(String s)
+   {
+      if (s.length() < 4 || s.charAt(0) != 'x') return -1;
+
+      char kind = s.charAt(1);
+      if (kind != 's' && kind != 'p' && kind != 'q') return -1;
+
+      int i = 2;
+      while (i < s.length() && Character.isDigit(s.charAt(i))) i++;
+      if (i == 2 || i >= s.length() || s.charAt(i) != '_') return -1;
+      return i+1;
+   }
+
+   /**
+    * Put the pattern named by code into u, centred on cx,cy.
+    * Returns the number of cells, or -1 if code isn't an apgcode.
+    */
+   static int decode(String code, LifeGen u, int cx, int cy)
+   {
+      if (!isApgcode(code)) return -1;
+
+      String w = code.trim();
+      w = w.substring(w.indexOf('_')+1);
+
+      int[] size = size(code);
+      int width = size[0];
+      int height = size[1];
+      int stride = (width+15)>>4;
+      int[] bits = new int[Math.max(1, stride*height)];
+      int cells = 0;
+
+      int band = 0, x = 0;
+      for (int i=0; i<w.length(); i++)
+      {
+         char c = w.charAt(i);
+         if (c == 'z') { band++; x = 0; continue; }
+         if (c == 'w' || c == 'x' || c == 'y')
+         {
+            x += columns(w, i);
+            if (c == 'y') i++;
+            continue;
+         }
+
+         int v = DIGITS.indexOf(c);
+         for (int k=0; k<5; k++)
+         {
+            if ((v & (1<<k)) == 0) continue;
+            bits[(band*5+k)*stride + (x>>4)] |= 0x8000 >>> (x & 15);
+            cells++;
+         }
+         x++;
+      }
+
+      u.setBitmap(cx - width/2, cy - height/2, width, height, bits, stride);
+      return cells;
+   }
+
+   /** {width, height} of the pattern named by an apgcode. */
+   static int[] size(String code)
+   {
+      String w = code.trim();
+      w = w.substring(w.indexOf('_')+1);
+
+      int width = 0, bands = 1, x = 0;
+      for (int i=0; i<w.length(); i++)
+      {
+         char c = w.charAt(i);
+         if (c == 'z') { bands++; x = 0; continue; }
+         x += columns(w, i);
+         if (c == 'y') i++;
+         if (x > width) width = x;
+      }
+      return new int[] {width, bands*5};
+   }
+
+   // how many columns the character at i stands for
+   private static int columns(String w, int i)
+   {
+      switch (w.charAt(i))
+      {
+         case 'w': return 2;
+         case 'x': return 3;
+         case 'y':
+            if (i+1 >= w.length()) return 0;
+            return 4 + DIGITS.indexOf(w.charAt(i+1));
+         default:  return 1;
+      }
+   }
+}
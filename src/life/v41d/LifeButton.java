@@ -34,6 +34,7 @@ public class LifeButton extends Applet
    static boolean describe;
    static boolean autostart;
    static String howfarChoices;
+   static int colorby;
    static boolean clearRectBroken=false;
 
    static java.net.URL codebase;
@@ -115,6 +116,11 @@ public class LifeButton extends Applet
       howfarChoices = getParameter("howfarchoices");
       if (howfarChoices==null)
          howfarChoices="forever +1 -1";
+
+      tmp = getParameter("colorby");
+      if (tmp != null && tmp.equals("age")) colorby = LifeGen.HEAT_AGE;
+      else if (tmp != null && tmp.equals("activity")) colorby = LifeGen.HEAT_ACTIVITY;
+      else colorby = LifeGen.HEAT_OFF;
    }
 
    public void init()
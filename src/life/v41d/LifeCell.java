@@ -83,9 +83,13 @@ class LifeCell
    short x,y;
 
    LifeCell Next, Prev;         /* Doubly linked */
-   LifeCell DisplayNext, DisplayPrev;
    LifeCell Down;
 
+   int shown;   // LifeGen.viewEpoch when last drawn with something showing
+
+   byte[] heat;     // per-cell age or activity, if LifeGen keeps it (else null)
+   int heatStamp;   // LifeGen.heatClock when heat[] was last brought up to date
+
    int pstate, qstate;
    //  bitmap:
    // |31 30 29 28.27 26 25 24|23 22 21 20.19 18 17 16|15 14 13 12.11 10  9  8| 7  6  5  4. 3  2  1  0|
@@ -98,7 +102,7 @@ class LifeCell
    int flags;
    //  bitmap:
    //  15 14 13 12.11 10  9  8. 7  6  5  4. 3  2  1  0
-   //   |  |  |  |  |     |  |              |  |  |  Display (1=in)
+   //   |  |  |  |  |     |  |              |  |  |  (unused; see shown)
    //   |  |  |  |  |     |  |              |  |  Morgue (1=in)
    //   |  |  |  |  |     |  |              |  Hibernation (1=in)
    //   |  |  |  |  |                       Morgue & displayed (incineratable)
@@ -107,4 +111,74 @@ class LifeCell
    //   |  |  q in morgue
    //   |  p in hibernation
    //   p in morgue
+
+   /*
+      Conversion between the 4x4 word layout above and plain rows:
+      rows[j] holds row j of the block, leftmost cell in bit 15.
+      Handy for anything that reads or writes whole blocks at once
+      (loaders, writers, exporters), where cell-at-a-time access
+      through LifeGen.testCell() would be far too slow.
+   */
+   static void wordsToRows(short[] w, int[] rows)
+   {
+      for (int j=0; j<16; j++)
+      {
+         int base = (j & 0xc)>>1;
+         int sh = (j & 3)*2;
+
+         rows[j] = (nibble(w[base],   sh)<<12)
+                 | (nibble(w[base+1], sh)<<8)
+                 | (nibble(w[base+8], sh)<<4)
+                 |  nibble(w[base+9], sh);
+      }
+   }
+
+   private static int nibble(short w, int sh)
+   {
+      int v = w<<sh;
+      return ((v & 0xc000)>>>12) | ((v & 0x00c0)>>>6);
+   }
+
+   static void rowsToWords(int[] rows, short[] w)
+   {
+      for (int ix=0; ix<16; ix++) w[ix]=0;
+
+      for (int j=0; j<16; j++)
+      {
+         int r = rows[j];
+         if ((r & 0xffff) == 0) continue;
+
+         int base = (j & 0xc)>>1;
+         int sh = (j & 3)*2;
+
+         w[base]   |= unnibble(r>>>12, sh);
+         w[base+1] |= unnibble(r>>>8,  sh);
+         w[base+8] |= unnibble(r>>>4,  sh);
+         w[base+9] |= unnibble(r,      sh);
+      }
+   }
+
+   private static short unnibble(int n, int sh)
+   {
+      return (short)(((((n & 0xc)<<12) | ((n & 0x3)<<6))>>>sh));
+   }
+
+   /*
+      cellIndex[(ix<<4)|b] is the cell (row*16 + column) held by
+      bit b of word ix, for walking the set bits of a word.
+   */
+   static final short[] cellIndex = new short[256];
+   static
+   {
+      for (int y=0; y<16; y++)
+      {
+         for (int x=0; x<16; x++)
+         {
+            int ix = (x & 8) | ((y & 0xc)>>1) | ((x & 4)>>2);
+            int b = 15 - (((x & 2)==0?0:8) + ((y & 2)==0?0:4)
+                  + ((y & 1)==0?0:2) + ((x & 1)==0?0:1));
+            cellIndex[(ix<<4)|b] = (short)(y*16 + x);
+         }
+      }
+   }
 }
@@ -0,0 +1,920 @@
+package life.v41d;
+
+/**************************************************************
+ LifeCluster.java
+
+ One universe spread over several worker processes, for soups
+ that won't fit in one heap.
+
+ The plane is cut into regions of REGION x REGION cells (16x16
+ LifeCell blocks), and each region that has anything in it or
+ next to it is owned by one worker.  A worker runs all its
+ regions in one LifeGen, so regions it owns side by side just
+ work; the seams it has with other workers are kept the way a
+ bounded universe keeps its own (see LifeGen.setTopology()).
+ Before each generation, the ring of cells around each region
+ that belongs to someone else is filled in.  After it, whatever
+ spilled into someone else's region is cleared.
+
+ The coordinator runs the generations in lock step.  Each
+ worker reports the four edge lines (top and bottom rows, left
+ and right columns) of each of its regions.  The coordinator
+ sends each worker the halo lines and corner cells it needs from
+ other workers, and the workers all step at once.  The halos go
+ through the coordinator rather than worker to worker, so no two
+ processes ever wait on each other's sockets.
+
+ Between generations the coordinator
+ - adds a region wherever live cells reach an edge with nothing
+   beyond it,
+ - drops empty regions that nothing reaches, and
+ - every BALANCE_EVERY generations moves a region from the
+   busiest worker to the idlest, so the load follows the pattern
+   as it moves.
+ The load is the live cells a worker holds.
+
+ Messages are binary (DataOutputStream, big-endian):
+
+    RULE   utf rules
+    ADD    int rx  int ry  region        (region: int tiles, then
+                                          per tile byte tx byte ty
+                                          16 shorts of rows)
+    TAKE   int rx  int ry   -> region, which the worker then drops
+    GET    int rx  int ry   -> region
+    DROP   int rx  int ry
+    REPORT byte count       -> report
+    STEP   byte count  int regions,
+           per region int rx int ry byte lines byte corners,
+           then a line (16 shorts) per bit set in lines
+                            -> report, after one generation
+    QUIT
+
+    report: int regions, per region int rx int ry [long cells]
+            byte lines, then a line per bit set.
+
+ Lines are numbered 0-3 for top, bottom, left and right, and
+ corners 0-3 for top left, top right, bottom left and bottom
+ right.  A line is REGION cells, 16 to a short (leftmost or
+ topmost cell in bit 15).  Cell counts are only sent when asked
+ for, every COUNT_EVERY generations, because they take a pass
+ over every block.
+
+ java life.v41d.LifeCluster [workers [size | file.rle [generations]]] [-check]
+ starts the workers as processes on this machine, runs a random
+ soup (or a pattern) and reports population and generations a
+ second; -check runs it in one LifeGen as well and compares.
+**************************************************************/
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+class LifeCluster
+{
+   static final int REGION = 256;           // cells a side
+   static final int TILES = REGION/16;
+   static final int COUNT_EVERY = 16;       // generations between cell counts
+   static final int BALANCE_EVERY = 64;     // generations between load checks
+
+   private static final int RULE=1, ADD=2, TAKE=3, GET=4, DROP=5, REPORT=6, STEP=7, QUIT=8;
+   private static final int TOP=0, BOTTOM=1, LEFT=2, RIGHT=3;
+
+   // the 8 neighbouring regions (up, down, left, right, then the
+   // corners as numbered above), and which of them looks back
+   private static final int[] DX = {0, 0, -1, 1, -1, 1, -1, 1};
+   private static final int[] DY = {-1, 1, 0, 0, -1, -1, 1, 1};
+   private static final int[] BACK = {1, 0, 3, 2, 7, 6, 5, 4};
+
+   /** What the coordinator knows about a region. */
+   private static class Region
+   {
+      int rx, ry;
+      int owner;
+      long cells;
+      short[][] line = new short[4][];   // edge lines, null if empty
+
+      Region(int rx, int ry, int owner)
+      {
+         this.rx = rx;
+         this.ry = ry;
+         this.owner = owner;
+      }
+
+      // are there live cells on the edge facing direction d?
+      boolean faces(int d)
+      {
+         switch (d)
+         {
+            case 0: return line[TOP] != null;
+            case 1: return line[BOTTOM] != null;
+            case 2: return line[LEFT] != null;
+            case 3: return line[RIGHT] != null;
+            case 4: return corner(TOP, 0);
+            case 5: return corner(TOP, TILES-1);
+            case 6: return corner(BOTTOM, 0);
+            default: return corner(BOTTOM, TILES-1);
+         }
+      }
+
+      // the first (k==0) or last cell of line l
+      boolean corner(int l, int k)
+      {
+         if (line[l] == null) return false;
+         return (line[l][k] & (k==0? 0x8000 : 1)) != 0;
+      }
+   }
+
+   private DataInputStream[] ins;
+   private DataOutputStream[] outs;
+   private int workers;
+
+   private Hashtable regions = new Hashtable();   // Long -> Region
+   public int gencount;
+   private long population;
+   private boolean counted;   // cells are as of the last generation
+   private long started, added, dropped, moved, haloBytes;
+
+   /**
+    * A coordinator for workers already connected on the given
+    * sockets (each running work()), on rules (null for Conway's).
+    */
+   LifeCluster(Socket[] sockets, String rules) throws IOException
+   {
+      boolean[] r = new LifeRules().convertRules(rules==null? "23/3" : rules);
+      if (r == null) throw new IllegalArgumentException("bad rule: " + rules);
+      if (r[0]) throw new IllegalArgumentException("B0 rules can't run on a cluster");
+
+      workers = sockets.length;
+      ins = new DataInputStream[workers];
+      outs = new DataOutputStream[workers];
+      for (int w=0; w<workers; w++)
+      {
+         sockets[w].setTcpNoDelay(true);
+         ins[w] = new DataInputStream(new BufferedInputStream(sockets[w].getInputStream(), 1<<16));
+         outs[w] = new DataOutputStream(new BufferedOutputStream(sockets[w].getOutputStream(), 1<<16));
+         outs[w].writeByte(RULE);
+         outs[w].writeUTF(rules==null? "23/3" : rules);
+         outs[w].flush();
+      }
+      started = System.nanoTime();
+   }
+
+   /**
+    * Hand out the live cells of a universe, a region at a time, to
+    * whichever worker holds the fewest cells.
+    */
+   public void put(LifeGen from) throws IOException
+   {
+      int off = from.qCycle? 1:0;
+      LifeCell[] blocks = from.getBlocksInOrder();
+      Hashtable todo = new Hashtable();
+
+      for (int i=0; i<blocks.length; i++)
+      {
+         for (int dy=0; dy<=off; dy++)
+            for (int dx=0; dx<=off; dx++)
+            {
+               int rx = floorDiv((blocks[i].x+dx)*16, REGION);
+               int ry = floorDiv((blocks[i].y+dy)*16, REGION);
+               todo.put(LifeCoordinate.key(rx, ry), new int[] {rx, ry});
+            }
+      }
+
+      long[] load = loads();
+      int[] rows = new int[16];
+      for (Enumeration e = todo.elements(); e.hasMoreElements(); )
+      {
+         int[] at = (int[])e.nextElement();
+         Vector tiles = new Vector();
+         long cells = 0;
+
+         for (int ty=0; ty<TILES; ty++)
+         {
+            for (int tx=0; tx<TILES; tx++)
+            {
+               from.getTile(at[0]*REGION + tx*16, at[1]*REGION + ty*16, rows);
+               int n = 0;
+               for (int j=0; j<16; j++) n += Integer.bitCount(rows[j]);
+               if (n == 0) continue;
+               tiles.addElement(new int[] {tx, ty});
+               tiles.addElement(rows.clone());
+               cells += n;
+            }
+         }
+         if (cells == 0) continue;
+
+         Region r = (Region)regions.get(LifeCoordinate.key(at[0], at[1]));
+         if (r == null)
+         {
+            int w = 0;
+            for (int k=1; k<workers; k++) if (load[k] < load[w]) w = k;
+            r = new Region(at[0], at[1], w);
+            regions.put(LifeCoordinate.key(at[0], at[1]), r);
+         }
+         load[r.owner] += cells;
+         r.cells += cells;
+
+         // added to whatever the region already holds
+         DataOutputStream out = outs[r.owner];
+         out.writeByte(ADD);
+         out.writeInt(r.rx);
+         out.writeInt(r.ry);
+         out.writeInt(tiles.size()/2);
+         for (int i=0; i<tiles.size(); i+=2)
+         {
+            int[] t = (int[])tiles.elementAt(i);
+            int[] tr = (int[])tiles.elementAt(i+1);
+            out.writeByte(t[0]);
+            out.writeByte(t[1]);
+            for (int j=0; j<16; j++) out.writeShort(tr[j]);
+         }
+      }
+
+      // the workers' own word on their edges and cells
+      for (int w=0; w<workers; w++)
+      {
+         outs[w].writeByte(REPORT);
+         outs[w].writeByte(1);
+         outs[w].flush();
+      }
+      for (int w=0; w<workers; w++) readReport(w, true);
+   }
+
+   /** Run gens generations. */
+   public void generate(int gens) throws IOException
+   {
+      for (int g=0; g<gens; g++)
+      {
+         if (counted) dropRegions();
+         addRegions();
+         if (gencount % BALANCE_EVERY == 0) balance();
+
+         boolean count = ((gencount+1) % COUNT_EVERY == 0) || (g == gens-1);
+         Region[] all = getRegions();
+
+         for (int w=0; w<workers; w++)
+         {
+            DataOutputStream out = outs[w];
+            int n = 0;
+            for (int i=0; i<all.length; i++) if (all[i].owner == w) n++;
+
+            out.writeByte(STEP);
+            out.writeByte(count? 1:0);
+            out.writeInt(n);
+            for (int i=0; i<all.length; i++)
+               if (all[i].owner == w) writeHalo(out, all[i]);
+            out.flush();
+         }
+         for (int w=0; w<workers; w++) readReport(w, count);
+
+         gencount++;
+      }
+   }
+
+   // the halo of region r: the lines and corners facing it that
+   // belong to other workers
+   private void writeHalo(DataOutputStream out, Region r) throws IOException
+   {
+      short[][] lines = new short[4][];
+      int corners = 0;
+
+      for (int d=0; d<8; d++)
+      {
+         Region n = (Region)regions.get(LifeCoordinate.key(r.rx+DX[d], r.ry+DY[d]));
+         if (n == null || n.owner == r.owner) continue;
+
+         // what n has on its side facing r (the opposite direction)
+         switch (d)
+         {
+            case 0: lines[TOP] = n.line[BOTTOM]; break;
+            case 1: lines[BOTTOM] = n.line[TOP]; break;
+            case 2: lines[LEFT] = n.line[RIGHT]; break;
+            case 3: lines[RIGHT] = n.line[LEFT]; break;
+            case 4: if (n.faces(7)) corners |= 1; break;
+            case 5: if (n.faces(6)) corners |= 2; break;
+            case 6: if (n.faces(5)) corners |= 4; break;
+            case 7: if (n.faces(4)) corners |= 8; break;
+         }
+      }
+
+      int mask = 0;
+      for (int l=0; l<4; l++) if (lines[l] != null) mask |= 1<<l;
+
+      out.writeInt(r.rx);
+      out.writeInt(r.ry);
+      out.writeByte(mask);
+      out.writeByte(corners);
+      for (int l=0; l<4; l++)
+      {
+         if (lines[l] == null) continue;
+         for (int k=0; k<TILES; k++) out.writeShort(lines[l][k]);
+         haloBytes += 2*TILES;
+      }
+      haloBytes += 10;
+   }
+
+   private void readReport(int w, boolean count) throws IOException
+   {
+      DataInputStream in = ins[w];
+      int n = in.readInt();
+
+      for (int i=0; i<n; i++)
+      {
+         int rx = in.readInt(), ry = in.readInt();
+         Region r = (Region)regions.get(LifeCoordinate.key(rx, ry));
+         if (r == null) throw new IOException("worker " + w + " reports unknown region " + rx + "," + ry);
+
+         if (count)
+         {
+            r.cells = in.readLong();
+         }
+         int mask = in.readByte();
+         for (int l=0; l<4; l++)
+         {
+            if ((mask & (1<<l)) == 0)
+            {
+               r.line[l] = null;
+               continue;
+            }
+            short[] line = new short[TILES];
+            for (int k=0; k<TILES; k++) line[k] = in.readShort();
+            r.line[l] = line;
+         }
+      }
+
+      counted = count;
+      if (count)
+      {
+         population = 0;
+         for (Enumeration e = regions.elements(); e.hasMoreElements(); )
+            population += ((Region)e.nextElement()).cells;
+      }
+   }
+
+   // a region wherever live cells reach an edge with nothing past it
+   private void addRegions() throws IOException
+   {
+      Region[] all = getRegions();
+
+      for (int i=0; i<all.length; i++)
+      {
+         for (int d=0; d<8; d++)
+         {
+            if (!all[i].faces(d)) continue;
+
+            int rx = all[i].rx+DX[d], ry = all[i].ry+DY[d];
+            if (regions.get(LifeCoordinate.key(rx, ry)) != null) continue;
+
+            // with the same worker as the cells growing into it
+            Region r = new Region(rx, ry, all[i].owner);
+            regions.put(LifeCoordinate.key(rx, ry), r);
+            DataOutputStream out = outs[r.owner];
+            out.writeByte(ADD);
+            out.writeInt(rx);
+            out.writeInt(ry);
+            out.writeInt(0);
+            added++;
+         }
+      }
+   }
+
+   // drop regions that are empty and that nothing can grow into
+   // (only right after a count, when the cells are up to date)
+   private void dropRegions() throws IOException
+   {
+      Region[] all = getRegions();
+
+      for (int i=0; i<all.length; i++)
+      {
+         Region r = all[i];
+         if (r.cells != 0) continue;
+
+         boolean reached = false;
+         for (int d=0; d<8 && !reached; d++)
+         {
+            Region n = (Region)regions.get(LifeCoordinate.key(r.rx+DX[d], r.ry+DY[d]));
+            if (n != null && n.faces(BACK[d])) reached = true;
+         }
+         if (reached) continue;
+
+         regions.remove(LifeCoordinate.key(r.rx, r.ry));
+         DataOutputStream out = outs[r.owner];
+         out.writeByte(DROP);
+         out.writeInt(r.rx);
+         out.writeInt(r.ry);
+         dropped++;
+      }
+   }
+
+   // move a region from the busiest worker to the idlest, if that
+   // evens them out
+   private void balance() throws IOException
+   {
+      if (workers < 2) return;
+
+      long[] load = loads();
+      int hi = 0, lo = 0;
+      for (int w=1; w<workers; w++)
+      {
+         if (load[w] > load[hi]) hi = w;
+         if (load[w] < load[lo]) lo = w;
+      }
+      long gap = load[hi]-load[lo];
+      if (gap < 1000 || load[hi] < load[lo]*5/4) return;
+
+      // the biggest region that doesn't overshoot
+      Region best = null;
+      for (Enumeration e = regions.elements(); e.hasMoreElements(); )
+      {
+         Region r = (Region)e.nextElement();
+         if (r.owner != hi || r.cells == 0 || 2*r.cells > gap) continue;
+         if (best == null || r.cells > best.cells) best = r;
+      }
+      if (best == null) return;
+
+      outs[hi].writeByte(TAKE);
+      outs[hi].writeInt(best.rx);
+      outs[hi].writeInt(best.ry);
+      outs[hi].flush();
+
+      DataOutputStream out = outs[lo];
+      out.writeByte(ADD);
+      out.writeInt(best.rx);
+      out.writeInt(best.ry);
+      copyRegion(ins[hi], out);
+      best.owner = lo;
+      moved++;
+   }
+
+   private static void copyRegion(DataInputStream in, DataOutputStream out) throws IOException
+   {
+      int n = in.readInt();
+      out.writeInt(n);
+      for (int i=0; i<n; i++)
+      {
+         out.writeByte(in.readByte());
+         out.writeByte(in.readByte());
+         for (int j=0; j<16; j++) out.writeShort(in.readShort());
+      }
+   }
+
+   private long[] loads()
+   {
+      long[] load = new long[workers];
+      for (Enumeration e = regions.elements(); e.hasMoreElements(); )
+      {
+         Region r = (Region)e.nextElement();
+         load[r.owner] += r.cells;
+      }
+      return load;
+   }
+
+   private Region[] getRegions()
+   {
+      Region[] all = new Region[regions.size()];
+      int i = 0;
+      for (Enumeration e = regions.elements(); e.hasMoreElements(); )
+         all[i++] = (Region)e.nextElement();
+      return all;
+   }
+
+   /** Live cells, as of the last count (every COUNT_EVERY generations, and the last). */
+   public long getPopulation()
+   {
+      return population;
+   }
+
+   /**
+    * The whole pattern, fetched from the workers into one LifeGen,
+    * at generation gencount (for checking, or writing out).
+    */
+   public LifeGen gather() throws IOException
+   {
+      LifeGen u = new LifeGen(null);
+      int[] rows = new int[16];
+
+      for (Enumeration e = regions.elements(); e.hasMoreElements(); )
+      {
+         Region r = (Region)e.nextElement();
+         outs[r.owner].writeByte(GET);
+         outs[r.owner].writeInt(r.rx);
+         outs[r.owner].writeInt(r.ry);
+         outs[r.owner].flush();
+
+         DataInputStream in = ins[r.owner];
+         int n = in.readInt();
+         for (int i=0; i<n; i++)
+         {
+            int tx = in.readByte(), ty = in.readByte();
+            for (int j=0; j<16; j++) rows[j] = in.readShort() & 0xffff;
+            u.putTile(r.rx*REGION + tx*16, r.ry*REGION + ty*16, rows);
+         }
+      }
+      u.gencount = gencount;
+      return u;
+   }
+
+   public String getStats()
+   {
+      long[] load = loads();
+      double secs = (System.nanoTime()-started)/1e9;
+      String s = "Cluster: generation " + gencount + ", " + population + " cells in "
+         + regions.size() + " regions; " + (int)(gencount/secs) + " gens/s; cells per worker";
+      for (int w=0; w<workers; w++) s += " " + load[w];
+      return s + "; " + added + " regions added, " + dropped + " dropped, " + moved
+         + " moved; " + haloBytes/Math.max(1, gencount) + " halo bytes a generation";
+   }
+
+   /** Tell the workers to quit. */
+   public void shutdown() throws IOException
+   {
+      for (int w=0; w<workers; w++)
+      {
+         outs[w].writeByte(QUIT);
+         outs[w].flush();
+      }
+   }
+
+   private static int floorDiv(int a, int b)
+   {
+      return (a >= 0)? a/b : -((-a+b-1)/b);
+   }
+
+   /*-------------------------------------------------*/
+
+   /**
+    * The worker: serve a coordinator on socket s until told to quit.
+    */
+   static void work(Socket s) throws IOException
+   {
+      s.setTcpNoDelay(true);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1<<16));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1<<16));
+      LifeGen u = new LifeGen(null);
+      Hashtable owned = new Hashtable();   // Long -> int[] {rx, ry}
+      int[] rows = new int[16];
+
+      while (true)
+      {
+         int op = in.readByte();
+         int rx, ry;
+
+         switch (op)
+         {
+            case RULE:
+               u.setRules(in.readUTF());
+               break;
+
+            case ADD:
+               rx = in.readInt();
+               ry = in.readInt();
+               owned.put(LifeCoordinate.key(rx, ry), new int[] {rx, ry});
+               int n = in.readInt();
+               for (int i=0; i<n; i++)
+               {
+                  int tx = in.readByte(), ty = in.readByte();
+                  for (int j=0; j<16; j++) rows[j] = in.readShort() & 0xffff;
+                  u.seamTile(rx*REGION + tx*16, ry*REGION + ty*16, rows, true);
+               }
+               break;
+
+            case TAKE:
+            case GET:
+            case DROP:
+               rx = in.readInt();
+               ry = in.readInt();
+               if (op != DROP) writeRegion(u, rx, ry, out);
+               if (op != GET)
+               {
+                  owned.remove(LifeCoordinate.key(rx, ry));
+                  for (int j=0; j<16; j++) rows[j] = 0xffff;
+                  for (int ty=0; ty<TILES; ty++)
+                     for (int tx=0; tx<TILES; tx++)
+                        u.seamTile(rx*REGION + tx*16, ry*REGION + ty*16, rows, false);
+               }
+               break;
+
+            case REPORT:
+               report(u, owned, in.readByte() != 0, out);
+               break;
+
+            case STEP:
+               boolean count = in.readByte() != 0;
+               fillHalos(u, in);
+               u.goFlag = true;
+               u.generate(1, false, 1);
+               clipHalos(u, owned);
+               report(u, owned, count, out);
+               break;
+
+            case QUIT:
+               s.close();
+               return;
+
+            default:
+               throw new IOException("unknown message " + op);
+         }
+         out.flush();
+      }
+   }
+
+   // write the halo cells sent for each region into u
+   private static void fillHalos(LifeGen u, DataInputStream in) throws IOException
+   {
+      int n = in.readInt();
+      int[] xs = new int[4*REGION+4], ys = new int[xs.length];
+
+      for (int i=0; i<n; i++)
+      {
+         int x0 = in.readInt()*REGION, y0 = in.readInt()*REGION;
+         int mask = in.readByte(), corners = in.readByte();
+         int k = 0;
+
+         for (int l=0; l<4; l++)
+         {
+            if ((mask & (1<<l)) == 0) continue;
+            for (int t=0; t<TILES; t++)
+            {
+               int bits = in.readShort() & 0xffff;
+               for (int b=0; bits != 0; b++, bits = (bits<<1) & 0xffff)
+               {
+                  if ((bits & 0x8000) == 0) continue;
+                  int at = t*16+b;
+                  switch (l)
+                  {
+                     case TOP:    xs[k] = x0+at;      ys[k++] = y0-1; break;
+                     case BOTTOM: xs[k] = x0+at;      ys[k++] = y0+REGION; break;
+                     case LEFT:   xs[k] = x0-1;       ys[k++] = y0+at; break;
+                     default:     xs[k] = x0+REGION;  ys[k++] = y0+at; break;
+                  }
+               }
+            }
+         }
+         if ((corners & 1) != 0) { xs[k] = x0-1;      ys[k++] = y0-1; }
+         if ((corners & 2) != 0) { xs[k] = x0+REGION; ys[k++] = y0-1; }
+         if ((corners & 4) != 0) { xs[k] = x0-1;      ys[k++] = y0+REGION; }
+         if ((corners & 8) != 0) { xs[k] = x0+REGION; ys[k++] = y0+REGION; }
+
+         if (k > 0) u.seamCells(xs, ys, k);
+      }
+   }
+
+   // clear what spilled out of each region into one this worker
+   // doesn't own (at most two cells deep)
+   private static void clipHalos(LifeGen u, Hashtable owned)
+   {
+      for (Enumeration e = owned.elements(); e.hasMoreElements(); )
+      {
+         int[] r = (int[])e.nextElement();
+         int x0 = r[0]*REGION, y0 = r[1]*REGION;
+
+         for (int d=0; d<8; d++)
+         {
+            if (owned.containsKey(LifeCoordinate.key(r[0]+DX[d], r[1]+DY[d]))) continue;
+
+            int x = (DX[d]<0)? x0-2 : (DX[d]>0)? x0+REGION : x0;
+            int y = (DY[d]<0)? y0-2 : (DY[d]>0)? y0+REGION : y0;
+            int w = (DX[d]==0)? REGION : 2;
+            int h = (DY[d]==0)? REGION : 2;
+            clearRect(u, x, y, w, h);
+         }
+      }
+   }
+
+   private static void clearRect(LifeGen u, int x, int y, int w, int h)
+   {
+      int[] rows = new int[16];
+
+      for (int ty = y & ~15; ty < y+h; ty += 16)
+      {
+         for (int tx = x & ~15; tx < x+w; tx += 16)
+         {
+            int cols = 0;
+            for (int i=0; i<16; i++)
+               if (tx+i >= x && tx+i < x+w) cols |= 0x8000>>>i;
+            for (int j=0; j<16; j++)
+               rows[j] = (ty+j >= y && ty+j < y+h)? cols : 0;
+            u.seamTile(tx, ty, rows, false);
+         }
+      }
+   }
+
+   private static void report(LifeGen u, Hashtable owned, boolean count,
+         DataOutputStream out) throws IOException
+   {
+      Hashtable cells = count? countCells(u) : null;
+      int[] rows = new int[16];
+
+      out.writeInt(owned.size());
+      for (Enumeration e = owned.elements(); e.hasMoreElements(); )
+      {
+         int[] r = (int[])e.nextElement();
+         int x0 = r[0]*REGION, y0 = r[1]*REGION;
+
+         out.writeInt(r[0]);
+         out.writeInt(r[1]);
+         if (count)
+         {
+            long[] c = (long[])cells.get(LifeCoordinate.key(r[0], r[1]));
+            out.writeLong(c==null? 0 : c[0]);
+         }
+
+         short[][] lines = new short[4][TILES];
+         int mask = 0;
+         for (int t=0; t<TILES; t++)
+         {
+            u.getTile(x0+t*16, y0, rows);
+            lines[TOP][t] = (short)rows[0];
+            u.getTile(x0+t*16, y0+REGION-16, rows);
+            lines[BOTTOM][t] = (short)rows[15];
+
+            int left = 0, right = 0;
+            u.getTile(x0, y0+t*16, rows);
+            for (int j=0; j<16; j++) if ((rows[j] & 0x8000) != 0) left |= 0x8000>>>j;
+            u.getTile(x0+REGION-16, y0+t*16, rows);
+            for (int j=0; j<16; j++) if ((rows[j] & 1) != 0) right |= 0x8000>>>j;
+            lines[LEFT][t] = (short)left;
+            lines[RIGHT][t] = (short)right;
+         }
+         for (int l=0; l<4; l++)
+            for (int t=0; t<TILES; t++)
+               if (lines[l][t] != 0) mask |= 1<<l;
+
+         out.writeByte(mask);
+         for (int l=0; l<4; l++)
+         {
+            if ((mask & (1<<l)) == 0) continue;
+            for (int t=0; t<TILES; t++) out.writeShort(lines[l][t]);
+         }
+      }
+   }
+
+   // live cells per region (Long -> long[1]), in one pass over the
+   // blocks; on the q side a block can straddle up to four regions
+   private static Hashtable countCells(LifeGen u)
+   {
+      Hashtable cells = new Hashtable();
+      int off = u.qCycle? 1:0;
+      LifeCell[] blocks = u.getBlocksInOrder();
+      int[] rows = new int[16];
+
+      for (int i=0; i<blocks.length; i++)
+      {
+         LifeCell c = blocks[i];
+         int x = c.x*16+off, y = c.y*16+off;
+         LifeCell.wordsToRows(u.qCycle? c.q : c.p, rows);
+
+         // columns and rows of the block before the next region starts
+         int splitX = Math.min(16, REGION - (x & (REGION-1)));
+         int splitY = Math.min(16, REGION - (y & (REGION-1)));
+         int leftCols = (splitX==16)? 0xffff : ~(0xffff>>>splitX) & 0xffff;
+
+         for (int j=0; j<16; j++)
+         {
+            if (rows[j] == 0) continue;
+            int ry = floorDiv(y + (j<splitY? 0 : 16), REGION);
+            int a = Integer.bitCount(rows[j] & leftCols);
+            int b = Integer.bitCount(rows[j] & ~leftCols & 0xffff);
+            if (a > 0) addCells(cells, floorDiv(x, REGION), ry, a);
+            if (b > 0) addCells(cells, floorDiv(x+16, REGION), ry, b);
+         }
+      }
+      return cells;
+   }
+
+   private static void writeRegion(LifeGen u, int rx, int ry, DataOutputStream out)
+      throws IOException
+   {
+      Vector tiles = new Vector();
+      int[] rows = new int[16];
+
+      for (int ty=0; ty<TILES; ty++)
+      {
+         for (int tx=0; tx<TILES; tx++)
+         {
+            u.getTile(rx*REGION + tx*16, ry*REGION + ty*16, rows);
+            int any = 0;
+            for (int j=0; j<16; j++) any |= rows[j];
+            if (any == 0) continue;
+            tiles.addElement(new int[] {tx, ty});
+            tiles.addElement(rows.clone());
+         }
+      }
+
+      out.writeInt(tiles.size()/2);
+      for (int i=0; i<tiles.size(); i+=2)
+      {
+         int[] t = (int[])tiles.elementAt(i);
+         int[] tr = (int[])tiles.elementAt(i+1);
+         out.writeByte(t[0]);
+         out.writeByte(t[1]);
+         for (int j=0; j<16; j++) out.writeShort(tr[j]);
+      }
+   }
+
+   private static void addCells(Hashtable cells, int rx, int ry, int n)
+   {
+      Long k = LifeCoordinate.key(rx, ry);
+      long[] c = (long[])cells.get(k);
+      if (c == null) cells.put(k, c = new long[1]);
+      c[0] += n;
+   }
+
+   /*-------------------------------------------------*/
+
+   public static void main(String[] args) throws Exception
+   {
+      if (args.length == 2 && args[0].equals("-worker"))
+      {
+         work(new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[1])));
+         return;
+      }
+
+      boolean check = false;
+      Vector rest = new Vector();
+      for (int i=0; i<args.length; i++)
+      {
+         if (args[i].equals("-check")) check = true;
+         else rest.addElement(args[i]);
+      }
+      int count = (rest.size() > 0)? Integer.parseInt((String)rest.elementAt(0)) : 2;
+      String what = (rest.size() > 1)? (String)rest.elementAt(1) : "512";
+      int gens = (rest.size() > 2)? Integer.parseInt((String)rest.elementAt(2)) : 500;
+
+      // the pattern
+      LifeGen start = new LifeGen(null);
+      if (what.endsWith(".rle"))
+      {
+         LifeRLEReader rle = new LifeRLEReader(new FileInputStream(what));
+         rle.readHeader();
+         if (rle.getRule() != null) start.setRules(rle.getRule());
+         rle.readCells(start, 0, 0);
+      }
+      else
+      {
+         int size = Integer.parseInt(what);
+         Random rnd = new Random(1);
+         for (int y=0; y<size; y++)
+            for (int x=0; x<size; x++)
+               if (rnd.nextBoolean()) start.changeCell(x, y, true);
+      }
+
+      // the workers, as processes on this machine
+      ServerSocket server = new ServerSocket(0, count, InetAddress.getLoopbackAddress());
+      String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+      Process[] procs = new Process[count];
+      for (int w=0; w<count; w++)
+      {
+         ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+               "life.v41d.LifeCluster", "-worker", "" + server.getLocalPort());
+         pb.redirectErrorStream(true);
+         pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+         procs[w] = pb.start();
+      }
+      Socket[] sockets = new Socket[count];
+      for (int w=0; w<count; w++) sockets[w] = server.accept();
+      server.close();
+
+      LifeCluster cluster = new LifeCluster(sockets, start.getRules());
+      cluster.put(start);
+
+      long last = System.nanoTime();
+      while (cluster.gencount < gens)
+      {
+         cluster.generate(Math.min(COUNT_EVERY, gens-cluster.gencount));
+         if (System.nanoTime()-last > 1000000000L || cluster.gencount >= gens)
+         {
+            System.out.println(cluster.getStats());
+            last = System.nanoTime();
+         }
+      }
+
+      if (check)
+      {
+         LifeGen result = cluster.gather();
+         start.goFlag = true;
+         start.generate(gens, false, gens);
+
+         int[] box = new int[4], a = new int[16], b = new int[16];
+         if (start.getBoundingBox(box))
+         {
+            for (int y=box[1]-32; y<=box[3]+32; y+=16)
+               for (int x=box[0]-32; x<=box[2]+32; x+=16)
+               {
+                  start.getTile(x, y, a);
+                  result.getTile(x, y, b);
+                  if (!Arrays.equals(a, b))
+                     throw new RuntimeException("cluster and single engine differ near " + x + "," + y);
+               }
+         }
+         if (start.getPopulation() != result.getPopulation()
+               || start.getPopulation() != cluster.getPopulation())
+            throw new RuntimeException("populations differ: " + start.getPopulation() + ", "
+                  + result.getPopulation() + ", " + cluster.getPopulation());
+         System.out.println("matches a single engine: " + start.getPopulation() + " cells");
+      }
+
+      cluster.shutdown();
+      for (int w=0; w<count; w++) procs[w].waitFor();
+   }
+}
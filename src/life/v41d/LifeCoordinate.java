@@ -9,4 +9,10 @@ class LifeCoordinate
    short x;
    short y;
    boolean valid;
+
+   /** A Hashtable key for the point (or block, or tile) x,y. */
+   static Long key(int x, int y)
+   {
+      return Long.valueOf(((long)x << 32) | (y & 0xffffffffL));
+   }
 }
@@ -0,0 +1,368 @@
+package life.v41d;
+
+/**************************************************************
+ LifeDelta.java
+
+ A stream of what changed from one frame to the next, for
+ viewing a universe from somewhere else: the far end keeps a
+ mirror universe and applies each frame to it.  What goes over
+ the wire depends on how much is happening, not on how much
+ there is or how big the view is.
+
+ The universe is looked at in 16x16 tiles on the p side's block
+ grid (getTile() pieces them together on the q side), each as 16
+ 4x4 words laid out like LifeCell.p.  The frames can be taken
+ every generation or only when the universe is displayed; a frame
+ covers everything since the last.
+
+ The work done for a frame follows the activity too.  Only the
+ tiles that can have changed are looked at: those under the
+ engine's living blocks, under blocks that have gone to sleep
+ since the last frame (LifeGen.watchSleep() keeps a list), and
+ those where a sleeping period 2 oscillator shows a different
+ phase at each generation.  The writer keeps the words it sent
+ for the tiles it looked at last frame, and sends the words of
+ those that have changed; a tile that wasn't looked at last frame
+ (a block waking up) is sent whole.  A key frame, after reset()
+ or when the universe has been cleared, looks at everything.
+
+ Layout (big-endian, DataOutputStream):
+
+    "LifeDlta"  int version
+    per frame:  byte kind (1 = delta, 2 = key frame: clear first)
+                int gencount  int tiles
+                per tile:  short tx  short ty  short words
+                           a short (its new value) for each
+                           bit set in words, word 0 first (bit 0)
+    byte 0 at the end
+
+ (Version 1 sent the words XORed with the old ones, which meant
+ remembering every tile ever sent.)
+
+ A tile that becomes empty is sent like any other; the mirror
+ then drops its block.  Complemented generations (see
+ LifeGen.isInverted()) can't be sent.
+
+ main() runs a soup, mirrors it through a stream and compares
+ the two, reporting the bytes per frame.
+**************************************************************/
+
+import java.io.*;
+import java.util.*;
+
+class LifeDelta
+{
+   static final int VERSION = 2;
+   static final int END = 0, DELTA = 1, KEY = 2;
+   private static final byte[] MAGIC = {'L','i','f','e','D','l','t','a'};
+
+   private Hashtable sent = new Hashtable();      // Long tile -> short[16], as of last frame
+   private Hashtable blinking = new Hashtable();  // Long tile -> int[] {tx, ty}
+   private Vector slept = new Vector();           // blocks gone to sleep since last frame
+   private LifeGen watched;                       // the universe slept is filled from
+   private int clears;                            // its clears, as of last frame
+   private boolean key = true;
+   private boolean started;
+   private long frames, tiles, words, bytes, looked;
+
+   private ByteArrayOutputStream frame = new ByteArrayOutputStream();
+   private DataOutputStream body = new DataOutputStream(frame);
+
+   /**
+    * Make the next frame a key frame: the mirror is cleared and
+    * sent everything.  For a new mirror, or after the universe has
+    * been replaced.
+    */
+   public void reset()
+   {
+      key = true;
+   }
+
+   /**
+    * Write a frame with everything that has changed in u since the
+    * last one.  Returns the number of tiles in it.
+    */
+   public int write(LifeGen u, DataOutputStream out) throws IOException
+   {
+      if (u.isInverted())
+         throw new IllegalStateException("can't send a complemented generation");
+
+      if (!started)
+      {
+         out.write(MAGIC);
+         out.writeInt(VERSION);
+         bytes += MAGIC.length+4;
+         started = true;
+      }
+
+      if (u != watched)
+      {
+         if (watched != null) watched.unwatchSleep(slept);
+         u.watchSleep(slept);
+         watched = u;
+         key = true;
+      }
+      if (u.clears != clears)
+      {
+         clears = u.clears;
+         key = true;
+      }
+
+      Hashtable now = new Hashtable();   // Long tile -> int[] {tx, ty}
+
+      if (key)
+      {
+         sent.clear();
+         blinking.clear();
+         LifeCell[] blocks = u.getBlocksInOrder();
+         for (int i=0; i<blocks.length; i++) under(blocks[i], now);
+         for (LifeCell c = u.getList(1); c != null; c = c.Next) asleep(u, c);
+      }
+      else
+      {
+         for (LifeCell c = u.getList(0); c != null; c = c.Next) under(c, now);
+         for (int i=0; i<slept.size(); i++)
+         {
+            LifeCell c = (LifeCell)slept.elementAt(i);
+            under(c, now);
+            asleep(u, c);
+         }
+
+         // sleeping oscillators, until they stop differing
+         int[] a = new int[16], b = new int[16];
+         Vector still = new Vector();
+         for (Enumeration e = blinking.elements(); e.hasMoreElements(); )
+         {
+            int[] t = (int[])e.nextElement();
+            now.put(LifeCoordinate.key(t[0], t[1]), t);
+            u.getTile(t[0]*16, t[1]*16, a, false);
+            u.getTile(t[0]*16, t[1]*16, b, true);
+            if (Arrays.equals(a, b)) still.addElement(LifeCoordinate.key(t[0], t[1]));
+         }
+         for (int i=0; i<still.size(); i++) blinking.remove(still.elementAt(i));
+      }
+      slept.removeAllElements();
+
+      int[] rows = new int[16];
+      short[] w = new short[16];
+      Hashtable kept = new Hashtable();
+      int n = 0;
+
+      frame.reset();
+      for (Enumeration e = now.elements(); e.hasMoreElements(); )
+      {
+         int[] t = (int[])e.nextElement();
+         Long k = LifeCoordinate.key(t[0], t[1]);
+
+         u.getTile(t[0]*16, t[1]*16, rows);
+         LifeCell.rowsToWords(rows, w);
+         if (tile(t[0], t[1], (short[])sent.get(k), w)) n++;
+
+         int any = 0;
+         for (int ix=0; ix<16; ix++) any |= w[ix];
+         if (any != 0 || !key) kept.put(k, w.clone());
+      }
+      sent = kept;
+      looked += now.size();
+
+      body.flush();
+      out.writeByte(key? KEY : DELTA);
+      out.writeInt(u.gencount);
+      out.writeInt(n);
+      frame.writeTo(out);
+      out.flush();
+
+      bytes += 9 + frame.size();
+      frames++;
+      tiles += n;
+      key = false;
+      return n;
+   }
+
+   // add the tiles block c covers to now: on the q side, up to
+   // four.  All four on either side, so that a tile looked at on one
+   // frame is looked at on the next, and needn't be sent whole
+   private static void under(LifeCell c, Hashtable now)
+   {
+      for (int dy=0; dy<=1; dy++)
+      {
+         for (int dx=0; dx<=1; dx++)
+         {
+            int tx = c.x+dx, ty = c.y+dy;
+            Long k = LifeCoordinate.key(tx, ty);
+            if (!now.containsKey(k)) now.put(k, new int[] {tx, ty});
+         }
+      }
+   }
+
+   // block c has gone to sleep: any tile it covers on either side
+   // that looks different on the p and q sides (a period 2
+   // oscillator) will change from one generation to the next
+   private void asleep(LifeGen u, LifeCell c)
+   {
+      int[] a = new int[16], b = new int[16];
+
+      for (int dy=0; dy<=1; dy++)
+      {
+         for (int dx=0; dx<=1; dx++)
+         {
+            int tx = c.x+dx, ty = c.y+dy;
+            Long k = LifeCoordinate.key(tx, ty);
+            if (blinking.containsKey(k)) continue;
+
+            u.getTile(tx*16, ty*16, a, false);
+            u.getTile(tx*16, ty*16, b, true);
+            if (!Arrays.equals(a, b)) blinking.put(k, new int[] {tx, ty});
+         }
+      }
+   }
+
+   // send the changed words of tile tx,ty (now w; last sent, or null
+   // if not known), if any; true if sent
+   private boolean tile(int tx, int ty, short[] last, short[] w) throws IOException
+   {
+      int mask = 0;
+
+      for (int ix=0; ix<16; ix++)
+      {
+         if (last == null)
+         {
+            // on a key frame the mirror starts empty; otherwise
+            // all we know is that it may differ
+            if (w[ix] != 0 || !key) mask |= 1<<ix;
+         }
+         else if (w[ix] != last[ix]) mask |= 1<<ix;
+      }
+      if (mask == 0) return false;
+
+      body.writeShort(tx);
+      body.writeShort(ty);
+      body.writeShort(mask);
+      for (int ix=0; ix<16; ix++)
+      {
+         if ((mask & (1<<ix)) == 0) continue;
+         body.writeShort(w[ix]);
+         words++;
+      }
+      return true;
+   }
+
+   /** Write the end of the stream. */
+   public void finish(DataOutputStream out) throws IOException
+   {
+      if (watched != null) watched.unwatchSleep(slept);
+      watched = null;
+
+      out.writeByte(END);
+      out.flush();
+      bytes++;
+   }
+
+   /**
+    * Read the stream header, before the first apply().
+    */
+   public static void readHeader(DataInputStream in) throws IOException
+   {
+      byte[] magic = new byte[MAGIC.length];
+      in.readFully(magic);
+      if (!Arrays.equals(magic, MAGIC)) throw new IOException("not a Life delta stream");
+      int version = in.readInt();
+      if (version != VERSION)
+         throw new IOException("delta stream version " + version + " not supported");
+   }
+
+   /**
+    * Read one frame and apply it to mirror, which should only ever
+    * be changed this way.  Returns false at the end of the stream.
+    */
+   public static boolean apply(DataInputStream in, LifeGen mirror) throws IOException
+   {
+      int kind = in.readByte();
+      if (kind == END) return false;
+      if (kind != DELTA && kind != KEY) throw new IOException("bad delta frame");
+
+      int gen = in.readInt();
+      int n = in.readInt();
+      if (kind == KEY) mirror.clear();
+
+      short[] w = new short[16], x = new short[16];
+      int[] rows = new int[16];
+      for (int i=0; i<n; i++)
+      {
+         int tx = in.readShort(), ty = in.readShort();
+         int mask = in.readShort();
+
+         // what has to flip to give the new words
+         mirror.getTile(tx*16, ty*16, rows);
+         LifeCell.rowsToWords(rows, w);
+         for (int ix=0; ix<16; ix++)
+            x[ix] = ((mask & (1<<ix)) != 0)? (short)(in.readShort() ^ w[ix]) : 0;
+
+         LifeCell.wordsToRows(x, rows);
+         mirror.xorTile(tx*16, ty*16, rows);
+      }
+      mirror.gencount = gen;
+      return true;
+   }
+
+   public String getStats()
+   {
+      return "Deltas: " + frames + " frames, " + looked + " tiles looked at, " + tiles
+         + " sent, " + words + " words, " + bytes + " bytes ("
+         + (frames==0? 0 : bytes/frames) + " a frame)";
+   }
+
+   /*
+    * java life.v41d.LifeDelta [size [frames [gens per frame]]]
+    */
+   public static void main(String[] args) throws IOException
+   {
+      int size = (args.length > 0)? Integer.parseInt(args[0]) : 256;
+      int count = (args.length > 1)? Integer.parseInt(args[1]) : 100;
+      int step = (args.length > 2)? Integer.parseInt(args[2]) : 1;
+
+      LifeGen u = new LifeGen(null);
+      Random rnd = new Random(1);
+      for (int y=0; y<size; y++)
+         for (int x=0; x<size; x++)
+            if (rnd.nextBoolean()) u.changeCell(x, y, true);
+
+      LifeDelta d = new LifeDelta();
+      ByteArrayOutputStream wire = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(wire);
+      long first = 0;
+
+      for (int f=0; f<count; f++)
+      {
+         d.write(u, out);
+         if (f == 0) first = wire.size();
+         u.goFlag = true;
+         u.generate(step, false, step);
+      }
+      d.write(u, out);
+      d.finish(out);
+
+      LifeGen mirror = new LifeGen(null);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(wire.toByteArray()));
+      readHeader(in);
+      while (apply(in, mirror));
+
+      int[] a = new int[16], b = new int[16], box = new int[4];
+      u.getBoundingBox(box);
+      for (int y=box[1]-16; y<=box[3]+16; y+=16)
+      {
+         for (int x=box[0]-16; x<=box[2]+16; x+=16)
+         {
+            u.getTile(x, y, a);
+            mirror.getTile(x, y, b);
+            if (!Arrays.equals(a, b))
+               throw new RuntimeException("mirror differs near " + x + "," + y);
+         }
+      }
+
+      System.out.println(d.getStats());
+      System.out.println("first (key) frame " + first + " bytes; the rest "
+         + (wire.size()-first)/count + " bytes a frame; mirror at generation "
+         + mirror.gencount + " matches");
+   }
+}
@@ -14,9 +14,12 @@ class LifeGUI extends Panel
    private int fieldSizeX, fieldSizeY;
    private int cellMagnitude, pixelsPerCell, ppc, ppc2;
    private boolean specialCase;  // for awful bug, Netscape 4.05 and lower
-   private Color fgColor = new Color(0, 0, 160);
-   private Color bgColor = Color.lightGray;
-   private Color gridColor = Color.gray;
+   static final Color DEFAULT_FG = new Color(0, 0, 160);
+   static final Color DEFAULT_BG = Color.lightGray;
+   static final Color DEFAULT_GRID = Color.gray;
+   private Color fgColor = DEFAULT_FG;
+   private Color bgColor = DEFAULT_BG;
+   private Color gridColor = DEFAULT_GRID;
    private boolean grids;
    private int toolbarHeight;
    public int oX=1, oY=1;   // applet coordinates at upper left of the viewing window
@@ -26,6 +29,14 @@ class LifeGUI extends Panel
    private int[] xTranslate, yTranslate;
    private boolean boundsCheck=true;
 
+   // colouring by age or activity (see LifeGen.setHeatMode)
+   private static final int HEAT_SHADES = 16;
+   private int heatMode = LifeGen.HEAT_OFF;
+   private Color[] heatColors;    // [1..HEAT_SHADES], quiet to hot
+   private byte[][] shade;        // heatColors entry showing in each cell, 0=none
+   private byte[] heat = new byte[256];
+   private int[] rows = new int[16];
+
    // -----------------------------------------------------------------------
    // All the stuff between these lines used to belong to the class StateTable,
    // but it was inlined for performance reasons. (8%)
@@ -94,6 +105,7 @@ class LifeGUI extends Panel
       }
 
       field = newField;
+      shade = new byte[newSizeX][newSizeY];
       fieldSizeX = newSizeX;
       fieldSizeY = newSizeY;
 
@@ -123,7 +135,7 @@ class LifeGUI extends Panel
          yTranslate[j] = j*pixelsPerCell+oY;
    }
 
-   public Color newColor(String sc)
+   public static Color newColor(String sc)
    {
       Color c=null;
 
@@ -148,6 +160,59 @@ class LifeGUI extends Panel
 
       c = newColor(grid);
       if (c!=null) gridColor = c;
+
+      heatColors = null;
+   }
+
+   public Color getFgColor() {
+      return fgColor;
+   }
+
+   public Color getBgColor() {
+      return bgColor;
+   }
+
+   public Color getGridColor() {
+      return gridColor;
+   }
+
+   public boolean getGrids() {
+      return grids;
+   }
+
+   /**
+    * Colour live cells by the age or activity the universe keeps
+    * (LifeGen.HEAT_AGE or HEAT_ACTIVITY), or just in the foreground
+    * colour (LifeGen.HEAT_OFF).  Takes effect on the next full repaint.
+    */
+   public void setHeatMode(int mode)
+   {
+      heatMode = mode;
+      viewChanged = true;
+   }
+
+   public int getHeatMode() {
+      return heatMode;
+   }
+
+   // foreground colour for the quiet end, through red to yellow
+   private void buildHeatColors()
+   {
+      heatColors = new Color[HEAT_SHADES+1];
+      for (int s=1; s<=HEAT_SHADES; s++)
+      {
+         int t = (s-1)*510/(HEAT_SHADES-1);   // 0..510
+         if (t <= 255) heatColors[s] = blend(fgColor, Color.red, t);
+         else          heatColors[s] = blend(Color.red, Color.yellow, t-255);
+      }
+   }
+
+   private static Color blend(Color a, Color b, int t)
+   {
+      return new Color(
+            a.getRed()   + (b.getRed()   - a.getRed())  *t/255,
+            a.getGreen() + (b.getGreen() - a.getGreen())*t/255,
+            a.getBlue()  + (b.getBlue()  - a.getBlue()) *t/255);
    }
 
    public boolean setZoom(int level)
@@ -205,6 +270,14 @@ class LifeGUI extends Panel
 
    public void drawCell(int x, int y, boolean state)
    {
+      if (heatMode != LifeGen.HEAT_OFF)
+      {
+         // a cell put in by hand counts as brand new
+         drawShade(x, y, state? HEAT_SHADES : 0);
+         g.setColor(fgColor);
+         g.setXORMode(bgColor);
+         return;
+      }
 
       /* This is the less efficient solution, which is not broken
          in Netscape 3.0.
@@ -288,6 +361,7 @@ class LifeGUI extends Panel
 
    public void clear() {
       field = new boolean[fieldSizeX][fieldSizeY];
+      shade = new byte[fieldSizeX][fieldSizeY];
       createTranslationTables();
    }
 
@@ -322,681 +396,694 @@ class LifeGUI extends Panel
 
    private boolean display_p(LifeGen u)
    {
-      // check only those with "display" bit set; skip the rest.
-      // display only those quadrants with hibernation and morgue
-      // bits = 0.
-      // traverse both the living & hibernating lists.
+      // look up only the blocks under the viewing window; skip the rest.
+      // blocks in the morgue are drawn (blank) one last time if they
+      // still have something showing, then forgotten.
       // return false if couldn't complete the generation.
 
-      short c,d,e,f;
-      LifeCell nextc;
-      int i;
-      int j0,j1,j2,j3,j4,j5,j6,j7,j8,j9,j10,j11,j12,j13,j14,j15;
-
+      int bx0 = (xOrig-1)>>4, bx1 = (xOrig+fieldSizeX-1)>>4;
+      int by0 = (yOrig-1)>>4, by1 = (yOrig+fieldSizeY-1)>>4;
+      int i, j0;
 
-      for (LifeCell cell=u.display; cell != null; cell=nextc)
+      for (int by=by0; by<=by1; by++)
       {
-         nextc=cell.DisplayNext;
-
-         if ((cell.flags & 0x02)!=0)
+         for (int bx=bx0; bx<=bx1; bx++)
          {
-            u.removeFromDisplay(cell);
-         }
+            LifeCell cell = u.getBlock(bx, by);
+            if (cell == null) continue;
 
-         i  = cell.x*16 - xOrig;
-         j0 = cell.y*16 - yOrig;
+            if ((cell.flags & 0x02)!=0)
+            {
+               if (cell.shown != u.viewEpoch) continue;
+               cell.shown = 0;
+            }
+            else cell.shown = u.viewEpoch;
 
-         if (i +16 < 0 || i +1 > fieldSizeX 
-               || j0+16 < 0 || j0+1 > fieldSizeY)
-         {
-            u.removeFromDisplay(cell);
-         }
-         else
-         {
-            j1=j0+1;   j2=j1+1;   j3=j2+1;
-            j4=j3+1;   j5=j4+1;   j6=j5+1;   j7=j6+1;
-            j8=j7+1;   j9=j8+1;   j10=j9+1;  j11=j10+1;
-            j12=j11+1; j13=j12+1; j14=j13+1; j15=j14+1;
-
-            if (i >=0 && i+15<fieldSizeX
-             && j0>=0 && j15<fieldSizeY)
-               boundsCheck=false;
-            else boundsCheck=true;
-
-            c=cell.p[0]; d=cell.p[2]; e=cell.p[4]; f=cell.p[6];
-            updateCell( i, j0,((c&0x8000)!=0));
-            updateCel( i, j1,((c&0x2000)!=0));
-            updateCel( i, j2,((c&0x0800)!=0));
-            updateCel( i, j3,((c&0x0200)!=0));
-            updateCel( i, j4,((d&0x8000)!=0));
-            updateCel( i, j5,((d&0x2000)!=0));
-            updateCel( i, j6,((d&0x0800)!=0));
-            updateCel( i, j7,((d&0x0200)!=0));
-            updateCel( i, j8,((e&0x8000)!=0));
-            updateCel( i, j9,((e&0x2000)!=0));
-            updateCel( i,j10,((e&0x0800)!=0));
-            updateCel( i,j11,((e&0x0200)!=0));
-            updateCel( i,j12,((f&0x8000)!=0));
-            updateCel( i,j13,((f&0x2000)!=0));
-            updateCel( i,j14,((f&0x0800)!=0));
-            updateCel( i,j15,((f&0x0200)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x4000)!=0));
-            updateCel( i, j1,((c&0x1000)!=0));
-            updateCel( i, j2,((c&0x0400)!=0));
-            updateCel( i, j3,((c&0x0100)!=0));
-            updateCel( i, j4,((d&0x4000)!=0));
-            updateCel( i, j5,((d&0x1000)!=0));
-            updateCel( i, j6,((d&0x0400)!=0));
-            updateCel( i, j7,((d&0x0100)!=0));
-            updateCel( i, j8,((e&0x4000)!=0));
-            updateCel( i, j9,((e&0x1000)!=0));
-            updateCel( i,j10,((e&0x0400)!=0));
-            updateCel( i,j11,((e&0x0100)!=0));
-            updateCel( i,j12,((f&0x4000)!=0));
-            updateCel( i,j13,((f&0x1000)!=0));
-            updateCel( i,j14,((f&0x0400)!=0));
-            updateCel( i,j15,((f&0x0100)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x0080)!=0));
-            updateCel( i, j1,((c&0x0020)!=0));
-            updateCel( i, j2,((c&0x0008)!=0));
-            updateCel( i, j3,((c&0x0002)!=0));
-            updateCel( i, j4,((d&0x0080)!=0));
-            updateCel( i, j5,((d&0x0020)!=0));
-            updateCel( i, j6,((d&0x0008)!=0));
-            updateCel( i, j7,((d&0x0002)!=0));
-            updateCel( i, j8,((e&0x0080)!=0));
-            updateCel( i, j9,((e&0x0020)!=0));
-            updateCel( i,j10,((e&0x0008)!=0));
-            updateCel( i,j11,((e&0x0002)!=0));
-            updateCel( i,j12,((f&0x0080)!=0));
-            updateCel( i,j13,((f&0x0020)!=0));
-            updateCel( i,j14,((f&0x0008)!=0));
-            updateCel( i,j15,((f&0x0002)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x0040)!=0));
-            updateCel( i, j1,((c&0x0010)!=0));
-            updateCel( i, j2,((c&0x0004)!=0));
-            updateCel( i, j3,((c&0x0001)!=0));
-            updateCel( i, j4,((d&0x0040)!=0));
-            updateCel( i, j5,((d&0x0010)!=0));
-            updateCel( i, j6,((d&0x0004)!=0));
-            updateCel( i, j7,((d&0x0001)!=0));
-            updateCel( i, j8,((e&0x0040)!=0));
-            updateCel( i, j9,((e&0x0010)!=0));
-            updateCel( i,j10,((e&0x0004)!=0));
-            updateCel( i,j11,((e&0x0001)!=0));
-            updateCel( i,j12,((f&0x0040)!=0));
-            updateCel( i,j13,((f&0x0010)!=0));
-            updateCel( i,j14,((f&0x0004)!=0));
-            updateCel( i,j15,((f&0x0001)!=0));
-
-            i++;
-            c=cell.p[1]; d=cell.p[3]; e=cell.p[5]; f=cell.p[7];
-            updateCell( i, j0,((c&0x8000)!=0));
-            updateCel( i, j1,((c&0x2000)!=0));
-            updateCel( i, j2,((c&0x0800)!=0));
-            updateCel( i, j3,((c&0x0200)!=0));
-            updateCel( i, j4,((d&0x8000)!=0));
-            updateCel( i, j5,((d&0x2000)!=0));
-            updateCel( i, j6,((d&0x0800)!=0));
-            updateCel( i, j7,((d&0x0200)!=0));
-            updateCel( i, j8,((e&0x8000)!=0));
-            updateCel( i, j9,((e&0x2000)!=0));
-            updateCel( i,j10,((e&0x0800)!=0));
-            updateCel( i,j11,((e&0x0200)!=0));
-            updateCel( i,j12,((f&0x8000)!=0));
-            updateCel( i,j13,((f&0x2000)!=0));
-            updateCel( i,j14,((f&0x0800)!=0));
-            updateCel( i,j15,((f&0x0200)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x4000)!=0));
-            updateCel( i, j1,((c&0x1000)!=0));
-            updateCel( i, j2,((c&0x0400)!=0));
-            updateCel( i, j3,((c&0x0100)!=0));
-            updateCel( i, j4,((d&0x4000)!=0));
-            updateCel( i, j5,((d&0x1000)!=0));
-            updateCel( i, j6,((d&0x0400)!=0));
-            updateCel( i, j7,((d&0x0100)!=0));
-            updateCel( i, j8,((e&0x4000)!=0));
-            updateCel( i, j9,((e&0x1000)!=0));
-            updateCel( i,j10,((e&0x0400)!=0));
-            updateCel( i,j11,((e&0x0100)!=0));
-            updateCel( i,j12,((f&0x4000)!=0));
-            updateCel( i,j13,((f&0x1000)!=0));
-            updateCel( i,j14,((f&0x0400)!=0));
-            updateCel( i,j15,((f&0x0100)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x0080)!=0));
-            updateCel( i, j1,((c&0x0020)!=0));
-            updateCel( i, j2,((c&0x0008)!=0));
-            updateCel( i, j3,((c&0x0002)!=0));
-            updateCel( i, j4,((d&0x0080)!=0));
-            updateCel( i, j5,((d&0x0020)!=0));
-            updateCel( i, j6,((d&0x0008)!=0));
-            updateCel( i, j7,((d&0x0002)!=0));
-            updateCel( i, j8,((e&0x0080)!=0));
-            updateCel( i, j9,((e&0x0020)!=0));
-            updateCel( i,j10,((e&0x0008)!=0));
-            updateCel( i,j11,((e&0x0002)!=0));
-            updateCel( i,j12,((f&0x0080)!=0));
-            updateCel( i,j13,((f&0x0020)!=0));
-            updateCel( i,j14,((f&0x0008)!=0));
-            updateCel( i,j15,((f&0x0002)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x0040)!=0));
-            updateCel( i, j1,((c&0x0010)!=0));
-            updateCel( i, j2,((c&0x0004)!=0));
-            updateCel( i, j3,((c&0x0001)!=0));
-            updateCel( i, j4,((d&0x0040)!=0));
-            updateCel( i, j5,((d&0x0010)!=0));
-            updateCel( i, j6,((d&0x0004)!=0));
-            updateCel( i, j7,((d&0x0001)!=0));
-            updateCel( i, j8,((e&0x0040)!=0));
-            updateCel( i, j9,((e&0x0010)!=0));
-            updateCel( i,j10,((e&0x0004)!=0));
-            updateCel( i,j11,((e&0x0001)!=0));
-            updateCel( i,j12,((f&0x0040)!=0));
-            updateCel( i,j13,((f&0x0010)!=0));
-            updateCel( i,j14,((f&0x0004)!=0));
-            updateCel( i,j15,((f&0x0001)!=0));
-
-            i++;
-            c=cell.p[8]; d=cell.p[10]; e=cell.p[12]; f=cell.p[14];
-            updateCell( i, j0,((c&0x8000)!=0));
-            updateCel( i, j1,((c&0x2000)!=0));
-            updateCel( i, j2,((c&0x0800)!=0));
-            updateCel( i, j3,((c&0x0200)!=0));
-            updateCel( i, j4,((d&0x8000)!=0));
-            updateCel( i, j5,((d&0x2000)!=0));
-            updateCel( i, j6,((d&0x0800)!=0));
-            updateCel( i, j7,((d&0x0200)!=0));
-            updateCel( i, j8,((e&0x8000)!=0));
-            updateCel( i, j9,((e&0x2000)!=0));
-            updateCel( i,j10,((e&0x0800)!=0));
-            updateCel( i,j11,((e&0x0200)!=0));
-            updateCel( i,j12,((f&0x8000)!=0));
-            updateCel( i,j13,((f&0x2000)!=0));
-            updateCel( i,j14,((f&0x0800)!=0));
-            updateCel( i,j15,((f&0x0200)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x4000)!=0));
-            updateCel( i, j1,((c&0x1000)!=0));
-            updateCel( i, j2,((c&0x0400)!=0));
-            updateCel( i, j3,((c&0x0100)!=0));
-            updateCel( i, j4,((d&0x4000)!=0));
-            updateCel( i, j5,((d&0x1000)!=0));
-            updateCel( i, j6,((d&0x0400)!=0));
-            updateCel( i, j7,((d&0x0100)!=0));
-            updateCel( i, j8,((e&0x4000)!=0));
-            updateCel( i, j9,((e&0x1000)!=0));
-            updateCel( i,j10,((e&0x0400)!=0));
-            updateCel( i,j11,((e&0x0100)!=0));
-            updateCel( i,j12,((f&0x4000)!=0));
-            updateCel( i,j13,((f&0x1000)!=0));
-            updateCel( i,j14,((f&0x0400)!=0));
-            updateCel( i,j15,((f&0x0100)!=0));
-
-            i++;
-            updateCell(i, j0,((c&0x0080)!=0));
-            updateCel(i, j1,((c&0x0020)!=0));
-            updateCel(i, j2,((c&0x0008)!=0));
-            updateCel(i, j3,((c&0x0002)!=0));
-            updateCel(i, j4,((d&0x0080)!=0));
-            updateCel(i, j5,((d&0x0020)!=0));
-            updateCel(i, j6,((d&0x0008)!=0));
-            updateCel(i, j7,((d&0x0002)!=0));
-            updateCel(i, j8,((e&0x0080)!=0));
-            updateCel(i, j9,((e&0x0020)!=0));
-            updateCel(i,j10,((e&0x0008)!=0));
-            updateCel(i,j11,((e&0x0002)!=0));
-            updateCel(i,j12,((f&0x0080)!=0));
-            updateCel(i,j13,((f&0x0020)!=0));
-            updateCel(i,j14,((f&0x0008)!=0));
-            updateCel(i,j15,((f&0x0002)!=0));
-
-            i++;
-            updateCell(i, j0,((c&0x0040)!=0));
-            updateCel(i, j1,((c&0x0010)!=0));
-            updateCel(i, j2,((c&0x0004)!=0));
-            updateCel(i, j3,((c&0x0001)!=0));
-            updateCel(i, j4,((d&0x0040)!=0));
-            updateCel(i, j5,((d&0x0010)!=0));
-            updateCel(i, j6,((d&0x0004)!=0));
-            updateCel(i, j7,((d&0x0001)!=0));
-            updateCel(i, j8,((e&0x0040)!=0));
-            updateCel(i, j9,((e&0x0010)!=0));
-            updateCel(i,j10,((e&0x0004)!=0));
-            updateCel(i,j11,((e&0x0001)!=0));
-            updateCel(i,j12,((f&0x0040)!=0));
-            updateCel(i,j13,((f&0x0010)!=0));
-            updateCel(i,j14,((f&0x0004)!=0));
-            updateCel(i,j15,((f&0x0001)!=0));
-
-            i++;
-            c=cell.p[9]; d=cell.p[11]; e=cell.p[13]; f=cell.p[15];
-            updateCell(i, j0,((c&0x8000)!=0));
-            updateCel(i, j1,((c&0x2000)!=0));
-            updateCel(i, j2,((c&0x0800)!=0));
-            updateCel(i, j3,((c&0x0200)!=0));
-            updateCel(i, j4,((d&0x8000)!=0));
-            updateCel(i, j5,((d&0x2000)!=0));
-            updateCel(i, j6,((d&0x0800)!=0));
-            updateCel(i, j7,((d&0x0200)!=0));
-            updateCel(i, j8,((e&0x8000)!=0));
-            updateCel(i, j9,((e&0x2000)!=0));
-            updateCel(i,j10,((e&0x0800)!=0));
-            updateCel(i,j11,((e&0x0200)!=0));
-            updateCel(i,j12,((f&0x8000)!=0));
-            updateCel(i,j13,((f&0x2000)!=0));
-            updateCel(i,j14,((f&0x0800)!=0));
-            updateCel(i,j15,((f&0x0200)!=0));
-
-            i++;
-            updateCell(i, j0,((c&0x4000)!=0));
-            updateCel(i, j1,((c&0x1000)!=0));
-            updateCel(i, j2,((c&0x0400)!=0));
-            updateCel(i, j3,((c&0x0100)!=0));
-            updateCel(i, j4,((d&0x4000)!=0));
-            updateCel(i, j5,((d&0x1000)!=0));
-            updateCel(i, j6,((d&0x0400)!=0));
-            updateCel(i, j7,((d&0x0100)!=0));
-            updateCel(i, j8,((e&0x4000)!=0));
-            updateCel(i, j9,((e&0x1000)!=0));
-            updateCel(i,j10,((e&0x0400)!=0));
-            updateCel(i,j11,((e&0x0100)!=0));
-            updateCel(i,j12,((f&0x4000)!=0));
-            updateCel(i,j13,((f&0x1000)!=0));
-            updateCel(i,j14,((f&0x0400)!=0));
-            updateCel(i,j15,((f&0x0100)!=0));
-
-            i++;
-            updateCell(i, j0,((c&0x0080)!=0));
-            updateCel(i, j1,((c&0x0020)!=0));
-            updateCel(i, j2,((c&0x0008)!=0));
-            updateCel(i, j3,((c&0x0002)!=0));
-            updateCel(i, j4,((d&0x0080)!=0));
-            updateCel(i, j5,((d&0x0020)!=0));
-            updateCel(i, j6,((d&0x0008)!=0));
-            updateCel(i, j7,((d&0x0002)!=0));
-            updateCel(i, j8,((e&0x0080)!=0));
-            updateCel(i, j9,((e&0x0020)!=0));
-            updateCel(i,j10,((e&0x0008)!=0));
-            updateCel(i,j11,((e&0x0002)!=0));
-            updateCel(i,j12,((f&0x0080)!=0));
-            updateCel(i,j13,((f&0x0020)!=0));
-            updateCel(i,j14,((f&0x0008)!=0));
-            updateCel(i,j15,((f&0x0002)!=0));
-
-            i++;
-            updateCell(i, j0,((c&0x0040)!=0));
-            updateCel(i, j1,((c&0x0010)!=0));
-            updateCel(i, j2,((c&0x0004)!=0));
-            updateCel(i, j3,((c&0x0001)!=0));
-            updateCel(i, j4,((d&0x0040)!=0));
-            updateCel(i, j5,((d&0x0010)!=0));
-            updateCel(i, j6,((d&0x0004)!=0));
-            updateCel(i, j7,((d&0x0001)!=0));
-            updateCel(i, j8,((e&0x0040)!=0));
-            updateCel(i, j9,((e&0x0010)!=0));
-            updateCel(i,j10,((e&0x0004)!=0));
-            updateCel(i,j11,((e&0x0001)!=0));
-            updateCel(i,j12,((f&0x0040)!=0));
-            updateCel(i,j13,((f&0x0010)!=0));
-            updateCel(i,j14,((f&0x0004)!=0));
-            updateCel(i,j15,((f&0x0001)!=0));
+            i  = cell.x*16 - xOrig;
+            j0 = cell.y*16 - yOrig;
+
+            if (i +16 < 0 || i +1 > fieldSizeX 
+                  || j0+16 < 0 || j0+1 > fieldSizeY) continue;
+
+            drawBlock_p(cell, i, j0);
          }
       }
 
       return true;
    }
 
-   private boolean display_q(LifeGen u)
+   private void drawBlock_p(LifeCell cell, int i, int j0)
    {
-      /* check only those with "display" bit set; skip the rest.
-         display only those quadrants with hibernation and morgue
-         bits = 0. */
-      /* traverse both the living & hibernating lists. */
-      /* return false if couldn't complete the generation. */
-
       short c,d,e,f;
-      LifeCell nextc;
-      int i;
-      int j0,j1,j2,j3,j4,j5,j6,j7,j8,j9,j10,j11,j12,j13,j14,j15;
+      int j1,j2,j3,j4,j5,j6,j7,j8,j9,j10,j11,j12,j13,j14,j15;
+
+      j1=j0+1;   j2=j1+1;   j3=j2+1;
+      j4=j3+1;   j5=j4+1;   j6=j5+1;   j7=j6+1;
+      j8=j7+1;   j9=j8+1;   j10=j9+1;  j11=j10+1;
+      j12=j11+1; j13=j12+1; j14=j13+1; j15=j14+1;
+
+      if (i >=0 && i+15<fieldSizeX
+       && j0>=0 && j15<fieldSizeY)
+         boundsCheck=false;
+      else boundsCheck=true;
+
+      c=cell.p[0]; d=cell.p[2]; e=cell.p[4]; f=cell.p[6];
+      updateCell( i, j0,((c&0x8000)!=0));
+      updateCel( i, j1,((c&0x2000)!=0));
+      updateCel( i, j2,((c&0x0800)!=0));
+      updateCel( i, j3,((c&0x0200)!=0));
+      updateCel( i, j4,((d&0x8000)!=0));
+      updateCel( i, j5,((d&0x2000)!=0));
+      updateCel( i, j6,((d&0x0800)!=0));
+      updateCel( i, j7,((d&0x0200)!=0));
+      updateCel( i, j8,((e&0x8000)!=0));
+      updateCel( i, j9,((e&0x2000)!=0));
+      updateCel( i,j10,((e&0x0800)!=0));
+      updateCel( i,j11,((e&0x0200)!=0));
+      updateCel( i,j12,((f&0x8000)!=0));
+      updateCel( i,j13,((f&0x2000)!=0));
+      updateCel( i,j14,((f&0x0800)!=0));
+      updateCel( i,j15,((f&0x0200)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x4000)!=0));
+      updateCel( i, j1,((c&0x1000)!=0));
+      updateCel( i, j2,((c&0x0400)!=0));
+      updateCel( i, j3,((c&0x0100)!=0));
+      updateCel( i, j4,((d&0x4000)!=0));
+      updateCel( i, j5,((d&0x1000)!=0));
+      updateCel( i, j6,((d&0x0400)!=0));
+      updateCel( i, j7,((d&0x0100)!=0));
+      updateCel( i, j8,((e&0x4000)!=0));
+      updateCel( i, j9,((e&0x1000)!=0));
+      updateCel( i,j10,((e&0x0400)!=0));
+      updateCel( i,j11,((e&0x0100)!=0));
+      updateCel( i,j12,((f&0x4000)!=0));
+      updateCel( i,j13,((f&0x1000)!=0));
+      updateCel( i,j14,((f&0x0400)!=0));
+      updateCel( i,j15,((f&0x0100)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x0080)!=0));
+      updateCel( i, j1,((c&0x0020)!=0));
+      updateCel( i, j2,((c&0x0008)!=0));
+      updateCel( i, j3,((c&0x0002)!=0));
+      updateCel( i, j4,((d&0x0080)!=0));
+      updateCel( i, j5,((d&0x0020)!=0));
+      updateCel( i, j6,((d&0x0008)!=0));
+      updateCel( i, j7,((d&0x0002)!=0));
+      updateCel( i, j8,((e&0x0080)!=0));
+      updateCel( i, j9,((e&0x0020)!=0));
+      updateCel( i,j10,((e&0x0008)!=0));
+      updateCel( i,j11,((e&0x0002)!=0));
+      updateCel( i,j12,((f&0x0080)!=0));
+      updateCel( i,j13,((f&0x0020)!=0));
+      updateCel( i,j14,((f&0x0008)!=0));
+      updateCel( i,j15,((f&0x0002)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x0040)!=0));
+      updateCel( i, j1,((c&0x0010)!=0));
+      updateCel( i, j2,((c&0x0004)!=0));
+      updateCel( i, j3,((c&0x0001)!=0));
+      updateCel( i, j4,((d&0x0040)!=0));
+      updateCel( i, j5,((d&0x0010)!=0));
+      updateCel( i, j6,((d&0x0004)!=0));
+      updateCel( i, j7,((d&0x0001)!=0));
+      updateCel( i, j8,((e&0x0040)!=0));
+      updateCel( i, j9,((e&0x0010)!=0));
+      updateCel( i,j10,((e&0x0004)!=0));
+      updateCel( i,j11,((e&0x0001)!=0));
+      updateCel( i,j12,((f&0x0040)!=0));
+      updateCel( i,j13,((f&0x0010)!=0));
+      updateCel( i,j14,((f&0x0004)!=0));
+      updateCel( i,j15,((f&0x0001)!=0));
+
+      i++;
+      c=cell.p[1]; d=cell.p[3]; e=cell.p[5]; f=cell.p[7];
+      updateCell( i, j0,((c&0x8000)!=0));
+      updateCel( i, j1,((c&0x2000)!=0));
+      updateCel( i, j2,((c&0x0800)!=0));
+      updateCel( i, j3,((c&0x0200)!=0));
+      updateCel( i, j4,((d&0x8000)!=0));
+      updateCel( i, j5,((d&0x2000)!=0));
+      updateCel( i, j6,((d&0x0800)!=0));
+      updateCel( i, j7,((d&0x0200)!=0));
+      updateCel( i, j8,((e&0x8000)!=0));
+      updateCel( i, j9,((e&0x2000)!=0));
+      updateCel( i,j10,((e&0x0800)!=0));
+      updateCel( i,j11,((e&0x0200)!=0));
+      updateCel( i,j12,((f&0x8000)!=0));
+      updateCel( i,j13,((f&0x2000)!=0));
+      updateCel( i,j14,((f&0x0800)!=0));
+      updateCel( i,j15,((f&0x0200)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x4000)!=0));
+      updateCel( i, j1,((c&0x1000)!=0));
+      updateCel( i, j2,((c&0x0400)!=0));
+      updateCel( i, j3,((c&0x0100)!=0));
+      updateCel( i, j4,((d&0x4000)!=0));
+      updateCel( i, j5,((d&0x1000)!=0));
+      updateCel( i, j6,((d&0x0400)!=0));
+      updateCel( i, j7,((d&0x0100)!=0));
+      updateCel( i, j8,((e&0x4000)!=0));
+      updateCel( i, j9,((e&0x1000)!=0));
+      updateCel( i,j10,((e&0x0400)!=0));
+      updateCel( i,j11,((e&0x0100)!=0));
+      updateCel( i,j12,((f&0x4000)!=0));
+      updateCel( i,j13,((f&0x1000)!=0));
+      updateCel( i,j14,((f&0x0400)!=0));
+      updateCel( i,j15,((f&0x0100)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x0080)!=0));
+      updateCel( i, j1,((c&0x0020)!=0));
+      updateCel( i, j2,((c&0x0008)!=0));
+      updateCel( i, j3,((c&0x0002)!=0));
+      updateCel( i, j4,((d&0x0080)!=0));
+      updateCel( i, j5,((d&0x0020)!=0));
+      updateCel( i, j6,((d&0x0008)!=0));
+      updateCel( i, j7,((d&0x0002)!=0));
+      updateCel( i, j8,((e&0x0080)!=0));
+      updateCel( i, j9,((e&0x0020)!=0));
+      updateCel( i,j10,((e&0x0008)!=0));
+      updateCel( i,j11,((e&0x0002)!=0));
+      updateCel( i,j12,((f&0x0080)!=0));
+      updateCel( i,j13,((f&0x0020)!=0));
+      updateCel( i,j14,((f&0x0008)!=0));
+      updateCel( i,j15,((f&0x0002)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x0040)!=0));
+      updateCel( i, j1,((c&0x0010)!=0));
+      updateCel( i, j2,((c&0x0004)!=0));
+      updateCel( i, j3,((c&0x0001)!=0));
+      updateCel( i, j4,((d&0x0040)!=0));
+      updateCel( i, j5,((d&0x0010)!=0));
+      updateCel( i, j6,((d&0x0004)!=0));
+      updateCel( i, j7,((d&0x0001)!=0));
+      updateCel( i, j8,((e&0x0040)!=0));
+      updateCel( i, j9,((e&0x0010)!=0));
+      updateCel( i,j10,((e&0x0004)!=0));
+      updateCel( i,j11,((e&0x0001)!=0));
+      updateCel( i,j12,((f&0x0040)!=0));
+      updateCel( i,j13,((f&0x0010)!=0));
+      updateCel( i,j14,((f&0x0004)!=0));
+      updateCel( i,j15,((f&0x0001)!=0));
+
+      i++;
+      c=cell.p[8]; d=cell.p[10]; e=cell.p[12]; f=cell.p[14];
+      updateCell( i, j0,((c&0x8000)!=0));
+      updateCel( i, j1,((c&0x2000)!=0));
+      updateCel( i, j2,((c&0x0800)!=0));
+      updateCel( i, j3,((c&0x0200)!=0));
+      updateCel( i, j4,((d&0x8000)!=0));
+      updateCel( i, j5,((d&0x2000)!=0));
+      updateCel( i, j6,((d&0x0800)!=0));
+      updateCel( i, j7,((d&0x0200)!=0));
+      updateCel( i, j8,((e&0x8000)!=0));
+      updateCel( i, j9,((e&0x2000)!=0));
+      updateCel( i,j10,((e&0x0800)!=0));
+      updateCel( i,j11,((e&0x0200)!=0));
+      updateCel( i,j12,((f&0x8000)!=0));
+      updateCel( i,j13,((f&0x2000)!=0));
+      updateCel( i,j14,((f&0x0800)!=0));
+      updateCel( i,j15,((f&0x0200)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x4000)!=0));
+      updateCel( i, j1,((c&0x1000)!=0));
+      updateCel( i, j2,((c&0x0400)!=0));
+      updateCel( i, j3,((c&0x0100)!=0));
+      updateCel( i, j4,((d&0x4000)!=0));
+      updateCel( i, j5,((d&0x1000)!=0));
+      updateCel( i, j6,((d&0x0400)!=0));
+      updateCel( i, j7,((d&0x0100)!=0));
+      updateCel( i, j8,((e&0x4000)!=0));
+      updateCel( i, j9,((e&0x1000)!=0));
+      updateCel( i,j10,((e&0x0400)!=0));
+      updateCel( i,j11,((e&0x0100)!=0));
+      updateCel( i,j12,((f&0x4000)!=0));
+      updateCel( i,j13,((f&0x1000)!=0));
+      updateCel( i,j14,((f&0x0400)!=0));
+      updateCel( i,j15,((f&0x0100)!=0));
+
+      i++;
+      updateCell(i, j0,((c&0x0080)!=0));
+      updateCel(i, j1,((c&0x0020)!=0));
+      updateCel(i, j2,((c&0x0008)!=0));
+      updateCel(i, j3,((c&0x0002)!=0));
+      updateCel(i, j4,((d&0x0080)!=0));
+      updateCel(i, j5,((d&0x0020)!=0));
+      updateCel(i, j6,((d&0x0008)!=0));
+      updateCel(i, j7,((d&0x0002)!=0));
+      updateCel(i, j8,((e&0x0080)!=0));
+      updateCel(i, j9,((e&0x0020)!=0));
+      updateCel(i,j10,((e&0x0008)!=0));
+      updateCel(i,j11,((e&0x0002)!=0));
+      updateCel(i,j12,((f&0x0080)!=0));
+      updateCel(i,j13,((f&0x0020)!=0));
+      updateCel(i,j14,((f&0x0008)!=0));
+      updateCel(i,j15,((f&0x0002)!=0));
+
+      i++;
+      updateCell(i, j0,((c&0x0040)!=0));
+      updateCel(i, j1,((c&0x0010)!=0));
+      updateCel(i, j2,((c&0x0004)!=0));
+      updateCel(i, j3,((c&0x0001)!=0));
+      updateCel(i, j4,((d&0x0040)!=0));
+      updateCel(i, j5,((d&0x0010)!=0));
+      updateCel(i, j6,((d&0x0004)!=0));
+      updateCel(i, j7,((d&0x0001)!=0));
+      updateCel(i, j8,((e&0x0040)!=0));
+      updateCel(i, j9,((e&0x0010)!=0));
+      updateCel(i,j10,((e&0x0004)!=0));
+      updateCel(i,j11,((e&0x0001)!=0));
+      updateCel(i,j12,((f&0x0040)!=0));
+      updateCel(i,j13,((f&0x0010)!=0));
+      updateCel(i,j14,((f&0x0004)!=0));
+      updateCel(i,j15,((f&0x0001)!=0));
+
+      i++;
+      c=cell.p[9]; d=cell.p[11]; e=cell.p[13]; f=cell.p[15];
+      updateCell(i, j0,((c&0x8000)!=0));
+      updateCel(i, j1,((c&0x2000)!=0));
+      updateCel(i, j2,((c&0x0800)!=0));
+      updateCel(i, j3,((c&0x0200)!=0));
+      updateCel(i, j4,((d&0x8000)!=0));
+      updateCel(i, j5,((d&0x2000)!=0));
+      updateCel(i, j6,((d&0x0800)!=0));
+      updateCel(i, j7,((d&0x0200)!=0));
+      updateCel(i, j8,((e&0x8000)!=0));
+      updateCel(i, j9,((e&0x2000)!=0));
+      updateCel(i,j10,((e&0x0800)!=0));
+      updateCel(i,j11,((e&0x0200)!=0));
+      updateCel(i,j12,((f&0x8000)!=0));
+      updateCel(i,j13,((f&0x2000)!=0));
+      updateCel(i,j14,((f&0x0800)!=0));
+      updateCel(i,j15,((f&0x0200)!=0));
+
+      i++;
+      updateCell(i, j0,((c&0x4000)!=0));
+      updateCel(i, j1,((c&0x1000)!=0));
+      updateCel(i, j2,((c&0x0400)!=0));
+      updateCel(i, j3,((c&0x0100)!=0));
+      updateCel(i, j4,((d&0x4000)!=0));
+      updateCel(i, j5,((d&0x1000)!=0));
+      updateCel(i, j6,((d&0x0400)!=0));
+      updateCel(i, j7,((d&0x0100)!=0));
+      updateCel(i, j8,((e&0x4000)!=0));
+      updateCel(i, j9,((e&0x1000)!=0));
+      updateCel(i,j10,((e&0x0400)!=0));
+      updateCel(i,j11,((e&0x0100)!=0));
+      updateCel(i,j12,((f&0x4000)!=0));
+      updateCel(i,j13,((f&0x1000)!=0));
+      updateCel(i,j14,((f&0x0400)!=0));
+      updateCel(i,j15,((f&0x0100)!=0));
+
+      i++;
+      updateCell(i, j0,((c&0x0080)!=0));
+      updateCel(i, j1,((c&0x0020)!=0));
+      updateCel(i, j2,((c&0x0008)!=0));
+      updateCel(i, j3,((c&0x0002)!=0));
+      updateCel(i, j4,((d&0x0080)!=0));
+      updateCel(i, j5,((d&0x0020)!=0));
+      updateCel(i, j6,((d&0x0008)!=0));
+      updateCel(i, j7,((d&0x0002)!=0));
+      updateCel(i, j8,((e&0x0080)!=0));
+      updateCel(i, j9,((e&0x0020)!=0));
+      updateCel(i,j10,((e&0x0008)!=0));
+      updateCel(i,j11,((e&0x0002)!=0));
+      updateCel(i,j12,((f&0x0080)!=0));
+      updateCel(i,j13,((f&0x0020)!=0));
+      updateCel(i,j14,((f&0x0008)!=0));
+      updateCel(i,j15,((f&0x0002)!=0));
+
+      i++;
+      updateCell(i, j0,((c&0x0040)!=0));
+      updateCel(i, j1,((c&0x0010)!=0));
+      updateCel(i, j2,((c&0x0004)!=0));
+      updateCel(i, j3,((c&0x0001)!=0));
+      updateCel(i, j4,((d&0x0040)!=0));
+      updateCel(i, j5,((d&0x0010)!=0));
+      updateCel(i, j6,((d&0x0004)!=0));
+      updateCel(i, j7,((d&0x0001)!=0));
+      updateCel(i, j8,((e&0x0040)!=0));
+      updateCel(i, j9,((e&0x0010)!=0));
+      updateCel(i,j10,((e&0x0004)!=0));
+      updateCel(i,j11,((e&0x0001)!=0));
+      updateCel(i,j12,((f&0x0040)!=0));
+      updateCel(i,j13,((f&0x0010)!=0));
+      updateCel(i,j14,((f&0x0004)!=0));
+      updateCel(i,j15,((f&0x0001)!=0));
+   }
 
+   private boolean display_q(LifeGen u)
+   {
+      // look up only the blocks under the viewing window; skip the rest.
+      // blocks in the morgue are drawn (blank) one last time if they
+      // still have something showing, then forgotten.
+      // return false if couldn't complete the generation.
 
-      for (LifeCell cell=u.display; cell != null; cell=nextc)
-      {
-         nextc=cell.DisplayNext;
+      int bx0 = (xOrig-1)>>4, bx1 = (xOrig+fieldSizeX-1)>>4;
+      int by0 = (yOrig-1)>>4, by1 = (yOrig+fieldSizeY-1)>>4;
+      int i, j0;
 
-         if ((cell.flags & 0x02)!=0)
+      for (int by=by0; by<=by1; by++)
+      {
+         for (int bx=bx0; bx<=bx1; bx++)
          {
-            u.removeFromDisplay(cell);
-         }
+            LifeCell cell = u.getBlock(bx, by);
+            if (cell == null) continue;
 
-         i  = cell.x*16 - xOrig + 1;
-         j0 = cell.y*16 - yOrig + 1;
+            if ((cell.flags & 0x02)!=0)
+            {
+               if (cell.shown != u.viewEpoch) continue;
+               cell.shown = 0;
+            }
+            else cell.shown = u.viewEpoch;
 
-         if (i +15 < 0 || i  > fieldSizeX 
-          || j0+15 < 0 || j0 > fieldSizeY)
-         {
-            u.removeFromDisplay(cell);
-         }
-         else
-         {
-            j1=j0+1;   j2=j1+1;   j3=j2+1;
-            j4=j3+1;   j5=j4+1;   j6=j5+1;   j7=j6+1;
-            j8=j7+1;   j9=j8+1;   j10=j9+1;  j11=j10+1;
-            j12=j11+1; j13=j12+1; j14=j13+1; j15=j14+1;
-
-            if (i >=0 && i+15<fieldSizeX
-                  && j0>=0 && j15<fieldSizeY)
-               boundsCheck=false;
-            else boundsCheck=true;
-
-            c=cell.q[0]; d=cell.q[2]; e=cell.q[4]; f=cell.q[6];
-            updateCell( i, j0,((c&0x8000)!=0));
-            updateCel( i, j1,((c&0x2000)!=0));
-            updateCel( i, j2,((c&0x0800)!=0));
-            updateCel( i, j3,((c&0x0200)!=0));
-            updateCel( i, j4,((d&0x8000)!=0));
-            updateCel( i, j5,((d&0x2000)!=0));
-            updateCel( i, j6,((d&0x0800)!=0));
-            updateCel( i, j7,((d&0x0200)!=0));
-            updateCel( i, j8,((e&0x8000)!=0));
-            updateCel( i, j9,((e&0x2000)!=0));
-            updateCel( i,j10,((e&0x0800)!=0));
-            updateCel( i,j11,((e&0x0200)!=0));
-            updateCel( i,j12,((f&0x8000)!=0));
-            updateCel( i,j13,((f&0x2000)!=0));
-            updateCel( i,j14,((f&0x0800)!=0));
-            updateCel( i,j15,((f&0x0200)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x4000)!=0));
-            updateCel( i, j1,((c&0x1000)!=0));
-            updateCel( i, j2,((c&0x0400)!=0));
-            updateCel( i, j3,((c&0x0100)!=0));
-            updateCel( i, j4,((d&0x4000)!=0));
-            updateCel( i, j5,((d&0x1000)!=0));
-            updateCel( i, j6,((d&0x0400)!=0));
-            updateCel( i, j7,((d&0x0100)!=0));
-            updateCel( i, j8,((e&0x4000)!=0));
-            updateCel( i, j9,((e&0x1000)!=0));
-            updateCel( i,j10,((e&0x0400)!=0));
-            updateCel( i,j11,((e&0x0100)!=0));
-            updateCel( i,j12,((f&0x4000)!=0));
-            updateCel( i,j13,((f&0x1000)!=0));
-            updateCel( i,j14,((f&0x0400)!=0));
-            updateCel( i,j15,((f&0x0100)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x0080)!=0));
-            updateCel( i, j1,((c&0x0020)!=0));
-            updateCel( i, j2,((c&0x0008)!=0));
-            updateCel( i, j3,((c&0x0002)!=0));
-            updateCel( i, j4,((d&0x0080)!=0));
-            updateCel( i, j5,((d&0x0020)!=0));
-            updateCel( i, j6,((d&0x0008)!=0));
-            updateCel( i, j7,((d&0x0002)!=0));
-            updateCel( i, j8,((e&0x0080)!=0));
-            updateCel( i, j9,((e&0x0020)!=0));
-            updateCel( i,j10,((e&0x0008)!=0));
-            updateCel( i,j11,((e&0x0002)!=0));
-            updateCel( i,j12,((f&0x0080)!=0));
-            updateCel( i,j13,((f&0x0020)!=0));
-            updateCel( i,j14,((f&0x0008)!=0));
-            updateCel( i,j15,((f&0x0002)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x0040)!=0));
-            updateCel( i, j1,((c&0x0010)!=0));
-            updateCel( i, j2,((c&0x0004)!=0));
-            updateCel( i, j3,((c&0x0001)!=0));
-            updateCel( i, j4,((d&0x0040)!=0));
-            updateCel( i, j5,((d&0x0010)!=0));
-            updateCel( i, j6,((d&0x0004)!=0));
-            updateCel( i, j7,((d&0x0001)!=0));
-            updateCel( i, j8,((e&0x0040)!=0));
-            updateCel( i, j9,((e&0x0010)!=0));
-            updateCel( i,j10,((e&0x0004)!=0));
-            updateCel( i,j11,((e&0x0001)!=0));
-            updateCel( i,j12,((f&0x0040)!=0));
-            updateCel( i,j13,((f&0x0010)!=0));
-            updateCel( i,j14,((f&0x0004)!=0));
-            updateCel( i,j15,((f&0x0001)!=0));
-
-            i++;
-            c=cell.q[1]; d=cell.q[3]; e=cell.q[5]; f=cell.q[7];
-            updateCell( i, j0,((c&0x8000)!=0));
-            updateCel( i, j1,((c&0x2000)!=0));
-            updateCel( i, j2,((c&0x0800)!=0));
-            updateCel( i, j3,((c&0x0200)!=0));
-            updateCel( i, j4,((d&0x8000)!=0));
-            updateCel( i, j5,((d&0x2000)!=0));
-            updateCel( i, j6,((d&0x0800)!=0));
-            updateCel( i, j7,((d&0x0200)!=0));
-            updateCel( i, j8,((e&0x8000)!=0));
-            updateCel( i, j9,((e&0x2000)!=0));
-            updateCel( i,j10,((e&0x0800)!=0));
-            updateCel( i,j11,((e&0x0200)!=0));
-            updateCel( i,j12,((f&0x8000)!=0));
-            updateCel( i,j13,((f&0x2000)!=0));
-            updateCel( i,j14,((f&0x0800)!=0));
-            updateCel( i,j15,((f&0x0200)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x4000)!=0));
-            updateCel( i, j1,((c&0x1000)!=0));
-            updateCel( i, j2,((c&0x0400)!=0));
-            updateCel( i, j3,((c&0x0100)!=0));
-            updateCel( i, j4,((d&0x4000)!=0));
-            updateCel( i, j5,((d&0x1000)!=0));
-            updateCel( i, j6,((d&0x0400)!=0));
-            updateCel( i, j7,((d&0x0100)!=0));
-            updateCel( i, j8,((e&0x4000)!=0));
-            updateCel( i, j9,((e&0x1000)!=0));
-            updateCel( i,j10,((e&0x0400)!=0));
-            updateCel( i,j11,((e&0x0100)!=0));
-            updateCel( i,j12,((f&0x4000)!=0));
-            updateCel( i,j13,((f&0x1000)!=0));
-            updateCel( i,j14,((f&0x0400)!=0));
-            updateCel( i,j15,((f&0x0100)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x0080)!=0));
-            updateCel( i, j1,((c&0x0020)!=0));
-            updateCel( i, j2,((c&0x0008)!=0));
-            updateCel( i, j3,((c&0x0002)!=0));
-            updateCel( i, j4,((d&0x0080)!=0));
-            updateCel( i, j5,((d&0x0020)!=0));
-            updateCel( i, j6,((d&0x0008)!=0));
-            updateCel( i, j7,((d&0x0002)!=0));
-            updateCel( i, j8,((e&0x0080)!=0));
-            updateCel( i, j9,((e&0x0020)!=0));
-            updateCel( i,j10,((e&0x0008)!=0));
-            updateCel( i,j11,((e&0x0002)!=0));
-            updateCel( i,j12,((f&0x0080)!=0));
-            updateCel( i,j13,((f&0x0020)!=0));
-            updateCel( i,j14,((f&0x0008)!=0));
-            updateCel( i,j15,((f&0x0002)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x0040)!=0));
-            updateCel( i, j1,((c&0x0010)!=0));
-            updateCel( i, j2,((c&0x0004)!=0));
-            updateCel( i, j3,((c&0x0001)!=0));
-            updateCel( i, j4,((d&0x0040)!=0));
-            updateCel( i, j5,((d&0x0010)!=0));
-            updateCel( i, j6,((d&0x0004)!=0));
-            updateCel( i, j7,((d&0x0001)!=0));
-            updateCel( i, j8,((e&0x0040)!=0));
-            updateCel( i, j9,((e&0x0010)!=0));
-            updateCel( i,j10,((e&0x0004)!=0));
-            updateCel( i,j11,((e&0x0001)!=0));
-            updateCel( i,j12,((f&0x0040)!=0));
-            updateCel( i,j13,((f&0x0010)!=0));
-            updateCel( i,j14,((f&0x0004)!=0));
-            updateCel( i,j15,((f&0x0001)!=0));
-
-            i++;
-            c=cell.q[8]; d=cell.q[10]; e=cell.q[12]; f=cell.q[14];
-            updateCell( i, j0,((c&0x8000)!=0));
-            updateCel( i, j1,((c&0x2000)!=0));
-            updateCel( i, j2,((c&0x0800)!=0));
-            updateCel( i, j3,((c&0x0200)!=0));
-            updateCel( i, j4,((d&0x8000)!=0));
-            updateCel( i, j5,((d&0x2000)!=0));
-            updateCel( i, j6,((d&0x0800)!=0));
-            updateCel( i, j7,((d&0x0200)!=0));
-            updateCel( i, j8,((e&0x8000)!=0));
-            updateCel( i, j9,((e&0x2000)!=0));
-            updateCel( i,j10,((e&0x0800)!=0));
-            updateCel( i,j11,((e&0x0200)!=0));
-            updateCel( i,j12,((f&0x8000)!=0));
-            updateCel( i,j13,((f&0x2000)!=0));
-            updateCel( i,j14,((f&0x0800)!=0));
-            updateCel( i,j15,((f&0x0200)!=0));
-
-            i++;
-            updateCell( i, j0,((c&0x4000)!=0));
-            updateCel( i, j1,((c&0x1000)!=0));
-            updateCel( i, j2,((c&0x0400)!=0));
-            updateCel( i, j3,((c&0x0100)!=0));
-            updateCel( i, j4,((d&0x4000)!=0));
-            updateCel( i, j5,((d&0x1000)!=0));
-            updateCel( i, j6,((d&0x0400)!=0));
-            updateCel( i, j7,((d&0x0100)!=0));
-            updateCel( i, j8,((e&0x4000)!=0));
-            updateCel( i, j9,((e&0x1000)!=0));
-            updateCel( i,j10,((e&0x0400)!=0));
-            updateCel( i,j11,((e&0x0100)!=0));
-            updateCel( i,j12,((f&0x4000)!=0));
-            updateCel( i,j13,((f&0x1000)!=0));
-            updateCel( i,j14,((f&0x0400)!=0));
-            updateCel( i,j15,((f&0x0100)!=0));
-
-            i++;
-            updateCell(i, j0,((c&0x0080)!=0));
-            updateCel(i, j1,((c&0x0020)!=0));
-            updateCel(i, j2,((c&0x0008)!=0));
-            updateCel(i, j3,((c&0x0002)!=0));
-            updateCel(i, j4,((d&0x0080)!=0));
-            updateCel(i, j5,((d&0x0020)!=0));
-            updateCel(i, j6,((d&0x0008)!=0));
-            updateCel(i, j7,((d&0x0002)!=0));
-            updateCel(i, j8,((e&0x0080)!=0));
-            updateCel(i, j9,((e&0x0020)!=0));
-            updateCel(i,j10,((e&0x0008)!=0));
-            updateCel(i,j11,((e&0x0002)!=0));
-            updateCel(i,j12,((f&0x0080)!=0));
-            updateCel(i,j13,((f&0x0020)!=0));
-            updateCel(i,j14,((f&0x0008)!=0));
-            updateCel(i,j15,((f&0x0002)!=0));
-
-            i++;
-            updateCell(i, j0,((c&0x0040)!=0));
-            updateCel(i, j1,((c&0x0010)!=0));
-            updateCel(i, j2,((c&0x0004)!=0));
-            updateCel(i, j3,((c&0x0001)!=0));
-            updateCel(i, j4,((d&0x0040)!=0));
-            updateCel(i, j5,((d&0x0010)!=0));
-            updateCel(i, j6,((d&0x0004)!=0));
-            updateCel(i, j7,((d&0x0001)!=0));
-            updateCel(i, j8,((e&0x0040)!=0));
-            updateCel(i, j9,((e&0x0010)!=0));
-            updateCel(i,j10,((e&0x0004)!=0));
-            updateCel(i,j11,((e&0x0001)!=0));
-            updateCel(i,j12,((f&0x0040)!=0));
-            updateCel(i,j13,((f&0x0010)!=0));
-            updateCel(i,j14,((f&0x0004)!=0));
-            updateCel(i,j15,((f&0x0001)!=0));
-
-            i++;
-            c=cell.q[9]; d=cell.q[11]; e=cell.q[13]; f=cell.q[15];
-            updateCell(i, j0,((c&0x8000)!=0));
-            updateCel(i, j1,((c&0x2000)!=0));
-            updateCel(i, j2,((c&0x0800)!=0));
-            updateCel(i, j3,((c&0x0200)!=0));
-            updateCel(i, j4,((d&0x8000)!=0));
-            updateCel(i, j5,((d&0x2000)!=0));
-            updateCel(i, j6,((d&0x0800)!=0));
-            updateCel(i, j7,((d&0x0200)!=0));
-            updateCel(i, j8,((e&0x8000)!=0));
-            updateCel(i, j9,((e&0x2000)!=0));
-            updateCel(i,j10,((e&0x0800)!=0));
-            updateCel(i,j11,((e&0x0200)!=0));
-            updateCel(i,j12,((f&0x8000)!=0));
-            updateCel(i,j13,((f&0x2000)!=0));
-            updateCel(i,j14,((f&0x0800)!=0));
-            updateCel(i,j15,((f&0x0200)!=0));
-
-            i++;
-            updateCell(i, j0,((c&0x4000)!=0));
-            updateCel(i, j1,((c&0x1000)!=0));
-            updateCel(i, j2,((c&0x0400)!=0));
-            updateCel(i, j3,((c&0x0100)!=0));
-            updateCel(i, j4,((d&0x4000)!=0));
-            updateCel(i, j5,((d&0x1000)!=0));
-            updateCel(i, j6,((d&0x0400)!=0));
-            updateCel(i, j7,((d&0x0100)!=0));
-            updateCel(i, j8,((e&0x4000)!=0));
-            updateCel(i, j9,((e&0x1000)!=0));
-            updateCel(i,j10,((e&0x0400)!=0));
-            updateCel(i,j11,((e&0x0100)!=0));
-            updateCel(i,j12,((f&0x4000)!=0));
-            updateCel(i,j13,((f&0x1000)!=0));
-            updateCel(i,j14,((f&0x0400)!=0));
-            updateCel(i,j15,((f&0x0100)!=0));
-
-            i++;
-            updateCell(i, j0,((c&0x0080)!=0));
-            updateCel(i, j1,((c&0x0020)!=0));
-            updateCel(i, j2,((c&0x0008)!=0));
-            updateCel(i, j3,((c&0x0002)!=0));
-            updateCel(i, j4,((d&0x0080)!=0));
-            updateCel(i, j5,((d&0x0020)!=0));
-            updateCel(i, j6,((d&0x0008)!=0));
-            updateCel(i, j7,((d&0x0002)!=0));
-            updateCel(i, j8,((e&0x0080)!=0));
-            updateCel(i, j9,((e&0x0020)!=0));
-            updateCel(i,j10,((e&0x0008)!=0));
-            updateCel(i,j11,((e&0x0002)!=0));
-            updateCel(i,j12,((f&0x0080)!=0));
-            updateCel(i,j13,((f&0x0020)!=0));
-            updateCel(i,j14,((f&0x0008)!=0));
-            updateCel(i,j15,((f&0x0002)!=0));
-
-            i++;
-            updateCell(i, j0,((c&0x0040)!=0));
-            updateCel(i, j1,((c&0x0010)!=0));
-            updateCel(i, j2,((c&0x0004)!=0));
-            updateCel(i, j3,((c&0x0001)!=0));
-            updateCel(i, j4,((d&0x0040)!=0));
-            updateCel(i, j5,((d&0x0010)!=0));
-            updateCel(i, j6,((d&0x0004)!=0));
-            updateCel(i, j7,((d&0x0001)!=0));
-            updateCel(i, j8,((e&0x0040)!=0));
-            updateCel(i, j9,((e&0x0010)!=0));
-            updateCel(i,j10,((e&0x0004)!=0));
-            updateCel(i,j11,((e&0x0001)!=0));
-            updateCel(i,j12,((f&0x0040)!=0));
-            updateCel(i,j13,((f&0x0010)!=0));
-            updateCel(i,j14,((f&0x0004)!=0));
-            updateCel(i,j15,((f&0x0001)!=0));
+            i  = cell.x*16 - xOrig + 1;
+            j0 = cell.y*16 - yOrig + 1;
+
+            if (i +15 < 0 || i  > fieldSizeX 
+             || j0+15 < 0 || j0 > fieldSizeY) continue;
+
+            drawBlock_q(cell, i, j0);
          }
       }
+
       return true;
    }
 
+   private void drawBlock_q(LifeCell cell, int i, int j0)
+   {
+      short c,d,e,f;
+      int j1,j2,j3,j4,j5,j6,j7,j8,j9,j10,j11,j12,j13,j14,j15;
+
+      j1=j0+1;   j2=j1+1;   j3=j2+1;
+      j4=j3+1;   j5=j4+1;   j6=j5+1;   j7=j6+1;
+      j8=j7+1;   j9=j8+1;   j10=j9+1;  j11=j10+1;
+      j12=j11+1; j13=j12+1; j14=j13+1; j15=j14+1;
+
+      if (i >=0 && i+15<fieldSizeX
+            && j0>=0 && j15<fieldSizeY)
+         boundsCheck=false;
+      else boundsCheck=true;
+
+      c=cell.q[0]; d=cell.q[2]; e=cell.q[4]; f=cell.q[6];
+      updateCell( i, j0,((c&0x8000)!=0));
+      updateCel( i, j1,((c&0x2000)!=0));
+      updateCel( i, j2,((c&0x0800)!=0));
+      updateCel( i, j3,((c&0x0200)!=0));
+      updateCel( i, j4,((d&0x8000)!=0));
+      updateCel( i, j5,((d&0x2000)!=0));
+      updateCel( i, j6,((d&0x0800)!=0));
+      updateCel( i, j7,((d&0x0200)!=0));
+      updateCel( i, j8,((e&0x8000)!=0));
+      updateCel( i, j9,((e&0x2000)!=0));
+      updateCel( i,j10,((e&0x0800)!=0));
+      updateCel( i,j11,((e&0x0200)!=0));
+      updateCel( i,j12,((f&0x8000)!=0));
+      updateCel( i,j13,((f&0x2000)!=0));
+      updateCel( i,j14,((f&0x0800)!=0));
+      updateCel( i,j15,((f&0x0200)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x4000)!=0));
+      updateCel( i, j1,((c&0x1000)!=0));
+      updateCel( i, j2,((c&0x0400)!=0));
+      updateCel( i, j3,((c&0x0100)!=0));
+      updateCel( i, j4,((d&0x4000)!=0));
+      updateCel( i, j5,((d&0x1000)!=0));
+      updateCel( i, j6,((d&0x0400)!=0));
+      updateCel( i, j7,((d&0x0100)!=0));
+      updateCel( i, j8,((e&0x4000)!=0));
+      updateCel( i, j9,((e&0x1000)!=0));
+      updateCel( i,j10,((e&0x0400)!=0));
+      updateCel( i,j11,((e&0x0100)!=0));
+      updateCel( i,j12,((f&0x4000)!=0));
+      updateCel( i,j13,((f&0x1000)!=0));
+      updateCel( i,j14,((f&0x0400)!=0));
+      updateCel( i,j15,((f&0x0100)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x0080)!=0));
+      updateCel( i, j1,((c&0x0020)!=0));
+      updateCel( i, j2,((c&0x0008)!=0));
+      updateCel( i, j3,((c&0x0002)!=0));
+      updateCel( i, j4,((d&0x0080)!=0));
+      updateCel( i, j5,((d&0x0020)!=0));
+      updateCel( i, j6,((d&0x0008)!=0));
+      updateCel( i, j7,((d&0x0002)!=0));
+      updateCel( i, j8,((e&0x0080)!=0));
+      updateCel( i, j9,((e&0x0020)!=0));
+      updateCel( i,j10,((e&0x0008)!=0));
+      updateCel( i,j11,((e&0x0002)!=0));
+      updateCel( i,j12,((f&0x0080)!=0));
+      updateCel( i,j13,((f&0x0020)!=0));
+      updateCel( i,j14,((f&0x0008)!=0));
+      updateCel( i,j15,((f&0x0002)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x0040)!=0));
+      updateCel( i, j1,((c&0x0010)!=0));
+      updateCel( i, j2,((c&0x0004)!=0));
+      updateCel( i, j3,((c&0x0001)!=0));
+      updateCel( i, j4,((d&0x0040)!=0));
+      updateCel( i, j5,((d&0x0010)!=0));
+      updateCel( i, j6,((d&0x0004)!=0));
+      updateCel( i, j7,((d&0x0001)!=0));
+      updateCel( i, j8,((e&0x0040)!=0));
+      updateCel( i, j9,((e&0x0010)!=0));
+      updateCel( i,j10,((e&0x0004)!=0));
+      updateCel( i,j11,((e&0x0001)!=0));
+      updateCel( i,j12,((f&0x0040)!=0));
+      updateCel( i,j13,((f&0x0010)!=0));
+      updateCel( i,j14,((f&0x0004)!=0));
+      updateCel( i,j15,((f&0x0001)!=0));
+
+      i++;
+      c=cell.q[1]; d=cell.q[3]; e=cell.q[5]; f=cell.q[7];
+      updateCell( i, j0,((c&0x8000)!=0));
+      updateCel( i, j1,((c&0x2000)!=0));
+      updateCel( i, j2,((c&0x0800)!=0));
+      updateCel( i, j3,((c&0x0200)!=0));
+      updateCel( i, j4,((d&0x8000)!=0));
+      updateCel( i, j5,((d&0x2000)!=0));
+      updateCel( i, j6,((d&0x0800)!=0));
+      updateCel( i, j7,((d&0x0200)!=0));
+      updateCel( i, j8,((e&0x8000)!=0));
+      updateCel( i, j9,((e&0x2000)!=0));
+      updateCel( i,j10,((e&0x0800)!=0));
+      updateCel( i,j11,((e&0x0200)!=0));
+      updateCel( i,j12,((f&0x8000)!=0));
+      updateCel( i,j13,((f&0x2000)!=0));
+      updateCel( i,j14,((f&0x0800)!=0));
+      updateCel( i,j15,((f&0x0200)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x4000)!=0));
+      updateCel( i, j1,((c&0x1000)!=0));
+      updateCel( i, j2,((c&0x0400)!=0));
+      updateCel( i, j3,((c&0x0100)!=0));
+      updateCel( i, j4,((d&0x4000)!=0));
+      updateCel( i, j5,((d&0x1000)!=0));
+      updateCel( i, j6,((d&0x0400)!=0));
+      updateCel( i, j7,((d&0x0100)!=0));
+      updateCel( i, j8,((e&0x4000)!=0));
+      updateCel( i, j9,((e&0x1000)!=0));
+      updateCel( i,j10,((e&0x0400)!=0));
+      updateCel( i,j11,((e&0x0100)!=0));
+      updateCel( i,j12,((f&0x4000)!=0));
+      updateCel( i,j13,((f&0x1000)!=0));
+      updateCel( i,j14,((f&0x0400)!=0));
+      updateCel( i,j15,((f&0x0100)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x0080)!=0));
+      updateCel( i, j1,((c&0x0020)!=0));
+      updateCel( i, j2,((c&0x0008)!=0));
+      updateCel( i, j3,((c&0x0002)!=0));
+      updateCel( i, j4,((d&0x0080)!=0));
+      updateCel( i, j5,((d&0x0020)!=0));
+      updateCel( i, j6,((d&0x0008)!=0));
+      updateCel( i, j7,((d&0x0002)!=0));
+      updateCel( i, j8,((e&0x0080)!=0));
+      updateCel( i, j9,((e&0x0020)!=0));
+      updateCel( i,j10,((e&0x0008)!=0));
+      updateCel( i,j11,((e&0x0002)!=0));
+      updateCel( i,j12,((f&0x0080)!=0));
+      updateCel( i,j13,((f&0x0020)!=0));
+      updateCel( i,j14,((f&0x0008)!=0));
+      updateCel( i,j15,((f&0x0002)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x0040)!=0));
+      updateCel( i, j1,((c&0x0010)!=0));
+      updateCel( i, j2,((c&0x0004)!=0));
+      updateCel( i, j3,((c&0x0001)!=0));
+      updateCel( i, j4,((d&0x0040)!=0));
+      updateCel( i, j5,((d&0x0010)!=0));
+      updateCel( i, j6,((d&0x0004)!=0));
+      updateCel( i, j7,((d&0x0001)!=0));
+      updateCel( i, j8,((e&0x0040)!=0));
+      updateCel( i, j9,((e&0x0010)!=0));
+      updateCel( i,j10,((e&0x0004)!=0));
+      updateCel( i,j11,((e&0x0001)!=0));
+      updateCel( i,j12,((f&0x0040)!=0));
+      updateCel( i,j13,((f&0x0010)!=0));
+      updateCel( i,j14,((f&0x0004)!=0));
+      updateCel( i,j15,((f&0x0001)!=0));
+
+      i++;
+      c=cell.q[8]; d=cell.q[10]; e=cell.q[12]; f=cell.q[14];
+      updateCell( i, j0,((c&0x8000)!=0));
+      updateCel( i, j1,((c&0x2000)!=0));
+      updateCel( i, j2,((c&0x0800)!=0));
+      updateCel( i, j3,((c&0x0200)!=0));
+      updateCel( i, j4,((d&0x8000)!=0));
+      updateCel( i, j5,((d&0x2000)!=0));
+      updateCel( i, j6,((d&0x0800)!=0));
+      updateCel( i, j7,((d&0x0200)!=0));
+      updateCel( i, j8,((e&0x8000)!=0));
+      updateCel( i, j9,((e&0x2000)!=0));
+      updateCel( i,j10,((e&0x0800)!=0));
+      updateCel( i,j11,((e&0x0200)!=0));
+      updateCel( i,j12,((f&0x8000)!=0));
+      updateCel( i,j13,((f&0x2000)!=0));
+      updateCel( i,j14,((f&0x0800)!=0));
+      updateCel( i,j15,((f&0x0200)!=0));
+
+      i++;
+      updateCell( i, j0,((c&0x4000)!=0));
+      updateCel( i, j1,((c&0x1000)!=0));
+      updateCel( i, j2,((c&0x0400)!=0));
+      updateCel( i, j3,((c&0x0100)!=0));
+      updateCel( i, j4,((d&0x4000)!=0));
+      updateCel( i, j5,((d&0x1000)!=0));
+      updateCel( i, j6,((d&0x0400)!=0));
+      updateCel( i, j7,((d&0x0100)!=0));
+      updateCel( i, j8,((e&0x4000)!=0));
+      updateCel( i, j9,((e&0x1000)!=0));
+      updateCel( i,j10,((e&0x0400)!=0));
+      updateCel( i,j11,((e&0x0100)!=0));
+      updateCel( i,j12,((f&0x4000)!=0));
+      updateCel( i,j13,((f&0x1000)!=0));
+      updateCel( i,j14,((f&0x0400)!=0));
+      updateCel( i,j15,((f&0x0100)!=0));
+
+      i++;
+      updateCell(i, j0,((c&0x0080)!=0));
+      updateCel(i, j1,((c&0x0020)!=0));
+      updateCel(i, j2,((c&0x0008)!=0));
+      updateCel(i, j3,((c&0x0002)!=0));
+      updateCel(i, j4,((d&0x0080)!=0));
+      updateCel(i, j5,((d&0x0020)!=0));
+      updateCel(i, j6,((d&0x0008)!=0));
+      updateCel(i, j7,((d&0x0002)!=0));
+      updateCel(i, j8,((e&0x0080)!=0));
+      updateCel(i, j9,((e&0x0020)!=0));
+      updateCel(i,j10,((e&0x0008)!=0));
+      updateCel(i,j11,((e&0x0002)!=0));
+      updateCel(i,j12,((f&0x0080)!=0));
+      updateCel(i,j13,((f&0x0020)!=0));
+      updateCel(i,j14,((f&0x0008)!=0));
+      updateCel(i,j15,((f&0x0002)!=0));
+
+      i++;
+      updateCell(i, j0,((c&0x0040)!=0));
+      updateCel(i, j1,((c&0x0010)!=0));
+      updateCel(i, j2,((c&0x0004)!=0));
+      updateCel(i, j3,((c&0x0001)!=0));
+      updateCel(i, j4,((d&0x0040)!=0));
+      updateCel(i, j5,((d&0x0010)!=0));
+      updateCel(i, j6,((d&0x0004)!=0));
+      updateCel(i, j7,((d&0x0001)!=0));
+      updateCel(i, j8,((e&0x0040)!=0));
+      updateCel(i, j9,((e&0x0010)!=0));
+      updateCel(i,j10,((e&0x0004)!=0));
+      updateCel(i,j11,((e&0x0001)!=0));
+      updateCel(i,j12,((f&0x0040)!=0));
+      updateCel(i,j13,((f&0x0010)!=0));
+      updateCel(i,j14,((f&0x0004)!=0));
+      updateCel(i,j15,((f&0x0001)!=0));
+
+      i++;
+      c=cell.q[9]; d=cell.q[11]; e=cell.q[13]; f=cell.q[15];
+      updateCell(i, j0,((c&0x8000)!=0));
+      updateCel(i, j1,((c&0x2000)!=0));
+      updateCel(i, j2,((c&0x0800)!=0));
+      updateCel(i, j3,((c&0x0200)!=0));
+      updateCel(i, j4,((d&0x8000)!=0));
+      updateCel(i, j5,((d&0x2000)!=0));
+      updateCel(i, j6,((d&0x0800)!=0));
+      updateCel(i, j7,((d&0x0200)!=0));
+      updateCel(i, j8,((e&0x8000)!=0));
+      updateCel(i, j9,((e&0x2000)!=0));
+      updateCel(i,j10,((e&0x0800)!=0));
+      updateCel(i,j11,((e&0x0200)!=0));
+      updateCel(i,j12,((f&0x8000)!=0));
+      updateCel(i,j13,((f&0x2000)!=0));
+      updateCel(i,j14,((f&0x0800)!=0));
+      updateCel(i,j15,((f&0x0200)!=0));
+
+      i++;
+      updateCell(i, j0,((c&0x4000)!=0));
+      updateCel(i, j1,((c&0x1000)!=0));
+      updateCel(i, j2,((c&0x0400)!=0));
+      updateCel(i, j3,((c&0x0100)!=0));
+      updateCel(i, j4,((d&0x4000)!=0));
+      updateCel(i, j5,((d&0x1000)!=0));
+      updateCel(i, j6,((d&0x0400)!=0));
+      updateCel(i, j7,((d&0x0100)!=0));
+      updateCel(i, j8,((e&0x4000)!=0));
+      updateCel(i, j9,((e&0x1000)!=0));
+      updateCel(i,j10,((e&0x0400)!=0));
+      updateCel(i,j11,((e&0x0100)!=0));
+      updateCel(i,j12,((f&0x4000)!=0));
+      updateCel(i,j13,((f&0x1000)!=0));
+      updateCel(i,j14,((f&0x0400)!=0));
+      updateCel(i,j15,((f&0x0100)!=0));
+
+      i++;
+      updateCell(i, j0,((c&0x0080)!=0));
+      updateCel(i, j1,((c&0x0020)!=0));
+      updateCel(i, j2,((c&0x0008)!=0));
+      updateCel(i, j3,((c&0x0002)!=0));
+      updateCel(i, j4,((d&0x0080)!=0));
+      updateCel(i, j5,((d&0x0020)!=0));
+      updateCel(i, j6,((d&0x0008)!=0));
+      updateCel(i, j7,((d&0x0002)!=0));
+      updateCel(i, j8,((e&0x0080)!=0));
+      updateCel(i, j9,((e&0x0020)!=0));
+      updateCel(i,j10,((e&0x0008)!=0));
+      updateCel(i,j11,((e&0x0002)!=0));
+      updateCel(i,j12,((f&0x0080)!=0));
+      updateCel(i,j13,((f&0x0020)!=0));
+      updateCel(i,j14,((f&0x0008)!=0));
+      updateCel(i,j15,((f&0x0002)!=0));
+
+      i++;
+      updateCell(i, j0,((c&0x0040)!=0));
+      updateCel(i, j1,((c&0x0010)!=0));
+      updateCel(i, j2,((c&0x0004)!=0));
+      updateCel(i, j3,((c&0x0001)!=0));
+      updateCel(i, j4,((d&0x0040)!=0));
+      updateCel(i, j5,((d&0x0010)!=0));
+      updateCel(i, j6,((d&0x0004)!=0));
+      updateCel(i, j7,((d&0x0001)!=0));
+      updateCel(i, j8,((e&0x0040)!=0));
+      updateCel(i, j9,((e&0x0010)!=0));
+      updateCel(i,j10,((e&0x0004)!=0));
+      updateCel(i,j11,((e&0x0001)!=0));
+      updateCel(i,j12,((f&0x0040)!=0));
+      updateCel(i,j13,((f&0x0010)!=0));
+      updateCel(i,j14,((f&0x0004)!=0));
+      updateCel(i,j15,((f&0x0001)!=0));
+   }
+
    public void updateAll(LifeGen u)
    {
       if (viewChanged) {
@@ -1004,8 +1091,108 @@ class LifeGUI extends Panel
          viewChanged = false;
       }
 
-      if (u.qCycle) display_q(u);
-      else          display_p(u);
+      if (heatMode != LifeGen.HEAT_OFF && u.getHeatMode() == heatMode)
+         display_heat(u);
+      else if (u.qCycle) display_q(u);
+      else               display_p(u);
+   }
+
+   /*
+    * Heat-map display.  Same block lookup as display_p/display_q, but
+    * each cell is drawn in a palette colour picked from its age or
+    * activity, so it works in paint mode rather than XOR, and redraws
+    * a cell whenever its colour changes, not only when it is born or
+    * dies.  Not unrolled: this is a viewing aid, not the fast path.
+    */
+   private void display_heat(LifeGen u)
+   {
+      int off = u.qCycle? 1:0;
+      int bx0 = (xOrig-1)>>4, bx1 = (xOrig+fieldSizeX-1)>>4;
+      int by0 = (yOrig-1)>>4, by1 = (yOrig+fieldSizeY-1)>>4;
+      int i, j0;
+
+      if (heatColors == null) buildHeatColors();
+      g.setPaintMode();
+
+      for (int by=by0; by<=by1; by++)
+      {
+         for (int bx=bx0; bx<=bx1; bx++)
+         {
+            LifeCell cell = u.getBlock(bx, by);
+            if (cell == null) continue;
+
+            if ((cell.flags & 0x02)!=0)
+            {
+               if (cell.shown != u.viewEpoch) continue;
+               cell.shown = 0;
+            }
+            else cell.shown = u.viewEpoch;
+
+            i  = cell.x*16 - xOrig + off;
+            j0 = cell.y*16 - yOrig + off;
+
+            if (i +16 <= 0 || i  >= fieldSizeX
+             || j0+16 <= 0 || j0 >= fieldSizeY) continue;
+
+            drawBlock_heat(u, cell, i, j0);
+         }
+      }
+
+      g.setColor(fgColor);
+      g.setXORMode(bgColor);
+   }
+
+   private void drawBlock_heat(LifeGen u, LifeCell cell, int i0, int j0)
+   {
+      int x, y, r, h, s;
+
+      LifeCell.wordsToRows(u.qCycle? cell.q : cell.p, rows);
+      u.getHeat(cell, heat);
+
+      for (int j=0; j<16; j++)
+      {
+         y = j0+j;
+         if (y<0 || y>=fieldSizeY) continue;
+         r = rows[j];
+
+         for (int i=0; i<16; i++)
+         {
+            x = i0+i;
+            if (x<0 || x>=fieldSizeX) continue;
+
+            s = 0;
+            if ((r & (0x8000>>>i)) != 0)
+            {
+               h = heat[j*16+i] & 0xff;
+               if (heatMode == LifeGen.HEAT_AGE) h = 255-h;   // young is hot
+               s = 1 + h*(HEAT_SHADES-1)/255;
+            }
+            if (shade[x][y] != s) drawShade(x, y, s);
+         }
+      }
+   }
+
+   // draw cell x,y in heatColors[s] (0 = dead), in paint mode
+   private void drawShade(int x, int y, int s)
+   {
+      if (x<0 || y<0 || x>=fieldSizeX || y>=fieldSizeY) return;
+      if (heatColors == null) buildHeatColors();
+
+      g.setPaintMode();
+      shade[x][y] = (byte)s;
+      field[x][y] = (s != 0);
+
+      if (s != 0)
+      {
+         g.setColor(heatColors[s]);
+         g.fillRect(xTranslate[x], yTranslate[y], ppc, ppc);
+      }
+      else if (specialCase)
+      {
+         g.setColor(bgColor);
+         g.fillRect(xTranslate[x], yTranslate[y], 1, 1);
+      }
+      else g.clearRect(xTranslate[x], yTranslate[y], ppc2, ppc2);
    }
 
 }
\ No newline at end of file
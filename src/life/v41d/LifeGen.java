@@ -69,13 +69,23 @@ package life.v41d;
  (c) Alan Hensel, Nov 1995 - Apr 1996. All Rights Reserved.
 **************************************************************/
 
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.Comparator;
+
 class LifeGen
 {
    private LifeCell living;      // beginning of list of live blocks
    private LifeCell hibernating; // p1 or p2 blocks
    private LifeCell morgue;      // empty blocks not ready to deallocate
+
+   //  Lists told of every block that goes to sleep (into hibernation
+   //  or the morgue), for LifeDelta: see watchSleep().
+   private Vector sleepWatchers = new Vector();
+   int clears;                   // times clear() has been called
    private LifeCell caretaker;
-   public  LifeCell display;   // list of blocks in the viewing area
+
+   public int viewEpoch = 1;   // bumped whenever the viewing area is redrawn from scratch
 
    private LifeHash hashTable;
 
@@ -88,8 +98,37 @@ class LifeGen
 
    private LifeRules lifeRules = new LifeRules();
 
-   private short[] crunch = new short[65536];  // p --> q rule table
-   private short[] munch  = new short[65536];  // p <-- q rule table
+   private short[] crunch;  // p --> q rule table
+   private short[] munch;   // p <-- q rule table
+   private boolean[] newRule;  // rule whose tables are still to be fetched
+   private boolean[] rule;     // the rule in force
+
+   //  B0 rules would fill the whole plane on odd generations, so
+   //  those are stored complemented (inverted == true) and the tables
+   //  are picked to match: see stepRule().  The background is then
+   //  always 0, and the morgue and hibernation work as usual.
+   private boolean inverted;
+   private boolean prevInverted;          // for stepBack()
+   private short[][][] stepTables = new short[2][][];   // by inverted
+
+   //  Blocks are found by short coordinates, so cells have to stay
+   //  within MAX_COORD of the origin (a block short of the limit, so
+   //  the blocks on the edge still have room for neighbours).
+   static final int MAX_COORD = (Short.MAX_VALUE-1)*16;
+
+   //  A bounded universe (see setTopology()) keeps every cell inside
+   //  0..boundW-1, 0..boundH-1.  Before each step the ring of cells
+   //  just outside is filled in from across the seams, and after it
+   //  whatever has spilled outside is cleared again.
+   public static final int PLANE = 0;          // unbounded
+   public static final int TORUS = 1;
+   public static final int KLEIN_BOTTLE = 2;   // top and bottom joined with a twist
+   public static final int CROSS_SURFACE = 3;  // both pairs joined with a twist
+   public static final int RECTANGLE = 4;      // nothing lives outside
+   static final int MAX_BOUND = 1<<18;
+
+   private int topology = PLANE;
+   private int boundW, boundH;
 
    //  The Crunch and Munch tables crunch&munch a 4x4 block to find
    //  the 2x2 inner result.  Four results are stored in each
@@ -98,18 +137,18 @@ class LifeGen
    //  This requires some bit-masking to uncover the results, but
    //  the alternative is 4 separate tables.
 
-   // display parameters:
-   public  long interval=100; // milliseconds per frame (1000/(frames per second))
-   public  long speed;   // if >0, max number of generations per blap
-   private long last_blap_interval; // length of time for displaying 1 generation
-   private long last_timestamp; // timestamp at the beginning of a string of unblapped generations
-   private long last_gencount;  // generation when above timestamp was taken
-   private long predicted_blap_interval;
-   private long last_gen_interval = 0;
-   private long timenow;
-
    private int statecheck, statediff;
 
+   // Optional per-cell colouring data, kept in LifeCell.heat[].
+   public static final int HEAT_OFF = 0;       // none kept
+   public static final int HEAT_AGE = 1;       // generations alive, in pairs
+   public static final int HEAT_ACTIVITY = 2;  // recent births and deaths
+   private static final int HEAT_BOOST = 64;   // activity added per change
+   private static final int HEAT_DECAY = 2;    // activity lost per q -> p step
+
+   private int heatMode = HEAT_OFF;
+   private int heatClock;        // number of q -> p steps so far
+
    /*-------------------------------------------------*/
 
    LifeGen(String rules)  // constructor
@@ -118,7 +157,7 @@ class LifeGen
 
       qCycle = backCorrect=false;
 
-      living=hibernating=morgue=display=caretaker=null;
+      living=hibernating=morgue=caretaker=null;
 
       hashTable = new LifeHash();
 
@@ -143,7 +182,19 @@ class LifeGen
          rulestring = "12/2-a";
       }
 
-      this.setRules(lifeRules.convertRules(rulestring));
+      LifeRules lr = new LifeRules();
+      boolean[] r = lr.convertRules(rulestring);
+      if (r == null) throw new IllegalArgumentException("bad rule: " + rulestring);
+
+      // B0 and S8 together would leave every generation from the first
+      // on stored complemented, and nothing could show it
+      if (r[0] && r[0x1ff])
+         throw new IllegalArgumentException("B0 rules with S8 are not supported");
+      if (r[0] && topology != PLANE)
+         throw new IllegalArgumentException("B0 rules can't run in a bounded universe");
+
+      lifeRules = lr;
+      this.setRules(r);
    }
 
    public String getRules()
@@ -833,6 +884,8 @@ class LifeGen
 
       //System.out.println("\n*** Q -> P\n");
 
+      heatClock++;
+
       // For each cage:
       for (c=living; c!=null; c=cnext)
       {
@@ -1045,6 +1098,8 @@ class LifeGen
                   }
                }
 
+               if (heatMode != HEAT_OFF) heatStep(c, 0, n0, n1, n2, n3);
+
                c.p[0]=n0; c.p[2]=n2;
                c.p[1]=n1; c.p[3]=n3;
             }
@@ -1193,6 +1248,8 @@ class LifeGen
                         }
                      }
 
+                     if (heatMode != HEAT_OFF) heatStep(c, 4, n0, n1, n2, n3);
+
                      c.p[4]=n0; c.p[6]=n2;
                      c.p[5]=n1; c.p[7]=n3;
                   }
@@ -1339,6 +1396,8 @@ class LifeGen
                         }
                      }
 
+                     if (heatMode != HEAT_OFF) heatStep(c, 8, n0, n1, n2, n3);
+
                      c.p[8]=n0;  c.p[10]=n2;
                      c.p[9]=n1;  c.p[11]=n3;
                   }
@@ -1458,6 +1517,8 @@ class LifeGen
                   c.pstate &= 0xffffff00;
                }
 
+               if (heatMode != HEAT_OFF) heatStep(c, 12, n0, n1, n2, n3);
+
                c.p[12]=n0; c.p[14]=n2;
                c.p[13]=n1; c.p[15]=n3;
             }
@@ -1494,7 +1555,7 @@ class LifeGen
 
       while (victim != null)
       {
-         if ((victim.flags & 1) == 0)  // not being displayed
+         if (victim.shown != viewEpoch)  // not being displayed
          {
             if (victim.Prev != null) victim.Prev.Next = victim.Next;
             else morgue=null;
@@ -1558,8 +1619,6 @@ class LifeGen
       if (living != null) living.Prev=c;
       living=c;
 
-      addToDisplay(c);
-
       hashTable.store(c);
 
       //dumpState();
@@ -1587,6 +1646,7 @@ class LifeGen
       c.Prev = null;
       if (morgue != null) morgue.Prev = c;
       morgue = c;
+      if (sleepWatchers.size() > 0) fellAsleep(c);
 
       //dumpState();
 
@@ -1611,10 +1671,36 @@ class LifeGen
       c.Prev = null;
       if (hibernating != null) hibernating.Prev = c;
       hibernating = c;
+      if (sleepWatchers.size() > 0) fellAsleep(c);
 
       return true;
    }
 
+   private void fellAsleep(LifeCell c)
+   {
+      for (int i=0; i<sleepWatchers.size(); i++)
+         ((Vector)sleepWatchers.elementAt(i)).addElement(c);
+   }
+
+   /*
+    * Have every block that goes to sleep from now on appended to
+    * list (the same block may come more than once), until
+    * unwatchSleep().  With the living list, that is every block
+    * whose cells can have changed since the watcher last looked, as
+    * long as it empties the list each time; only clear() (which
+    * bumps clears) escapes it.  Edits always wake the blocks they
+    * touch.
+    */
+   void watchSleep(Vector list)
+   {
+      sleepWatchers.addElement(list);
+   }
+
+   void unwatchSleep(Vector list)
+   {
+      sleepWatchers.removeElement(list);
+   }
+
    // This cage will have to be calculated next generation.  Take out of either
    // morgue or hibernation state, whichever the case may be:
    private boolean rattleCage(LifeCell c)
@@ -1627,8 +1713,6 @@ class LifeGen
 
       if ((c.flags & 0x02) != 0)  // resurrect from morgue
       {
-         if ((c.flags & 1) == 0) addToDisplay(c);
-
          c.flags &= 0x0ff1;
          //            c.flags &= 0x0ffd;
          c.pstate=c.qstate=0;
@@ -1668,9 +1752,8 @@ class LifeGen
 
    private LifeCell getBlockRef(LifeCoordinate cor, boolean force)
    {
-      int x=cor.x, y=cor.y, x2, y2;
+      int x=cor.x, y=cor.y;
       LifeCell c;
-      boolean hEdge=false, vEdge=false;
 
       if (qCycle) { x--; y--;
          //pin
@@ -1683,59 +1766,64 @@ class LifeGen
          if (c==null) c = allocateCage(x,y);
          else rattleCage(c);
 
-         if (qCycle)
-         {
-            if ((x & 0x0e) == 0x0e) vEdge=true;
-            if ((y & 0x0e) == 0x0e) hEdge=true;
+         if (qCycle) wakeEdges(c, x, y, (x & 0x0e) == 0x0e, (y & 0x0e) == 0x0e);
+         else        wakeEdges(c, x, y, (x & 0x0e) == 0,    (y & 0x0e) == 0);
+      }
 
-            x2=(x+16);  //pin
-            y2=(y+16);  //pin
+      return c;
+   }
 
-            if (vEdge)
-            {
-               if (c.E == null) allocateCage(x2,y);
-               else rattleCage(c.E);
+   // A change near the edge of block c (at cell x,y) affects the
+   // neighbours on that side: on the p side, W, N and NW; on the q
+   // side, E, S and SE.  Make sure they exist and are awake.
+   private void wakeEdges(LifeCell c, int x, int y, boolean vEdge, boolean hEdge)
+   {
+      int x2, y2;
+
+      if (qCycle)
+      {
+         x2=(x+16);  //pin
+         y2=(y+16);  //pin
+
+         if (vEdge)
+         {
+            if (c.E == null) allocateCage(x2,y);
+            else rattleCage(c.E);
 
-               if (hEdge)
-               {
-                  if (c.SE == null) allocateCage(x2,y2);
-                  else rattleCage(c.SE);
-               }
-            }
             if (hEdge)
             {
-               if (c.S == null) allocateCage(x,y2);
-               else rattleCage(c.S);
+               if (c.SE == null) allocateCage(x2,y2);
+               else rattleCage(c.SE);
             }
          }
-         else
+         if (hEdge)
          {
-            if ((x & 0x0e) == 0) vEdge=true;
-            if ((y & 0x0e) == 0) hEdge=true;
-
-            x2=(x-16);  //pin
-            y2=(y-16);  //pin
+            if (c.S == null) allocateCage(x,y2);
+            else rattleCage(c.S);
+         }
+      }
+      else
+      {
+         x2=(x-16);  //pin
+         y2=(y-16);  //pin
 
-            if (vEdge)
-            {
-               if (c.W == null) allocateCage(x2,y);
-               else rattleCage(c.W);
+         if (vEdge)
+         {
+            if (c.W == null) allocateCage(x2,y);
+            else rattleCage(c.W);
 
-               if (hEdge)
-               {
-                  if (c.NW == null) allocateCage(x2,y2);
-                  else rattleCage(c.NW);
-               }
-            }
             if (hEdge)
             {
-               if (c.N == null) allocateCage(x,y2);
-               else rattleCage(c.N);
+               if (c.NW == null) allocateCage(x2,y2);
+               else rattleCage(c.NW);
             }
          }
+         if (hEdge)
+         {
+            if (c.N == null) allocateCage(x,y2);
+            else rattleCage(c.N);
+         }
       }
-
-      return c;
    }
 
    private int getBlockIndex(LifeCoordinate cor)
@@ -1767,6 +1855,7 @@ class LifeGen
       LifeCell c;
 
       backCorrect=false;
+      state ^= inverted;
 
       c=getBlockRef(cor,true);
       ix=getBlockIndex(cor);
@@ -1812,19 +1901,19 @@ class LifeGen
       LifeCell c;
 
       c=getBlockRef(cor,false);
-      if (c==null) return false;  // no block, no cell
+      if (c==null) return inverted;  // no block, no cell
       ix=getBlockIndex(cor);
       bitset=getBlockBitmask(cor);
 
       if (qCycle)
       {
-         if ((c.q[ix] & bitset)==0) return false;
-         else return true;
+         if ((c.q[ix] & bitset)==0) return inverted;
+         else return !inverted;
       }
       else
       {
-         if ((c.p[ix] & bitset)==0) return false;
-         else return true;
+         if ((c.p[ix] & bitset)==0) return inverted;
+         else return !inverted;
       }
    }
 
@@ -1836,6 +1925,585 @@ class LifeGen
       return testCell(cor);
    }
 
+   /*
+    * getTile()
+    *
+    * Copy the 16x16 cells whose upper left corner is (x0,y0) into
+    * rows[0..15], one row per int, leftmost cell in bit 15.  Any
+    * alignment works; the tile is pieced together from up to four
+    * blocks of the current (p or q) side.
+    */
+   public void getTile(int x0, int y0, int[] rows)
+   {
+      getTile(x0, y0, rows, qCycle);
+   }
+
+   /*
+    * getTile() from the p side (qSide false) or the q side, current
+    * or not.  The other side holds the generation before, or, in a
+    * hibernating block, the other phase of a period 2 oscillator.
+    */
+   void getTile(int x0, int y0, int[] rows, boolean qSide)
+   {
+      int off = qSide? 1:0;
+      boolean inv = inverted && qSide==qCycle;
+      int x = x0-off, y = y0-off;
+      int bx = x>>4, by = y>>4;
+      int sx = x & 15, sy = y & 15;
+
+      if (sx==0 && sy==0)
+      {
+         blockRows(getBlock(bx,by), rows, qSide);
+         if (inv) invertRows(rows);
+         return;
+      }
+
+      int[] nw = new int[16], ne = new int[16];
+      int[] sw = new int[16], se = new int[16];
+
+      blockRows(getBlock(bx,by), nw, qSide);
+      blockRows(sx==0? null : getBlock(bx+1,by), ne, qSide);
+      blockRows(sy==0? null : getBlock(bx,by+1), sw, qSide);
+      blockRows(sx==0 || sy==0? null : getBlock(bx+1,by+1), se, qSide);
+
+      for (int j=0; j<16; j++)
+      {
+         int r = sy+j, left, right;
+
+         if (r<16) { left=nw[r];    right=ne[r]; }
+         else      { left=sw[r-16]; right=se[r-16]; }
+
+         rows[j] = (((left<<16) | right) << sx) >>> 16;
+      }
+      if (inv) invertRows(rows);
+   }
+
+   private static void invertRows(int[] rows)
+   {
+      for (int j=0; j<16; j++) rows[j] ^= 0xffff;
+   }
+
+   // rows of the current side of block c (all zero if there's no block)
+   private void blockRows(LifeCell c, int[] rows)
+   {
+      blockRows(c, rows, qCycle);
+   }
+
+   private static void blockRows(LifeCell c, int[] rows, boolean qSide)
+   {
+      if (c==null)
+      {
+         for (int j=0; j<16; j++) rows[j]=0;
+         return;
+      }
+      LifeCell.wordsToRows(qSide? c.q : c.p, rows);
+   }
+
+   /*
+    * putTile()
+    *
+    * Turn on every cell set in rows[] (16 rows, leftmost cell in
+    * bit 15, as from getTile()) in the 16x16 square whose upper left
+    * corner is at x0,y0, on the current side.  Cells already on stay
+    * on.  This is the bulk version of changeCell(): each block is
+    * found, woken and invalidated once, instead of once per cell.
+    * Loaders should line tiles up with the block grid (x0-off and
+    * y0-off multiples of 16, off = qCycle?1:0); anything else works,
+    * but is split over up to four blocks.
+    */
+   public void putTile(int x0, int y0, int[] rows)
+   {
+      backCorrect=false;
+      changeTile(x0, y0, rows, true);
+   }
+
+   /** putTile(), turning the cells set in rows[] off instead. */
+   public void clearTile(int x0, int y0, int[] rows)
+   {
+      backCorrect=false;
+      changeTile(x0, y0, rows, false);
+   }
+
+   /** putTile(), flipping the cells set in rows[]. */
+   public void xorTile(int x0, int y0, int[] rows)
+   {
+      int[] old = new int[16], on = new int[16], off = new int[16];
+
+      getTile(x0, y0, old);
+      for (int j=0; j<16; j++)
+      {
+         on[j] = rows[j] & ~old[j];
+         off[j] = rows[j] & old[j];
+      }
+      backCorrect=false;
+      changeTile(x0, y0, on, true);
+      changeTile(x0, y0, off, false);
+   }
+
+   private void changeTile(int x0, int y0, int[] rows, boolean on)
+   {
+      int off = qCycle? 1:0;
+      int x = x0-off, y = y0-off;
+      int sx = x & 15, sy = y & 15;
+      boolean state = on ^ inverted;
+
+      if (sx==0 && sy==0)
+      {
+         changeBlock(x, y, rows, state);
+         return;
+      }
+
+      int[] part = new int[16];
+
+      for (int dy=0; dy<2; dy++)
+      {
+         if (dy==1 && sy==0) break;
+
+         for (int dx=0; dx<2; dx++)
+         {
+            if (dx==1 && sx==0) break;
+
+            for (int j=0; j<16; j++)
+            {
+               int t = j + 16*dy - sy;   // tile row landing on block row j
+
+               if (t<0 || t>15) part[j]=0;
+               else if (dx==0)  part[j] = (rows[t] & 0xffff) >>> sx;
+               else             part[j] = (rows[t] << (16-sx)) & 0xffff;
+            }
+
+            changeBlock((x & ~15) + 16*dx, (y & ~15) + 16*dy, part, state);
+         }
+      }
+   }
+
+   // Turn the cells set in rows on (state) or off in the block at
+   // x,y (block-aligned, current side).  Only cells that really change
+   // count: if none do, the block is left alone, hibernating or not.
+   private void changeBlock(int x, int y, int[] rows, boolean state)
+   {
+      int any = 0, diff = 0;
+      short[] cur, w = new short[16];
+      LifeCell c;
+
+      for (int j=0; j<16; j++) any |= rows[j];
+      if ((any & 0xffff)==0) return;
+
+      c = hashTable.retrieve(x,y);
+      if (c==null)
+      {
+         if (!state) return;
+         c = allocateCage(x,y);
+      }
+
+      cur = qCycle? c.q : c.p;
+      LifeCell.rowsToWords(rows, w);
+      for (int ix=0; ix<16; ix++)
+      {
+         int now = state? (cur[ix] | w[ix]) : (cur[ix] & ~w[ix]);
+         w[ix] = (short)(now ^ cur[ix]);   // now: what changes
+         diff |= w[ix];
+         cur[ix] = (short)now;
+      }
+      if (diff==0) return;
+
+      rattleCage(c);
+
+      int[] changed = new int[16];
+      LifeCell.wordsToRows(w, changed);
+      any = 0;
+      for (int j=0; j<16; j++) any |= changed[j];
+
+      if (qCycle)
+      {
+         wakeEdges(c, x, y, (any & 0x0003) != 0, (changed[14]|changed[15]) != 0);
+
+         c.qstate = 0;
+         if (c.N != null) c.N.qstate &= 0xff00ff00;
+         if (c.W != null) c.W.qstate &= 0xffff0000;
+         if (c.NW != null) c.NW.qstate &= 0xffffff00;
+      }
+      else
+      {
+         wakeEdges(c, x, y, (any & 0xc000) != 0, (changed[0]|changed[1]) != 0);
+
+         c.pstate = 0;
+         if (c.S != null) c.S.pstate &= 0x00ff00ff;
+         if (c.E != null) c.E.pstate &= 0x0000ffff;
+         if (c.SE != null) c.SE.pstate &= 0x00ffffff;
+      }
+   }
+
+   /*
+    * setCells()
+    *
+    * Bulk changeCell(): set cells (xs[i],ys[i]), i<n, to state.  The
+    * batch is sorted into block order first, so each block touched is
+    * looked up, woken and invalidated only once.
+    */
+   public void setCells(int[] xs, int[] ys, int n, boolean state)
+   {
+      backCorrect=false;
+      changeCells(xs, ys, n, state);
+   }
+
+   /*
+    * For LifeCluster, which keeps seams of its own between steps:
+    * seam cells are written and cleared like setCells() and
+    * putTile(), but it isn't an edit, so backCorrect (and with it
+    * stepBack() and the hibernation states) is left alone.
+    */
+   void seamCells(int[] xs, int[] ys, int n)
+   {
+      changeCells(xs, ys, n, true);
+   }
+
+   void seamTile(int x0, int y0, int[] rows, boolean on)
+   {
+      changeTile(x0, y0, rows, on);
+   }
+
+   // setCells(), leaving backCorrect alone
+   private void changeCells(int[] xs, int[] ys, int n, boolean state)
+   {
+      int off = qCycle? 1:0;
+      long[] keys = new long[n];
+      int[] rows = new int[16];
+
+      // block (16 bits each way), then position in the block (8 bits)
+      for (int i=0; i<n; i++)
+      {
+         int x = xs[i]-off, y = ys[i]-off;
+         keys[i] = ((long)((x>>4) & 0xffff) << 24)
+                 | ((long)((y>>4) & 0xffff) << 8)
+                 | ((y & 15)<<4) | (x & 15);
+      }
+      Arrays.sort(keys);
+
+      for (int i=0; i<n; )
+      {
+         long block = keys[i]>>8;
+
+         for (int j=0; j<16; j++) rows[j]=0;
+         for (; i<n && (keys[i]>>8)==block; i++)
+         {
+            int k = (int)keys[i] & 0xff;
+            rows[k>>4] |= 0x8000>>>(k & 15);
+         }
+
+         changeBlock(((short)(block>>16))<<4, ((short)block)<<4, rows, state);
+      }
+   }
+
+   /*
+    * setBitmap()
+    *
+    * Turn on the cells of a w x h bitmap placed with its upper left
+    * corner at x0,y0.  bits[] holds the bitmap a row at a time, 16
+    * cells per int (leftmost in bit 15), stride ints per row.  Works
+    * a block at a time, like putTile().
+    */
+   public void setBitmap(int x0, int y0, int w, int h, int[] bits, int stride)
+   {
+      int off = qCycle? 1:0;
+      int gx0 = (x0-off) & ~15, gy0 = (y0-off) & ~15;
+      int[] rows = new int[16];
+
+      backCorrect=false;
+
+      for (int gy=gy0; gy < y0-off+h; gy+=16)
+      {
+         for (int gx=gx0; gx < x0-off+w; gx+=16)
+         {
+            for (int j=0; j<16; j++)
+            {
+               int r = gy+j - (y0-off);   // bitmap row
+               rows[j] = (r<0 || r>=h)? 0
+                  : bitmapSpan(bits, r*stride, w, gx - (x0-off));
+            }
+            changeBlock(gx, gy, rows, true);
+         }
+      }
+   }
+
+   /*
+    * paste()
+    *
+    * Turn on every live cell of another universe, in the same place
+    * in this one.  Goes a block at a time, through getTile() and
+    * putTile(), so the two needn't be on the same side (p or q).
+    */
+   public void paste(LifeGen from)
+   {
+      int off = from.qCycle? 1:0;
+      LifeCell[] blocks = from.getBlocksInOrder();
+      int[] rows = new int[16];
+
+      for (int i=0; i<blocks.length; i++)
+      {
+         int x = blocks[i].x*16+off, y = blocks[i].y*16+off;
+         from.getTile(x, y, rows);
+         putTile(x, y, rows);
+      }
+   }
+
+   // 16 bits of a bitmap row starting at column col (may be <0 or
+   // run past the end: cells outside 0..w-1 are off).
+   private static int bitmapSpan(int[] bits, int rowStart, int w, int col)
+   {
+      int t = col>>4, sh = col & 15;
+      int lo = (t>=0 && t*16<w)? bits[rowStart+t] & 0xffff : 0;
+      int hi = (t+1>=0 && (t+1)*16<w)? bits[rowStart+t+1] & 0xffff : 0;
+      int r = (((lo<<16) | hi) << sh) >>> 16;
+
+      int end = w - col;
+      if (end < 16) r &= (end<=0)? 0 : ~(0xffff>>>end);
+      return r & 0xffff;
+   }
+
+   /*
+    * getPopulation()
+    *
+    * The number of live cells, as stored (see isInverted()).
+    */
+   public long getPopulation()
+   {
+      long pop = 0;
+
+      for (int pass=0; pass<2; pass++)
+      {
+         for (LifeCell c = (pass==0)? living : hibernating; c!=null; c=c.Next)
+         {
+            short[] w = qCycle? c.q : c.p;
+            for (int ix=0; ix<16; ix++) pop += Integer.bitCount(w[ix] & 0xffff);
+         }
+      }
+      return pop;
+   }
+
+   /*
+    * getBoundingBox()
+    *
+    * Find the smallest rectangle holding every live cell, as
+    * {left, top, right, bottom} (inclusive).  Returns false if the
+    * universe is empty.  Only living and hibernating blocks are
+    * looked at; the morgue is empty by definition.
+    */
+   public boolean getBoundingBox(int[] box)
+   {
+      int off = qCycle? 1:0;
+      int[] rows = new int[16];
+      boolean found = false;
+      int left=0, top=0, right=0, bottom=0;
+
+      for (int pass=0; pass<2; pass++)
+      {
+         for (LifeCell c = (pass==0)? living : hibernating; c!=null; c=c.Next)
+         {
+            blockRows(c, rows);
+
+            int or = 0, first = -1, last = -1;
+            for (int j=0; j<16; j++)
+            {
+               if (rows[j]==0) continue;
+               or |= rows[j];
+               if (first<0) first=j;
+               last=j;
+            }
+            if (or==0) continue;
+
+            int x = c.x*16+off, y = c.y*16+off;
+            int l = x + Integer.numberOfLeadingZeros(or)-16;
+            int r = x + 15-Integer.numberOfTrailingZeros(or);
+
+            if (!found || l<left) left=l;
+            if (!found || r>right) right=r;
+            if (!found || y+first<top) top=y+first;
+            if (!found || y+last>bottom) bottom=y+last;
+            found = true;
+         }
+      }
+
+      if (found)
+      {
+         box[0]=left; box[1]=top; box[2]=right; box[3]=bottom;
+      }
+      return found;
+   }
+
+   /**
+    * Every living and hibernating block, sorted top to bottom and
+    * then left to right, for writers that stream the pattern out a
+    * band of blocks at a time.
+    */
+   public LifeCell[] getBlocksInOrder()
+   {
+      int n = 0;
+      for (LifeCell c=living; c!=null; c=c.Next) n++;
+      for (LifeCell c=hibernating; c!=null; c=c.Next) n++;
+
+      LifeCell[] blocks = new LifeCell[n];
+      n = 0;
+      for (LifeCell c=living; c!=null; c=c.Next) blocks[n++]=c;
+      for (LifeCell c=hibernating; c!=null; c=c.Next) blocks[n++]=c;
+
+      Arrays.sort(blocks, new Comparator<LifeCell>()
+      {
+         public int compare(LifeCell a, LifeCell b)
+         {
+            if (a.y != b.y) return a.y < b.y? -1 : 1;
+            return a.x < b.x? -1 : a.x==b.x? 0 : 1;
+         }
+      });
+      return blocks;
+   }
+
+   /*
+    * Heat tracking.
+    *
+    * Each block can carry a byte per cell holding either the cell's
+    * age or how active it has been lately.  It is only updated where
+    * generate_q() computes new p words anyway, by looking at the bits
+    * that changed, so blocks that are hibernating or not computed
+    * cost nothing.  Time that passes while a block is not being
+    * computed is caught up all at once, the next time it is touched
+    * or drawn (heatStamp records how far it has got).
+    *
+    * Since only the p side is looked at, each cell is compared with
+    * its state two generations earlier, like the hibernation logic
+    * does: a period-2 oscillator counts as still life.
+    */
+   public void setHeatMode(int mode)
+   {
+      if (mode == heatMode) return;
+      heatMode = mode;
+
+      // start over: what was kept for another mode means nothing now
+      for (int pass=0; pass<3; pass++)
+      {
+         LifeCell c = (pass==0)? living : (pass==1)? hibernating : morgue;
+         for (; c!=null; c=c.Next) c.heat = null;
+      }
+   }
+
+   public int getHeatMode()
+   {
+      return heatMode;
+   }
+
+   /**
+    * Fill heat[] with the age or activity of each cell of block c as
+    * the display sees it (same side and layout as getTile(): row*16
+    * + column).  Ages are in pairs of generations, up to 255; activity
+    * is 0 (quiet) to 255 (changing all the time).  Returns false if
+    * no heat is kept.
+    */
+   public boolean getHeat(LifeCell c, byte[] heat)
+   {
+      if (heatMode == HEAT_OFF) return false;
+
+      if (!qCycle)
+      {
+         System.arraycopy(heatOf(c), 0, heat, 0, 256);
+         return true;
+      }
+
+      // a q block is offset by (1,1), so it overlaps the p sides of
+      // itself and its E, S and SE neighbours.
+      byte[] h = heatOf(c), hE = heatOf(c.E), hS = heatOf(c.S), hSE = heatOf(c.SE);
+
+      for (int j=0; j<16; j++)
+      {
+         for (int i=0; i<16; i++)
+         {
+            int x = i+1, y = j+1;
+            byte[] src = (y<16)? ((x<16)? h : hE) : ((x<16)? hS : hSE);
+            heat[j*16+i] = (src==null)? 0 : src[(y & 15)*16 + (x & 15)];
+         }
+      }
+      return true;
+   }
+
+   private byte[] heatOf(LifeCell c)
+   {
+      if (c == null) return null;
+      heatCatchUp(c, heatClock);
+      return c.heat;
+   }
+
+   // called from generate_q() just before words base..base+3 of c.p
+   // are replaced by n0..n3.
+   private void heatStep(LifeCell c, int base, short n0, short n1, short n2, short n3)
+   {
+      heatCatchUp(c, heatClock-1);
+
+      heatChanged(c, base,   c.p[base]   ^ n0);
+      heatChanged(c, base+1, c.p[base+1] ^ n1);
+      heatChanged(c, base+2, c.p[base+2] ^ n2);
+      heatChanged(c, base+3, c.p[base+3] ^ n3);
+   }
+
+   private void heatChanged(LifeCell c, int ix, int changed)
+   {
+      byte[] h = c.heat;
+      int k, v;
+
+      changed &= 0xffff;
+      while (changed != 0)
+      {
+         k = LifeCell.cellIndex[(ix<<4) | Integer.numberOfTrailingZeros(changed)];
+         changed &= changed-1;
+
+         if (heatMode == HEAT_AGE) h[k] = 0;   // born or died: start over
+         else
+         {
+            v = (h[k] & 0xff) + HEAT_BOOST;
+            h[k] = (byte)((v>255)? 255 : v);
+         }
+      }
+   }
+
+   // bring c.heat up to step now, assuming c.p hasn't changed since
+   private void heatCatchUp(LifeCell c, int now)
+   {
+      if (c.heat == null)
+      {
+         c.heat = new byte[256];
+         c.heatStamp = now;
+         return;
+      }
+
+      int elapsed = now - c.heatStamp;
+      if (elapsed <= 0) return;
+      c.heatStamp = now;
+
+      byte[] h = c.heat;
+      int k, v, w;
+
+      if (heatMode == HEAT_AGE)
+      {
+         if (elapsed > 255) elapsed = 255;
+         for (int ix=0; ix<16; ix++)
+         {
+            for (w = c.p[ix] & 0xffff; w != 0; w &= w-1)
+            {
+               k = LifeCell.cellIndex[(ix<<4) | Integer.numberOfTrailingZeros(w)];
+               v = (h[k] & 0xff) + elapsed;
+               h[k] = (byte)((v>255)? 255 : v);
+            }
+         }
+      }
+      else
+      {
+         int loss = (elapsed > 255/HEAT_DECAY)? 255 : elapsed*HEAT_DECAY;
+         for (k=0; k<256; k++)
+         {
+            v = (h[k] & 0xff) - loss;
+            h[k] = (byte)((v<0)? 0 : v);
+         }
+      }
+   }
+
    /*
     * setRules()
     *
@@ -1847,6 +2515,285 @@ class LifeGen
     * 128 times larger, and some extra initialization time.
     */
    private void setRules(boolean[] Rule)
+   {
+      // the tables aren't fetched (or built) until the next generation,
+      // so a run of rule changes only pays for the last one
+      newRule = (boolean[])Rule.clone();
+      rattleAllCages();
+   }
+
+   // pick the table for the next step: crunch going p -> q, munch
+   // going q -> p.  Changing a table wakes every cage, since whatever
+   // was asleep was only stable under the old one.
+   private void fetchTables()
+   {
+      if (newRule != null)
+      {
+         rule = newRule;
+         newRule = null;
+         stepTables[0] = stepTables[1] = null;
+      }
+
+      int inv = inverted? 1:0;
+      if (stepTables[inv] == null)
+      {
+         // the tables are shared with every universe on the same rule
+         stepTables[inv] = LifeRuleTables.get(stepRule(rule, inverted));
+      }
+
+      short[][] tables = stepTables[inv];
+      if (qCycle)
+      {
+         if (munch != tables[1])
+         {
+            if (munch != null) rattleAllCages();
+            munch = tables[1];
+         }
+      }
+      else
+      {
+         if (crunch != tables[0])
+         {
+            if (crunch != null) rattleAllCages();
+            crunch = tables[0];
+         }
+      }
+   }
+
+   /*
+    * The rule for one step from cells stored as they are (inv false)
+    * or complemented (inv true), giving cells stored however keeps
+    * the background 0: complemented if the background comes alive,
+    * that is by B0 from a dead one or S8 from a live one.  So a B0
+    * rule alternates between the two, in step with qCycle, and every
+    * other rule just uses its own array.
+    */
+   static boolean[] stepRule(boolean[] rule, boolean inv)
+   {
+      boolean next = inv? rule[0x1ff] : rule[0];
+      if (!inv && !next) return rule;
+
+      boolean[] r = new boolean[512];
+      for (int i=0; i<512; i++)
+         r[i] = rule[inv? (~i & 0x1ff) : i] ^ next;
+      return r;
+   }
+
+   /**
+    * True if the current generation is stored complemented (an odd
+    * generation of a B0 rule): every cell the engine holds as on is
+    * really off, and the rest of the plane is on.  testCell(),
+    * changeCell(), getTile() and putTile() allow for it; the display,
+    * the pattern writers and the other bulk calls see the cells as
+    * stored, so Life never stops on such a generation.
+    */
+   public boolean isInverted()
+   {
+      return inverted;
+   }
+
+   /**
+    * True if the rule (or the one about to take over) has B0, so
+    * that its odd generations will be stored complemented.
+    */
+   public boolean hasB0()
+   {
+      boolean[] r = (newRule != null)? newRule : rule;
+      return r != null && r[0];
+   }
+
+   /** For LifeSnapshot, restoring an inverted generation. */
+   void setInverted(boolean inv)
+   {
+      inverted = inv;
+   }
+
+   /**
+    * Make the universe bounded, w x h cells with the upper left at
+    * 0,0: a TORUS, a KLEIN_BOTTLE (left and right edges joined
+    * straight, top and bottom with left and right swapped), a
+    * CROSS_SURFACE (both pairs swapped), or a RECTANGLE with nothing
+    * living outside.  PLANE makes it unbounded again (w and h are
+    * ignored).  Cells outside the bounds are cleared, now and before
+    * each run, so anything put there is lost.
+    */
+   public void setTopology(int kind, int w, int h)
+   {
+      if (kind == PLANE)
+      {
+         topology = PLANE;
+         boundW = boundH = 0;
+         return;
+      }
+      if (kind < TORUS || kind > RECTANGLE)
+         throw new IllegalArgumentException("unknown topology " + kind);
+      if (w < 1 || h < 1 || w > MAX_BOUND || h > MAX_BOUND)
+         throw new IllegalArgumentException("bad bounds " + w + "x" + h);
+
+      // the background of a B0 rule comes alive, outside as well
+      boolean[] r = (newRule != null)? newRule : rule;
+      if (inverted || (r != null && r[0]))
+         throw new IllegalArgumentException("B0 rules can't run in a bounded universe");
+
+      topology = kind;
+      boundW = w;
+      boundH = h;
+      clipAll();
+   }
+
+   public int getTopology()
+   {
+      return topology;
+   }
+
+   public int getBoundWidth()
+   {
+      return boundW;
+   }
+
+   public int getBoundHeight()
+   {
+      return boundH;
+   }
+
+   // Turn on each cell of the ring just outside the bounds whose
+   // partner across the seam is on.  The cells outside are all off
+   // beforehand, so only the ones that are on need writing.
+   private void fillSeams()
+   {
+      int w=boundW, h=boundH;
+      int[] xs = new int[2*(w+h)+4], ys = new int[xs.length];
+      int n = 0;
+
+      boolean[][] edge = {boundLine(0, false), boundLine(h-1, false),
+                          boundLine(0, true), boundLine(w-1, true)};
+
+      for (int x=-1; x<=w; x++)
+      {
+         if (seamCell(edge, x, -1)) { xs[n]=x; ys[n++]=-1; }
+         if (seamCell(edge, x, h))  { xs[n]=x; ys[n++]=h; }
+      }
+      for (int y=0; y<h; y++)
+      {
+         if (seamCell(edge, -1, y)) { xs[n]=-1; ys[n++]=y; }
+         if (seamCell(edge, w, y))  { xs[n]=w;  ys[n++]=y; }
+      }
+      if (n > 0) changeCells(xs, ys, n, true);
+   }
+
+   // the partner across the seam of the cell x,y, just outside the
+   // bounds, looked up in edge[] = {top, bottom, left, right}
+   private boolean seamCell(boolean[][] edge, int x, int y)
+   {
+      int w=boundW, h=boundH;
+
+      if (topology == RECTANGLE) return false;
+
+      if (x<0 || x>=w)
+      {
+         x = (x<0)? x+w : x-w;
+         if (topology == CROSS_SURFACE) y = h-1-y;
+      }
+      if (y<0 || y>=h)
+      {
+         y = (y<0)? y+h : y-h;
+         if (topology != TORUS) x = w-1-x;
+      }
+
+      if (y==0) return edge[0][x];
+      if (y==h-1) return edge[1][x];
+      if (x==0) return edge[2][y];
+      return edge[3][y];
+   }
+
+   // row (or column) at of the bounds, a cell per entry
+   private boolean[] boundLine(int at, boolean column)
+   {
+      int n = column? boundH : boundW;
+      boolean[] line = new boolean[n];
+      int[] rows = new int[16];
+
+      for (int i=0; i<n; i+=16)
+      {
+         if (column) getTile(at, i, rows);
+         else        getTile(i, at, rows);
+
+         for (int k=0; k<16 && i+k<n; k++)
+            line[i+k] = column? (rows[k] & 0x8000) != 0
+                              : (rows[0] & (0x8000>>>k)) != 0;
+      }
+      return line;
+   }
+
+   // Clear the cells outside the bounds after a step.  They can only
+   // be in the two cells nearest the bounds, so only the blocks
+   // along the edges are looked at.
+   private void clipSeams()
+   {
+      int off = qCycle? 1:0;
+      int left = (-2-off)>>4, right = (boundW+1-off)>>4;
+      int top = (-2-off)>>4, bottom = (boundH+1-off)>>4;
+      int pastRight = (boundW-off)>>4, pastBottom = (boundH-off)>>4;
+
+      for (int bx=left; bx<=right; bx++)
+      {
+         clipBlock(bx, top);
+         for (int by=pastBottom; by<=bottom; by++) clipBlock(bx, by);
+      }
+      for (int by=top+1; by<pastBottom; by++)
+      {
+         clipBlock(left, by);
+         for (int bx=pastRight; bx<=right; bx++) clipBlock(bx, by);
+      }
+   }
+
+   // clear the cells outside the bounds wherever they are
+   private void clipAll()
+   {
+      int off = qCycle? 1:0;
+      LifeCell[] out = new LifeCell[16];
+      int n = 0;
+
+      // clipping moves blocks between lists, so find them all first
+      for (int pass=0; pass<2; pass++)
+      {
+         for (LifeCell c = (pass==0)? living : hibernating; c!=null; c=c.Next)
+         {
+            int x0 = c.x*16+off, y0 = c.y*16+off;
+            if (x0>=0 && x0+15<boundW && y0>=0 && y0+15<boundH) continue;
+
+            if (n == out.length) out = Arrays.copyOf(out, 2*n);
+            out[n++] = c;
+         }
+      }
+      for (int i=0; i<n; i++) clipBlock(out[i].x, out[i].y);
+   }
+
+   // clear whatever lies outside the bounds in block bx,by
+   private void clipBlock(int bx, int by)
+   {
+      int off = qCycle? 1:0;
+      int x0 = bx*16+off, y0 = by*16+off;
+
+      if (x0>=0 && x0+15<boundW && y0>=0 && y0+15<boundH) return;
+
+      int outside = 0;   // columns outside, leftmost in bit 15
+      for (int i=0; i<16; i++)
+         if (x0+i<0 || x0+i>=boundW) outside |= 0x8000>>>i;
+
+      int[] rows = new int[16];
+      for (int j=0; j<16; j++)
+         rows[j] = (y0+j<0 || y0+j>=boundH)? 0xffff : outside;
+      changeBlock(bx*16, by*16, rows, false);
+   }
+
+   /**
+    * Fill in entries from..to-1 of the crunch and munch tables for a
+    * rule array.  Each run of 16 entries is independent of the rest,
+    * so from and to must be multiples of 16.
+    */
+   static void buildTables(boolean[] Rule, short[] crunch, short[] munch,
+                           int from, int to)
    {
       int ic000, i3000, i0c00, i0300, i00c0, i0030,
       i8000, i4000, i2000, i1000, i0800, i0400, i0200, i0100,
@@ -1864,7 +2811,7 @@ class LifeGen
       int m1, m2;
 
 
-      for (int i=0; i<0x10000; i+=0x10)
+      for (int i=from; i<to; i+=0x10)
       {
          ic000=i&0xc000; i3000=i&0x3000;
          i0c00=i&0x0c00; i0300=i&0x0300;
@@ -2067,38 +3014,25 @@ class LifeGen
          munch[i+15]  = (short)((m1 & 0x00ff) | (m2 & 0xff00));
 
       }
-      rattleAllCages();
    }
 
-   public void removeFromDisplay(LifeCell c)
-   {
-      if ((c.flags & 1)==0) return;
-
-      if (c.DisplayPrev != null) c.DisplayPrev.DisplayNext = c.DisplayNext;
-      else display=c.DisplayNext;
-      if (c.DisplayNext != null) c.DisplayNext.DisplayPrev = c.DisplayPrev;
-      c.DisplayNext=null;
-      c.DisplayPrev=null;
-
-      c.flags &= 0xfffe;
-   }
-
-   private void addToDisplay(LifeCell c)
+   /**
+    * The display has been cleared and is about to be redrawn from
+    * scratch (e.g. after scrolling), so nothing drawn before counts
+    * as showing any more.
+    */
+   public void freshenView()
    {
-      if ((c.flags & 1) != 0) return;
-
-      if (display!=null) display.DisplayPrev=c;
-      c.DisplayNext=display;
-      display=c;
-
-      c.flags |= 1;
+      viewEpoch++;
    }
 
-
-   public void freshenView()
+   /**
+    * Block lookup by block coordinates, for the display to find what
+    * lies in the viewing window.  Returns null if there's no block.
+    */
+   public LifeCell getBlock(int bx, int by)
    {
-      for (LifeCell c=living; c!=null; c=c.Next) addToDisplay(c);
-      for (LifeCell c=hibernating; c!=null; c=c.Next) addToDisplay(c);
+      return hashTable.retrieveBlock((short)bx, (short)by);
    }
 
    /*
@@ -2108,13 +3042,14 @@ class LifeGen
     */
    public void clear()
    {
-      living=display=morgue=hibernating=caretaker=null;
+      living=morgue=hibernating=caretaker=null;
       hashTable = new LifeHash();
+      viewEpoch++;
+      clears++;
       qCycle=false;
-      last_gencount=gencount=countdown_gen=0;
-      predicted_blap_interval = 0;
-      last_blap_interval = interval/2;
-      last_timestamp=0;
+      inverted=false;
+      gencount=countdown_gen=0;
+      heatClock=0;
    }
 
    public boolean isEmpty()
@@ -2123,121 +3058,81 @@ class LifeGen
       return false;
    }
 
-   public void setRefresh(int millis)
+   /*
+    * Hooks for LifeSnapshot, which saves the block lists exactly as
+    * they are (order, flags and all) so a run can be resumed without
+    * any difference, and puts them back with restore().
+    */
+   LifeCell getList(int which)   // 0 = living, 1 = hibernating, 2 = morgue
    {
-      interval=millis;
+      return which==0? living : which==1? hibernating : morgue;
    }
 
-   public void setSpeed(int gensPerBlap)
+   LifeCell getCaretaker()
    {
-      speed=gensPerBlap;
+      return caretaker;
    }
 
-   private boolean isItTimeToDisplay()
+   int getCountdown()
    {
-      timenow=System.currentTimeMillis();
-
-      if (gencount==last_gencount) return false;
+      return countdown_gen;
+   }
 
-      // Execute rule that when running full speed, the number
-      // of skipped generations from one frame refresh to the
-      // next should not differ by more than 10%.
-      if (speed == 0 && last_gen_interval > 0)
-      {
-         long leeway = last_gen_interval/10;   // 10%
-         if (leeway == 0) leeway=1;  // always allow a difference of 1
-         if (gencount-last_gencount <
-             last_gen_interval - leeway) return false;
-         if (gencount-last_gencount >
-             last_gen_interval + leeway)
-         {
-            last_gen_interval = gencount-last_gencount;
-            last_gencount=gencount;   // blap!
-            return true;
-         }
-      }
+   int getHeatClock()
+   {
+      return heatClock;
+   }
 
-      // Check the time!
-      // Can we do another generation before displaying?
-      // Yes: return false;
+   /**
+    * Replace the universe with blocks[], which holds the living, the
+    * hibernating and then the morgue list, each in list order.  The
+    * blocks need only their coordinates, words, state and flags set;
+    * the lists, hash table and neighbour links are rebuilt here.
+    * caretaker is an index into the morgue part, or -1.
+    */
+   void restore(LifeCell[] blocks, int nLiving, int nHibernating,
+         int caretakerIndex, int countdown, int clock)
+   {
+      clear();
+      countdown_gen = countdown;
+      heatClock = clock;
 
-      long time_past = timenow-last_timestamp;
-      long predicted_blap_interval1000=predicted_blap_interval/1000;
+      hashTable = new LifeHash(blocks.length);
+      for (int i=0; i<blocks.length; i++) hashTable.store(blocks[i]);
 
-      if (speed>0)
+      int[] ends = {nLiving, nLiving+nHibernating, blocks.length};
+      LifeCell[] heads = new LifeCell[3];
+      for (int list=0, i=0; list<3; list++)
       {
-         // skip at least the requested number of generations
-         if (gencount-last_gencount < speed) return false;
-
-         long time2sleep = interval - predicted_blap_interval1000
-            - ((time_past/(gencount-last_gencount))/2);
-
-         if (time2sleep > 0)
+         LifeCell prev = null;
+         for (; i<ends[list]; i++)
          {
-            try
-            {
-               Thread.currentThread().sleep(time2sleep);
-            }catch (InterruptedException ie)
-            {}
+            LifeCell c = blocks[i];
+            c.Prev = prev;
+            c.Next = null;
+            if (prev==null) heads[list]=c;
+            else prev.Next=c;
+            prev = c;
          }
-         timenow=System.currentTimeMillis();
-         time_past = timenow-last_timestamp;
-
-         last_gen_interval = gencount-last_gencount;
-         last_gencount=gencount;   // blap!
-         return true;
-         /* old method, which made fps inaccurate on Wintel machines
-            while (time_past+predicted_blap_interval1000
-            +((time_past/(gencount-last_gencount))/2)
-            < interval)
-            {
-            try
-            {   Thread.currentThread().sleep(5);
-            }catch (InterruptedException ie)
-            {}
-            timenow=System.currentTimeMillis();
-            time_past = timenow-last_timestamp;
-            }
-          */
-      }
-      else
-      {
-         // enforce the rule that you can't spend more than 80%
-         // of the time in the display code:
-         if (time_past*5 < predicted_blap_interval1000) return false;
       }
+      living = heads[0];
+      hibernating = heads[1];
+      morgue = heads[2];
+      caretaker = caretakerIndex<0? null : blocks[ends[1]+caretakerIndex];
 
-      if (time_past+predicted_blap_interval1000
-            +((time_past/(gencount-last_gencount))/2)
-            >= interval)
+      for (int i=0; i<blocks.length; i++)
       {
-         last_gen_interval = gencount-last_gencount;
-         last_gencount=gencount;   // blap!
-         return true;
+         LifeCell c = blocks[i];
+         short x=c.x, y=c.y;
+         c.S  = hashTable.retrieveBlock(x, (short)(y+1));
+         c.E  = hashTable.retrieveBlock((short)(x+1), y);
+         c.SE = hashTable.retrieveBlock((short)(x+1), (short)(y+1));
+         c.N  = hashTable.retrieveBlock(x, (short)(y-1));
+         c.W  = hashTable.retrieveBlock((short)(x-1), y);
+         c.NW = hashTable.retrieveBlock((short)(x-1), (short)(y-1));
       }
-
-      return false;  // no blap
    }
 
-   private void markTime(boolean break4blap)
-   {
-      // record the most recent experimental length of time
-      // that it takes to display the universe in the applet window:
-      last_timestamp=System.currentTimeMillis();
-
-      if (break4blap)
-      {
-         if (timenow!=0) last_blap_interval=last_timestamp-timenow;
-
-         predicted_blap_interval =
-            (predicted_blap_interval*7 + last_blap_interval*1000)/8;
-         // weighted average to smooth out the bumps
-         // because Windows-95 platform reports milliseconds
-         // in bunches of 50 and 60 (by the 18.2 ms clock)
-      }
-   }
-
-
    private void rattleAllCages()
    {
       for (LifeCell c=living; c!=null; c=c.Next) c.pstate=c.qstate=0;
@@ -2245,14 +3140,27 @@ class LifeGen
       while (hibernating!=null) rattleCage(hibernating);
    }
 
+   /**
+    * True if generate(-1) can go back a generation.  Only the one
+    * before is kept, and not after an edit.  Not on a B0 rule either:
+    * the generation before a plain one is stored complemented, so
+    * Life would only run forward to where it was (see isInverted()).
+    */
+   public boolean canStepBack()
+   {
+      return backCorrect && !prevInverted && !hasB0();
+   }
+
    private void stepBack()
    {
       if (backCorrect)
       {
          qCycle=!qCycle;
+         inverted=prevInverted;
          gencount--;
 
          rattleAllCages();
+         if (topology != PLANE) clipSeams();   // the seam cells are still there
       }
       backCorrect=false;
    }
@@ -2262,32 +3170,35 @@ class LifeGen
     * and returns the results.  If numgens==0, it goes forever; a value
     * of -1 is also valid if the previous generation has been kept.
     *
-    * The changes to the universe are stored in the LifeField object.
+    * At most batch generations are done before returning for a
+    * display; how big the batch should be is up to the caller
+    * (see LifeScheduler).  break4blap is true when continuing after
+    * such a pit-stop, so that the countdown carries on.
     *
     * The return values are as follows:
     * true = just a pit-stop to display
     * false = really stop
     */
-   public boolean generate(int numgens, boolean break4blap)
+   public boolean generate(int numgens, boolean break4blap, int batch)
    {
       if (numgens== -1)
       {
-         stepBack();
+         if (canStepBack()) stepBack();
          goFlag=false;
          return false;
       }
 
-      if (!break4blap)
-      {
-         countdown_gen = numgens;
-         last_gen_interval = 0;
-      }
-      markTime(break4blap);
+      if (!break4blap) countdown_gen = numgens;
+      if (topology != PLANE) clipAll();
 
       while (goFlag)
       {
          if ((gencount & 0x7f) == 0) incinerateCages(true);  // delayed deallocation
 
+         fetchTables();
+         prevInverted = inverted;
+         if (topology != PLANE) fillSeams();
+
          if (qCycle)
          {
             try {generate_q();}
@@ -2310,6 +3221,8 @@ class LifeGen
             }
             qCycle = true;
          }
+         inverted = inverted? rule[0x1ff] : rule[0];
+         if (topology != PLANE) clipSeams();
 
          if (numgens!=0)
          {
@@ -2320,7 +3233,8 @@ class LifeGen
                return false;
             }
          }
-         if (isItTimeToDisplay()) return true;
+         // no pit-stop on a complemented generation the next will undo
+         if (--batch <= 0 && !(inverted && !rule[0x1ff])) return true;
       }
       return false;
    }
@@ -0,0 +1,527 @@
+package life.v41d;
+
+/**************************************************************
+ LifeGenerations.java
+
+ An engine for Generations rules ("345/2/4" Star Wars, "/2/3"
+ Brian's Brain, ...): a live cell that fails to survive doesn't
+ die at once but goes through states 2, 3, ... N-1 and then 0,
+ one a generation.  Dying cells don't count as neighbours, and
+ nothing can be born on them.
+
+ The universe is kept as sparse 16x16 blocks in a hashtable, on a
+ fixed grid (no p/q stagger).  Each block has its live cells as
+ 16 rows of bits (leftmost cell in bit 15, as LifeGen.getTile()
+ gives them) and its dying cells as bit planes of a counter:
+ state k is kept as k-1, so a cell that has just died is 1.
+
+ The live plane is stepped by table lookup, as LifeGen does it:
+ every 4x4 square of the block and its border gives the next
+ 2x2 in one lookup (LifeRuleTables.getQuads()).  Births on dying
+ cells are masked off, and the counter planes advanced with
+ bitwise adds.
+
+ Only blocks that changed last generation, and their neighbours,
+ are looked at.  A block with dying cells always changes, so it
+ stays awake until they have all gone; one whose cells are still
+ goes to sleep like a hibernating LifeGen block, and blocks with
+ nothing left in them are dropped.
+**************************************************************/
+
+import java.util.*;
+
+class LifeGenerations
+{
+   /** A 16x16 block. */
+   static class Block
+   {
+      int x, y;                       // block coordinates
+      short[] alive = new short[16];  // rows, leftmost cell in bit 15
+      short[][] dying;                // counter planes (state-1), or null
+
+      short[] nextAlive = new short[16];
+      short[][] nextDying;
+      boolean changed;                // since the last generation
+      boolean hasDying;               // after this generation
+      boolean woken;                  // in the awake list
+      int stamp;                      // generation it was last queued for
+
+      Block(int x, int y)
+      {
+         this.x = x;
+         this.y = y;
+      }
+   }
+
+   public int gencount = 0;
+
+   private LifeRules lifeRules = new LifeRules();
+   private byte[] quads;
+   private int states;
+   private int planes;        // counter bits for the dying states
+
+   private Hashtable blocks = new Hashtable();
+   private Vector awake = new Vector();    // blocks that changed last time
+   private int stamp;
+
+   private long computed, slept;
+
+   LifeGenerations(String rules)
+   {
+      setRules(rules==null? "23/3" : rules);
+   }
+
+   LifeGenerations()
+   {
+      this(null);
+   }
+
+   /**
+    * Set the rule.  Cells in dying states the new rule doesn't have
+    * go straight to 0.
+    */
+   public void setRules(String rulestring)
+   {
+      boolean[] rule = lifeRules.convertRules(rulestring);
+      if (rule == null) throw new IllegalArgumentException("bad rule: " + rulestring);
+      if (rule[0])
+         throw new IllegalArgumentException("B0 Generations rules are not supported");
+
+      quads = LifeRuleTables.getQuads(rule);
+      states = lifeRules.getStates();
+
+      // enough bits to count up to states-1, when a cell goes to 0
+      int p = (states > 2)? 32 - Integer.numberOfLeadingZeros(states-1) : 0;
+
+      for (Enumeration e=blocks.elements(); e.hasMoreElements(); )
+      {
+         Block b = (Block)e.nextElement();
+         if (b.dying != null)
+         {
+            clearExpired(b.dying);
+            b.dying = (p==0)? null : resize(b.dying, p);
+            b.nextDying = null;
+         }
+         wake(b);
+      }
+      planes = p;
+   }
+
+   public String getRules()
+   {
+      return lifeRules.getRules();
+   }
+
+   public int getStates()
+   {
+      return states;
+   }
+
+   /** State of a cell: 0 dead, 1 alive, 2..N-1 dying. */
+   public int getState(int x, int y)
+   {
+      Block b = getBlock(x>>4, y>>4);
+      if (b == null) return 0;
+
+      int j = y & 15, bit = 0x8000 >>> (x & 15);
+      if ((b.alive[j] & bit) != 0) return 1;
+      if (b.dying == null) return 0;
+
+      int d = 0;
+      for (int k=0; k<b.dying.length; k++)
+         if ((b.dying[k][j] & bit) != 0) d |= 1<<k;
+      return (d==0)? 0 : d+1;
+   }
+
+   public void setState(int x, int y, int state)
+   {
+      if (state < 0 || state >= states)
+         throw new IllegalArgumentException("no state " + state + " in " + getRules());
+
+      Block b = getBlock(x>>4, y>>4);
+      if (b == null)
+      {
+         if (state == 0) return;
+         b = addBlock(x>>4, y>>4);
+      }
+
+      int j = y & 15, bit = 0x8000 >>> (x & 15);
+      if (state == 1) b.alive[j] |= bit;
+      else b.alive[j] &= ~bit;
+
+      int d = (state < 2)? 0 : state-1;
+      if (d != 0 && b.dying == null) b.dying = new short[planes][16];
+      if (b.dying != null)
+      {
+         for (int k=0; k<planes; k++)
+         {
+            if ((d & (1<<k)) != 0) b.dying[k][j] |= bit;
+            else b.dying[k][j] &= ~bit;
+         }
+      }
+      wake(b);
+   }
+
+   /**
+    * Turn on (state 1) every cell set in rows[] (16 rows, leftmost
+    * cell in bit 15, as from LifeGen.getTile()) in the 16x16 square
+    * whose upper left corner is x0,y0.
+    */
+   public void putTile(int x0, int y0, int[] rows)
+   {
+      int sx = x0 & 15;
+      for (int j=0; j<16; j++)
+      {
+         int r = rows[j] & 0xffff;
+         if (r == 0) continue;
+
+         int y = y0+j;
+         orRow(x0>>4, y, r >>> sx);
+         if (sx != 0) orRow((x0>>4)+1, y, r << (16-sx));
+      }
+   }
+
+   private void orRow(int bx, int y, int bits)
+   {
+      bits &= 0xffff;
+      if (bits == 0) return;
+
+      Block b = getBlock(bx, y>>4);
+      if (b == null) b = addBlock(bx, y>>4);
+      b.alive[y & 15] |= bits;
+      wake(b);
+   }
+
+   /** Put every live cell of a two-state universe in, as state 1. */
+   public void paste(LifeGen from)
+   {
+      int off = from.qCycle? 1:0;
+      LifeCell[] cells = from.getBlocksInOrder();
+      int[] rows = new int[16];
+
+      for (int i=0; i<cells.length; i++)
+      {
+         int x = cells[i].x*16+off, y = cells[i].y*16+off;
+         from.getTile(x, y, rows);
+         putTile(x, y, rows);
+      }
+   }
+
+   public void clear()
+   {
+      blocks.clear();
+      awake.removeAllElements();
+      gencount = 0;
+   }
+
+   public boolean isEmpty()
+   {
+      return blocks.isEmpty();
+   }
+
+   /** Number of cells in each state. */
+   public long[] census()
+   {
+      long[] n = new long[states];
+      for (Enumeration e=blocks.elements(); e.hasMoreElements(); )
+      {
+         Block b = (Block)e.nextElement();
+         for (int j=0; j<16; j++)
+         {
+            n[1] += Integer.bitCount(b.alive[j] & 0xffff);
+            if (b.dying == null) continue;
+
+            for (int bit=0x8000; bit!=0; bit>>>=1)
+            {
+               int d = 0;
+               for (int k=0; k<planes; k++)
+                  if ((b.dying[k][j] & bit) != 0) d |= 1<<k;
+               if (d != 0) n[d+1]++;
+            }
+         }
+      }
+
+      long cells = 0;
+      for (int s=1; s<states; s++) cells += n[s];
+      n[0] = (long)blocks.size()*256 - cells;   // dead, in the blocks kept
+      return n;
+   }
+
+   /**
+    * {left, top, right, bottom} of every cell not in state 0.
+    * Returns false if there are none.
+    */
+   public boolean getBoundingBox(int[] box)
+   {
+      boolean found = false;
+      for (Enumeration e=blocks.elements(); e.hasMoreElements(); )
+      {
+         Block b = (Block)e.nextElement();
+         for (int j=0; j<16; j++)
+         {
+            int r = b.alive[j];
+            if (b.dying != null)
+               for (int k=0; k<planes; k++) r |= b.dying[k][j];
+            r &= 0xffff;
+            if (r == 0) continue;
+
+            int x0 = b.x*16 + Integer.numberOfLeadingZeros(r) - 16;
+            int x1 = b.x*16 + 15 - Integer.numberOfTrailingZeros(r);
+            int y = b.y*16 + j;
+            if (!found)
+            {
+               box[0] = x0; box[1] = y; box[2] = x1; box[3] = y;
+               found = true;
+            }
+            else
+            {
+               if (x0 < box[0]) box[0] = x0;
+               if (y < box[1]) box[1] = y;
+               if (x1 > box[2]) box[2] = x1;
+               if (y > box[3]) box[3] = y;
+            }
+         }
+      }
+      return found;
+   }
+
+   public void generate(int numgens)
+   {
+      for (int g=0; g<numgens; g++) step();
+   }
+
+   /*
+    * step()
+    *
+    * One generation.  Every awake block and its neighbours are
+    * worked out from the old state into nextAlive/nextDying, then
+    * they're all swapped in at once.
+    */
+   private void step()
+   {
+      stamp++;
+      Vector work = new Vector();
+
+      for (int i=0; i<awake.size(); i++)
+      {
+         Block b = (Block)awake.elementAt(i);
+         if (b.stamp != stamp)
+         {
+            b.stamp = stamp;
+            work.addElement(b);
+         }
+
+         // births can spill into neighbours only from live cells
+         boolean live = false;
+         for (int j=0; j<16 && !live; j++) live = (b.alive[j] != 0);
+
+         for (int dy=-1; dy<=1; dy++)
+         {
+            for (int dx=-1; dx<=1; dx++)
+            {
+               if (dx==0 && dy==0) continue;
+               Block n = getBlock(b.x+dx, b.y+dy);
+               if (n == null)
+               {
+                  if (!live) continue;
+                  n = addBlock(b.x+dx, b.y+dy);
+               }
+               if (n.stamp != stamp)
+               {
+                  n.stamp = stamp;
+                  work.addElement(n);
+               }
+            }
+         }
+      }
+      slept += blocks.size() - work.size();
+      computed += work.size();
+
+      int[] w = new int[18];
+      for (int i=0; i<work.size(); i++)
+         stepBlock((Block)work.elementAt(i), w);
+
+      awake.removeAllElements();
+      for (int i=0; i<work.size(); i++)
+      {
+         Block b = (Block)work.elementAt(i);
+         short[] t = b.alive; b.alive = b.nextAlive; b.nextAlive = t;
+         if (planes > 0)
+         {
+            short[][] td = b.dying; b.dying = b.nextDying; b.nextDying = td;
+            if (!b.hasDying)
+            {
+               // keep the planes as the spare set
+               if (b.nextDying == null) b.nextDying = b.dying;
+               b.dying = null;
+            }
+         }
+
+         b.woken = b.changed;
+         if (b.changed) awake.addElement(b);
+         else if (isEmpty(b)) blocks.remove(LifeCoordinate.key(b.x, b.y));
+      }
+      gencount++;
+   }
+
+   // work out the next state of one block into nextAlive/nextDying
+   private void stepBlock(Block b, int[] w)
+   {
+      Block n = getBlock(b.x, b.y-1), s = getBlock(b.x, b.y+1);
+      Block e = getBlock(b.x+1, b.y), west = getBlock(b.x-1, b.y);
+      Block ne = getBlock(b.x+1, b.y-1), nw = getBlock(b.x-1, b.y-1);
+      Block se = getBlock(b.x+1, b.y+1), sw = getBlock(b.x-1, b.y+1);
+
+      // 18x18 window: 18-bit rows, column -1 in bit 17
+      w[0] = windowRow(nw, n, ne, 15);
+      for (int j=0; j<16; j++) w[j+1] = windowRow(west, b, e, j);
+      w[17] = windowRow(sw, s, se, 0);
+
+      short[] out = b.nextAlive;
+      for (int j=0; j<16; j+=2)
+      {
+         int r0 = w[j], r1 = w[j+1], r2 = w[j+2], r3 = w[j+3];
+         int top = 0, bottom = 0;
+
+         for (int sh=14; sh>=0; sh-=2)
+         {
+            int ix = ((r0 >>> sh) & 0xf) << 12 | ((r1 >>> sh) & 0xf) << 8
+                   | ((r2 >>> sh) & 0xf) << 4  | ((r3 >>> sh) & 0xf);
+            int q = quads[ix];
+            top = (top << 2) | ((q >>> 2) & 3);
+            bottom = (bottom << 2) | (q & 3);
+         }
+         out[j] = (short)top;
+         out[j+1] = (short)bottom;
+      }
+
+      boolean changed = false;
+      if (planes == 0)
+      {
+         for (int j=0; j<16; j++)
+            if (out[j] != b.alive[j]) changed = true;
+         b.changed = changed;
+         return;
+      }
+
+      if (b.nextDying == null) b.nextDying = new short[planes][16];
+      short[][] d = b.nextDying;
+      boolean any = false;
+
+      for (int j=0; j<16; j++)
+      {
+         int old = b.alive[j];
+         int dying = 0;
+         if (b.dying != null)
+         {
+            for (int k=0; k<planes; k++)
+            {
+               d[k][j] = b.dying[k][j];
+               dying |= b.dying[k][j];
+            }
+         }
+         else
+         {
+            for (int k=0; k<planes; k++) d[k][j] = 0;
+         }
+
+         // nothing is born on a dying cell
+         out[j] &= ~dying;
+
+         // dying cells count on; those that reach states-1 are gone
+         int carry = dying;
+         for (int k=0; k<planes && carry!=0; k++)
+         {
+            int t = d[k][j] & carry;
+            d[k][j] ^= carry;
+            carry = t;
+         }
+         int gone = dying;
+         for (int k=0; k<planes; k++)
+            gone &= (((states-1) >>> k & 1) != 0)? d[k][j] : ~d[k][j];
+         for (int k=0; k<planes; k++) d[k][j] &= ~gone;
+
+         // live cells that didn't survive are now in state 2
+         d[0][j] |= old & ~out[j];
+
+         if (out[j] != old || dying != 0) changed = true;
+         for (int k=0; k<planes; k++) if (d[k][j] != 0) any = true;
+      }
+      b.hasDying = any;
+      b.changed = changed;
+   }
+
+   // bits j of the west, middle and east blocks, 18 wide
+   private static int windowRow(Block west, Block mid, Block east, int j)
+   {
+      int r = (mid==null)? 0 : (mid.alive[j] & 0xffff) << 1;
+      if (west != null) r |= (west.alive[j] & 1) << 17;
+      if (east != null) r |= (east.alive[j] & 0xffff) >>> 15;
+      return r;
+   }
+
+   private static boolean isEmpty(Block b)
+   {
+      for (int j=0; j<16; j++)
+      {
+         if (b.alive[j] != 0) return false;
+         if (b.dying != null)
+            for (int k=0; k<b.dying.length; k++)
+               if (b.dying[k][j] != 0) return false;
+      }
+      return true;
+   }
+
+   public String getStats()
+   {
+      return "Generations: " + blocks.size() + " blocks, " + awake.size()
+         + " awake; " + computed + " block steps, " + slept + " slept";
+   }
+
+   /*
+    * Blocks.
+    */
+   Block getBlock(int bx, int by)
+   {
+      return (Block)blocks.get(LifeCoordinate.key(bx, by));
+   }
+
+   private Block addBlock(int bx, int by)
+   {
+      Block b = new Block(bx, by);
+      blocks.put(LifeCoordinate.key(bx, by), b);
+      return b;
+   }
+
+   private void wake(Block b)
+   {
+      if (b.woken) return;
+      b.woken = true;
+      awake.addElement(b);
+   }
+
+   private static short[][] resize(short[][] planes, int n)
+   {
+      if (planes == null) return null;
+      short[][] p = new short[n][];
+      for (int k=0; k<n; k++)
+         p[k] = (k < planes.length)? planes[k] : new short[16];
+      return p;
+   }
+
+   // cells whose count has reached states-1 or more go to 0
+   private void clearExpired(short[][] d)
+   {
+      for (int j=0; j<16; j++)
+      {
+         for (int bit=0x8000; bit!=0; bit>>>=1)
+         {
+            int v = 0;
+            for (int k=0; k<d.length; k++)
+               if ((d[k][j] & bit) != 0) v |= 1<<k;
+            if (v >= states-1)
+               for (int k=0; k<d.length; k++) d[k][j] &= ~bit;
+         }
+      }
+   }
+}
@@ -5,46 +5,89 @@ package life.v41d;
 
  This class keeps a fast-lookup table of LifeCell blocks.
 
+ The table doubles in size whenever it holds more blocks than
+ buckets, so lookups stay cheap no matter how big the universe
+ gets.  That matters to the display, which finds the blocks in
+ the viewing window by looking up each block position in turn.
+
   (c) Alan Hensel, Apr 1996. All Rights Reserved.
 **************************************************************/
 
 class LifeHash
 {
-   private LifeCell[][] hashTable;
-   private short keyX, keyY;
-   private static int HASHSIZE=6;
+   private LifeCell[] hashTable;
+   private int mask;
+   private int count;
+   private static int HASHSIZE=12;
 
    LifeHash()
    {
-      hashTable = new LifeCell[1<<HASHSIZE][1<<HASHSIZE];
+      this(0);
+   }
+
+   // sized up front for a known number of blocks (saves growing)
+   LifeHash(int expected)
+   {
+      int bits = HASHSIZE;
+      while ((1<<bits) < expected) bits++;
+
+      hashTable = new LifeCell[1<<bits];
+      mask = (1<<bits)-1;
+      count = 0;
    }
 
-   private void makeKeys(short x, short y)
+   private int makeKey(short x, short y)
    {
-      keyX = (short)(x & ((1<<HASHSIZE)-1));
-      keyY = (short)(y & ((1<<HASHSIZE)-1));
+      int h = (x & 0xffff) * 0x9e3779b1 + (y & 0xffff) * 0x85ebca6b;
+      return (h ^ (h>>>15)) & mask;
    }
 
    public void store(LifeCell c)
    {
-      makeKeys(c.x, c.y);
-      c.Down = hashTable[keyX][keyY];
-      hashTable[keyX][keyY] = c;
+      int key = makeKey(c.x, c.y);
+      c.Down = hashTable[key];
+      hashTable[key] = c;
+
+      if (++count > hashTable.length) grow();
    }
 
-   public LifeCell retrieve(int x, int y)
+   private void grow()
    {
-      short sx=(short)(x>>4), sy=(short)(y>>4);
-      LifeCell oldc;
+      LifeCell[] old = hashTable;
+      LifeCell c, next;
+
+      hashTable = new LifeCell[old.length*2];
+      mask = hashTable.length-1;
+
+      for (int i=0; i<old.length; i++)
+      {
+         for (c=old[i]; c!=null; c=next)
+         {
+            next = c.Down;
+            int key = makeKey(c.x, c.y);
+            c.Down = hashTable[key];
+            hashTable[key] = c;
+         }
+      }
+   }
 
-      makeKeys(sx,sy);
-      oldc = hashTable[keyX][keyY];
+   /**
+    * Look up a block by block coordinates (cell coordinates / 16).
+    */
+   public LifeCell retrieveBlock(short sx, short sy)
+   {
+      LifeCell oldc = hashTable[makeKey(sx,sy)];
       while (oldc != null && (oldc.x != sx || oldc.y != sy))
          oldc = oldc.Down;
 
       return oldc;
    }
 
+   public LifeCell retrieve(int x, int y)
+   {
+      return retrieveBlock((short)(x>>4), (short)(y>>4));
+   }
+
    public LifeCell retrieve(LifeCoordinate cor)
    {
       return retrieve(cor.x, cor.y);
@@ -53,9 +96,9 @@ class LifeHash
    public void delete(LifeCell c)
    {
       LifeCell cur, prev=null;
+      int key = makeKey(c.x, c.y);
 
-      makeKeys(c.x, c.y);
-      cur=hashTable[keyX][keyY];
+      cur=hashTable[key];
 
       while (cur!=null && (cur.x!=c.x || cur.y!=c.y))
       {
@@ -66,8 +109,14 @@ class LifeHash
       if (cur!=null)
       {
          if (prev!=null) prev.Down=cur.Down;
-         else hashTable[keyX][keyY]=cur.Down;
+         else hashTable[key]=cur.Down;
          cur.Down=null;
+         count--;
       }
    }
+
+   public int size()
+   {
+      return count;
+   }
 }
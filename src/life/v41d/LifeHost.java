@@ -0,0 +1,362 @@
+package life.v41d;
+
+/**************************************************************
+ LifeHost.java
+
+ Many independent universes in one VM, run by a fixed pool of
+ worker threads.
+
+ create() makes each universe.  Rule tables come from
+ LifeRuleTables, so universes on the same rule share one pair
+ however many there are.  Each universe has its own lock, held
+ while it generates; anything else that reads or changes its
+ LifeGen (a display, an editor, a writer) takes the same lock.
+ Nothing is shared between universes, so they never wait on each
+ other.
+
+ Running universes take turns on the workers.  A turn lasts
+ about QUANTUM_MILLIS: each universe has its own LifeScheduler,
+ at warp speed with nothing to display, to pick how many
+ generations fill a turn.  Then the universe goes to the back of
+ the queue.  So a few big universes can't starve hundreds of
+ small ones, and the small ones don't pay a thread switch per
+ generation.
+
+ main() runs a crowd of small universes and reports how evenly
+ the generations were shared out.
+**************************************************************/
+
+import java.util.*;
+import java.util.concurrent.*;
+
+class LifeHost
+{
+   static final int QUANTUM_MILLIS = 5;
+
+   /** One hosted universe. */
+   class Universe implements Runnable
+   {
+      private final LifeGen gen;
+      private final Object lock = new Object();
+      private final LifeScheduler sched = new LifeScheduler(QUANTUM_MILLIS, 0);
+
+      private int pending;        // generations still to run; -1 = no limit
+      private boolean queued;     // waiting for or having a turn (host lock)
+      private long generations, turns, nanos;
+      private Throwable failure;  // what stopped the last run, if anything
+
+      private Universe(LifeGen gen)
+      {
+         this.gen = gen;
+      }
+
+      /** The engine.  Hold getLock() while using it. */
+      public LifeGen getGen()
+      {
+         return gen;
+      }
+
+      public Object getLock()
+      {
+         return lock;
+      }
+
+      /** Run gens more generations (0 = until stopped). */
+      public void start(int gens)
+      {
+         synchronized (lock)
+         {
+            pending = (gens > 0)? gens : -1;
+            failure = null;
+            sched.reset();
+         }
+         schedule(this);
+      }
+
+      /** Stop after the current turn, if any. */
+      public void stop()
+      {
+         synchronized (lock)
+         {
+            pending = 0;
+            lock.notifyAll();
+         }
+      }
+
+      public boolean isRunning()
+      {
+         synchronized (lock)
+         {
+            return pending != 0;
+         }
+      }
+
+      /**
+       * Wait until the universe stops (or millis pass; 0 = no limit).
+       * Returns true if it has stopped.
+       */
+      public boolean waitUntilStopped(long millis) throws InterruptedException
+      {
+         long end = System.currentTimeMillis() + millis;
+         synchronized (lock)
+         {
+            while (pending != 0)
+            {
+               long left = end - System.currentTimeMillis();
+               if (millis > 0 && left <= 0) return false;
+               lock.wait(millis > 0? left : 0);
+            }
+            return true;
+         }
+      }
+
+      /** Generations run here so far. */
+      public long getGenerations()
+      {
+         synchronized (lock)
+         {
+            return generations;
+         }
+      }
+
+      /** Worker time spent on this universe so far. */
+      public long getNanos()
+      {
+         synchronized (lock)
+         {
+            return nanos;
+         }
+      }
+
+      /**
+       * What stopped the last run, if generate() threw (null if
+       * nothing did).  The universe stops, and can be started again;
+       * LifeGen backs out of a generation it ran out of memory in.
+       */
+      public Throwable getFailure()
+      {
+         synchronized (lock)
+         {
+            return failure;
+         }
+      }
+
+      // one turn on a worker
+      public void run()
+      {
+         boolean more = false;
+
+         synchronized (lock)
+         {
+            try
+            {
+               if (pending != 0)
+               {
+                  int n = sched.batchSize();
+                  if (pending > 0 && n > pending) n = pending;
+
+                  long t0 = System.nanoTime();
+                  int gen0 = gen.gencount;
+                  gen.goFlag = true;
+                  gen.generate(n, false, n);
+
+                  // a B0 rule's odd generations are stored complemented
+                  if (gen.isInverted())
+                  {
+                     gen.goFlag = true;
+                     gen.generate(1, false, 1);
+                  }
+
+                  int done = gen.gencount - gen0;
+                  long took = System.nanoTime()-t0;
+                  sched.generated(done, took);
+                  sched.rendered(0);
+
+                  generations += done;
+                  nanos += took;
+                  turns++;
+                  if (pending > 0) pending = Math.max(0, pending-done);
+                  if (pending == 0) lock.notifyAll();
+               }
+               more = (pending != 0);
+            }
+            catch (RuntimeException re)
+            {
+               failure = re;
+            }
+            catch (OutOfMemoryError oom)
+            {
+               failure = oom;
+            }
+            finally
+            {
+               // after a failure (or anything else thrown) the
+               // universe stops, so nobody waits on it for ever
+               if (!more && pending != 0)
+               {
+                  pending = 0;
+                  lock.notifyAll();
+               }
+
+               synchronized (LifeHost.this)
+               {
+                  if (more && !closed) workers.execute(this);   // to the back of the queue
+                  else queued = false;
+               }
+            }
+         }
+      }
+   }
+
+   private final ExecutorService workers;
+   private final int nWorkers;
+   private final Vector universes = new Vector();
+   private boolean closed;   // (host lock)
+
+   /** A host with the given number of worker threads (0 = one per processor). */
+   LifeHost(int threads)
+   {
+      if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+      nWorkers = threads;
+
+      // a plain FIFO queue, so turns go round in order
+      workers = Executors.newFixedThreadPool(threads, new ThreadFactory()
+      {
+         private int count;
+
+         public synchronized Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "Life host worker " + (++count));
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }
+
+   /**
+    * A new, empty universe on rules (null for Conway's).  Throws
+    * IllegalArgumentException for rules LifeGen can't run.
+    */
+   public Universe create(String rules)
+   {
+      Universe v = new Universe(new LifeGen(rules));
+      universes.addElement(v);
+      return v;
+   }
+
+   /** Stop a universe and forget it. */
+   public void remove(Universe v)
+   {
+      v.stop();
+      universes.removeElement(v);
+   }
+
+   /** Every universe hosted, in order of creation. */
+   public Universe[] getUniverses()
+   {
+      synchronized (universes)
+      {
+         Universe[] all = new Universe[universes.size()];
+         universes.copyInto(all);
+         return all;
+      }
+   }
+
+   // queue a universe for a turn, unless it's already queued
+   private synchronized void schedule(Universe v)
+   {
+      if (closed || v.queued) return;
+      v.queued = true;
+      workers.execute(v);
+   }
+
+   /** Stop every universe and the workers.  The host can't be reused. */
+   public void shutdown()
+   {
+      synchronized (this)
+      {
+         closed = true;
+      }
+      Universe[] all = getUniverses();
+      for (int i=0; i<all.length; i++) all[i].stop();
+      workers.shutdown();
+   }
+
+   public String getStats()
+   {
+      Universe[] all = getUniverses();
+      long gens = 0, turns = 0;
+      int running = 0;
+
+      for (int i=0; i<all.length; i++)
+      {
+         synchronized (all[i].lock)
+         {
+            gens += all[i].generations;
+            turns += all[i].turns;
+            if (all[i].pending != 0) running++;
+         }
+      }
+      return "Host: " + all.length + " universes, " + running + " running on "
+         + nWorkers + " workers; " + gens + " generations in " + turns + " turns. "
+         + LifeRuleTables.getStats();
+   }
+
+   /*
+    * java life.v41d.LifeHost [universes [workers [seconds]]]
+    *
+    * Runs a crowd of R-pentominoes (every tenth one a bigger soup)
+    * flat out, then shows how evenly the workers' time was shared.
+    */
+   public static void main(String[] args) throws InterruptedException
+   {
+      int count = (args.length > 0)? Integer.parseInt(args[0]) : 300;
+      int threads = (args.length > 1)? Integer.parseInt(args[1]) : 0;
+      int seconds = (args.length > 2)? Integer.parseInt(args[2]) : 3;
+
+      LifeHost host = new LifeHost(threads);
+      Random rnd = new Random(1);
+      Universe[] vs = new Universe[count];
+
+      for (int i=0; i<count; i++)
+      {
+         vs[i] = host.create(i%3 == 2? "B36/S23" : null);
+         LifeGen u = vs[i].getGen();
+         synchronized (vs[i].getLock())
+         {
+            if (i%10 == 9)
+            {
+               for (int y=0; y<64; y++)
+                  for (int x=0; x<64; x++)
+                     if (rnd.nextBoolean()) u.changeCell(x, y, true);
+            }
+            else
+            {
+               u.changeCell(1, 0, true);  u.changeCell(2, 0, true);
+               u.changeCell(0, 1, true);  u.changeCell(1, 1, true);
+               u.changeCell(1, 2, true);
+            }
+         }
+      }
+
+      for (int i=0; i<count; i++) vs[i].start(0);
+      Thread.sleep(seconds*1000L);
+
+      host.shutdown();
+      for (int i=0; i<count; i++) vs[i].waitUntilStopped(0);
+      System.out.println(host.getStats());
+
+      // fair shares are of worker time, not generations: a soup
+      // costs far more per generation than a settled R-pentomino
+      long min = Long.MAX_VALUE, max = 0, total = 0;
+      for (int i=0; i<count; i++)
+      {
+         long t = vs[i].getNanos();
+         min = Math.min(min, t);
+         max = Math.max(max, t);
+         total += t;
+      }
+      System.out.println(count + " universes, " + seconds + " s: worker time per universe "
+         + min/1000000 + " to " + max/1000000 + " ms, average " + total/count/1000000 + " ms");
+   }
+}
@@ -0,0 +1,415 @@
+package life.v41d;
+
+/**************************************************************
+ LifeImageExport.java
+
+ Headless export of a LifeGen universe to a sequence of PNG
+ images, for making animations of long runs without grabbing
+ the screen.
+
+ capture() runs on the simulation thread, but only copies the
+ cells in the export region into a compact bitmap (16 cells per
+ int, pulled out a block at a time with LifeGen.getTile()).
+ Drawing the image and PNG encoding happen on a background
+ writer thread, so the simulation needn't wait on the encoder.
+ If the writer falls too far behind, capture() either waits for
+ it (setBlocking(true), and always in record()) or drops the
+ frame and returns false.  A sequence with gaps is not what was
+ asked for, so close() throws if any frame was dropped;
+ getFramesDropped() says how many.
+
+ The picture matches what LifeGUI would show at the same zoom:
+ same colours, same cell size, same grid lines.
+
+ Typical use:
+
+    LifeImageExport ex = new LifeImageExport(u, new File("frames"), "run");
+    ex.setZoom(2);
+    ex.record(500, 10);   // 500 frames, one every 10 generations
+    ex.close();
+
+ or from the command line (see main()):
+
+    java life.v41d.LifeImageExport glider.rle box 2 10 500 frames
+**************************************************************/
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.imageio.ImageIO;
+
+class LifeImageExport implements Runnable
+{
+   private LifeGen u;
+   private File dir;
+   private String prefix;
+
+   private int zoom = 2;          // cell magnitude, as in LifeGUI
+   private boolean grids = true;
+   private Color fgColor = LifeGUI.DEFAULT_FG;
+   private Color bgColor = LifeGUI.DEFAULT_BG;
+   private Color gridColor = LifeGUI.DEFAULT_GRID;
+
+   private boolean useViewport = false;
+   private int viewX, viewY, viewW, viewH;
+   private int margin = 2;        // around the bounding box
+
+   private BlockingQueue<Picture> queue;
+   private Thread writer;
+   private volatile IOException failure;
+   private boolean blocking;      // wait for the writer rather than drop
+   private int captured, dropped;
+   private volatile int written;
+
+   private static final Picture END = new Picture();
+
+   // what the simulation thread hands to the writer
+   private static class Picture
+   {
+      int gen;
+      int w, h;          // in cells
+      int stride;        // ints per row of bits
+      int[] bits;        // 16 cells per int, leftmost in bit 15
+   }
+
+   LifeImageExport(LifeGen universe, File directory, String filePrefix)
+   {
+      this(universe, directory, filePrefix, 8);
+   }
+
+   /**
+    * backlog = how many captured frames may wait for the writer
+    * before further captures are dropped.
+    */
+   LifeImageExport(LifeGen universe, File directory, String filePrefix,
+         int backlog)
+   {
+      u = universe;
+      dir = directory;
+      prefix = filePrefix;
+      queue = new ArrayBlockingQueue<Picture>(backlog);
+
+      writer = new Thread(this, "LifeImageExport writer");
+      writer.setDaemon(true);
+      writer.start();
+   }
+
+   public void setZoom(int cellMagnitude)
+   {
+      zoom = cellMagnitude;
+   }
+
+   public void setGrids(boolean g)
+   {
+      grids = g;
+   }
+
+   /** Same colour strings as the applet parameters, e.g. "0000a0". */
+   public void setColors(String fg, String bg, String grid)
+   {
+      Color c;
+
+      c = LifeGUI.newColor(fg);
+      if (c!=null) fgColor = c;
+
+      c = LifeGUI.newColor(bg);
+      if (c!=null) bgColor = c;
+
+      c = LifeGUI.newColor(grid);
+      if (c!=null) gridColor = c;
+   }
+
+   /** Take the colours, zoom and grid setting from an existing display. */
+   public void setColors(LifeGUI f)
+   {
+      fgColor = f.getFgColor();
+      bgColor = f.getBgColor();
+      gridColor = f.getGridColor();
+      grids = f.getGrids();
+      zoom = f.getZoom();
+   }
+
+   /**
+    * true: capture() waits for the writer to make room instead of
+    * dropping the frame (the simulation runs at the encoder's speed).
+    */
+   public void setBlocking(boolean wait)
+   {
+      blocking = wait;
+   }
+
+   /** Export a fixed window of the universe, in cell coordinates. */
+   public void setViewport(int x, int y, int w, int h)
+   {
+      useViewport = true;
+      viewX = x; viewY = y;
+      viewW = w; viewH = h;
+   }
+
+   /** Export whatever the pattern covers, frame by frame (the default). */
+   public void useBoundingBox(int marginCells)
+   {
+      useViewport = false;
+      margin = marginCells;
+   }
+
+   /**
+    * Snapshot the universe as it is now and queue it for writing.
+    * Returns false if the frame had to be dropped (never when
+    * blocking).
+    */
+   public boolean capture() throws IOException
+   {
+      return capture(blocking);
+   }
+
+   private boolean capture(boolean wait) throws IOException
+   {
+      if (failure != null) throw failure;
+
+      int x0, y0, w, h;
+
+      if (useViewport)
+      {
+         x0=viewX; y0=viewY; w=viewW; h=viewH;
+      }
+      else
+      {
+         int[] box = new int[4];
+         if (!u.getBoundingBox(box)) box[0]=box[1]=box[2]=box[3]=0;
+         x0 = box[0]-margin;
+         y0 = box[1]-margin;
+         w = box[2]-box[0]+1+2*margin;
+         h = box[3]-box[1]+1+2*margin;
+      }
+
+      Picture fr = new Picture();
+      fr.gen = u.gencount;
+      fr.w = w;
+      fr.h = h;
+      fr.stride = (w+15)>>4;
+      fr.bits = new int[fr.stride*h];
+
+      int[] rows = new int[16];
+      for (int ty=0; ty<h; ty+=16)
+      {
+         for (int tx=0; tx<fr.stride; tx++)
+         {
+            u.getTile(x0+tx*16, y0+ty, rows);
+            for (int j=0; j<16 && ty+j<h; j++)
+               fr.bits[(ty+j)*fr.stride+tx] = rows[j];
+         }
+      }
+
+      captured++;
+      if (wait)
+      {
+         try
+         {
+            queue.put(fr);
+            return true;
+         }
+         catch (InterruptedException ie)
+         {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("export interrupted");
+         }
+      }
+      if (queue.offer(fr)) return true;
+
+      dropped++;
+      return false;
+   }
+
+   /**
+    * Drive the universe headless: capture a frame, run gensPerFrame
+    * generations, and repeat until frames frames have been captured
+    * or the universe stops.  Nothing else is waiting on the
+    * universe, so this waits for the writer rather than drop frames.
+    */
+   public void record(int frames, int gensPerFrame) throws IOException
+   {
+      for (int i=0; i<frames; i++)
+      {
+         capture(true);
+         if (i==frames-1) break;
+
+         u.goFlag = true;
+         u.generate(gensPerFrame, false, gensPerFrame);
+         if (u.isEmpty()) break;
+      }
+   }
+
+   /**
+    * Wait for the writer to finish everything queued so far.
+    * Throws if writing failed, or if any frame was dropped.
+    */
+   public void close() throws IOException
+   {
+      try
+      {
+         queue.put(END);
+         writer.join();
+      }
+      catch (InterruptedException ie)
+      {
+         Thread.currentThread().interrupt();
+      }
+
+      if (failure != null) throw failure;
+      if (dropped > 0)
+         throw new IOException(dropped + " of " + captured
+               + " frames dropped (the writer fell behind)");
+   }
+
+   public int getFramesWritten()
+   {
+      return written;
+   }
+
+   public int getFramesDropped()
+   {
+      return dropped;
+   }
+
+   // the writer thread
+   public void run()
+   {
+      try
+      {
+         Picture fr;
+         while ((fr = queue.take()) != END)
+         {
+            if (failure != null) continue;  // drain after an error
+
+            try
+            {
+               File out = new File(dir, prefix
+                     + String.format("%08d", fr.gen)
+                     + ".png");
+               if (!ImageIO.write(render(fr), "png", out))
+                  throw new IOException("no PNG writer available");
+               written++;
+            }
+            catch (IOException ioe)
+            {
+               failure = ioe;
+            }
+         }
+      }
+      catch (InterruptedException ie) {}
+   }
+
+   private BufferedImage render(Picture fr)
+   {
+      int ppc = 1<<zoom;
+      boolean drawGrid = (zoom>1 && grids);
+      int g = drawGrid? 1:0;     // grid line width
+      int cs = ppc-g;            // cell size
+      int width = fr.w*ppc+g;
+      int height = fr.h*ppc+g;
+
+      byte[] r = {(byte)bgColor.getRed(), (byte)fgColor.getRed(), (byte)gridColor.getRed()};
+      byte[] gr = {(byte)bgColor.getGreen(), (byte)fgColor.getGreen(), (byte)gridColor.getGreen()};
+      byte[] b = {(byte)bgColor.getBlue(), (byte)fgColor.getBlue(), (byte)gridColor.getBlue()};
+      IndexColorModel icm = new IndexColorModel(2, 3, r, gr, b);
+
+      BufferedImage img = new BufferedImage(width, height,
+            BufferedImage.TYPE_BYTE_INDEXED, icm);
+      byte[] pix = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+
+      if (drawGrid)
+      {
+         for (int y=0; y<height; y+=ppc)
+            for (int x=0; x<width; x++) pix[y*width+x] = 2;
+         for (int y=0; y<height; y++)
+            for (int x=0; x<width; x+=ppc) pix[y*width+x] = 2;
+      }
+
+      for (int y=0; y<fr.h; y++)
+      {
+         for (int t=0; t<fr.stride; t++)
+         {
+            int bits = fr.bits[y*fr.stride+t];
+            if (bits==0) continue;
+
+            for (int i=0; i<16; i++)
+            {
+               if ((bits & (0x8000>>i)) == 0) continue;
+               int x = t*16+i;
+               if (x >= fr.w) break;
+
+               int px = x*ppc+g, py = y*ppc+g;
+               for (int dy=0; dy<cs; dy++)
+               {
+                  int o = (py+dy)*width+px;
+                  for (int dx=0; dx<cs; dx++) pix[o+dx] = 1;
+               }
+            }
+         }
+      }
+
+      return img;
+   }
+
+   /*
+    * java life.v41d.LifeImageExport pattern [box | x,y,w,h] [zoom [every [frames [dir]]]]
+    *
+    * Loads a pattern (a file or URL, in any format Life reads), runs
+    * it, and writes every every'th generation as a PNG into dir,
+    * named after the pattern.  "box" follows the bounding box of the
+    * pattern; x,y,w,h is a fixed window, in cells.  The defaults are
+    * box, zoom 2, every generation, 100 frames, the current
+    * directory.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      if (args.length < 1)
+      {
+         System.out.println("usage: java life.v41d.LifeImageExport pattern"
+               + " [box | x,y,w,h] [zoom [every [frames [dir]]]]");
+         return;
+      }
+      System.setProperty("java.awt.headless", "true");
+
+      String where = (args.length > 1)? args[1] : "box";
+      int zoom = (args.length > 2)? Integer.parseInt(args[2]) : 2;
+      int every = (args.length > 3)? Integer.parseInt(args[3]) : 1;
+      int frames = (args.length > 4)? Integer.parseInt(args[4]) : 100;
+      File dir = new File((args.length > 5)? args[5] : ".");
+
+      String url = args[0];
+      if (url.indexOf("://") < 0) url = new File(url).toURI().toURL().toString();
+
+      LifeGen u = new LifeGen();
+      LifeLoader ld = new LifeLoader(url, u, 0, 0, null);
+      ld.setCaching(false);
+      ld.run();
+      if (!ld.succeeded()) throw new IOException(args[0] + ": " + ld.getError());
+      if (ld.getRules() != null) u.setRules(ld.getRules());
+
+      // frames are named after the pattern, less any extension
+      String name = new File(args[0]).getName();
+      if (name.lastIndexOf('.') > 0) name = name.substring(0, name.lastIndexOf('.'));
+      dir.mkdirs();
+
+      LifeImageExport ex = new LifeImageExport(u, dir, name + "-");
+      ex.setZoom(zoom);
+      if (!where.equals("box"))
+      {
+         StringTokenizer st = new StringTokenizer(where, ",");
+         if (st.countTokens() != 4)
+            throw new IllegalArgumentException("window should be x,y,w,h: " + where);
+         ex.setViewport(Integer.parseInt(st.nextToken()), Integer.parseInt(st.nextToken()),
+               Integer.parseInt(st.nextToken()), Integer.parseInt(st.nextToken()));
+      }
+
+      long t0 = System.nanoTime();
+      ex.record(frames, every);
+      ex.close();
+      System.out.println(ex.getFramesWritten() + " frames written to " + dir + " in "
+            + (System.nanoTime()-t0)/1000000 + " ms, up to generation " + u.gencount);
+   }
+}
@@ -0,0 +1,406 @@
+package life.v41d;
+
+/**************************************************************
+ LifeLibrary.java
+
+ A local library of patterns, shared by every LoadBox and
+ LifeLoader in the VM.
+
+ The index of a pattern directory (each pattern's name, file
+ size, rule, population and bounding box) is built once, in the
+ background, by loading every pattern listed in its index.html.
+ It is then saved under ~/.lifev41d, so later sessions can list
+ and describe the directory without touching the network.  Each
+ entry keeps the pattern's modification time (from the file, or
+ the web server's Last-Modified), and a pattern that has changed
+ since is described again; one that couldn't be loaded isn't
+ saved, so it's tried again next time.  Indexing goes round the
+ cache, so it doesn't push out the patterns actually opened.
+
+ Patterns that have been loaded are kept, most recently used
+ first, as the bitmaps of their occupied 16x16 tiles (with the
+ rules, speed and description that came with them) until the
+ cache holds CACHE_BYTES.  Opening one of those again just puts
+ the tiles back with LifeGen.putTile(); there's no download and
+ no parsing.  Local files that have changed since are read again.
+**************************************************************/
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+class LifeLibrary
+{
+   static final int CACHE_BYTES = 32<<20;
+
+   /** What the index knows about one pattern (population -1 = not yet). */
+   static class Entry
+   {
+      String name;
+      long size = -1;
+      String rule = "";
+      long population = -1;
+      int x, y, w, h;    // bounding box, relative to the load position
+      long stamp;        // when the pattern last changed, 0 if unknown
+
+      public String toString()
+      {
+         if (population < 0) return name;
+         return name + ":  " + rule + ",  " + population + " cells,  "
+               + w + "x" + h + ",  " + size + " bytes";
+      }
+   }
+
+   /** A loaded pattern, as kept in the cache. */
+   static class Pattern
+   {
+      long stamp;          // file modification time, or 0
+      int[] tiles;         // per tile: x, y (from the load position), 16 rows
+      String rules;
+      int skipping, refresh, generation;
+      Vector description;
+      int descriptionwid;
+      long size;           // bytes in the file
+
+      int bytes()
+      {
+         return tiles.length*4 + 256;
+      }
+   }
+
+   private static int cached;   // bytes held by the cache
+   private static LinkedHashMap cache = new LinkedHashMap(64, 0.75f, true);  // in LRU order
+
+   private static Hashtable indexes = new Hashtable();   // dir -> Vector of Entry
+
+   /*
+    * The pattern cache.
+    */
+   static synchronized Pattern get(String url)
+   {
+      Pattern p = (Pattern)cache.get(url);
+      if (p != null && p.stamp != stamp(url))
+      {
+         cache.remove(url);
+         cached -= p.bytes();
+         return null;
+      }
+      return p;
+   }
+
+   static synchronized void put(String url, Pattern p)
+   {
+      if (p.bytes() > CACHE_BYTES/4) return;   // would push out everything else
+
+      Pattern old = (Pattern)cache.remove(url);
+      if (old != null) cached -= old.bytes();
+      cached += p.bytes();
+      cache.put(url, p);
+
+      // drop the least recently used until it fits
+      Iterator it = cache.values().iterator();
+      while (cached > CACHE_BYTES && it.hasNext())
+      {
+         cached -= ((Pattern)it.next()).bytes();
+         it.remove();
+      }
+   }
+
+   /**
+    * Take the cells of u as a cache entry, as tiles relative to
+    * cx,cy (where the pattern was centred when it was loaded).
+    * Returns null if it's too big to be worth keeping.
+    */
+   static Pattern capture(String url, LifeGen u, int cx, int cy)
+   {
+      LifeCell[] blocks = u.getBlocksInOrder();
+      if ((long)blocks.length*18*4 > CACHE_BYTES/4) return null;
+
+      int off = u.qCycle? 1:0;
+      int[] tiles = new int[blocks.length*18];
+      int[] rows = new int[16];
+      int n = 0;
+
+      for (int i=0; i<blocks.length; i++)
+      {
+         int x = blocks[i].x*16+off, y = blocks[i].y*16+off;
+         u.getTile(x, y, rows);
+
+         int or = 0;
+         for (int j=0; j<16; j++) or |= rows[j];
+         if (or == 0) continue;
+
+         tiles[n++] = x-cx;
+         tiles[n++] = y-cy;
+         System.arraycopy(rows, 0, tiles, n, 16);
+         n += 16;
+      }
+
+      Pattern p = new Pattern();
+      p.stamp = stamp(url);
+      p.tiles = new int[n];
+      System.arraycopy(tiles, 0, p.tiles, 0, n);
+      return p;
+   }
+
+   /** Put a cached pattern into u, centred on cx,cy. */
+   static void restore(Pattern p, LifeGen u, int cx, int cy)
+   {
+      int[] rows = new int[16];
+      for (int i=0; i<p.tiles.length; i+=18)
+      {
+         System.arraycopy(p.tiles, i+2, rows, 0, 16);
+         u.putTile(p.tiles[i]+cx, p.tiles[i+1]+cy, rows);
+      }
+   }
+
+   // modification time of a local file, 0 for anything else
+   private static long stamp(String url)
+   {
+      try
+      {
+         URL urly = new URL(url);
+         if (!"file".equals(urly.getProtocol())) return 0;
+         return new File(URLDecoder.decode(urly.getFile(), "UTF-8")).lastModified();
+      }
+      catch (IOException ioe) {
+         return 0;
+      }
+      catch (SecurityException se) {
+         return 0;
+      }
+   }
+
+   /*
+    * The index.
+    */
+
+   /** The URL LoadBox loads for a name in the index. */
+   static String urlFor(String dir, String name)
+   {
+      String url = dir + name;
+      if (!url.toUpperCase().endsWith(".LIF")) url += ".lif";
+      return url;
+   }
+
+   /**
+    * The index of dir as far as it's known: from memory, or else from
+    * the copy saved by an earlier session.  Empty if neither.
+    */
+   static synchronized Vector getIndex(String dir)
+   {
+      Vector idx = (Vector)indexes.get(dir);
+      if (idx == null)
+      {
+         idx = readIndex(dir);
+         indexes.put(dir, idx);
+      }
+      return (Vector)idx.clone();
+   }
+
+   /**
+    * Bring the index of dir in line with names (as listed by its
+    * index.html), describing every pattern that isn't described yet.
+    * Slow, since it loads them: meant for a background thread.
+    * updated (if not null) is run after each new entry.
+    */
+   static void buildIndex(String dir, Vector names, Runnable updated)
+   {
+      Hashtable known = new Hashtable();
+      Vector idx = getIndex(dir);
+      for (int i=0; i<idx.size(); i++)
+      {
+         Entry e = (Entry)idx.elementAt(i);
+         known.put(e.name, e);
+      }
+
+      Vector fresh = new Vector();
+      for (int i=0; i<names.size(); i++)
+      {
+         String name = (String)names.elementAt(i);
+         Entry e = (Entry)known.get(name);
+         if (e == null)
+         {
+            e = new Entry();
+            e.name = name;
+         }
+         fresh.addElement(e);
+      }
+      synchronized (LifeLibrary.class)
+      {
+         indexes.put(dir, fresh);
+      }
+
+      boolean changed = (fresh.size() != idx.size());
+      for (int i=0; i<fresh.size(); i++)
+      {
+         Entry e = (Entry)fresh.elementAt(i);
+         String url = urlFor(dir, e.name);
+         long stamp = changedAt(url);
+         if (e.population >= 0 && (stamp == 0 || stamp == e.stamp)) continue;
+
+         if (!describe(url, e, stamp)) continue;
+         changed = true;
+         if (updated != null) updated.run();
+      }
+
+      if (changed) writeIndex(dir, fresh);
+   }
+
+   // load the pattern (leaving the cache alone) and fill in e;
+   // false, with e as it was, if it can't be loaded
+   private static boolean describe(String url, Entry e, long stamp)
+   {
+      LifeGen u = new LifeGen();
+      LifeLoader ld = new LifeLoader(url, u, 0, 0, null);
+      ld.setCaching(false);
+      ld.run();
+      if (!ld.succeeded()) return false;
+
+      int[] box = new int[4];
+      long pop = 0;
+      LifeCell[] blocks = u.getBlocksInOrder();
+      int[] rows = new int[16];
+      int off = u.qCycle? 1:0;
+      for (int i=0; i<blocks.length; i++)
+      {
+         u.getTile(blocks[i].x*16+off, blocks[i].y*16+off, rows);
+         for (int j=0; j<16; j++) pop += Integer.bitCount(rows[j]);
+      }
+
+      if (u.getBoundingBox(box))
+      {
+         e.x = box[0]; e.y = box[1];
+         e.w = box[2]-box[0]+1; e.h = box[3]-box[1]+1;
+      }
+      e.rule = (ld.getRules()!=null)? LifePatternWriter.rleRule(ld.getRules()) : "B3/S23";
+      e.size = ld.getBytesRead();
+      e.stamp = stamp;
+      e.population = pop;
+      return true;
+   }
+
+   // when the pattern at url last changed, for the index: a local
+   // file's modification time, or else the web server's Last-Modified
+   // (0 if it doesn't give one)
+   private static long changedAt(String url)
+   {
+      long t = stamp(url);
+      if (t != 0) return t;
+
+      try
+      {
+         URLConnection c = new URL(url).openConnection();
+         if (!(c instanceof HttpURLConnection)) return 0;
+         HttpURLConnection http = (HttpURLConnection)c;
+         http.setRequestMethod("HEAD");
+         http.setConnectTimeout(10000);
+         http.setReadTimeout(10000);
+         try
+         {
+            return http.getLastModified();
+         }
+         finally
+         {
+            http.disconnect();
+         }
+      }
+      catch (IOException ioe) {
+         return 0;
+      }
+      catch (SecurityException se) {
+         return 0;
+      }
+   }
+
+   // where the index of dir is saved (null if there's no home)
+   private static File indexFile(String dir)
+   {
+      try
+      {
+         String home = System.getProperty("user.home");
+         if (home == null) return null;
+         return new File(new File(home, ".lifev41d"),
+               "index-" + Integer.toHexString(dir.hashCode()) + ".txt");
+      }
+      catch (SecurityException se) {
+         return null;
+      }
+   }
+
+   private static Vector readIndex(String dir)
+   {
+      Vector idx = new Vector();
+      File file = indexFile(dir);
+      if (file == null) return idx;
+
+      try
+      {
+         BufferedReader in = new BufferedReader(new FileReader(file));
+         try
+         {
+            String s = in.readLine();
+            if (s == null || !s.equals("# " + dir)) return idx;  // a hash collision
+
+            while ((s = in.readLine()) != null)
+            {
+               // the stamp on the end came later; without it, the
+               // entry is described again
+               StringTokenizer st = new StringTokenizer(s, "\t");
+               int fields = st.countTokens();
+               if (fields != 8 && fields != 9) continue;
+
+               Entry e = new Entry();
+               e.name = st.nextToken();
+               e.size = Long.parseLong(st.nextToken());
+               e.rule = st.nextToken();
+               e.population = Long.parseLong(st.nextToken());
+               e.x = Integer.parseInt(st.nextToken());
+               e.y = Integer.parseInt(st.nextToken());
+               e.w = Integer.parseInt(st.nextToken());
+               e.h = Integer.parseInt(st.nextToken());
+               if (fields == 9) e.stamp = Long.parseLong(st.nextToken());
+               if (e.rule.equals("?")) continue;   // a failed load, saved by mistake
+               idx.addElement(e);
+            }
+         }
+         finally
+         {
+            in.close();
+         }
+      }
+      catch (IOException ioe) {}
+      catch (NumberFormatException nfe) {}
+      catch (SecurityException se) {}
+
+      return idx;
+   }
+
+   private static void writeIndex(String dir, Vector idx)
+   {
+      File file = indexFile(dir);
+      if (file == null) return;
+
+      try
+      {
+         file.getParentFile().mkdirs();
+         File tmp = new File(file.getPath() + ".tmp");
+         PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(tmp)));
+         out.println("# " + dir);
+         for (int i=0; i<idx.size(); i++)
+         {
+            Entry e = (Entry)idx.elementAt(i);
+            if (e.population < 0) continue;
+            out.println(e.name + "\t" + e.size + "\t" + e.rule + "\t" + e.population
+                  + "\t" + e.x + "\t" + e.y + "\t" + e.w + "\t" + e.h + "\t" + e.stamp);
+         }
+         out.close();
+         if (out.checkError()) return;
+
+         file.delete();
+         tmp.renameTo(file);
+      }
+      catch (IOException ioe) {}
+      catch (SecurityException se) {}
+   }
+}
@@ -0,0 +1,604 @@
+package life.v41d;
+
+/**************************************************************
+ LifeLoader.java
+
+ Loads a pattern file in the background.
+
+ The file is read on a pool thread into a fresh LifeGen, never
+ into the one being run or drawn, so neither the simulation nor
+ the user interface waits for the network or the parser.  When
+ it's done, the caller is told through its LifeCallback
+ (LOAD_DONE, with this loader as the argument) and swaps the new
+ universe in, or merges it, at a point of its own choosing.
+
+ Progress goes to the same callback (LOAD_PROGRESS, with a short
+ status string) as the bytes come in, or, for a mapped RLE file,
+ as each chunk is decoded.  cancel() stops a load: the stream the
+ readers are given throws as soon as it notices, and a mapped
+ decode stops after the chunk it is on.
+
+ Everything a file can say besides its cells (rules, speed,
+ description) is kept here for the caller to apply.
+**************************************************************/
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class LifeLoader implements Runnable
+{
+   // callback numbers (see Life.callback())
+   static final int LOAD_PROGRESS = 7;
+   static final int LOAD_DONE = 8;
+
+   private static ExecutorService pool;
+
+   private String url;
+   private LifeGen u;
+   private int cx, cy;
+   private LifeCallback cb;
+   private Future task;
+   private volatile boolean cancelled;
+
+   private boolean ok, snapshot, fromCache;
+   private boolean caching = true;
+   private String error;
+   private String rules;
+   private int skipping = -1, refresh = -1;
+   private Vector description = new Vector();
+   private int descriptionwid;
+   private long bytesRead;
+
+   /**
+    * Load url into universe, centred on cx,cy.  universe should be
+    * one that nothing else is using yet.
+    */
+   LifeLoader(String url, LifeGen universe, int cx, int cy, LifeCallback caller)
+   {
+      this.url = url;
+      u = universe;
+      this.cx = cx;
+      this.cy = cy;
+      cb = caller;
+   }
+
+   /** Run something on the loader threads (e.g. fetching an index). */
+   static synchronized Future execute(Runnable r)
+   {
+      if (pool == null)
+      {
+         pool = Executors.newCachedThreadPool(new ThreadFactory()
+         {
+            public Thread newThread(Runnable r)
+            {
+               Thread t = new Thread(r, "Life loader");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+      }
+      return pool.submit(r);
+   }
+
+   /**
+    * Whether to use the library's cache: look there first, and keep
+    * what was loaded.  On unless turned off before the load starts.
+    */
+   public void setCaching(boolean on)
+   {
+      caching = on;
+   }
+
+   /** Start loading in the background. */
+   public void start()
+   {
+      task = execute(this);
+   }
+
+   public void cancel()
+   {
+      cancelled = true;
+      if (task != null) task.cancel(true);
+   }
+
+   public boolean isCancelled()
+   {
+      return cancelled;
+   }
+
+   public void run()
+   {
+      try
+      {
+         ok = load();
+         if (!ok && error == null) error = "not a pattern file";
+         if (ok && caching && !snapshot && !fromCache && !cancelled) keep();
+      }
+      catch (InterruptedIOException iie)
+      {
+         ok = false;
+         error = "cancelled";
+      }
+      catch (IOException ioe)
+      {
+         ok = false;
+         error = ioe.toString();
+      }
+      catch (SecurityException se)
+      {
+         ok = false;
+         error = se.toString();
+      }
+      catch (RuntimeException re)
+      {
+         // a file the parser chokes on (a bad number, say) is just a
+         // bad file; the caller still has to hear about it
+         ok = false;
+         error = re.toString();
+      }
+      finally
+      {
+         if (cb != null && !cancelled) cb.callback(LOAD_DONE, this);
+      }
+   }
+
+   /*
+    * Results, for the caller to apply once LOAD_DONE has arrived.
+    */
+   public boolean succeeded()   { return ok && !cancelled; }
+   public String getError()     { return error; }
+   public String getURL()       { return url; }
+   public LifeGen getUniverse() { return u; }
+   public boolean isSnapshot()  { return snapshot; }  // replaces, never merges
+   public String getRules()     { return rules; }     // null if none given
+   public int getSkipping()     { return skipping; }  // -1 if none given
+   public int getRefresh()      { return refresh; }   // -1 if none given
+   public Vector getDescription() { return description; }
+   public int getDescriptionWidth() { return descriptionwid; }
+   public long getBytesRead()   { return bytesRead; }
+
+   private boolean load() throws IOException
+   {
+      URL urly;
+      DataInputStream lifefile;
+
+      // seen lately? then it's all in the library's cache
+      LifeLibrary.Pattern p = caching? LifeLibrary.get(url) : null;
+      if (p != null)
+      {
+         LifeLibrary.restore(p, u, cx, cy);
+         u.gencount = p.generation;
+         rules = p.rules;
+         skipping = p.skipping;
+         refresh = p.refresh;
+         description = (Vector)p.description.clone();
+         descriptionwid = p.descriptionwid;
+         bytesRead = p.size;
+         fromCache = true;
+         return true;
+      }
+
+      // an apgcode names a pattern all by itself
+      if (LifeApgcode.isApgcode(url))
+      {
+         int n = LifeApgcode.decode(url, u, cx, cy);
+         System.out.println("apgcode: " + url.trim() + ", " + n + " cells");
+         addDescriptionLine(url.trim());
+         return true;
+      }
+
+      try {urly = new URL(url);}
+      catch (MalformedURLException mue)
+      {
+         error = "Malformed URL: " + url;
+         return false;
+      }
+
+      // local RLE files: map the whole file and skip the stream
+      // (other formats are small, or simple; they still go through
+      // the stream)
+      ByteBuffer mapped = mapFile(urly);
+      if (mapped != null && (startsWith(mapped, "x ") || startsWith(mapped, "x=")
+                          || (startsWith(mapped, "#") && !startsWith(mapped, "#Life"))))
+      {
+         progress("Loading");
+         bytesRead = mapped.remaining();
+         LifeRLEReader rle = new LifeRLEReader(mapped);
+         rle.setListener(new LifeRLEReader.ProgressListener()
+         {
+            public boolean progress(long done, long total)
+            {
+               LifeLoader.this.progress((total > 0)? (int)(done*100/total) + "%" : "Loading");
+               return !cancelled && !Thread.currentThread().isInterrupted();
+            }
+         });
+         return readRLE(rle);
+      }
+
+      URLConnection conn = urly.openConnection();
+      BufferedInputStream in = new BufferedInputStream(
+            new Progress(conn.getInputStream(), conn.getContentLength()), 1<<16);
+
+      try
+      {
+         // peek at the start of the file to see what it is
+         byte[] magic = new byte[10];
+         in.mark(magic.length);
+         int got = 0, n;
+         while (got < magic.length
+               && (n = in.read(magic, got, magic.length-got)) > 0) got+=n;
+         in.reset();
+
+         String start = new String(magic, 0, got, "ISO-8859-1");
+         if (start.startsWith("LifeSnap"))
+         {
+            LifeSnapshot snap = new LifeSnapshot();
+            snap.read(u, Channels.newChannel(in));
+            System.out.println(snap.getStats());
+            rules = u.getRules();
+            snapshot = true;
+            return true;
+         }
+         else if (start.startsWith("[M2]"))
+         {
+            return readMacrocell(in);
+         }
+         else if (start.startsWith("#Life 1.05"))
+         {
+            lifefile = new DataInputStream(in);
+            lifefile.readLine();
+            return readLife105(lifefile);
+         }
+         else if (start.startsWith("#Life 1.06"))
+         {
+            LifeTextReader txt = new LifeTextReader(in);
+            txt.readLife106(u, cx, cy);
+            return text(txt);
+         }
+         else if (start.startsWith("!") || start.startsWith(".")
+               || start.startsWith("O") || start.startsWith("*"))
+         {
+            LifeTextReader txt = new LifeTextReader(in);
+            txt.readCells(u, cx, cy);
+            return text(txt);
+         }
+         else if (LifeApgcode.prefixLength(start) > 0)
+         {
+            return readApgcodes(new DataInputStream(in));
+         }
+         else
+         {
+            // now, it is just a guess that this is an RLE file.
+            return readRLE(new LifeRLEReader(in));
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   private boolean readLife105(DataInputStream lifefile) throws IOException
+   {
+      String s;
+      char c;
+      int x=0, y=0, i;
+
+      batchN = 0;
+
+      while ((s=lifefile.readLine())!=null)
+      {
+         if (s.startsWith("#D"))
+         {
+            for (i=2; i<s.length() && s.charAt(i)==' '; i++);
+
+            addDescriptionLine(s.substring(i));
+         }
+         else if (s.startsWith("#P"))
+         {
+            StringTokenizer st = new StringTokenizer(s);
+
+            st.nextToken();  // #P
+            x = Integer.parseInt(st.nextToken()) + cx;
+            y = Integer.parseInt(st.nextToken()) + cy;
+
+         }
+         else if (s.startsWith(".") || s.startsWith("*")
+               || s.startsWith("o") || s.startsWith("O"))
+         {
+            for (i=0; i<s.length(); i++)
+            {
+               c=s.charAt(i);
+               if (c=='*' || c=='o' || c=='O') addToBatch(x+i,y);
+            }
+            y++;
+         }
+         else if (s.startsWith("#N"))
+         {
+            rules = "23/3";
+         }
+         else if (s.startsWith("#R"))
+         {
+            StringTokenizer st = new StringTokenizer(s);
+
+            st.nextToken();  // #R
+            rules = st.nextToken();
+         }
+         else if (s.startsWith("#S"))
+         {
+            StringTokenizer st = new StringTokenizer(s);
+            st.nextToken();
+            skipping = Integer.parseInt(st.nextToken());
+         }
+      }
+
+      flushBatch(true);
+      return true;
+   }
+
+   private boolean readRLE(LifeRLEReader rle) throws IOException
+   {
+      String s;
+
+      if (!rle.readHeader()) return false;
+
+      Vector comments = rle.getComments();
+      for (int i=0; i<comments.size(); i++)
+      {
+         s = (String)comments.elementAt(i);
+         if (s.startsWith("#C") || s.startsWith("#D"))
+            addDescriptionLine(s.substring(2).trim());
+      }
+
+      // default RLE is Conway's rules
+      rules = (rle.getRule() != null)? rle.getRule() : "23/3";
+      try
+      {
+         if ((s = rle.getHeaderValue("skip")) != null)
+            skipping = Integer.parseInt(s);
+         if ((s = rle.getHeaderValue("fps")) != null)
+            refresh = Integer.parseInt(s);
+      }catch (NumberFormatException e) {}
+
+      boolean done = rle.readCells(u, cx-(rle.getWidth()/2),
+                                      cy-(rle.getHeight()/2));
+      System.out.println(rle.getStats());
+
+      if (done) // '!' reached; anything after that is a comment
+      {
+         while ((s=rle.readLine())!=null)
+            addDescriptionLine(s);
+      }
+
+      if (cancelled) throw new InterruptedIOException();
+      return true;
+   }
+
+   private boolean readMacrocell(InputStream lifefile) throws IOException
+   {
+      String s;
+      LifeMacrocell mc = new LifeMacrocell();
+
+      if (!mc.read(lifefile, u, cx, cy)) return false;
+      System.out.println(mc.getStats());
+
+      Vector comments = mc.getComments();
+      for (int i=0; i<comments.size(); i++)
+      {
+         s = (String)comments.elementAt(i);
+         if (s.startsWith("#C") || s.startsWith("#D"))
+            addDescriptionLine(s.substring(2).trim());
+      }
+
+      if (mc.getGeneration() >= 0) u.gencount = mc.getGeneration();
+      rules = mc.getRule();
+      return true;
+   }
+
+   private boolean text(LifeTextReader txt)
+   {
+      System.out.println(txt.getStats());
+
+      Vector comments = txt.getComments();
+      for (int i=0; i<comments.size(); i++)
+      {
+         String s = (String)comments.elementAt(i);
+         if (s.startsWith("#D") || s.startsWith("#C")) s = s.substring(2).trim();
+         addDescriptionLine(s);
+      }
+      rules = txt.getRule();
+      return true;
+   }
+
+   /*
+    * A list of apgcodes, one per line (anything after the code, like
+    * a census count, is ignored): the objects are laid out on a grid,
+    * in order, left to right and top to bottom, around cx,cy.
+    */
+   private boolean readApgcodes(DataInputStream lifefile) throws IOException
+   {
+      Vector codes = new Vector();
+      String s;
+      int pitch = 0;
+
+      while ((s=lifefile.readLine())!=null)
+      {
+         StringTokenizer st = new StringTokenizer(s, " \t,");
+         if (!st.hasMoreTokens()) continue;
+         s = st.nextToken();
+         if (!LifeApgcode.isApgcode(s)) continue;
+
+         codes.addElement(s);
+         int[] size = LifeApgcode.size(s);
+         pitch = Math.max(pitch, Math.max(size[0], size[1]));
+      }
+      if (codes.size() == 0) return false;
+
+      pitch += 8;
+      int across = (int)Math.ceil(Math.sqrt(codes.size()));
+      int down = (codes.size()+across-1)/across;
+      long cells = 0;
+
+      for (int i=0; i<codes.size(); i++)
+      {
+         int x = cx + (i%across - across/2)*pitch;
+         int y = cy + (i/across - down/2)*pitch;
+         cells += LifeApgcode.decode((String)codes.elementAt(i), u, x, y);
+      }
+
+      System.out.println("apgcodes: " + codes.size() + " objects, " + cells + " cells");
+      addDescriptionLine(codes.size() + " objects:");
+      for (int i=0; i<codes.size() && i<100; i++)
+         addDescriptionLine((String)codes.elementAt(i));
+      return true;
+   }
+
+   // cells collected while loading, to be set all at once by
+   // LifeGen.setCells()
+   private int[] batchX = new int[256], batchY = new int[256];
+   private int batchN;
+
+   private void addToBatch(int x, int y)
+   {
+      if (batchN == batchX.length)
+      {
+         int[] nx = new int[batchN*2], ny = new int[batchN*2];
+         System.arraycopy(batchX, 0, nx, 0, batchN);
+         System.arraycopy(batchY, 0, ny, 0, batchN);
+         batchX = nx; batchY = ny;
+      }
+      batchX[batchN] = x;
+      batchY[batchN] = y;
+      batchN++;
+   }
+
+   private void flushBatch(boolean state)
+   {
+      if (batchN > 0) u.setCells(batchX, batchY, batchN, state);
+      batchN = 0;
+   }
+
+   private void addDescriptionLine(String newDescLine)
+   {
+      description.addElement(newDescLine);
+      if (newDescLine.length()>descriptionwid)
+         descriptionwid = newDescLine.length();
+   }
+
+   // put what was loaded in the library's cache
+   private void keep()
+   {
+      LifeLibrary.Pattern p = LifeLibrary.capture(url, u, cx, cy);
+      if (p == null) return;
+
+      p.generation = u.gencount;
+      p.rules = rules;
+      p.skipping = skipping;
+      p.refresh = refresh;
+      p.description = (Vector)description.clone();
+      p.descriptionwid = descriptionwid;
+      p.size = bytesRead;
+      LifeLibrary.put(url, p);
+   }
+
+   private void progress(String status)
+   {
+      if (cb != null && !cancelled) cb.callback(LOAD_PROGRESS, status);
+   }
+
+   /*
+    * Memory-map a file: URL for reading, or return null if it isn't
+    * one (or isn't allowed, or is too big to map in one piece), in
+    * which case the caller falls back to URL.openStream().
+    */
+   private static ByteBuffer mapFile(URL urly)
+   {
+      if (!"file".equals(urly.getProtocol())) return null;
+
+      try
+      {
+         File file = new File(URLDecoder.decode(urly.getFile(), "UTF-8"));
+         RandomAccessFile raf = new RandomAccessFile(file, "r");
+         try
+         {
+            FileChannel ch = raf.getChannel();
+            if (ch.size() > Integer.MAX_VALUE) return null;
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+         }
+         finally
+         {
+            raf.close();   // the mapping stays valid
+         }
+      }
+      catch (IOException ioe) {
+         return null;
+      }
+      catch (SecurityException se) {
+         return null;
+      }
+   }
+
+   private static boolean startsWith(ByteBuffer b, String magic)
+   {
+      if (b.remaining() < magic.length()) return false;
+      for (int i=0; i<magic.length(); i++)
+         if (b.get(b.position()+i) != magic.charAt(i)) return false;
+      return true;
+   }
+
+   /*
+    * The stream the readers see: counts bytes for the progress
+    * report, and gives up as soon as the load is cancelled.
+    */
+   private class Progress extends FilterInputStream
+   {
+      private long length, count;
+      private int reported = -1;
+
+      Progress(InputStream in, long length)
+      {
+         super(in);
+         this.length = length;
+      }
+
+      public int read() throws IOException
+      {
+         check();
+         int c = super.read();
+         if (c >= 0) counted(1);
+         return c;
+      }
+
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+         check();
+         int n = super.read(b, off, len);
+         if (n > 0) counted(n);
+         return n;
+      }
+
+      private void check() throws IOException
+      {
+         if (cancelled || Thread.currentThread().isInterrupted())
+            throw new InterruptedIOException("load cancelled");
+      }
+
+      private void counted(int n)
+      {
+         count += n;
+         bytesRead = count;
+
+         // percent if the size is known, otherwise every 64K
+         int now = (length > 0)? (int)(count*100/length) : (int)(count>>16);
+         if (now == reported) return;
+         reported = now;
+
+         if (length > 0) progress(now + "%");
+         else progress((count>>10) + "K");
+      }
+   }
+}
@@ -0,0 +1,543 @@
+package life.v41d;
+
+/**************************************************************
+ LifeLtL.java
+
+ An engine for Larger than Life rules: outer totalistic rules on
+ a square of (2R+1)x(2R+1) cells instead of 3x3, which the 512
+ entry LifeRules array can't hold.  Rules are written as Golly
+ writes them,
+
+    R5,C0,M1,S34..58,B34..45,NM      (Bosco's rule)
+
+ or as the bare numbers r,c,m,s1,s2,b1,b2.  R is the range (1 to
+ MAX_RANGE), M=1 if the cell counts itself, S and B the survival
+ and birth ranges of the count.  C > 2 makes it a Generations
+ style rule: cells that fail to survive go through states 2 to
+ C-1 before they're dead, don't count, and can't be born on.
+ Only the Moore (square) neighbourhood is done.
+
+ Cells are kept in sparse 16x16 blocks, as in LifeGenerations:
+ live cells as 16 rows of bits, dying cells (if any) as a byte a
+ cell.  To step a block, its live cells and a halo R wide from
+ the 8 blocks around it are pieced together into a window, and
+ a summed-area table of the window gives the count for any cell
+ in four lookups, whatever R is.  Blocks whose window is empty
+ are skipped; blocks that didn't change, with no neighbour that
+ did, sleep.
+
+ main() benchmarks the engine against a naive counter.
+**************************************************************/
+
+import java.util.*;
+
+class LifeLtL
+{
+   static final int MAX_RANGE = 16;   // the halo has to fit in one block
+
+   /** A 16x16 block. */
+   static class Block
+   {
+      int x, y;
+      short[] alive = new short[16];   // rows, leftmost cell in bit 15
+      byte[] dying;                    // state-1 per cell, or null
+
+      short[] nextAlive = new short[16];
+      byte[] nextDying;
+      boolean changed, hasDying, woken;
+      int stamp;
+
+      Block(int x, int y)
+      {
+         this.x = x;
+         this.y = y;
+      }
+   }
+
+   public int gencount = 0;
+
+   private int range, states, middle;
+   private int smin, smax, bmin, bmax;
+
+   private Hashtable blocks = new Hashtable();
+   private Vector awake = new Vector();
+   private int stamp;
+
+   private int[] sat;        // summed-area table of the window
+   private long[] window;    // window rows: west, middle, east blocks
+   private long computed, skipped, slept;
+
+   LifeLtL(String rules)
+   {
+      setRules(rules==null? "R5,C0,M1,S34..58,B34..45,NM" : rules);
+   }
+
+   /**
+    * Set the rule, in either form.  Throws IllegalArgumentException
+    * for anything it can't run.
+    */
+   public void setRules(String rulestring)
+   {
+      int[] v = parse(rulestring);
+      if (v[0] < 1 || v[0] > MAX_RANGE)
+         throw new IllegalArgumentException("range must be 1 to " + MAX_RANGE);
+      if (v[5] <= 0)
+         throw new IllegalArgumentException("B0 rules are not supported");
+      if (v[1] > 256)
+         throw new IllegalArgumentException("at most 256 states");
+
+      range = v[0];
+      states = Math.max(2, v[1]);
+      middle = v[2];
+      smin = v[3]; smax = v[4];
+      bmin = v[5]; bmax = v[6];
+
+      int w = 16 + 2*range;
+      sat = new int[(w+1)*(w+1)];
+      window = new long[w];
+
+      for (Enumeration e=blocks.elements(); e.hasMoreElements(); )
+      {
+         Block b = (Block)e.nextElement();
+         if (b.dying != null)
+            for (int i=0; i<256; i++)
+               if ((b.dying[i] & 0xff) >= states-1) b.dying[i] = 0;
+         wake(b);
+      }
+   }
+
+   // {range, states, middle, smin, smax, bmin, bmax}
+   private static int[] parse(String rule)
+   {
+      int[] v = new int[7];
+      StringTokenizer st = new StringTokenizer(rule.trim().toUpperCase(), ",");
+
+      try
+      {
+         if (st.countTokens() == 7 && Character.isDigit(rule.trim().charAt(0)))
+         {
+            for (int i=0; i<7; i++) v[i] = Integer.parseInt(st.nextToken().trim());
+            return v;
+         }
+
+         boolean[] seen = new boolean[4];
+         while (st.hasMoreTokens())
+         {
+            String t = st.nextToken().trim();
+            if (t.length() < 2) throw new IllegalArgumentException("bad rule: " + rule);
+            String arg = t.substring(1);
+
+            switch (t.charAt(0))
+            {
+               case 'R': v[0] = Integer.parseInt(arg); seen[0] = true; break;
+               case 'C': v[1] = Integer.parseInt(arg); break;
+               case 'M': v[2] = Integer.parseInt(arg); break;
+               case 'S': range(arg, v, 3); seen[1] = true; break;
+               case 'B': range(arg, v, 5); seen[2] = true; break;
+               case 'N':
+                  if (!arg.equals("M"))
+                     throw new IllegalArgumentException("only the Moore neighbourhood (NM) is supported");
+                  break;
+               default:
+                  throw new IllegalArgumentException("bad rule: " + rule);
+            }
+         }
+         if (!seen[0] || !seen[1] || !seen[2])
+            throw new IllegalArgumentException("rule needs R, S and B: " + rule);
+      }
+      catch (NumberFormatException nfe) {
+         throw new IllegalArgumentException("bad rule: " + rule);
+      }
+      return v;
+   }
+
+   // "34..58", "34-58" or "34" into v[i], v[i+1]
+   private static void range(String s, int[] v, int i)
+   {
+      int dots = s.indexOf("..");
+      int dash = s.indexOf('-');
+      if (dots >= 0)
+      {
+         v[i] = Integer.parseInt(s.substring(0, dots));
+         v[i+1] = Integer.parseInt(s.substring(dots+2));
+      }
+      else if (dash > 0)
+      {
+         v[i] = Integer.parseInt(s.substring(0, dash));
+         v[i+1] = Integer.parseInt(s.substring(dash+1));
+      }
+      else v[i] = v[i+1] = Integer.parseInt(s);
+   }
+
+   public String getRules()
+   {
+      return "R" + range + ",C" + (states==2? 0 : states) + ",M" + middle
+         + ",S" + smin + ".." + smax + ",B" + bmin + ".." + bmax + ",NM";
+   }
+
+   public int getRange()
+   {
+      return range;
+   }
+
+   /** State of a cell: 0 dead, 1 alive, 2..C-1 dying. */
+   public int getState(int x, int y)
+   {
+      Block b = getBlock(x>>4, y>>4);
+      if (b == null) return 0;
+
+      int j = y & 15;
+      if ((b.alive[j] & (0x8000 >>> (x & 15))) != 0) return 1;
+      if (b.dying == null) return 0;
+      int d = b.dying[j*16 + (x & 15)] & 0xff;
+      return (d==0)? 0 : d+1;
+   }
+
+   public void setState(int x, int y, int state)
+   {
+      if (state < 0 || state >= states)
+         throw new IllegalArgumentException("no state " + state + " in " + getRules());
+
+      Block b = getBlock(x>>4, y>>4);
+      if (b == null)
+      {
+         if (state == 0) return;
+         b = addBlock(x>>4, y>>4);
+      }
+
+      int j = y & 15, bit = 0x8000 >>> (x & 15);
+      if (state == 1) b.alive[j] |= bit;
+      else b.alive[j] &= ~bit;
+
+      if (state >= 2 && b.dying == null) b.dying = new byte[256];
+      if (b.dying != null) b.dying[j*16 + (x & 15)] = (byte)(state < 2? 0 : state-1);
+      wake(b);
+   }
+
+   /** Put every live cell of a LifeGen universe in, as state 1. */
+   public void paste(LifeGen from)
+   {
+      int off = from.qCycle? 1:0;
+      LifeCell[] cells = from.getBlocksInOrder();
+      int[] rows = new int[16];
+
+      for (int i=0; i<cells.length; i++)
+      {
+         from.getTile(cells[i].x*16+off, cells[i].y*16+off, rows);
+         for (int j=0; j<16; j++)
+            for (int k=0; k<16; k++)
+               if ((rows[j] & (0x8000 >>> k)) != 0)
+                  setState(cells[i].x*16+off+k, cells[i].y*16+off+j, 1);
+      }
+   }
+
+   public void clear()
+   {
+      blocks.clear();
+      awake.removeAllElements();
+      gencount = 0;
+   }
+
+   public boolean isEmpty()
+   {
+      return blocks.isEmpty();
+   }
+
+   /** Number of live (state 1) cells. */
+   public long population()
+   {
+      long n = 0;
+      for (Enumeration e=blocks.elements(); e.hasMoreElements(); )
+      {
+         Block b = (Block)e.nextElement();
+         for (int j=0; j<16; j++) n += Integer.bitCount(b.alive[j] & 0xffff);
+      }
+      return n;
+   }
+
+   public void generate(int numgens)
+   {
+      for (int g=0; g<numgens; g++) step();
+   }
+
+   // one generation: work out every awake block and its neighbours,
+   // then swap them all in at once
+   private void step()
+   {
+      stamp++;
+      Vector work = new Vector();
+
+      for (int i=0; i<awake.size(); i++)
+      {
+         Block b = (Block)awake.elementAt(i);
+         boolean live = false;
+         for (int j=0; j<16 && !live; j++) live = (b.alive[j] != 0);
+
+         for (int dy=-1; dy<=1; dy++)
+         {
+            for (int dx=-1; dx<=1; dx++)
+            {
+               Block n = getBlock(b.x+dx, b.y+dy);
+               if (n == null)
+               {
+                  if (!live) continue;
+                  n = addBlock(b.x+dx, b.y+dy);
+               }
+               if (n.stamp != stamp)
+               {
+                  n.stamp = stamp;
+                  work.addElement(n);
+               }
+            }
+         }
+      }
+      slept += blocks.size() - work.size();
+
+      for (int i=0; i<work.size(); i++)
+         stepBlock((Block)work.elementAt(i));
+
+      awake.removeAllElements();
+      for (int i=0; i<work.size(); i++)
+      {
+         Block b = (Block)work.elementAt(i);
+         short[] t = b.alive; b.alive = b.nextAlive; b.nextAlive = t;
+         if (states > 2)
+         {
+            byte[] td = b.dying; b.dying = b.nextDying; b.nextDying = td;
+            if (!b.hasDying)
+            {
+               if (b.nextDying == null) b.nextDying = b.dying;
+               b.dying = null;
+            }
+         }
+
+         b.woken = b.changed;
+         if (b.changed) awake.addElement(b);
+         else if (isEmpty(b)) blocks.remove(LifeCoordinate.key(b.x, b.y));
+      }
+      gencount++;
+   }
+
+   private void stepBlock(Block b)
+   {
+      int r = range, w = 16 + 2*r, sw = w+1;
+      short[] out = b.nextAlive;
+
+      // the window: rows -r..15+r, each 48 bits (west, middle, east)
+      long any = 0;
+      for (int i=0; i<w; i++)
+      {
+         int y = i-r;
+         int by = b.y + (y>>4);
+         int j = y & 15;
+         Block west = getBlock(b.x-1, by), mid = getBlock(b.x, by), east = getBlock(b.x+1, by);
+
+         long row = 0;
+         if (west != null) row |= (long)(west.alive[j] & 0xffff) << 32;
+         if (mid != null)  row |= (long)(mid.alive[j] & 0xffff) << 16;
+         if (east != null) row |= east.alive[j] & 0xffff;
+         window[i] = row;
+         any |= row;
+      }
+
+      boolean changed = false;
+      if (any == 0)
+      {
+         // nothing alive in reach: no births, and the block is empty
+         // of live cells already
+         skipped++;
+         for (int j=0; j<16; j++) out[j] = 0;
+      }
+      else
+      {
+         computed++;
+
+         // summed-area table: sat[(i+1)*sw + (k+1)] = cells in rows
+         // 0..i and columns 0..k of the window
+         for (int i=0; i<w; i++)
+         {
+            // column k of the window (cell k-r of the block, in bit
+            // 31-(k-r)) goes to bit w-1-k
+            long row = (window[i] >>> (16 - r)) & ((1L << w) - 1);
+            int sum = 0;
+            int above = i*sw, here = above+sw;
+            for (int k=0; k<w; k++)
+            {
+               sum += (int)(row >>> (w-1-k)) & 1;
+               sat[here+k+1] = sat[above+k+1] + sum;
+            }
+         }
+
+         int d = 2*r+1;
+         for (int j=0; j<16; j++)
+         {
+            int bits = 0;
+            int top = j*sw, bottom = (j+d)*sw;
+            for (int k=0; k<16; k++)
+            {
+               int n = sat[bottom+k+d] - sat[top+k+d] - sat[bottom+k] + sat[top+k];
+               boolean alive = (b.alive[j] & (0x8000 >>> k)) != 0;
+               if (alive && middle == 0) n--;
+
+               boolean next = alive? (n >= smin && n <= smax) : (n >= bmin && n <= bmax);
+               if (next) bits |= 0x8000 >>> k;
+            }
+            out[j] = (short)bits;
+         }
+      }
+
+      if (states == 2)
+      {
+         for (int j=0; j<16; j++)
+            if (out[j] != b.alive[j]) changed = true;
+         b.changed = changed;
+         return;
+      }
+
+      // dying cells: no births on them, and they count on to states-1
+      if (b.nextDying == null) b.nextDying = new byte[256];
+      byte[] nd = b.nextDying;
+      boolean dying = false;
+      for (int j=0; j<16; j++)
+      {
+         int old = b.alive[j];
+         for (int k=0; k<16; k++)
+         {
+            int i = j*16+k, bit = 0x8000 >>> k;
+            int s = (b.dying==null)? 0 : b.dying[i] & 0xff;
+            if (s != 0)
+            {
+               out[j] &= ~bit;
+               s = (s+1 >= states-1)? 0 : s+1;
+               changed = true;
+            }
+            else if ((old & bit) != 0 && (out[j] & bit) == 0) s = 1;
+            nd[i] = (byte)s;
+            if (s != 0) dying = true;
+         }
+         if (out[j] != old) changed = true;
+      }
+      b.hasDying = dying;
+      b.changed = changed;
+   }
+
+   private static boolean isEmpty(Block b)
+   {
+      for (int j=0; j<16; j++) if (b.alive[j] != 0) return false;
+      if (b.dying != null)
+         for (int i=0; i<256; i++) if (b.dying[i] != 0) return false;
+      return true;
+   }
+
+   public String getStats()
+   {
+      return "LtL: " + blocks.size() + " blocks, " + computed + " block steps, "
+         + skipped + " empty, " + slept + " slept";
+   }
+
+   /*
+    * Blocks.
+    */
+   Block getBlock(int bx, int by)
+   {
+      return (Block)blocks.get(LifeCoordinate.key(bx, by));
+   }
+
+   private Block addBlock(int bx, int by)
+   {
+      Block b = new Block(bx, by);
+      blocks.put(LifeCoordinate.key(bx, by), b);
+      return b;
+   }
+
+   private void wake(Block b)
+   {
+      if (b.woken) return;
+      b.woken = true;
+      awake.addElement(b);
+   }
+
+   /*
+    * Benchmark: java life.v41d.LifeLtL [rule [size [generations]]]
+    *
+    * Runs a random size x size soup for some generations with the
+    * engine and with a counter that adds up every (2R+1)^2 square
+    * cell by cell, checks they agree, and prints the times.
+    */
+   public static void main(String[] args)
+   {
+      String rule = (args.length > 0)? args[0] : "R5,C0,M1,S34..58,B34..45,NM";
+      int size = (args.length > 1)? Integer.parseInt(args[1]) : 256;
+      int gens = (args.length > 2)? Integer.parseInt(args[2]) : 20;
+
+      LifeLtL u = new LifeLtL(rule);
+      int r = u.range;
+      int margin = (gens+1)*r;
+      int n = size + 2*margin;
+      byte[] grid = new byte[n*n];
+
+      Random rnd = new Random(1);
+      for (int y=0; y<size; y++)
+      {
+         for (int x=0; x<size; x++)
+         {
+            if (rnd.nextBoolean())
+            {
+               u.setState(x, y, 1);
+               grid[(y+margin)*n + x+margin] = 1;
+            }
+         }
+      }
+
+      long t0 = System.nanoTime();
+      u.generate(gens);
+      long engine = System.nanoTime()-t0;
+
+      t0 = System.nanoTime();
+      for (int g=0; g<gens; g++) grid = naiveStep(grid, n, u);
+      long naive = System.nanoTime()-t0;
+
+      for (int y=0; y<n; y++)
+         for (int x=0; x<n; x++)
+            if (u.getState(x-margin, y-margin) != (grid[y*n+x] & 0xff))
+               throw new RuntimeException("engine and naive counter differ at "
+                     + (x-margin) + "," + (y-margin));
+
+      System.out.println(u.getRules() + ", " + size + "x" + size + ", " + gens
+            + " generations, " + u.population() + " cells left");
+      System.out.println("  engine: " + engine/1000000 + " ms  (" + u.getStats() + ")");
+      System.out.println("  naive:  " + naive/1000000 + " ms");
+   }
+
+   // one generation of an n x n grid of states, cell by cell
+   private static byte[] naiveStep(byte[] grid, int n, LifeLtL u)
+   {
+      byte[] next = new byte[n*n];
+      int r = u.range;
+      for (int y=0; y<n; y++)
+      {
+         for (int x=0; x<n; x++)
+         {
+            int s = grid[y*n+x] & 0xff;
+            if (s >= 2)
+            {
+               next[y*n+x] = (byte)((s+1 >= u.states)? 0 : s+1);
+               continue;
+            }
+
+            int c = 0;
+            for (int dy=-r; dy<=r; dy++)
+               for (int dx=-r; dx<=r; dx++)
+               {
+                  int yy = y+dy, xx = x+dx;
+                  if (yy>=0 && yy<n && xx>=0 && xx<n && grid[yy*n+xx] == 1) c++;
+               }
+            if (s == 1 && u.middle == 0) c--;
+
+            if (s == 1) next[y*n+x] = (byte)((c >= u.smin && c <= u.smax)? 1 : (u.states > 2? 2 : 0));
+            else next[y*n+x] = (byte)((c >= u.bmin && c <= u.bmax)? 1 : 0);
+         }
+      }
+      return next;
+   }
+}
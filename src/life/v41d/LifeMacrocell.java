@@ -0,0 +1,462 @@
+package life.v41d;
+
+/**************************************************************
+ LifeMacrocell.java
+
+ Reading and writing of macrocell (.mc) files, the hashed
+ quadtree format used for very large patterns:
+
+    [M2] (...)
+    #R 23/3              rule
+    #G 1000              generation count (optional)
+    #C ...               comments
+    .*$..*$*$            an 8x8 leaf: rows of . and *, ended by $
+    4 1 0 0 2            a node: level, then nw ne sw se node numbers
+    ...
+
+ Nodes are numbered from 1 in the order they appear, 0 means
+ empty, and the last one is the root.  A node of level k covers
+ 2^k x 2^k cells; the root is centred on the origin.
+
+ Reading goes straight from the tree to LifeGen.putTile(): every
+ level-4 node is one 16x16 tile, which lines up with the engine's
+ 16x16 blocks, so nothing is ever expanded to a cell list.  A
+ subtree that appears many times is still placed once per
+ appearance, since LifeGen stores every block.  Anything outside
+ the engine's 2^20 x 2^20 universe is clipped (and counted).
+
+ Writing goes the other way: the live tiles are collected from
+ LifeGen.getTile(), then the tree is built bottom-up, one level
+ at a time, with identical subtrees shared (hash-consed).
+**************************************************************/
+
+import java.io.*;
+import java.util.*;
+
+class LifeMacrocell
+{
+   // the engine stores block coordinates as shorts
+   private static final int LIMIT = 1<<19;
+
+   // nodes read so far, numbered from 1
+   private int count;
+   private byte[] level = new byte[1024];
+   private int[] nw = new int[1024], ne = new int[1024],
+                 sw = new int[1024], se = new int[1024];
+   private long[] leaf = new long[1024];   // level 3: 8x8 cells, row 0 in the top byte
+   private int[][] tiles;                  // level 4 nodes, as rows, made as needed
+
+   private String rule;
+   private int generation = -1;
+   private Vector comments = new Vector();
+   private long cells, clipped;
+   private long nanos;
+
+   // -----------------------------------------------------------------
+   // reading
+
+   /**
+    * Read a macrocell file and put it into u, centred on cx,cy.
+    * Returns false if it isn't a macrocell file.
+    */
+   public boolean read(InputStream input, LifeGen u, int cx, int cy) throws IOException
+   {
+      long t0 = System.nanoTime();
+      InputStream in = (input instanceof BufferedInputStream)?
+            input : new BufferedInputStream(input, 1<<16);
+      byte[] line = new byte[256];
+      int len;
+
+      len = readLine(in, line);
+      if (len < 4 || line[0]!='[' || line[1]!='M' || line[2]!='2' || line[3]!=']')
+         return false;
+
+      while ((len = readLine(in, line)) >= 0)
+      {
+         if (len == 0) continue;
+         byte c = line[0];
+
+         if (c == '#')
+         {
+            String s = new String(line, 0, len, "ISO-8859-1");
+            if (s.startsWith("#R")) rule = s.substring(2).trim();
+            else if (s.startsWith("#G"))
+            {
+               try {generation = Integer.parseInt(s.substring(2).trim());}
+               catch (NumberFormatException e) {}
+            }
+            else comments.addElement(s);
+         }
+         else if (c=='.' || c=='*' || c=='$')
+         {
+            long bits = 0;
+            int x=0, y=0;
+            for (int i=0; i<len; i++)
+            {
+               if (line[i]=='$') { x=0; y++; }
+               else
+               {
+                  if (line[i]=='*' && x<8 && y<8) bits |= 1L<<(63-(y*8+x));
+                  x++;
+               }
+            }
+            newNode(3, 0, 0, 0, 0);
+            leaf[count] = bits;
+         }
+         else if (c>='0' && c<='9')
+         {
+            int[] v = new int[5];
+            int k = 0, n = 0;
+            boolean inNum = false;
+            for (int i=0; i<=len; i++)
+            {
+               if (i<len && line[i]>='0' && line[i]<='9')
+               {
+                  n = n*10 + (line[i]-'0');
+                  inNum = true;
+               }
+               else if (inNum)
+               {
+                  if (k < 5) v[k++] = n;
+                  n = 0;
+                  inNum = false;
+               }
+            }
+            if (k < 5 || v[0] < 4 || v[0] > 62)
+               throw new IOException("bad macrocell node: "
+                     + new String(line, 0, len, "ISO-8859-1"));
+            for (int i=1; i<5; i++)
+               if (v[i] > count)
+                  throw new IOException("macrocell node refers forward: " + v[i]);
+
+            newNode(v[0], v[1], v[2], v[3], v[4]);
+         }
+      }
+
+      if (count > 0)
+      {
+         int root = count;
+         long half = 1L<<(level[root]-1);
+         tiles = new int[count+1][];
+         place(u, root, cx-half, cy-half);
+         tiles = null;
+      }
+
+      nanos = System.nanoTime()-t0;
+      return true;
+   }
+
+   private void newNode(int lev, int a, int b, int c, int d)
+   {
+      if (++count == level.length)
+      {
+         int n = level.length*2;
+         level = grow(level, n);
+         nw = grow(nw, n); ne = grow(ne, n);
+         sw = grow(sw, n); se = grow(se, n);
+         long[] l = new long[n];
+         System.arraycopy(leaf, 0, l, 0, leaf.length);
+         leaf = l;
+      }
+      level[count] = (byte)lev;
+      nw[count] = a; ne[count] = b;
+      sw[count] = c; se[count] = d;
+   }
+
+   private static int[] grow(int[] a, int n)
+   {
+      int[] b = new int[n];
+      System.arraycopy(a, 0, b, 0, a.length);
+      return b;
+   }
+
+   private static byte[] grow(byte[] a, int n)
+   {
+      byte[] b = new byte[n];
+      System.arraycopy(a, 0, b, 0, a.length);
+      return b;
+   }
+
+   // put node id, with its upper left corner at x,y, into u
+   private void place(LifeGen u, int id, long x, long y)
+   {
+      if (id == 0) return;
+
+      int lev = level[id];
+      long size = 1L<<lev;
+
+      if (x+size <= -LIMIT || x >= LIMIT || y+size <= -LIMIT || y >= LIMIT)
+      {
+         clipped++;
+         return;
+      }
+
+      if (lev <= 4)
+      {
+         int[] rows = tile(id);
+         u.putTile((int)x, (int)y, rows);
+         for (int j=0; j<16; j++) cells += Integer.bitCount(rows[j]);
+         return;
+      }
+
+      long half = size>>1;
+      place(u, nw[id], x, y);
+      place(u, ne[id], x+half, y);
+      place(u, sw[id], x, y+half);
+      place(u, se[id], x+half, y+half);
+   }
+
+   // rows of a level 4 node (or of a lone leaf, in the upper left)
+   private int[] tile(int id)
+   {
+      if (tiles[id] != null) return tiles[id];
+
+      int[] rows = new int[16];
+      if (level[id] == 3)
+      {
+         for (int j=0; j<8; j++) rows[j] = leafRow(id, j)<<8;
+      }
+      else
+      {
+         for (int j=0; j<8; j++)
+         {
+            rows[j]   = (leafRow(nw[id], j)<<8) | leafRow(ne[id], j);
+            rows[j+8] = (leafRow(sw[id], j)<<8) | leafRow(se[id], j);
+         }
+      }
+      return tiles[id] = rows;
+   }
+
+   private int leafRow(int id, int j)
+   {
+      if (id == 0) return 0;
+      return (int)(leaf[id] >>> (56-8*j)) & 0xff;
+   }
+
+   // one line into buf, without the line ending; -1 at end of file.
+   // Overlong lines are cut short (no legal line is that long).
+   private static int readLine(InputStream in, byte[] buf) throws IOException
+   {
+      int c = in.read(), n = 0;
+
+      if (c < 0) return -1;
+      while (c >= 0 && c != '\n')
+      {
+         if (c != '\r' && n < buf.length) buf[n++] = (byte)c;
+         c = in.read();
+      }
+      return n;
+   }
+
+   /** The rule given in the file, or null. */
+   public String getRule()
+   {
+      return rule;
+   }
+
+   /** The generation count given in the file, or -1. */
+   public int getGeneration()
+   {
+      return generation;
+   }
+
+   /** #C and other # lines, for the description. */
+   public Vector getComments()
+   {
+      return comments;
+   }
+
+   public String getStats()
+   {
+      return "MC: " + count + " nodes, " + cells + " cells in "
+         + (nanos/1000000) + " ms"
+         + ((clipped > 0)? " (" + clipped + " tiles clipped: outside the universe)" : "");
+   }
+
+   // -----------------------------------------------------------------
+   // writing
+
+   // a node to be shared: level and the numbers of its children
+   private static class Key
+   {
+      int lev, a, b, c, d;
+
+      Key(int lev, int a, int b, int c, int d)
+      {
+         this.lev = lev;
+         this.a = a; this.b = b;
+         this.c = c; this.d = d;
+      }
+
+      public int hashCode()
+      {
+         return (((lev*31 + a)*0x9e3779b1 + b)*0x85ebca6b + c)*0x27d4eb2f + d;
+      }
+
+      public boolean equals(Object o)
+      {
+         if (!(o instanceof Key)) return false;
+         Key k = (Key)o;
+         return lev==k.lev && a==k.a && b==k.b && c==k.c && d==k.d;
+      }
+   }
+
+   private Writer out;
+   private int written;
+   private HashMap leaves, nodes;   // Long / Key -> Integer
+
+   /**
+    * Write the universe as a macrocell file.  The root is the
+    * smallest square centred on the origin that holds everything.
+    */
+   public void write(LifeGen u, OutputStream output) throws IOException
+   {
+      long t0 = System.nanoTime();
+      out = new BufferedWriter(new OutputStreamWriter(output, "ISO-8859-1"), 1<<16);
+      written = 0;
+      leaves = new HashMap();
+      nodes = new HashMap();
+
+      out.write("[M2] (life.v41d)\n");
+      out.write("#R " + u.getRules() + "\n");
+      out.write("#G " + u.gencount + "\n");
+
+      // the live tiles, on the grid of multiples of 16
+      int[] box = new int[4];
+      HashMap level4 = new HashMap();   // Long(tx,ty) -> Integer node
+
+      if (u.getBoundingBox(box))
+      {
+         int lev = 5;
+         while (Math.max(Math.max(-box[0], box[2]+1), Math.max(-box[1], box[3]+1))
+               > (1<<(lev-1)))
+            lev++;
+
+         int rootT = -(1<<(lev-5));     // root corner, in tiles
+         int[] rows = new int[16];
+
+         int tx0 = box[0]>>4, tx1 = box[2]>>4;
+         int ty0 = box[1]>>4, ty1 = box[3]>>4;
+         for (int ty=ty0; ty<=ty1; ty++)
+         {
+            for (int tx=tx0; tx<=tx1; tx++)
+            {
+               if (!anyBlockNear(u, tx, ty)) continue;
+               u.getTile(tx<<4, ty<<4, rows);
+               int id = level4Node(rows);
+               if (id != 0) level4.put(Long.valueOf(pack(tx-rootT, ty-rootT)), Integer.valueOf(id));
+            }
+         }
+
+         // up the tree, a level at a time
+         HashMap cur = level4;
+         for (int k=5; k<=lev; k++)
+         {
+            HashMap up = new HashMap();
+            HashMap quads = new HashMap();   // parent -> int[4]
+
+            for (Iterator it = cur.entrySet().iterator(); it.hasNext(); )
+            {
+               Map.Entry e = (Map.Entry)it.next();
+               long p = ((Long)e.getKey()).longValue();
+               int x = (int)(p>>32), y = (int)p;
+               Long parent = Long.valueOf(pack(x>>1, y>>1));
+
+               int[] q = (int[])quads.get(parent);
+               if (q == null) quads.put(parent, q = new int[4]);
+               q[(y & 1)*2 + (x & 1)] = ((Integer)e.getValue()).intValue();
+            }
+
+            for (Iterator it = quads.entrySet().iterator(); it.hasNext(); )
+            {
+               Map.Entry e = (Map.Entry)it.next();
+               int[] q = (int[])e.getValue();
+               up.put(e.getKey(), Integer.valueOf(node(k, q[0], q[1], q[2], q[3])));
+            }
+            cur = up;
+         }
+
+         if (cur.isEmpty()) node(lev, 0, 0, 0, 0);
+      }
+      else node(5, 0, 0, 0, 0);   // empty universe
+
+      out.flush();
+      leaves = nodes = null;
+      nanos = System.nanoTime()-t0;
+   }
+
+   // could the tile at tx,ty have anything in it? (saves a getTile()
+   // on the empty parts of the bounding box)
+   private static boolean anyBlockNear(LifeGen u, int tx, int ty)
+   {
+      if (u.getBlock(tx, ty) != null) return true;
+      if (!u.qCycle) return false;
+      // q blocks are offset by 1, so one from up or left can reach in
+      return u.getBlock(tx-1, ty) != null || u.getBlock(tx, ty-1) != null
+          || u.getBlock(tx-1, ty-1) != null;
+   }
+
+   private static long pack(int x, int y)
+   {
+      return ((long)x<<32) | (y & 0xffffffffL);
+   }
+
+   private int level4Node(int[] rows) throws IOException
+   {
+      long a=0, b=0, c=0, d=0;
+
+      for (int j=0; j<8; j++)
+      {
+         a |= (long)((rows[j]>>8) & 0xff) << (56-8*j);
+         b |= (long)(rows[j] & 0xff) << (56-8*j);
+         c |= (long)((rows[j+8]>>8) & 0xff) << (56-8*j);
+         d |= (long)(rows[j+8] & 0xff) << (56-8*j);
+      }
+      if ((a|b|c|d) == 0) return 0;
+      return node(4, leafNode(a), leafNode(b), leafNode(c), leafNode(d));
+   }
+
+   private int leafNode(long bits) throws IOException
+   {
+      if (bits == 0) return 0;
+
+      Long k = Long.valueOf(bits);
+      Integer id = (Integer)leaves.get(k);
+      if (id != null) return id.intValue();
+
+      StringBuffer sb = new StringBuffer();
+      int lastRow = 7;
+      while ((bits & (0xffL << (56-8*lastRow))) == 0) lastRow--;
+
+      for (int j=0; j<=lastRow; j++)
+      {
+         int r = (int)(bits >>> (56-8*j)) & 0xff;
+         for (int i=0; r != 0; i++, r = (r<<1) & 0xff)
+            sb.append(((r & 0x80)!=0)? '*' : '.');
+         sb.append('$');
+      }
+      emit(sb.append('\n').toString());
+
+      leaves.put(k, Integer.valueOf(written));
+      return written;
+   }
+
+   private int node(int lev, int a, int b, int c, int d) throws IOException
+   {
+      if ((a|b|c|d) == 0 && lev < 5) return 0;
+
+      Key k = new Key(lev, a, b, c, d);
+      Integer id = (Integer)nodes.get(k);
+      if (id != null) return id.intValue();
+
+      emit(lev + " " + a + " " + b + " " + c + " " + d + "\n");
+      nodes.put(k, Integer.valueOf(written));
+      return written;
+   }
+
+   private void emit(String s) throws IOException
+   {
+      out.write(s);
+      written++;
+   }
+}
@@ -0,0 +1,247 @@
+package life.v41d;
+
+/**************************************************************
+ LifePatternWriter.java
+
+ Saves the universe as an RLE or Life 1.05 file, for
+ checkpointing long runs.
+
+ Nothing is expanded into a cell list.  The living and
+ hibernating blocks are taken in order (LifeGen.getBlocksInOrder()),
+ and a band of blocks with the same y is pulled out as 16x16 tiles
+ and written before the next band is looked at, so the memory used
+ depends on the width of the pattern, not its population.
+
+ RLE rows are built from runs found with numberOfLeadingZeros()
+ rather than a cell at a time, and output lines are wrapped at 70
+ columns.  Life 1.05 files get one #P section per block, trimmed
+ to the live part of the block.
+
+ Cell coordinates are written as they are in the universe; the
+ readers put the file's origin at the load position.
+**************************************************************/
+
+import java.io.*;
+
+class LifePatternWriter
+{
+   private static final int RLE_WIDTH = 70;
+
+   private Writer out;
+   private int column;          // of the current RLE output line
+   private long cells;
+   private long nanos;
+
+   /**
+    * Write the universe as an RLE file, with the current rules.
+    */
+   public void writeRLE(LifeGen u, OutputStream output) throws IOException
+   {
+      long t0 = System.nanoTime();
+      open(output);
+
+      int[] box = new int[4];
+      if (!u.getBoundingBox(box)) box[2]=box[3]=-1;
+
+      out.write("#C Generation " + u.gencount + "\n");
+      out.write("x = " + (box[2]-box[0]+1) + ", y = " + (box[3]-box[1]+1)
+            + ", rule = " + rleRule(u.getRules()) + "\n");
+
+      LifeCell[] blocks = u.getBlocksInOrder();
+      int off = u.qCycle? 1:0;
+      int nextRow = box[1];     // row the pending line ends lead up to
+      int[][] band = new int[0][];
+
+      for (int first=0; first<blocks.length; )
+      {
+         int last = first;
+         while (last<blocks.length && blocks[last].y==blocks[first].y) last++;
+
+         if (band.length < last-first) band = new int[last-first][16];
+         int y0 = blocks[first].y*16+off;
+         for (int k=first; k<last; k++)
+            u.getTile(blocks[k].x*16+off, y0, band[k-first]);
+
+         for (int j=0; j<16; j++)
+         {
+            int runStart = 0, runEnd = 0;   // pending live run
+            boolean any = false;
+
+            for (int k=first; k<last; k++)
+            {
+               int bits = band[k-first][j];
+               int x = blocks[k].x*16+off - box[0];
+
+               while (bits != 0)
+               {
+                  int a = Integer.numberOfLeadingZeros(bits)-16;
+                  int len = Integer.numberOfLeadingZeros(~(bits<<(16+a)));
+                  bits &= 0xffff >>> (a+len);
+
+                  if (!any)
+                  {
+                     if (y0+j > nextRow) token(y0+j-nextRow, '$');
+                     nextRow = y0+j;
+                     any = true;
+                  }
+                  else if (x+a == runEnd)
+                  {
+                     runEnd += len;   // carries on from the last block
+                     continue;
+                  }
+                  else
+                  {
+                     token(runEnd-runStart, 'o');
+                     cells += runEnd-runStart;
+                     runStart = runEnd;
+                  }
+
+                  if (x+a > runStart) token(x+a-runStart, 'b');
+                  runStart = x+a;
+                  runEnd = x+a+len;
+               }
+            }
+
+            if (any)
+            {
+               token(runEnd-runStart, 'o');
+               cells += runEnd-runStart;
+            }
+         }
+
+         first = last;
+      }
+
+      if (column >= RLE_WIDTH) out.write('\n');
+      out.write("!\n");
+      out.flush();
+      nanos = System.nanoTime()-t0;
+   }
+
+   /**
+    * Write the universe as a Life 1.05 file.
+    */
+   public void writeLife105(LifeGen u, OutputStream output) throws IOException
+   {
+      long t0 = System.nanoTime();
+      open(output);
+
+      String rules = u.getRules();
+      out.write("#Life 1.05\n");
+      out.write("#D Generation " + u.gencount + "\n");
+      if (rules==null || rules.equals("23/3")) out.write("#N\n");
+      else out.write("#R " + rules + "\n");
+
+      LifeCell[] blocks = u.getBlocksInOrder();
+      int off = u.qCycle? 1:0;
+      int[] rows = new int[16];
+      char[] line = new char[16];
+
+      for (int k=0; k<blocks.length; k++)
+      {
+         int x = blocks[k].x*16+off, y = blocks[k].y*16+off;
+         u.getTile(x, y, rows);
+
+         int or = 0, top = -1, bottom = -1;
+         for (int j=0; j<16; j++)
+         {
+            if (rows[j]==0) continue;
+            or |= rows[j];
+            if (top<0) top=j;
+            bottom=j;
+         }
+         if (or==0) continue;
+
+         int left = Integer.numberOfLeadingZeros(or)-16;
+         out.write("#P " + (x+left) + " " + (y+top) + "\n");
+
+         for (int j=top; j<=bottom; j++)
+         {
+            int bits = (rows[j] << left) & 0xffff;
+            int n = 0;
+            // a blank row is written as one dot, or it wouldn't count
+            do
+            {
+               line[n++] = (bits & 0x8000)!=0? '*' : '.';
+               bits = (bits<<1) & 0xffff;
+            } while (bits != 0);
+            cells += Integer.bitCount(rows[j]);
+            out.write(line, 0, n);
+            out.write('\n');
+         }
+      }
+
+      out.flush();
+      nanos = System.nanoTime()-t0;
+   }
+
+   public String getStats()
+   {
+      long ms = nanos/1000000;
+      return "Wrote " + cells + " cells in " + ms + " ms";
+   }
+
+   private void open(OutputStream output) throws IOException
+   {
+      out = new BufferedWriter(new OutputStreamWriter(output, "ISO-8859-1"), 1<<16);
+      column = 0;
+      cells = 0;
+   }
+
+   // one RLE item, e.g. "12b", wrapping the line if it won't fit
+   private void token(int count, char tag) throws IOException
+   {
+      String s = count>1? count + String.valueOf(tag) : String.valueOf(tag);
+
+      if (column + s.length() > RLE_WIDTH)
+      {
+         out.write('\n');
+         column = 0;
+      }
+      out.write(s);
+      column += s.length();
+   }
+
+   /**
+    * RLE headers give rules as B3/S23; LifeRules keeps the old
+    * survival/birth form ("23/3") unless it was given letters.
+    */
+   static String rleRule(String rules)
+   {
+      if (rules==null) return "B3/S23";
+
+      rules = rules.toLowerCase();
+      int slash = rules.indexOf('/');
+      if (slash < 0) return rules;
+
+      // hexagonal and von Neumann rules keep their H or V at the end
+      String suffix = "";
+      rules = rules.trim();
+      if (rules.endsWith("h") || rules.endsWith("v"))
+      {
+         suffix = rules.substring(rules.length()-1).toUpperCase();
+         rules = rules.substring(0, rules.length()-1);
+      }
+
+      // Generations rules keep their state count, as /C<n>
+      String states = "";
+      int last = rules.lastIndexOf('/');
+      if (last > slash)
+      {
+         states = "/C" + rules.substring(last+1).replace('c', ' ').replace('g', ' ').trim();
+         rules = rules.substring(0, last);
+      }
+
+      String left = rules.substring(0, slash);
+      String right = rules.substring(slash+1);
+
+      // same test LifeRules.convertRules() uses
+      boolean bs = (left.indexOf('b') >= 0 || right.indexOf('s') >= 0);
+      String birth = bs? left : right;
+      String survival = bs? right : left;
+
+      if (birth.startsWith("b")) birth = birth.substring(1);
+      if (survival.startsWith("s")) survival = survival.substring(1);
+      return "B" + birth + "/S" + survival + states + suffix;
+   }
+}
@@ -0,0 +1,642 @@
+package life.v41d;
+
+/**************************************************************
+ LifeRLEReader.java
+
+ Streaming reader for RLE pattern files.
+
+ The file is read a buffer at a time as bytes; there is no
+ readLine() and no String per line.  Runs are decoded straight
+ into a band of 16x16 tile bitmaps lined up with the engine's
+ block grid, and each band is handed to LifeGen.putTile() as
+ soon as the pattern moves below it.  So every block is found
+ and invalidated once, rather than once per live cell, and the
+ memory used does not depend on the height of the pattern.
+
+ A local file can instead be given as a memory-mapped buffer
+ (see LifeLoader).  Then big files are decoded on several
+ threads: the body is cut into chunks just after a '$', one pass
+ counts the rows in each chunk so every chunk knows which row it
+ starts on, and the chunks are decoded in parallel into lists of
+ tiles.  Only the final putTile() calls happen on one thread,
+ since LifeGen is not thread-safe.
+
+ Usage:  readHeader(), then readCells(), then readLine() for any
+ trailing comment lines.  getStats() reports the throughput.
+
+ Runs that would put cells beyond LifeGen.MAX_COORD are refused
+ with an IOException, as are (after setStrict()) cells outside the
+ header's x by y box; nothing is allocated for them first.
+**************************************************************/
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class LifeRLEReader
+{
+   private InputStream in;
+   private byte[] buf;
+   private int pos, len;
+   private ByteBuffer map;   // the whole file, if mapped
+   private long bytesRead;
+
+   private int width, height;
+   private String rule;
+   private Hashtable header = new Hashtable();   // other "key = value" fields
+   private Vector comments = new Vector();       // # lines before the header
+
+   private boolean strict;   // cells must lie inside width x height
+   private ProgressListener listener;
+
+   /**
+    * Told how far the decoding of a mapped file has got, after each
+    * chunk (or round of chunks, on several threads).  Returning false
+    * stops the decode with an InterruptedIOException.
+    */
+   interface ProgressListener
+   {
+      boolean progress(long done, long total);
+   }
+
+   private long cells;
+   private long nanos;
+   private int threadsUsed = 1;
+
+   // mapped files smaller than this aren't worth splitting up
+   private static final int PARALLEL_MIN = 4<<20;
+   private static final int CHUNK_MIN = 1<<20, CHUNK_MAX = 8<<20;
+
+   LifeRLEReader(InputStream input)
+   {
+      in = input;
+      buf = new byte[1<<16];
+   }
+
+   LifeRLEReader(ByteBuffer mapped)
+   {
+      map = mapped;
+      bytesRead = map.remaining();
+   }
+
+   private int read() throws IOException
+   {
+      if (map != null)
+         return map.hasRemaining()? (map.get() & 0xff) : -1;
+
+      if (pos >= len)
+      {
+         len = in.read(buf, 0, buf.length);
+         pos = 0;
+         if (len <= 0)
+         {
+            len = 0;
+            return -1;
+         }
+         bytesRead += len;
+      }
+      return buf[pos++] & 0xff;
+   }
+
+   /**
+    * Next line of the file, without the line ending, or null at the
+    * end of the file.
+    */
+   public String readLine() throws IOException
+   {
+      StringBuffer sb = new StringBuffer();
+      int c = read();
+
+      if (c < 0) return null;
+
+      while (c >= 0 && c != '\n')
+      {
+         if (c != '\r') sb.append((char)c);
+         c = read();
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Read the "x = m, y = n, rule = abc" line, collecting any #
+    * lines in front of it.  Returns false if there is no header.
+    */
+   public boolean readHeader() throws IOException
+   {
+      String s;
+
+      while ((s = readLine()) != null)
+      {
+         if (s.startsWith("#"))
+         {
+            comments.addElement(s);
+            continue;
+         }
+         if (s.trim().length()==0) continue;
+         if (!s.trim().startsWith("x")) return false;
+
+         StringTokenizer stcomma = new StringTokenizer(s, ",");
+         while (stcomma.hasMoreTokens())
+         {
+            StringTokenizer stequal = new StringTokenizer(stcomma.nextToken(), "= ");
+            if (!stequal.hasMoreTokens()) continue;
+            String tokenType = stequal.nextToken();
+            if (!stequal.hasMoreTokens()) continue;
+            String tokenValue = stequal.nextToken();
+
+            try
+            {
+               if (tokenType.equals("x"))
+                  width = Integer.parseInt(tokenValue);
+               else if (tokenType.equals("y"))
+                  height = Integer.parseInt(tokenValue);
+               else if (tokenType.equals("rule") || tokenType.equals("rules"))
+                  rule = tokenValue;
+               else header.put(tokenType, tokenValue);
+            }catch (NumberFormatException e) {}
+         }
+         return true;
+      }
+      return false;
+   }
+
+   public int getWidth()
+   {
+      return width;
+   }
+
+   public int getHeight()
+   {
+      return height;
+   }
+
+   /** The rule from the header, or null if none was given. */
+   public String getRule()
+   {
+      return rule;
+   }
+
+   /** Any other header field, e.g. "skip" or "fps"; null if absent. */
+   public String getHeaderValue(String key)
+   {
+      return (String)header.get(key);
+   }
+
+   /**
+    * Refuse cells outside the x by y box the header gives, so that
+    * the header bounds what the file can put in the universe (for
+    * files from somewhere untrusted).  Call before readCells().
+    */
+   public void setStrict(boolean strict)
+   {
+      this.strict = strict;
+   }
+
+   /** Follow (and perhaps stop) the decoding of a mapped file. */
+   public void setListener(ProgressListener l)
+   {
+      listener = l;
+   }
+
+   // tell the listener; stop if it says so
+   private void progress(long done, long total) throws IOException
+   {
+      if (listener != null && !listener.progress(done, total))
+         throw new InterruptedIOException("RLE load cancelled");
+   }
+
+   /** The # lines found before the header. */
+   public Vector getComments()
+   {
+      return comments;
+   }
+
+   /**
+    * Decode the pattern up to the '!' into u, with its upper left
+    * corner at left,top.  Returns false if the file ended before
+    * the '!'.
+    */
+   public boolean readCells(LifeGen u, int left, int top) throws IOException
+   {
+      long t0 = System.nanoTime();
+      int off = u.qCycle? 1:0;
+      int end;
+      Decoder d;
+
+      if (map != null)
+      {
+         int threads = Runtime.getRuntime().availableProcessors();
+
+         if (threads > 1 && map.remaining() >= PARALLEL_MIN)
+            end = readParallel(u, left-off, top-off, off, threads);
+         else
+         {
+            d = decoder(left-off, top-off, top-off, off, u);
+            int start = map.position(), limit = map.limit();
+            end = -1;
+            for (int p = start; end < 0 && p < limit; p += CHUNK_MIN)
+            {
+               end = feedMapped(d, map, p, Math.min(limit, p+CHUNK_MIN));
+               progress(Math.min(limit, p+CHUNK_MIN)-start, limit-start);
+            }
+            d.flush();
+            cells += d.cells;
+         }
+         map.position((end<0)? map.limit() : end);
+      }
+      else
+      {
+         d = decoder(left-off, top-off, top-off, off, u);
+         end = -1;
+         while (end < 0)
+         {
+            if (pos >= len)
+            {
+               len = in.read(buf, 0, buf.length);
+               pos = 0;
+               if (len <= 0)
+               {
+                  len = 0;
+                  break;
+               }
+               bytesRead += len;
+            }
+            end = d.feed(buf, pos, len);
+            pos = (end<0)? len : end;
+         }
+         d.flush();
+         cells += d.cells;
+      }
+
+      // the rest of the line with the '!' is not a comment
+      if (end >= 0)
+      {
+         int c;
+         while ((c = read()) >= 0 && c != '\n');
+      }
+
+      nanos += System.nanoTime()-t0;
+      return end >= 0;
+   }
+
+   // a decoder starting at grid position gx,gy, for a pattern
+   // whose top is at grid row gy0
+   private Decoder decoder(int gx, int gy, int gy0, int off, LifeGen u) throws IOException
+   {
+      Decoder d = new Decoder(gx, gy, off, width, u);
+      if (strict) d.limit(gx+Math.max(width,0), gy0+Math.max(height,0));
+      return d;
+   }
+
+   /*
+    * The multi-threaded path for mapped files.  gx0,gy0 is the upper
+    * left corner in the engine's block grid.  Returns the position
+    * just past the '!', or -1 if there isn't one.
+    */
+   private int readParallel(LifeGen u, int gx0, int gy0, int off, int threads)
+      throws IOException
+   {
+      final ByteBuffer b = map;
+      int start = b.position(), limit = b.limit();
+      int chunk = (limit-start)/(threads*4);
+      if (chunk < CHUNK_MIN) chunk = CHUNK_MIN;
+      if (chunk > CHUNK_MAX) chunk = CHUNK_MAX;
+
+      // cut just after a '$', so that every chunk starts at the
+      // beginning of a row and no run count is split.
+      Vector cuts = new Vector();
+      cuts.addElement(Integer.valueOf(start));
+      for (int p = start+chunk; p < limit; p += chunk)
+      {
+         while (p < limit && b.get(p) != '$' && b.get(p) != '!') p++;
+         if (p >= limit || b.get(p) == '!') break;
+         cuts.addElement(Integer.valueOf(++p));
+      }
+      cuts.addElement(Integer.valueOf(limit));
+
+      int nChunks = cuts.size()-1;
+      final int[] from = new int[nChunks], to = new int[nChunks];
+      for (int i=0; i<nChunks; i++)
+      {
+         from[i] = ((Integer)cuts.elementAt(i)).intValue();
+         to[i] = ((Integer)cuts.elementAt(i+1)).intValue();
+      }
+
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+      threadsUsed = threads;
+
+      try
+      {
+         // pass 1: how many rows does each chunk move down?
+         Vector counts = new Vector();
+         for (int i=0; i<nChunks; i++)
+         {
+            final int f = from[i], t = to[i];
+            counts.addElement(pool.submit(new Callable<long[]>() {
+               public long[] call() {
+                  return countRows(b, f, t);
+               }
+            }));
+         }
+
+         int[] firstRow = new int[nChunks];
+         int row = gy0;
+         for (int i=0; i<nChunks; i++)
+         {
+            long[] r = (long[])((Future)counts.elementAt(i)).get();
+            firstRow[i] = row;
+            row += (int)r[0];
+            if (r[1] != 0)        // the '!' is in this chunk
+            {
+               nChunks = i+1;
+               break;
+            }
+         }
+
+         progress(0, limit-start);
+
+         // pass 2: decode into tiles, a round of chunks at a time so
+         // the tile lists don't grow with the size of the file.
+         int end = -1;
+         for (int r0=0; r0<nChunks; r0+=threads)
+         {
+            Vector jobs = new Vector();
+            for (int i=r0; i<nChunks && i<r0+threads; i++)
+            {
+               final Decoder d = decoder(gx0, firstRow[i], gy0, off, null);
+               final int f = from[i], t = to[i];
+               jobs.addElement(pool.submit(new Callable<Decoder>() {
+                  public Decoder call() throws IOException {
+                     d.end = feedMapped(d, b, f, t);
+                     d.flush();
+                     return d;
+                  }
+               }));
+            }
+
+            for (int i=0; i<jobs.size(); i++)
+            {
+               Decoder d = (Decoder)((Future)jobs.elementAt(i)).get();
+               int[][] tiles = d.getTiles();
+               for (int k=0; k<tiles.length; k++)
+                  u.putTile(tiles[k][16], tiles[k][17], tiles[k]);
+               cells += d.cells;
+               if (d.end >= 0) end = d.end;
+            }
+            progress(to[Math.min(nChunks, r0+threads)-1]-start, limit-start);
+         }
+         return end;
+      }
+      catch (InterruptedException ie)
+      {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("RLE load interrupted");
+      }
+      catch (ExecutionException ee)
+      {
+         if (ee.getCause() instanceof IOException) throw (IOException)ee.getCause();
+         throw new IOException("RLE decoding failed: " + ee.getCause());
+      }
+      finally
+      {
+         pool.shutdown();
+      }
+   }
+
+   // Feed from..to of a mapped file to d, copying it out a slice at
+   // a time: a loop over a byte[] runs a lot faster than get(i).
+   // Returns the position just past the '!', or -1.
+   private static int feedMapped(Decoder d, ByteBuffer b, int from, int to)
+      throws IOException
+   {
+      ByteBuffer src = b.duplicate();
+      byte[] slice = new byte[1<<16];
+
+      src.position(from);
+      for (int p=from; p<to; p+=slice.length)
+      {
+         int n = Math.min(slice.length, to-p);
+         src.get(slice, 0, n);
+         int end = d.feed(slice, 0, n);
+         if (end >= 0) return p+end;
+      }
+      return -1;
+   }
+
+   // rows moved down by the '$'s in from..to, and whether a '!' ends it
+   private static long[] countRows(ByteBuffer b, int from, int to)
+   {
+      ByteBuffer src = b.duplicate();
+      byte[] slice = new byte[1<<16];
+      long rows = 0;
+      int n = 0;
+
+      src.position(from);
+      for (int p=from; p<to; p+=slice.length)
+      {
+         int len = Math.min(slice.length, to-p);
+         src.get(slice, 0, len);
+
+         for (int i=0; i<len; i++)
+         {
+            int c = slice[i];
+            if (c>='0' && c<='9')
+            {
+               // the decoder refuses anything this long anyway
+               if (n <= LifeGen.MAX_COORD) n = n*10 + (c-'0');
+               continue;
+            }
+            if (c==' ' || c=='\t' || c=='\r' || c=='\n') continue;
+
+            if (c=='$') rows += (n==0)? 1 : n;
+            else if (c=='!') return new long[] {rows, 1};
+            n=0;
+         }
+      }
+      return new long[] {rows, 0};
+   }
+
+   /*
+    * The run decoder.  Fills a band of 16 rows, a row of tiles wide,
+    * and hands each tile with anything in it either to the engine
+    * or, if there is none (when decoding on another thread), to a
+    * list for putting in later.
+    */
+   private static class Decoder
+   {
+      int x, y, n;         // grid position, and the count being read
+      int gx0;             // grid column of the left edge
+      int off;             // 1 on the q side
+      int[] band;
+      int tile0;           // tile column of band[0..15]
+      int bandY;           // grid row of the top of the band
+      boolean bandDirty;
+      long cells;
+      int end = -1;
+      int xEnd = LifeGen.MAX_COORD+1;   // cells must be left of this
+      int yEnd = LifeGen.MAX_COORD+1;   // and above this
+
+      LifeGen u;
+      Vector tiles;        // of int[18]: 16 rows, then x, y
+
+      Decoder(int gx, int gy, int offset, int width, LifeGen universe) throws IOException
+      {
+         if (Math.abs(gx) > LifeGen.MAX_COORD || Math.abs(gy) > LifeGen.MAX_COORD)
+            throw new IOException("RLE pattern is too far out: " + gx + "," + gy);
+
+         x = gx0 = gx;
+         y = gy;
+         off = offset;
+         u = universe;
+         if (u == null) tiles = new Vector();
+
+         tile0 = gx0>>4;
+         // run() grows the band if the header's width was too small
+         int w = Math.max(1, Math.min(width, 1<<12));
+         band = new int[(((gx0 & 15) + w + 15)>>4) * 16];
+         bandY = y & ~15;
+      }
+
+      // refuse cells at or beyond column x, or row y
+      void limit(int x, int y)
+      {
+         xEnd = Math.min(xEnd, x);
+         yEnd = Math.min(yEnd, y);
+      }
+
+      /*
+       * Decode from..to of b.  Returns the position just past the
+       * '!', or -1 if it wasn't reached.  State carries over from one
+       * call to the next.
+       */
+      int feed(byte[] b, int from, int to) throws IOException
+      {
+         for (int i=from; i<to; i++)
+         {
+            int c = b[i];
+
+            if (c>='0' && c<='9')
+            {
+               n = n*10 + (c-'0');
+               if (n > 2*LifeGen.MAX_COORD)
+                  throw new IOException("RLE run count is too big");
+               continue;
+            }
+            if (c==' ' || c=='\t' || c=='\r' || c=='\n') continue;
+            if (n==0) n=1;
+
+            if (c=='b')
+            {
+               x+=n;
+               if (x > LifeGen.MAX_COORD)
+                  throw new IOException("RLE pattern is too wide");
+            }
+            else if (c=='o')
+            {
+               if (x+n > xEnd || y >= yEnd)
+                  throw new IOException("RLE cells outside the pattern's bounds");
+               run(x, y, n);
+               x+=n;
+            }
+            else if (c=='$')
+            {
+               x=gx0;
+               y+=n;
+               if (y > LifeGen.MAX_COORD)
+                  throw new IOException("RLE pattern is too tall");
+               if (y >= bandY+16)
+               {
+                  flush();
+                  bandY = y & ~15;
+               }
+            }
+            else if (c=='!')
+            {
+               n=0;
+               return i+1;
+            }
+
+            n=0;
+         }
+         return -1;
+      }
+
+      // turn on n cells of grid row y, starting at grid column x
+      private void run(int x, int y, int n)
+      {
+         int row = y - bandY;
+         int last = ((x+n-1)>>4) - tile0;
+
+         if (last*16+16 > band.length)
+         {
+            int[] bigger = new int[Math.max(band.length*2, last*16+16)];
+            System.arraycopy(band, 0, bigger, 0, band.length);
+            band = bigger;
+         }
+
+         cells += n;
+         bandDirty = true;
+
+         while (n > 0)
+         {
+            int bit = x & 15;
+            int k = Math.min(n, 16-bit);
+
+            band[((x>>4)-tile0)*16 + row] |= (0xffff>>>bit) & ~(0xffff>>>(bit+k));
+            x+=k;
+            n-=k;
+         }
+      }
+
+      // hand the band over, a tile at a time
+      void flush()
+      {
+         if (!bandDirty) return;
+
+         int[] rows = new int[18];
+
+         for (int t=0; t*16 < band.length; t++)
+         {
+            int any = 0;
+            for (int j=0; j<16; j++)
+            {
+               rows[j] = band[t*16+j];
+               band[t*16+j] = 0;
+               any |= rows[j];
+            }
+            if (any == 0) continue;
+
+            rows[16] = ((tile0+t)<<4) + off;
+            rows[17] = bandY + off;
+            if (u != null) u.putTile(rows[16], rows[17], rows);
+            else
+            {
+               tiles.addElement(rows);
+               rows = new int[18];
+            }
+         }
+         bandDirty = false;
+      }
+
+      int[][] getTiles()
+      {
+         int[][] t = new int[tiles.size()][];
+         tiles.copyInto(t);
+         return t;
+      }
+   }
+
+   /** Bytes read, cells set and time taken, for the console. */
+   public String getStats()
+   {
+      double secs = nanos/1e9;
+      if (secs <= 0) secs = 1e-9;
+
+      return "RLE: " + bytesRead + " bytes, " + cells + " cells in "
+         + ((int)(secs*1000)) + " ms ("
+         + ((int)(bytesRead/secs/1e5))/10.0 + " MB/s, "
+         + ((int)(cells/secs/1e5))/10.0 + "M cells/s"
+         + ((threadsUsed > 1)? ", " + threadsUsed + " threads)" : ")");
+   }
+}
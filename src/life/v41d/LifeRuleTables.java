@@ -0,0 +1,341 @@
+package life.v41d;
+
+/**************************************************************
+ LifeRuleTables.java
+
+ The crunch and munch tables for each rule, built once and
+ shared by every LifeGen in the VM.
+
+ Tables are keyed by the rule array itself (as 128 hex digits),
+ not the rule string, so "23/3", "B3/S23" and "b3/s23" all find
+ the same pair.  The MAX_TABLES most recently used are kept.
+ A table that has to be built is split into independent runs of
+ entries, built side by side on up to THREADS processors; other
+ threads wanting the same table meanwhile wait for it rather than
+ build it again.
+
+ If persistence is on (setPersistent(), or the system property
+ lifev41d.ruletables=disk), tables are also saved under
+ ~/.lifev41d/rules and read back from there by later sessions
+ instead of being built again.  Tables are never changed once
+ they're handed out, so they can be shared without locking.
+**************************************************************/
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class LifeRuleTables
+{
+   static final int MAX_TABLES = 16;   // 256K each
+   private static final int TABLE_BYTES = 65536*2;
+   private static final int VERSION = 1;
+
+   private static LinkedHashMap cache = new LinkedHashMap(MAX_TABLES, 0.75f, true)
+   {
+      protected boolean removeEldestEntry(Map.Entry eldest)
+      {
+         return size() > MAX_TABLES;
+      }
+   };
+
+   private static HashSet building = new HashSet();   // keys being built now
+   private static boolean persist = "disk".equals(property("lifev41d.ruletables"));
+   private static int hits, built, read;
+
+   private static final int THREADS = 8;   // at most, for a build
+   private static ExecutorService pool;
+
+   /**
+    * The {crunch, munch} tables for a rule array, from the cache, the
+    * disk, or built fresh.  The arrays must not be written to.
+    */
+   static short[][] get(boolean[] rule)
+   {
+      String key = key(rule);
+      boolean mine;
+      synchronized (LifeRuleTables.class)
+      {
+         // if another thread is already building these, wait for it
+         while (building.contains(key))
+         {
+            try
+            {
+               LifeRuleTables.class.wait();
+            }
+            catch (InterruptedException ie) {
+               Thread.currentThread().interrupt();
+               break;   // and build them here too
+            }
+         }
+
+         short[][] cached = (short[][])cache.get(key);
+         if (cached != null)
+         {
+            hits++;
+            return cached;
+         }
+         mine = building.add(key);
+      }
+
+      // built outside the lock, so lookups of other rules aren't held up
+      short[][] tables = null;
+      boolean fresh = true;
+      try
+      {
+         tables = persist? readTables(key) : null;
+         fresh = (tables == null);
+         if (fresh)
+         {
+            tables = build(rule);
+            if (persist) writeTables(key, tables);
+         }
+      }
+      finally
+      {
+         synchronized (LifeRuleTables.class)
+         {
+            if (mine) building.remove(key);
+            LifeRuleTables.class.notifyAll();
+            if (tables != null)
+            {
+               if (fresh) built++;
+               else read++;
+               cache.put(key, tables);
+            }
+         }
+      }
+      return tables;
+   }
+
+   /**
+    * Build the tables for a rule, with the work split between the
+    * processors: the calling thread takes one share and the builder
+    * threads the rest.
+    */
+   static short[][] build(final boolean[] rule)
+   {
+      final short[][] tables = {new short[65536], new short[65536]};
+      int n = Math.min(THREADS, Runtime.getRuntime().availableProcessors());
+      int share = (0x10000/n) & ~0xf;
+
+      Future[] parts = new Future[n-1];
+      for (int k=0; k<n-1; k++)
+      {
+         final int from = k*share;
+         final int to = from+share;
+         parts[k] = builders().submit(new Runnable()
+         {
+            public void run()
+            {
+               LifeGen.buildTables(rule, tables[0], tables[1], from, to);
+            }
+         });
+      }
+      LifeGen.buildTables(rule, tables[0], tables[1], (n-1)*share, 0x10000);
+
+      for (int k=0; k<n-1; k++)
+      {
+         try
+         {
+            parts[k].get();
+         }
+         catch (ExecutionException ee) {
+            throw new RuntimeException("rule table build failed: " + ee.getCause());
+         }
+         catch (InterruptedException ie) {
+            // finish the share here rather than hand out half a table
+            parts[k].cancel(false);
+            LifeGen.buildTables(rule, tables[0], tables[1], k*share, (k+1)*share);
+            Thread.currentThread().interrupt();
+         }
+      }
+      return tables;
+   }
+
+   private static synchronized ExecutorService builders()
+   {
+      if (pool == null)
+      {
+         pool = Executors.newFixedThreadPool(THREADS-1, new ThreadFactory()
+         {
+            public Thread newThread(Runnable r)
+            {
+               Thread t = new Thread(r, "Life rule tables");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+      }
+      return pool;
+   }
+
+   /**
+    * The 4x4 -> 2x2 table for a rule array, in plain row order: entry
+    * ix is a 4x4 square (top row in bits 12-15, leftmost cell the
+    * high bit of each nibble), and holds its inner 2x2 as
+    * (top left, top right, bottom left, bottom right) in bits 3-0.
+    * For engines that keep rows, not LifeCell's interleaved words.
+    */
+   static byte[] getQuads(boolean[] rule)
+   {
+      String key = "quads " + key(rule);
+      synchronized (LifeRuleTables.class)
+      {
+         byte[] quads = (byte[])cache.get(key);
+         if (quads != null)
+         {
+            hits++;
+            return quads;
+         }
+      }
+
+      byte[] quads = new byte[65536];
+      for (int ix=0; ix<65536; ix++)
+      {
+         int q = 0;
+         for (int a=0; a<2; a++)
+         {
+            for (int b=0; b<2; b++)
+            {
+               // the 3x3 around (a+1, b+1), as LifeRules lays it out
+               int n = 0;
+               for (int r=a; r<a+3; r++)
+                  n = (n<<3) | ((ix >>> ((3-r)*4 + 1-b)) & 7);
+               q = (q<<1) | (rule[n]? 1:0);
+            }
+         }
+         quads[ix] = (byte)q;
+      }
+
+      synchronized (LifeRuleTables.class)
+      {
+         built++;
+         cache.put(key, quads);
+         return quads;
+      }
+   }
+
+   /** Save tables to disk (and look for them there) or not. */
+   static synchronized void setPersistent(boolean on)
+   {
+      persist = on;
+   }
+
+   static synchronized void clear()
+   {
+      cache.clear();
+   }
+
+   static synchronized String getStats()
+   {
+      return "Rule tables: " + cache.size() + " cached, " + hits + " hits, "
+         + built + " built, " + read + " read from disk";
+   }
+
+   // the rule array as a string: 512 bits, in hex
+   static String key(boolean[] rule)
+   {
+      char[] k = new char[128];
+      for (int i=0; i<128; i++)
+      {
+         int v = 0;
+         for (int b=0; b<4; b++)
+            if (rule[i*4+b]) v |= 8>>b;
+         k[i] = Character.forDigit(v, 16);
+      }
+      return new String(k);
+   }
+
+   private static String property(String name)
+   {
+      try
+      {
+         return System.getProperty(name);
+      }
+      catch (SecurityException se) {
+         return null;
+      }
+   }
+
+   // where the tables for a key are saved (null if there's no home)
+   private static File tableFile(String key)
+   {
+      String home = property("user.home");
+      if (home == null) return null;
+      return new File(new File(new File(home, ".lifev41d"), "rules"), key + ".tbl");
+   }
+
+   private static short[][] readTables(String key)
+   {
+      File file = tableFile(key);
+      if (file == null) return null;
+
+      try
+      {
+         if (file.length() != 4 + 2*TABLE_BYTES) return null;
+
+         FileInputStream fis = new FileInputStream(file);
+         try
+         {
+            ByteBuffer buf = ByteBuffer.allocate(4 + 2*TABLE_BYTES);
+            FileChannel fc = fis.getChannel();
+            while (buf.hasRemaining())
+               if (fc.read(buf) < 0) return null;
+            buf.flip();
+            if (buf.getInt() != VERSION) return null;
+
+            short[][] tables = {new short[65536], new short[65536]};
+            ShortBuffer sb = buf.asShortBuffer();
+            sb.get(tables[0]);
+            sb.get(tables[1]);
+            return tables;
+         }
+         finally
+         {
+            fis.close();
+         }
+      }
+      catch (IOException ioe) {
+         return null;
+      }
+      catch (SecurityException se) {
+         return null;
+      }
+   }
+
+   private static void writeTables(String key, short[][] tables)
+   {
+      File file = tableFile(key);
+      if (file == null) return;
+
+      try
+      {
+         file.getParentFile().mkdirs();
+         ByteBuffer buf = ByteBuffer.allocate(4 + 2*TABLE_BYTES);
+         buf.putInt(VERSION);
+         ShortBuffer sb = buf.asShortBuffer();
+         sb.put(tables[0]);
+         sb.put(tables[1]);
+         buf.rewind();
+
+         File tmp = new File(file.getPath() + ".tmp");
+         FileOutputStream fos = new FileOutputStream(tmp);
+         try
+         {
+            FileChannel fc = fos.getChannel();
+            while (buf.hasRemaining()) fc.write(buf);
+         }
+         finally
+         {
+            fos.close();
+         }
+         file.delete();
+         tmp.renameTo(file);
+      }
+      catch (IOException ioe) {}
+      catch (SecurityException se) {}
+   }
+}
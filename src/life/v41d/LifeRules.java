@@ -17,6 +17,12 @@ package life.v41d;
  ..*
  .*.
  
+ A Generations rule has a third part, the number of states (so
+ Brian's Brain is "/2/3"); see getStates().  A last H or V makes
+ a totalistic rule hexagonal or von Neumann; the array is then
+ masked to ignore the other neighbours, so engines need nothing
+ new to run it.
+ 
  (c) Alan Hensel, Aug 2000. All Rights Reserved.
 **************************************************************/
 
@@ -24,6 +30,16 @@ class LifeRules
 {
    private boolean[] ruleArray = new boolean[512];
    private String ruleString = null;
+   private int states = 2;
+   private int neighbourhood = MOORE;
+
+   static final int MAX_STATES = 256;
+
+   static final int MOORE = 0;
+   static final int HEXAGONAL = 1;      // all but NE and SW
+   static final int VON_NEUMANN = 2;    // N, W, E and S
+   private static final int HEX_NEIGHBOURS = 0x1ef & ~0x044;
+   private static final int VON_NEUMANN_NEIGHBOURS = 0x0aa;
 
    public LifeRules()
    {
@@ -47,8 +63,35 @@ class LifeRules
       rule = rule.toLowerCase();
       if (rule.indexOf('(') >= 0)
          rule = rule.substring(0, rule.indexOf('('));
+      rule = rule.trim();
       int slashIndex = rule.indexOf('/');
       if (slashIndex < 0) return null;  // no slash!
+      String fullRule = rule;
+
+      // a last H or V picks the hexagonal or von Neumann neighbourhood
+      neighbourhood = MOORE;
+      if (rule.endsWith("h")) neighbourhood = HEXAGONAL;
+      if (rule.endsWith("v")) neighbourhood = VON_NEUMANN;
+      if (neighbourhood != MOORE) rule = rule.substring(0, rule.length()-1);
+
+      // Generations: a third part gives the number of states
+      states = 2;
+      int lastSlash = rule.lastIndexOf('/');
+      if (lastSlash > slashIndex)
+      {
+         String n = rule.substring(lastSlash+1).trim();
+         if (n.startsWith("c") || n.startsWith("g")) n = n.substring(1);
+         try {
+            states = Integer.parseInt(n);
+         }
+         catch (NumberFormatException nfe) {
+            return null;
+         }
+         if (states < 2 || states > MAX_STATES) return null;
+         rule = rule.substring(0, lastSlash);
+      }
+      ruleString = fullRule;
+
       String leftRules = rule.substring(0, slashIndex);
       String rightRules = rule.substring(slashIndex+1);
 
@@ -59,11 +102,47 @@ class LifeRules
       setRules(leftRules, !bs);
       setRules(rightRules, bs);
 
-      ruleString = rule;
+      if (neighbourhood == HEXAGONAL) maskNeighbourhood(HEX_NEIGHBOURS);
+      if (neighbourhood == VON_NEUMANN) maskNeighbourhood(VON_NEUMANN_NEIGHBOURS);
 
       return ruleArray;
    }
 
+   /** MOORE, HEXAGONAL or VON_NEUMANN, as set by the last rule. */
+   public int getNeighbourhood()
+   {
+      return neighbourhood;
+   }
+
+   /** Make the rule array ignore every neighbour not in nbrs: each
+    * 3x3 gets the result of a Moore neighbourhood with the same
+    * centre and as many live neighbours as it has in nbrs.  The
+    * rule is taken to be totalistic; letters are ignored.
+    */
+   private void maskNeighbourhood(int nbrs)
+   {
+      boolean[] moore = (boolean[])ruleArray.clone();
+
+      // first[n] = a Moore neighbourhood with n live neighbours
+      int[] first = new int[9];
+      for (int n=1, bit=1; n<9; n++, bit<<=1)
+      {
+         if (bit == 0x10) bit <<= 1;   // skip the centre
+         first[n] = first[n-1] | bit;
+      }
+
+      for (int i=0; i<512; i++)
+         ruleArray[i] = moore[(i & 0x10) | first[Integer.bitCount(i & nbrs)]];
+   }
+
+   /** Number of cell states: 2 for ordinary rules, more for
+    * Generations rules (e.g. "345/2/4"), whose third part gives it.
+    */
+   public int getStates()
+   {
+      return states;
+   }
+
    /** Set half of the rules.
     * survival = true for survival, false for birth.
     */
@@ -74,7 +153,7 @@ class LifeRules
       for (int i=0; i<rules.length(); i++)
       {
          int num = rules.charAt(i) - 0x30;
-         if ((num > 0 && num <= 9) || (num == 0 && survival))
+         if (num >= 0 && num <= 9)
          {
             char peekAhead = rules.charAt(i+1);
 
@@ -194,13 +273,7 @@ class LifeRules
       {
          for (int j=0; j<16; j++)
          {
-            int neighbors = 0;
-            int nborhood = i+j;
-            while (nborhood > 0) {  
-               neighbors += (nborhood&1);
-               nborhood>>>=1;
-            }
-            if (num == neighbors)
+            if (num == Integer.bitCount(i+j))
                ruleArray[i+j+mask] = true;
          }
       }
@@ -0,0 +1,212 @@
+package life.v41d;
+
+/**************************************************************
+ LifeScheduler.java
+
+ Frame pacing for the Life thread.  LifeGen only knows how to
+ run a batch of generations; this class decides how big each
+ batch should be and when the next frame is due.
+
+ Everything is measured with System.nanoTime(), so there is no
+ need to smooth over a coarse system clock.  Two moving averages
+ are kept: the cost of one generation and the cost of one
+ display.  From those, the number of generations per frame is
+ picked so that a frame (generations + display) takes about as
+ long as the requested frame interval.
+
+ In "skip" mode the batch size is fixed at the requested number
+ of generations, and the scheduler sleeps off whatever is left
+ of the frame interval instead.
+
+ The achieved frame rate and generations per frame are averaged
+ over roughly one second and can be read back for display.
+**************************************************************/
+
+class LifeScheduler
+{
+   private static final long NANOS_PER_MILLI = 1000000L;
+   private static final long NANOS_PER_SEC = 1000000000L;
+
+   private long frameNanos = 100*NANOS_PER_MILLI;  // target frame interval
+   private int speed;           // if >0, generations per frame; 0 = warp
+
+   private long genNanos;       // moving average: time for one generation
+   private long renderNanos;    // moving average: time for one display
+   private int gensPerFrame=1;  // size of the next batch
+
+   private long frameStart;     // when the current frame began
+
+   // metrics, averaged over a window of about one second
+   private long windowStart;
+   private int windowFrames;
+   private long windowGens;
+   private double fps;
+   private double avgGensPerFrame;
+
+   LifeScheduler(int millis, int gensPerFrame)
+   {
+      setRefresh(millis);
+      setSpeed(gensPerFrame);
+      reset();
+   }
+
+   public void setRefresh(int millis)
+   {
+      if (millis < 1) millis = 1;
+      frameNanos = millis*NANOS_PER_MILLI;
+   }
+
+   public void setSpeed(int gensPerFrame)
+   {
+      speed = gensPerFrame;
+      if (speed > 0) this.gensPerFrame = speed;
+   }
+
+   public int getSpeed()
+   {
+      return speed;
+   }
+
+   /**
+    * Forget everything measured so far, e.g. after a Clear.
+    */
+   public void reset()
+   {
+      genNanos = renderNanos = 0;
+      gensPerFrame = (speed > 0)? speed : 1;
+      frameStart = windowStart = System.nanoTime();
+      windowFrames = 0;
+      windowGens = 0;
+      fps = avgGensPerFrame = 0;
+   }
+
+   /**
+    * Number of generations to run before the next display.
+    */
+   public int batchSize()
+   {
+      return gensPerFrame;
+   }
+
+   /**
+    * Report that a batch of gens generations took nanos to run.
+    */
+   public void generated(int gens, long nanos)
+   {
+      if (gens <= 0) return;
+
+      long perGen = nanos/gens;
+      if (genNanos == 0) genNanos = perGen;
+      else genNanos = (genNanos*3 + perGen)/4;
+
+      windowGens += gens;
+   }
+
+   /**
+    * Report that displaying the universe took nanos, and plan the
+    * size of the next batch.
+    */
+   public void rendered(long nanos)
+   {
+      if (renderNanos == 0) renderNanos = nanos;
+      else renderNanos = (renderNanos*3 + nanos)/4;
+
+      windowFrames++;
+      long now = System.nanoTime();
+      long elapsed = now - windowStart;
+      if (elapsed >= NANOS_PER_SEC)
+      {
+         fps = (double)windowFrames*NANOS_PER_SEC/elapsed;
+         avgGensPerFrame = (double)windowGens/windowFrames;
+         windowStart = now;
+         windowFrames = 0;
+         windowGens = 0;
+      }
+
+      if (speed > 0) gensPerFrame = speed;
+      else gensPerFrame = planWarp();
+   }
+
+   // At warp speed, fill the frame interval with generations, but
+   // never spend more than 80% of the time in the display code.
+   private int planWarp()
+   {
+      if (genNanos <= 0) return gensPerFrame;
+
+      long budget = frameNanos - renderNanos;
+      long floor = renderNanos/4;     // display <= 80% of the time
+      if (budget < floor) budget = floor;
+
+      long want = budget/genNanos;
+      if (want < 1) want = 1;
+      if (want > Integer.MAX_VALUE/2) want = Integer.MAX_VALUE/2;
+
+      // The number of generations skipped from one frame to the next
+      // should not differ by more than 10%, except while ramping up
+      // from far below the target.
+      int n = gensPerFrame;
+      int leeway = n/10;
+      if (leeway == 0) leeway = 1;
+
+      if (want > 2L*n) return 2*n;
+      if (want > n+leeway) return n+leeway;
+      if (want < n-leeway) return n-leeway;
+      return (int)want;
+   }
+
+   /**
+    * In skip mode, sleep until the current frame interval is used up.
+    * At warp speed the batch size already fills the frame, so the
+    * next frame starts right away.
+    */
+   public void waitForFrame()
+   {
+      long now = System.nanoTime();
+      long deadline = frameStart + frameNanos;
+
+      if (speed <= 0)
+      {
+         frameStart = now;
+         return;
+      }
+
+      if (deadline > now)
+      {
+         long wait = deadline - now;
+         try
+         {
+            Thread.sleep(wait/NANOS_PER_MILLI, (int)(wait%NANOS_PER_MILLI));
+         }catch (InterruptedException ie)
+         {}
+         now = System.nanoTime();
+      }
+
+      // don't try to catch up on frames that were missed
+      if (now - deadline > frameNanos) frameStart = now;
+      else frameStart = deadline;
+   }
+
+   /** Frames per second actually displayed. */
+   public double getFps()
+   {
+      return fps;
+   }
+
+   /** Generations per displayed frame, on average. */
+   public double getGensPerFrame()
+   {
+      return avgGensPerFrame;
+   }
+
+   /** Latest estimate of the time for one generation, in nanoseconds. */
+   public long getGenNanos()
+   {
+      return genNanos;
+   }
+
+   /** Latest estimate of the time for one display, in nanoseconds. */
+   public long getRenderNanos()
+   {
+      return renderNanos;
+   }
+}
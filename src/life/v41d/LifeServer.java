@@ -0,0 +1,586 @@
+package life.v41d;
+
+/**************************************************************
+ LifeServer.java
+
+ LifeGen as a service: a small HTTP server, on the loopback
+ interface only, where clients make universes, load RLE into
+ them, run them and read back what they've become.
+
+    POST   /universes?rule=&topology=&width=&height=   new universe
+    GET    /universes                                   list of ids
+    GET    /universes/{id}               generation, population, ...
+    DELETE /universes/{id}
+    PUT    /universes/{id}/rle?x=&y=     add an RLE pattern (body)
+    POST   /universes/{id}/step?n=       run n generations, then reply
+    GET    /universes/{id}/population
+    GET    /universes/{id}/bbox
+    GET    /universes/{id}/rle?x=&y=&w=&h=   the cells (in a region)
+    GET    /stats                        request counts and latencies
+
+ Replies are JSON, apart from RLE and /stats, which are text.
+ topology is plane (the default), torus, klein, cross or
+ rectangle.
+
+ A step runs exactly n generations.  A universe on a B0 rule
+ stores its odd generations complemented, and the host only ever
+ stops it on an even one, so for B0 rules n must be even (an odd n
+ is answered 400 rather than run one generation too far).
+
+ An uploaded pattern must have x and y in its header, covering at
+ most MAX_AREA cells, and keep its cells inside that box; it is
+ decoded before the universe is touched, so a bad one changes
+ nothing and is answered 400 (or 413).
+
+ The universes are run by a LifeHost, so each one takes its turn
+ on a fixed pool of worker threads; a step request waits for its
+ universe to finish (up to STEP_MILLIS, after which it carries on
+ and the reply is 202).  Requests are handled on a pool of their
+ own, HANDLERS threads.  A waiting step holds one of them, so at
+ most MAX_STEPS steps may wait at once and the rest of the pool is
+ left for quick requests.  Load is pushed back on the client
+ rather than queued up: past MAX_STEPS the answer is 503 with a
+ Retry-After, and a universe that is already running answers 409
+ to anything that would change it.  If a generation fails (runs
+ out of memory, say) the universe stops: the step is answered
+ 500, and the universe's state says "failed" until it is started
+ again.
+
+ Every request is timed, and /stats gives the count, errors and
+ mean and worst latency for each kind of request.
+**************************************************************/
+
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class LifeServer implements HttpHandler
+{
+   static final int DEFAULT_PORT = 8041;
+   static final int HANDLERS = 32;          // request threads
+   static final int MAX_STEPS = 24;         // step requests waiting at once, before 503
+   static final int MAX_UPLOAD = 16<<20;    // bytes of RLE
+   static final long MAX_AREA = 1L<<26;     // cells in an RLE header's x by y box
+   static final long STEP_MILLIS = 30000;   // longest a step request waits
+
+   private static final String[] TOPOLOGIES = {"plane", "torus", "klein", "cross", "rectangle"};
+
+   /** A request that can't be carried out, and the status saying why. */
+   static class Refusal extends Exception
+   {
+      int status;
+
+      Refusal(int status, String why)
+      {
+         super(why);
+         this.status = status;
+      }
+   }
+
+   // latency of one kind of request
+   private static class Timing
+   {
+      long count, errors, nanos, worst;
+   }
+
+   private HttpServer server;
+   private ExecutorService handlers;
+   private LifeHost host;
+   private Hashtable universes = new Hashtable();   // Integer id -> LifeHost.Universe
+   private int nextId = 1;
+
+   private Semaphore steps = new Semaphore(MAX_STEPS);
+   private Hashtable timings = new Hashtable();     // route -> Timing
+   private long turnedAway;
+
+   /**
+    * A server on the loopback interface at port (0 = any free one),
+    * with workers threads running universes (0 = one per processor).
+    * Call start() to begin taking requests.
+    */
+   LifeServer(int port, int workers) throws IOException
+   {
+      host = new LifeHost(workers);
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      server.createContext("/", this);
+
+      handlers = Executors.newFixedThreadPool(HANDLERS, new ThreadFactory()
+      {
+         private int count;
+
+         public synchronized Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "Life server " + (++count));
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      server.setExecutor(handlers);
+   }
+
+   public void start()
+   {
+      server.start();
+   }
+
+   /** Stop taking requests, and stop every universe. */
+   public void stop()
+   {
+      server.stop(0);
+      handlers.shutdown();
+      host.shutdown();
+   }
+
+   public int getPort()
+   {
+      return server.getAddress().getPort();
+   }
+
+   public void handle(HttpExchange ex) throws IOException
+   {
+      long t0 = System.nanoTime();
+      String route = "other";
+      int status = 500;
+
+      try
+      {
+         String method = ex.getRequestMethod();
+         String[] path = split(ex.getRequestURI().getRawPath());
+         Hashtable query = parseQuery(ex.getRequestURI().getRawQuery());
+         route = routeOf(method, path);
+
+         try
+         {
+            status = dispatch(ex, method, path, query);
+         }
+         catch (Refusal r) {
+            status = reply(ex, r.status, "text/plain", r.getMessage() + "\n");
+         }
+         catch (IllegalArgumentException iae) {
+            status = reply(ex, 400, "text/plain", iae.getMessage() + "\n");
+         }
+         catch (InterruptedException ie) {
+            status = reply(ex, 503, "text/plain", "interrupted\n");
+         }
+         catch (RuntimeException re) {
+            // a bug, not the client's fault; but the client still gets an answer
+            status = reply(ex, 500, "text/plain", re + "\n");
+         }
+      }
+      catch (IOException ioe) {
+         // most likely the client has gone; nothing more to say to it
+      }
+      finally
+      {
+         record(route, status, System.nanoTime()-t0);
+         ex.close();
+      }
+   }
+
+   private int dispatch(HttpExchange ex, String method, String[] path, Hashtable query)
+      throws IOException, Refusal, InterruptedException
+   {
+      if (path.length == 1 && path[0].equals("stats") && method.equals("GET"))
+         return reply(ex, 200, "text/plain", getStats());
+
+      if (path.length == 0 || !path[0].equals("universes"))
+         throw new Refusal(404, "no such resource");
+
+      if (path.length == 1)
+      {
+         if (method.equals("POST")) return create(ex, query);
+         if (method.equals("GET")) return list(ex);
+         throw new Refusal(405, "GET or POST");
+      }
+
+      Integer id = parseId(path[1]);
+      LifeHost.Universe v = (LifeHost.Universe)universes.get(id);
+      if (v == null) throw new Refusal(404, "no universe " + path[1]);
+
+      String what = (path.length > 2)? path[2] : "";
+      if (path.length > 3) throw new Refusal(404, "no such resource");
+
+      if (what.equals(""))
+      {
+         if (method.equals("GET")) return reply(ex, 200, "application/json", describe(id, v));
+         if (method.equals("DELETE"))
+         {
+            universes.remove(id);
+            host.remove(v);
+            return reply(ex, 200, "application/json", "{\"deleted\":" + id + "}");
+         }
+         throw new Refusal(405, "GET or DELETE");
+      }
+      if (what.equals("step"))
+      {
+         if (!method.equals("POST")) throw new Refusal(405, "POST");
+         return step(ex, id, v, intParam(query, "n", 1));
+      }
+      if (what.equals("rle"))
+      {
+         if (method.equals("PUT") || method.equals("POST")) return upload(ex, v, query);
+         if (method.equals("GET")) return download(ex, v, query);
+         throw new Refusal(405, "GET or PUT");
+      }
+      if (what.equals("population") && method.equals("GET"))
+         return reply(ex, 200, "application/json", census(v));
+      if (what.equals("bbox") && method.equals("GET"))
+      {
+         int[] box = new int[4];
+         boolean any;
+         int gen;
+         synchronized (v.getLock())
+         {
+            any = v.getGen().getBoundingBox(box);
+            gen = v.getGen().gencount;
+         }
+         if (!any) return reply(ex, 200, "application/json", "{\"generation\":" + gen + ",\"empty\":true}");
+         return reply(ex, 200, "application/json", "{\"generation\":" + gen
+            + ",\"left\":" + box[0] + ",\"top\":" + box[1]
+            + ",\"right\":" + box[2] + ",\"bottom\":" + box[3] + "}");
+      }
+      throw new Refusal(404, "no such resource");
+   }
+
+   private int create(HttpExchange ex, Hashtable query) throws IOException, Refusal
+   {
+      String rule = (String)query.get("rule");
+      String topology = (String)query.get("topology");
+
+      int kind = LifeGen.PLANE;
+      if (topology != null)
+      {
+         kind = Arrays.asList(TOPOLOGIES).indexOf(topology);
+         if (kind < 0) throw new Refusal(400, "topology is one of plane, torus, klein, cross, rectangle");
+      }
+      int w = intParam(query, "width", 0), h = intParam(query, "height", 0);
+
+      LifeHost.Universe v = host.create(rule);   // IllegalArgumentException for bad rules
+      try
+      {
+         v.getGen().setTopology(kind, w, h);
+      }
+      catch (IllegalArgumentException iae) {
+         host.remove(v);
+         throw iae;
+      }
+
+      Integer id;
+      synchronized (this)
+      {
+         id = Integer.valueOf(nextId++);
+      }
+      universes.put(id, v);
+      return reply(ex, 201, "application/json", describe(id, v));
+   }
+
+   private int list(HttpExchange ex) throws IOException
+   {
+      Vector ids = new Vector(universes.keySet());
+      Collections.sort(ids);
+
+      StringBuffer sb = new StringBuffer("{\"universes\":[");
+      for (int i=0; i<ids.size(); i++)
+      {
+         if (i > 0) sb.append(',');
+         sb.append(ids.elementAt(i));
+      }
+      return reply(ex, 200, "application/json", sb.append("]}").toString());
+   }
+
+   private int step(HttpExchange ex, Integer id, LifeHost.Universe v, int n)
+      throws IOException, Refusal, InterruptedException
+   {
+      if (n < 1) throw new Refusal(400, "n must be at least 1");
+      synchronized (v.getLock())
+      {
+         if (v.getGen().hasB0() && n%2 != 0)
+            throw new Refusal(400, "a B0 rule runs two generations at a time; n must be even");
+      }
+
+      if (!steps.tryAcquire())
+      {
+         synchronized (timings)
+         {
+            turnedAway++;
+         }
+         ex.getResponseHeaders().set("Retry-After", "1");
+         throw new Refusal(503, "too many steps running; try again");
+      }
+
+      try
+      {
+         synchronized (v.getLock())
+         {
+            if (v.isRunning()) throw new Refusal(409, "universe " + id + " is already running");
+            v.start(n);
+         }
+
+         boolean done = v.waitUntilStopped(STEP_MILLIS);
+         Throwable t = v.getFailure();
+         if (t != null) throw new Refusal(500, "universe " + id + " stopped: " + t);
+         return reply(ex, done? 200 : 202, "application/json", describe(id, v));
+      }
+      finally
+      {
+         steps.release();
+      }
+   }
+
+   private int upload(HttpExchange ex, LifeHost.Universe v, Hashtable query)
+      throws IOException, Refusal
+   {
+      byte[] body = readBody(ex.getRequestBody());
+      LifeRLEReader rle = new LifeRLEReader(new ByteArrayInputStream(body));
+      if (!rle.readHeader()) throw new Refusal(400, "not an RLE pattern");
+
+      // MAX_UPLOAD bounds the bytes, not the cells they stand for: the
+      // header's box bounds those, and the reader holds the body to it
+      if (rle.getWidth() < 1 || rle.getHeight() < 1)
+         throw new Refusal(400, "RLE header needs x and y");
+      if ((long)rle.getWidth()*rle.getHeight() > MAX_AREA)
+         throw new Refusal(413, "pattern covers more than " + MAX_AREA + " cells");
+      rle.setStrict(true);
+
+      // decoded off to one side, so a bad body leaves the universe as it was
+      LifeGen cells = new LifeGen(null);
+      try
+      {
+         if (!rle.readCells(cells, intParam(query, "x", 0), intParam(query, "y", 0)))
+            throw new Refusal(400, "RLE pattern has no '!'");
+      }
+      catch (IOException ioe) {
+         throw new Refusal(400, ioe.getMessage());
+      }
+
+      synchronized (v.getLock())
+      {
+         if (v.isRunning()) throw new Refusal(409, "universe is running");
+
+         LifeGen u = v.getGen();
+         if (rle.getRule() != null) u.setRules(rle.getRule());
+         u.paste(cells);
+      }
+      return reply(ex, 200, "application/json", census(v));
+   }
+
+   // (replies are built under the universe's lock, but sent after it,
+   // so a slow client doesn't hold up the run)
+   private static String census(LifeHost.Universe v)
+   {
+      synchronized (v.getLock())
+      {
+         LifeGen u = v.getGen();
+         return "{\"generation\":" + u.gencount + ",\"population\":" + u.getPopulation() + "}";
+      }
+   }
+
+   private int download(HttpExchange ex, LifeHost.Universe v, Hashtable query)
+      throws IOException, Refusal
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+      synchronized (v.getLock())
+      {
+         LifeGen u = v.getGen();
+         if (query.get("w") != null || query.get("h") != null)
+         {
+            int w = intParam(query, "w", 0), h = intParam(query, "h", 0);
+            if (w < 1 || h < 1) throw new Refusal(400, "w and h must be at least 1");
+            u = region(u, intParam(query, "x", 0), intParam(query, "y", 0), w, h);
+         }
+         new LifePatternWriter().writeRLE(u, out);
+      }
+      return reply(ex, 200, "text/plain", out.toString("ISO-8859-1"));
+   }
+
+   // a copy of the w x h cells of u at x0,y0 (nothing else), to write out
+   private static LifeGen region(LifeGen u, int x0, int y0, int w, int h)
+   {
+      LifeGen copy = new LifeGen(u.getRules());
+      copy.gencount = u.gencount;
+
+      int off = u.qCycle? 1:0;
+      LifeCell[] blocks = u.getBlocksInOrder();
+      int[] rows = new int[16];
+
+      for (int i=0; i<blocks.length; i++)
+      {
+         int x = blocks[i].x*16+off, y = blocks[i].y*16+off;
+         if (x+15 < x0 || x >= x0+w || y+15 < y0 || y >= y0+h) continue;
+
+         int mask = 0;   // columns inside, leftmost in bit 15
+         for (int k=0; k<16; k++)
+            if (x+k >= x0 && x+k < x0+w) mask |= 0x8000>>>k;
+
+         u.getTile(x, y, rows);
+         for (int j=0; j<16; j++)
+            if (y+j < y0 || y+j >= y0+h) rows[j] = 0;
+            else rows[j] &= mask;
+         copy.putTile(x, y, rows);
+      }
+      return copy;
+   }
+
+   private String describe(Integer id, LifeHost.Universe v)
+   {
+      synchronized (v.getLock())
+      {
+         LifeGen u = v.getGen();
+         String s = "{\"id\":" + id + ",\"rule\":\"" + LifePatternWriter.rleRule(u.getRules())
+            + "\",\"generation\":" + u.gencount + ",\"population\":" + u.getPopulation()
+            + ",\"running\":" + v.isRunning();
+         if (v.getFailure() != null) s += ",\"failed\":true";
+         if (u.getTopology() != LifeGen.PLANE)
+            s += ",\"topology\":\"" + TOPOLOGIES[u.getTopology()] + "\",\"width\":"
+               + u.getBoundWidth() + ",\"height\":" + u.getBoundHeight();
+         return s + "}";
+      }
+   }
+
+   /** Request counts and latencies, and how busy the host is. */
+   public String getStats()
+   {
+      StringBuffer sb = new StringBuffer();
+      synchronized (timings)
+      {
+         Vector routes = new Vector(timings.keySet());
+         Collections.sort(routes);
+
+         for (int i=0; i<routes.size(); i++)
+         {
+            String route = (String)routes.elementAt(i);
+            Timing t = (Timing)timings.get(route);
+            sb.append(route + ": " + t.count + " requests, " + t.errors + " failed, mean "
+               + (t.nanos/t.count/1000)/1000.0 + " ms, worst " + (t.worst/1000)/1000.0 + " ms\n");
+         }
+         sb.append("Turned away (busy): " + turnedAway + "\n");
+      }
+      sb.append(host.getStats() + "\n");
+      return sb.toString();
+   }
+
+   private void record(String route, int status, long nanos)
+   {
+      synchronized (timings)
+      {
+         Timing t = (Timing)timings.get(route);
+         if (t == null) timings.put(route, t = new Timing());
+         t.count++;
+         if (status >= 400) t.errors++;
+         t.nanos += nanos;
+         if (nanos > t.worst) t.worst = nanos;
+      }
+   }
+
+   // the kind of request, with ids taken out, for the timings
+   private static String routeOf(String method, String[] path)
+   {
+      StringBuffer sb = new StringBuffer(method + " ");
+      for (int i=0; i<path.length && i<3; i++)
+         sb.append(i==1? "/{id}" : "/" + path[i]);
+      if (path.length == 0) sb.append('/');
+      return sb.toString();
+   }
+
+   private static int reply(HttpExchange ex, int status, String type, String body)
+      throws IOException
+   {
+      byte[] b = body.getBytes("UTF-8");
+      ex.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+      ex.sendResponseHeaders(status, b.length);
+      OutputStream os = ex.getResponseBody();
+      os.write(b);
+      os.close();
+      return status;
+   }
+
+   private static byte[] readBody(InputStream in) throws IOException, Refusal
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[1<<16];
+      int n;
+
+      while ((n = in.read(buf)) > 0)
+      {
+         out.write(buf, 0, n);
+         if (out.size() > MAX_UPLOAD) throw new Refusal(413, "pattern too big");
+      }
+      return out.toByteArray();
+   }
+
+   private static String[] split(String path)
+   {
+      Vector parts = new Vector();
+      StringTokenizer st = new StringTokenizer(path==null? "" : path, "/");
+      while (st.hasMoreTokens()) parts.addElement(st.nextToken());
+
+      String[] a = new String[parts.size()];
+      parts.copyInto(a);
+      return a;
+   }
+
+   private static Hashtable parseQuery(String raw) throws UnsupportedEncodingException
+   {
+      Hashtable q = new Hashtable();
+      if (raw == null) return q;
+
+      StringTokenizer st = new StringTokenizer(raw, "&");
+      while (st.hasMoreTokens())
+      {
+         String pair = st.nextToken();
+         int eq = pair.indexOf('=');
+         String key = URLDecoder.decode(eq<0? pair : pair.substring(0, eq), "UTF-8");
+         String value = URLDecoder.decode(eq<0? "" : pair.substring(eq+1), "UTF-8");
+         q.put(key, value);
+      }
+      return q;
+   }
+
+   private static Integer parseId(String s) throws Refusal
+   {
+      try
+      {
+         return Integer.valueOf(s);
+      }
+      catch (NumberFormatException e) {
+         throw new Refusal(404, "no universe " + s);
+      }
+   }
+
+   private static int intParam(Hashtable query, String key, int dflt) throws Refusal
+   {
+      String s = (String)query.get(key);
+      if (s == null) return dflt;
+      try
+      {
+         return Integer.parseInt(s);
+      }
+      catch (NumberFormatException e) {
+         throw new Refusal(400, key + " must be a number");
+      }
+   }
+
+   /*
+    * java life.v41d.LifeServer [port [workers]]
+    */
+   public static void main(String[] args) throws IOException
+   {
+      int port = (args.length > 0)? Integer.parseInt(args[0]) : DEFAULT_PORT;
+      int workers = (args.length > 1)? Integer.parseInt(args[1]) : 0;
+
+      LifeServer s = new LifeServer(port, workers);
+      s.start();
+      System.out.println("Life server on http://localhost:" + s.getPort() + "/universes");
+
+      // the handler threads are daemons: keep the VM up
+      try
+      {
+         Thread.sleep(Long.MAX_VALUE);
+      }
+      catch (InterruptedException ie) {}
+      s.stop();
+   }
+}
@@ -0,0 +1,295 @@
+package life.v41d;
+
+/**************************************************************
+ LifeSnapshot.java
+
+ Binary checkpoints of a running universe.
+
+ Unlike the pattern writers, a snapshot keeps everything the
+ engine needs to carry on exactly where it left off: the
+ generation count, which side (p or q) is current, the rules,
+ and every block's p and q words, state bits and flags, with the
+ living, hibernating and morgue lists in their original order.
+ Colouring data is kept too, if the engine has any.
+
+ Layout (big-endian):
+
+    "LifeSnap"  int version  int options (1 = deflated)
+    then, deflated or not:
+    int gencount  byte qCycle  byte backCorrect(1)|inverted(2)  int countdown
+    int heatMode  int heatClock  short+bytes rules
+    int topology  int width  int height                 (version 2)
+    int living  int hibernating  int morgue  int caretaker
+    per block:  short x  short y  int flags  int pstate  int qstate
+                16 shorts p  16 shorts q  byte heat?
+                [int heatStamp  256 bytes heat]
+
+ I/O goes through NIO channels a direct buffer at a time.  A file
+ is read and written with its FileChannel; deflated snapshots
+ wrap the channel in a stream, trading speed for size.
+**************************************************************/
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.zip.*;
+
+class LifeSnapshot
+{
+   static final int VERSION = 2;   // 1 had no topology
+   static final int DEFLATED = 1;
+   private static final byte[] MAGIC = {'L','i','f','e','S','n','a','p'};
+   private static final int BLOCK_BYTES = 2+2+4+4+4+32+32+1;
+
+   private ByteBuffer buf = ByteBuffer.allocateDirect(1<<20);
+   private WritableByteChannel out;
+   private ReadableByteChannel in;
+   private int blocks;
+   private long nanos;
+
+   /** Save to a file, deflated or not. */
+   public void save(LifeGen u, File file, boolean compress) throws IOException
+   {
+      FileOutputStream fos = new FileOutputStream(file);
+      try
+      {
+         write(u, fos.getChannel(), compress);
+      }
+      finally
+      {
+         fos.close();
+      }
+   }
+
+   /** Replace the universe with the snapshot in a file. */
+   public void load(LifeGen u, File file) throws IOException
+   {
+      FileInputStream fis = new FileInputStream(file);
+      try
+      {
+         read(u, fis.getChannel());
+      }
+      finally
+      {
+         fis.close();
+      }
+   }
+
+   public void write(LifeGen u, WritableByteChannel channel, boolean compress)
+      throws IOException
+   {
+      long t0 = System.nanoTime();
+      DeflaterOutputStream dos = null;
+
+      buf.clear();
+      buf.put(MAGIC);
+      buf.putInt(VERSION);
+      buf.putInt(compress? DEFLATED : 0);
+
+      out = channel;
+      if (compress)
+      {
+         flush();
+         dos = new DeflaterOutputStream(Channels.newOutputStream(channel),
+               new Deflater(Deflater.BEST_SPEED), 1<<16);
+         out = Channels.newChannel(dos);
+      }
+
+      int[] counts = new int[3];
+      int caretaker = -1;
+      for (int list=0; list<3; list++)
+      {
+         for (LifeCell c=u.getList(list); c!=null; c=c.Next)
+         {
+            if (list==2 && c==u.getCaretaker()) caretaker = counts[2];
+            counts[list]++;
+         }
+      }
+
+      String rules = u.getRules();
+      byte[] r = (rules==null? "" : rules).getBytes("ISO-8859-1");
+
+      buf.putInt(u.gencount);
+      buf.put((byte)(u.qCycle? 1:0));
+      buf.put((byte)((u.backCorrect? 1:0) | (u.isInverted()? 2:0)));
+      buf.putInt(u.getCountdown());
+      buf.putInt(u.getHeatMode());
+      buf.putInt(u.getHeatClock());
+      buf.putShort((short)r.length);
+      buf.put(r);
+      buf.putInt(u.getTopology());
+      buf.putInt(u.getBoundWidth());
+      buf.putInt(u.getBoundHeight());
+      buf.putInt(counts[0]);
+      buf.putInt(counts[1]);
+      buf.putInt(counts[2]);
+      buf.putInt(caretaker);
+
+      blocks = 0;
+      for (int list=0; list<3; list++)
+      {
+         for (LifeCell c=u.getList(list); c!=null; c=c.Next)
+         {
+            room(BLOCK_BYTES);
+            buf.putShort(c.x);
+            buf.putShort(c.y);
+            buf.putInt(c.flags);
+            buf.putInt(c.pstate);
+            buf.putInt(c.qstate);
+            for (int i=0; i<16; i++) buf.putShort(c.p[i]);
+            for (int i=0; i<16; i++) buf.putShort(c.q[i]);
+
+            if (c.heat == null) buf.put((byte)0);
+            else
+            {
+               buf.put((byte)1);
+               room(4+256);
+               buf.putInt(c.heatStamp);
+               buf.put(c.heat);
+            }
+            blocks++;
+         }
+      }
+
+      flush();
+      if (dos != null) dos.finish();
+      nanos = System.nanoTime()-t0;
+   }
+
+   public void read(LifeGen u, ReadableByteChannel channel) throws IOException
+   {
+      long t0 = System.nanoTime();
+
+      in = channel;
+      buf.clear().flip();
+
+      need(MAGIC.length+8);
+      for (int i=0; i<MAGIC.length; i++)
+         if (buf.get() != MAGIC[i]) throw new IOException("not a Life snapshot");
+      int version = buf.getInt();
+      if (version < 1 || version > VERSION)
+         throw new IOException("snapshot version " + version + " not supported");
+      int options = buf.getInt();
+
+      if ((options & DEFLATED) != 0)
+      {
+         // whatever was read past the header belongs to the deflated part
+         byte[] rest = new byte[buf.remaining()];
+         buf.get(rest);
+         in = Channels.newChannel(new InflaterInputStream(new SequenceInputStream(
+               new ByteArrayInputStream(rest), Channels.newInputStream(channel)),
+               new Inflater(), 1<<16));
+      }
+
+      need(4+1+1+4+4+4+2);
+      int gen = buf.getInt();
+      boolean q = buf.get()!=0;
+      int bits = buf.get();
+      boolean back = (bits & 1)!=0;
+      int countdown = buf.getInt();
+      int heatMode = buf.getInt();
+      int heatClock = buf.getInt();
+      byte[] r = new byte[buf.getShort()];
+      need(r.length+12+16);
+      buf.get(r);
+      int topology = LifeGen.PLANE, width = 0, height = 0;
+      if (version >= 2)
+      {
+         topology = buf.getInt();
+         width = buf.getInt();
+         height = buf.getInt();
+      }
+      int nLiving = buf.getInt();
+      int nHibernating = buf.getInt();
+      int nMorgue = buf.getInt();
+      int caretaker = buf.getInt();
+
+      if (nLiving<0 || nHibernating<0 || nMorgue<0 || caretaker>=nMorgue)
+         throw new IOException("corrupt snapshot header");
+
+      LifeCell[] cells = new LifeCell[nLiving+nHibernating+nMorgue];
+      for (int k=0; k<cells.length; k++)
+      {
+         LifeCell c = new LifeCell();
+         need(BLOCK_BYTES);
+         c.x = buf.getShort();
+         c.y = buf.getShort();
+         c.flags = buf.getInt();
+         c.pstate = buf.getInt();
+         c.qstate = buf.getInt();
+         for (int i=0; i<16; i++) c.p[i] = buf.getShort();
+         for (int i=0; i<16; i++) c.q[i] = buf.getShort();
+
+         if (buf.get() != 0)
+         {
+            need(4+256);
+            c.heatStamp = buf.getInt();
+            c.heat = new byte[256];
+            buf.get(c.heat);
+         }
+         cells[k] = c;
+      }
+
+      String rules = new String(r, "ISO-8859-1");
+      try
+      {
+         u.setTopology(LifeGen.PLANE, 0, 0);
+         if (rules.length()>0) u.setRules(rules);
+      }
+      catch (IllegalArgumentException iae) {
+         throw new IOException("snapshot rule: " + iae.getMessage());
+      }
+      u.setHeatMode(heatMode);
+      u.restore(cells, nLiving, nHibernating, caretaker, countdown, heatClock);
+      try
+      {
+         u.setTopology(topology, width, height);
+      }
+      catch (IllegalArgumentException iae) {
+         throw new IOException("snapshot topology: " + iae.getMessage());
+      }
+      u.gencount = gen;
+      u.qCycle = q;
+      u.backCorrect = back;
+      u.setInverted((bits & 2)!=0);
+
+      blocks = cells.length;
+      nanos = System.nanoTime()-t0;
+   }
+
+   public String getStats()
+   {
+      long ms = nanos/1000000;
+      return "Snapshot: " + blocks + " blocks in " + ms + " ms";
+   }
+
+   // make sure the buffer has room for n more bytes
+   private void room(int n) throws IOException
+   {
+      if (buf.remaining() < n) flush();
+   }
+
+   private void flush() throws IOException
+   {
+      buf.flip();
+      while (buf.hasRemaining()) out.write(buf);
+      buf.clear();
+   }
+
+   // make sure the buffer holds at least n unread bytes
+   private void need(int n) throws IOException
+   {
+      if (buf.remaining() >= n) return;
+
+      buf.compact();
+      while (buf.position() < n)
+      {
+         if (in.read(buf) < 0)
+         {
+            buf.flip();
+            throw new EOFException("snapshot is cut short");
+         }
+      }
+      buf.flip();
+   }
+}
@@ -0,0 +1,237 @@
+package life.v41d;
+
+/**************************************************************
+ LifeTextReader.java
+
+ Streaming readers for the two simple text formats:
+
+    Life 1.06   "#Life 1.06", then one "x y" pair per line,
+                relative to the centre of the pattern.
+    .cells      plaintext: "!" comment lines, then rows of
+                '.' (dead) and 'O' or '*' (alive), with the
+                upper left corner at the origin.
+
+ Like LifeRLEReader, the file is read a buffer at a time as
+ bytes, with no String per line.  Life 1.06 coordinates are
+ collected in batches for LifeGen.setCells(), and plaintext rows
+ are packed into a band of 16 rows which goes to
+ LifeGen.setBitmap() as soon as it's full; either way the engine
+ sees a block at a time, not a cell at a time.  Cells beyond
+ LifeGen.MAX_COORD are refused with an IOException, as in
+ LifeRLEReader.
+**************************************************************/
+
+import java.io.*;
+import java.util.*;
+
+class LifeTextReader
+{
+   private static final int BATCH = 1<<16;   // Life 1.06 cells per setCells()
+
+   private InputStream in;
+   private byte[] buf = new byte[1<<16];
+   private int pos, len;
+   private long bytesRead;
+
+   private Vector comments = new Vector();
+   private String rule;
+   private long cells;
+   private long nanos;
+   private String format = "";
+
+   LifeTextReader(InputStream input)
+   {
+      in = input;
+   }
+
+   private int read() throws IOException
+   {
+      if (pos >= len)
+      {
+         len = in.read(buf, 0, buf.length);
+         pos = 0;
+         if (len <= 0)
+         {
+            len = 0;
+            return -1;
+         }
+         bytesRead += len;
+      }
+      return buf[pos++] & 0xff;
+   }
+
+   // the rest of a line, for comments
+   private String restOfLine(int c) throws IOException
+   {
+      StringBuffer sb = new StringBuffer();
+      while (c >= 0 && c != '\n')
+      {
+         if (c != '\r') sb.append((char)c);
+         c = read();
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Life 1.06: every "x y" line turns on cell cx+x, cy+y.  "#"
+    * lines are kept as comments (a "#R" line gives the rule).
+    */
+   public boolean readLife106(LifeGen u, int cx, int cy) throws IOException
+   {
+      long t0 = System.nanoTime();
+      int[] xs = new int[BATCH], ys = new int[BATCH];
+      int n = 0;
+      int c = read();
+
+      format = "Life 1.06";
+      while (c >= 0)
+      {
+         if (c == '#')
+         {
+            String s = restOfLine(c);
+            if (s.startsWith("#R"))
+            {
+               StringTokenizer st = new StringTokenizer(s.substring(2));
+               if (st.hasMoreTokens()) rule = st.nextToken();
+            }
+            else if (!s.startsWith("#Life")) comments.addElement(s);
+            c = read();
+            continue;
+         }
+
+         // two signed numbers, then skip to the end of the line
+         long x = 0, y = 0;
+         boolean ok = false;
+         for (int k=0; k<2; k++)
+         {
+            while (c == ' ' || c == '\t') c = read();
+
+            boolean neg = (c == '-');
+            if (neg || c == '+') c = read();
+
+            long v = 0;
+            int digits = 0;
+            while (c >= '0' && c <= '9')
+            {
+               if (v <= LifeGen.MAX_COORD) v = v*10 + (c-'0');
+               digits++;
+               c = read();
+            }
+            if (digits == 0) break;
+
+            if (k == 0) x = neg? -v : v;
+            else { y = neg? -v : v; ok = true; }
+         }
+         while (c >= 0 && c != '\n') c = read();
+         c = read();
+
+         if (!ok) continue;
+         if (Math.abs(x+cx) > LifeGen.MAX_COORD || Math.abs(y+cy) > LifeGen.MAX_COORD)
+            throw new IOException("Life 1.06 cell is too far out");
+         xs[n] = (int)(x+cx);
+         ys[n] = (int)(y+cy);
+         if (++n == BATCH)
+         {
+            u.setCells(xs, ys, n, true);
+            cells += n;
+            n = 0;
+         }
+      }
+
+      u.setCells(xs, ys, n, true);
+      cells += n;
+      nanos += System.nanoTime()-t0;
+      return true;
+   }
+
+   /**
+    * Plaintext (.cells), with its upper left corner at x0,y0.  "!"
+    * lines are kept as comments.
+    */
+   public boolean readCells(LifeGen u, int x0, int y0) throws IOException
+   {
+      long t0 = System.nanoTime();
+      int stride = 4;                  // ints per row, grows as needed
+      int[] band = new int[16*stride];
+      int w = 0;                       // widest row in the band
+      int row = 0;                     // row within the band
+      int top = y0;
+      int c = read();
+
+      if (Math.abs(x0) > LifeGen.MAX_COORD || Math.abs(y0) > LifeGen.MAX_COORD)
+         throw new IOException("plaintext pattern is too far out: " + x0 + "," + y0);
+
+      format = "plaintext";
+      while (c >= 0)
+      {
+         if (c == '!')
+         {
+            comments.addElement(restOfLine(read()).trim());
+            c = read();
+            continue;
+         }
+
+         int x = 0;
+         while (c >= 0 && c != '\n')
+         {
+            if (c == 'O' || c == '*' || c == 'o')
+            {
+               if (x0+x > LifeGen.MAX_COORD || top+row > LifeGen.MAX_COORD)
+                  throw new IOException("plaintext pattern is too big");
+               if ((x>>4) >= stride)
+               {
+                  // widen the band, keeping the rows so far
+                  int ns = Math.max(stride*2, (x>>4)+1);
+                  int[] nb = new int[16*ns];
+                  for (int j=0; j<16; j++)
+                     System.arraycopy(band, j*stride, nb, j*ns, stride);
+                  band = nb;
+                  stride = ns;
+               }
+               band[row*stride + (x>>4)] |= 0x8000 >>> (x & 15);
+               cells++;
+            }
+            if (c != '\r') x++;
+            c = read();
+         }
+         // a dead tail past the band adds nothing, and setBitmap()
+         // mustn't read past the row
+         if (x > w) w = Math.min(x, stride*16);
+         c = read();
+
+         if (++row == 16)
+         {
+            u.setBitmap(x0, top, w, 16, band, stride);
+            for (int i=0; i<band.length; i++) band[i] = 0;
+            top += 16;
+            row = 0;
+            w = 0;
+         }
+      }
+
+      if (row > 0) u.setBitmap(x0, top, w, row, band, stride);
+      nanos += System.nanoTime()-t0;
+      return true;
+   }
+
+   public Vector getComments()
+   {
+      return comments;
+   }
+
+   /** The rule, if the file gave one (Life 1.06 "#R"); else null. */
+   public String getRule()
+   {
+      return rule;
+   }
+
+   public String getStats()
+   {
+      double secs = nanos/1e9;
+      if (secs <= 0) secs = 1e-9;
+
+      return format + ": " + bytesRead + " bytes, " + cells + " cells in "
+         + ((int)(secs*1000)) + " ms ("
+         + ((int)(cells/secs/1e5))/10.0 + "M cells/s)";
+   }
+}
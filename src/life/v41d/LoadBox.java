@@ -7,16 +7,19 @@ package life.v41d;
 import java.awt.*;
 import java.io.*;
 import java.net.*;
+import java.util.Vector;
 
 class LoadBox extends Frame
 {
    private List list;
+   private Label info;     // size, rule etc. of the selected pattern
    private Panel buttons;
    private String cwd;
    private Button okBtn, cxBtn;
    private String choice=null;
    private LifeCallback cb;
-   private boolean alreadyListed=false;
+   private volatile boolean alreadyListed=false;
+   private volatile boolean listing=false;   // index being fetched
 
    LoadBox(LifeCallback caller)
    {
@@ -29,53 +32,118 @@ class LoadBox extends Frame
       cxBtn = new Button("Cancel");
       buttons.add(cxBtn);
 
+      info = new Label(" ");
+
       setLayout(new BorderLayout());
+      add("North", info);
       add("Center", list);
       add("South", buttons); 
    }
 
    public void listURL(String loc)
    {
-      if (alreadyListed) return;
+      if (alreadyListed || listing) return;
+      listing = true;
+
+      cwd = new String(loc);
+      if (!cwd.endsWith("/")) cwd += "/";
+
+      // list what the library already knows straight away
+      Vector known = LifeLibrary.getIndex(cwd);
+      list.clear();
+      if (known.size() == 0) list.addItem("Please wait...");
+      for (int i=0; i<known.size(); i++)
+         list.addItem(((LifeLibrary.Entry)known.elementAt(i)).name);
+      info.setText(" ");
 
       pack();  // show a Load box so the user isn't
       show();  // waiting for a slow network
 
+      // fetch the index in the background; the box and the
+      // simulation carry on meanwhile
+      final boolean offline = known.size() > 0;
+      LifeLoader.execute(new Runnable()
+      {
+         public void run()
+         {
+            fetchIndex(offline);
+         }
+      });
+   }
+
+   private void fetchIndex(boolean haveList)
+   {
+      Vector names = new Vector();
+
       try
       {
          String line;
          DataInputStream dis;
 
-         cwd = new String(loc);
-         if (!cwd.endsWith("/")) cwd += "/";
-
          URL url = new URL(cwd+"index.html");
-
-         list.clear();
-         list.addItem("Please wait...");
          dis = new DataInputStream(url.openStream());
-
-         if ((line = dis.readLine())!=null) {
-            list.delItem(0);
-            list.addItem(line);
-         }
-
-         while ((line = dis.readLine())!=null) list.addItem(line);
+         while ((line = dis.readLine())!=null) names.addElement(line);
+         dis.close();
       }
       catch(Exception e)
       {
-         list.addItem(e.toString());
+         // no network: what the library had will have to do
+         if (!haveList) list.addItem(e.toString());
+         else alreadyListed=true;
+         listing=false;
          return;
       }
 
+      if (!sameItems(names))
+      {
+         list.clear();
+         for (int i=0; i<names.size(); i++)
+            list.addItem((String)names.elementAt(i));
+      }
       alreadyListed=true;
 
+      // describe anything new; this is the slow part
+      LifeLibrary.buildIndex(cwd, names, new Runnable()
+      {
+         public void run()
+         {
+            showInfo();
+         }
+      });
+      listing=false;
+
       // unfortunate kludge, to widen box to avoid horizontal scrollbar
       //Dimension d = LdBx.size();
       //if (d.width>0 && d.height>0)
       //    LdBx.resize(d.width+10, d.height);
    }
 
+   private boolean sameItems(Vector names)
+   {
+      if (list.countItems() != names.size()) return false;
+      for (int i=0; i<names.size(); i++)
+         if (!list.getItem(i).equals(names.elementAt(i))) return false;
+      return true;
+   }
+
+   // what the library knows about the selected pattern
+   private void showInfo()
+   {
+      String sel = list.getSelectedItem();
+      Vector idx = LifeLibrary.getIndex(cwd);
+
+      for (int i=0; sel!=null && i<idx.size(); i++)
+      {
+         LifeLibrary.Entry e = (LifeLibrary.Entry)idx.elementAt(i);
+         if (e.name.equals(sel))
+         {
+            info.setText(e.toString());
+            return;
+         }
+      }
+      info.setText(" ");
+   }
+
    public boolean handleEvent(Event e)
    {
       String sel;
@@ -85,6 +153,10 @@ class LoadBox extends Frame
       {
          dispose();
       }
+      else if (e.id==Event.LIST_SELECT || e.id==Event.LIST_DESELECT)
+      {
+         showInfo();
+      }
       else if ((e.target == okBtn || e.id==Event.ACTION_EVENT)
             && e.arg!=null)
       {
@@ -92,9 +164,7 @@ class LoadBox extends Frame
 
          if (sel != null && sel.length()>0)
          {
-            choice = cwd + list.getSelectedItem();
-            if (!choice.toUpperCase().endsWith(".LIF"))
-               choice+=".lif";
+            choice = LifeLibrary.urlFor(cwd, sel);
             cb.callback(0,choice);
          }
 
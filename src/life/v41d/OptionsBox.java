@@ -14,6 +14,9 @@ class OptionsBox extends Frame
    private Panel clearonloadPanel;
    private Checkbox clearonloadCheck;
 
+   private Panel colorbyPanel;
+   private Choice colorbyChoice;   // in order of LifeGen.HEAT_OFF, _AGE, _ACTIVITY
+
    private Panel buttons;
    private Button okBtn, cxBtn;
    private LifeCallback cb;
@@ -30,22 +33,32 @@ class OptionsBox extends Frame
       clearonloadCheck = new Checkbox("Clear on Open");
       clearonloadPanel.add(clearonloadCheck);
 
+      colorbyPanel = new Panel();
+      colorbyPanel.add(new Label("Color Cells By:"));
+      colorbyChoice = new Choice();
+      colorbyChoice.addItem("nothing");
+      colorbyChoice.addItem("age");
+      colorbyChoice.addItem("activity");
+      colorbyPanel.add(colorbyChoice);
+
       buttons = new Panel();
       okBtn = new Button("OK");
       buttons.add(okBtn);
       cxBtn = new Button("Cancel");
       buttons.add(cxBtn);
 
-      setLayout(new GridLayout(3,1));
+      setLayout(new GridLayout(4,1));
       add(howfarPanel,0);
       add(clearonloadPanel,1);
-      add(buttons,2);
+      add(colorbyPanel,2);
+      add(buttons,3);
    }
 
-   public void enterData(boolean clear)
+   public void enterData(boolean clear, int colorby)
    {
       howfarText.setText("");
       clearonloadCheck.setState(clear);
+      colorbyChoice.select(colorby);
    }
 
    public boolean handleEvent(Event e)
@@ -61,6 +74,7 @@ class OptionsBox extends Frame
          {
             cb.callback(4,howfarText.getText());
             cb.callback(5,new Boolean(clearonloadCheck.getState()));
+            cb.callback(6,Integer.valueOf(colorbyChoice.getSelectedIndex()));
             dispose();
          }
       }
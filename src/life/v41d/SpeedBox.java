@@ -16,6 +16,9 @@ class SpeedBox extends Frame
    private Panel speedPanel;
    private TextField speedText;
 
+   private Panel metricsPanel;
+   private Label metricsLabel;
+
    private Panel warpPanel;
    private Button warpBtn;
    private Button dontSkipBtn;
@@ -36,6 +39,9 @@ class SpeedBox extends Frame
       speedPanel.add(new Label("Gens/Frame (skip):"));
       speedPanel.add(speedText = new TextField(8));
 
+      metricsPanel = new Panel();
+      metricsPanel.add(metricsLabel = new Label("", Label.CENTER));
+
       warpPanel = new Panel();
       warpBtn = new Button("Warp Speed");
       warpPanel.add(warpBtn);
@@ -48,11 +54,12 @@ class SpeedBox extends Frame
       cxBtn = new Button("Cancel");
       buttons.add(cxBtn);
 
-      setLayout(new GridLayout(4,1));
+      setLayout(new GridLayout(5,1));
       add(refreshPanel,0);
       add(speedPanel,1);
-      add(warpPanel,2);
-      add(buttons,3);
+      add(metricsPanel,2);
+      add(warpPanel,3);
+      add(buttons,4);
    }
 
    public void enterData(int refresh, int speed)
@@ -63,6 +70,13 @@ class SpeedBox extends Frame
       else          speedText.setText(Integer.toString(speed));
    }
 
+   // what the scheduler actually achieved, for comparison
+   public void showMetrics(double fps, double gensPerFrame)
+   {
+      metricsLabel.setText("Measured: " + ((int)(fps*10))/10.0 + " fps, "
+            + ((int)(gensPerFrame*10))/10.0 + " gens/frame");
+   }
+
    public boolean handleEvent(Event e)
    {
       if ((e.target == cxBtn && e.arg!=null)